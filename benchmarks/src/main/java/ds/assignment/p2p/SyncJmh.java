@@ -0,0 +1,55 @@
+package ds.assignment.p2p;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark do tratamento de SYNC com várias threads sobre o mesmo peer.
+ *
+ * Every thread drives handleMessage("SYNC ...") on one shared Peer, as the listener's
+ * handler threads do when many neighbours sync at once, so the averaging lock is contended.
+ * The group is run with 1 and 4 threads to show the cost of that contention.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SyncJmh {
+
+    private Peer peer;
+
+    @Setup
+    // Cria um peer sem arrancar a rede
+    public void setup() {
+        peer = new Peer("bench", 0, 0.5);
+        peer.setVerbose(false);
+    }
+
+    @State(Scope.Thread)
+    public static class Msg {
+        String line;
+
+        @Setup
+        // Cada thread tem o seu peerId remoto
+        public void setup() {
+            line = "SYNC p" + Thread.currentThread().getId() + " 0.25";
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    // Um só remetente
+    public String sync1(Msg m) {
+        return peer.handleMessage(m.line);
+    }
+
+    @Benchmark
+    @Threads(4)
+    // Quatro remetentes em concorrência
+    public String sync4(Msg m) {
+        return peer.handleMessage(m.line);
+    }
+}
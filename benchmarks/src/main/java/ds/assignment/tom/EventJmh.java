@@ -0,0 +1,64 @@
+package ds.assignment.tom;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark do Event: comparação na ordem total e codificação/descodificação do frame.
+ *
+ * A fixed set of events with random timestamps (many ties, so the originPid/msgId branches
+ * are exercised too) is cycled through; payloads are short words as in the assignment.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventJmh {
+
+    private static final int N = 1024;                  // power of two: index with & (N - 1)
+
+    private final Event[] events = new Event[N];
+    private final byte[][] frames = new byte[N][];
+    private final byte[] buf = new byte[Event.MAX_FRAME];
+    private final Event target = new Event();
+    private int i;
+
+    @Setup
+    // Gera os eventos e os respetivos frames já codificados
+    public void setup() {
+        Random rnd = new Random(42);
+        for (int k = 0; k < N; k++) {
+            byte[] word = ("word" + rnd.nextInt(100_000)).getBytes(StandardCharsets.UTF_8);
+            int origin = rnd.nextInt(8);
+            events[k] = new Event().setData(((long) origin << 32) | k, origin, rnd.nextInt(N / 4), word, 0, word.length);
+            byte[] f = new byte[Event.MAX_FRAME];
+            int len = events[k].encode(f, 0);
+            frames[k] = java.util.Arrays.copyOf(f, len);
+        }
+    }
+
+    @Benchmark
+    // Compara dois eventos consecutivos
+    public int compareTo() {
+        int k = i++;
+        return events[k & (N - 1)].compareTo(events[(k + 1) & (N - 1)]);
+    }
+
+    @Benchmark
+    // Codifica um evento para o buffer de envio
+    public int encode() {
+        return events[i++ & (N - 1)].encode(buf, 0);
+    }
+
+    @Benchmark
+    // Descodifica um frame para um evento reutilizado
+    public Event decode() {
+        target.decode(frames[i++ & (N - 1)], 0);
+        return target;
+    }
+}
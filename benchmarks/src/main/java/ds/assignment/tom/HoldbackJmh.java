@@ -0,0 +1,85 @@
+package ds.assignment.tom;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark da fila de holdback: inserir/retirar e espreitar a cabeça com a fila em regime.
+ *
+ * The queue is pre-filled with size events; each insert pushes an event with a newer timestamp
+ * and polls the head, so the size stays constant and the polled event is reused as the next
+ * insert. The PriorityBlockingQueue the peer used originally is measured next to the
+ * per-origin HoldbackMerge that replaced it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HoldbackJmh {
+
+    private static final int ORIGINS = 8;
+
+    @Param({"64", "4096"})
+    public int size;
+
+    private PriorityBlockingQueue<Event> pbq;
+    private HoldbackMerge merge;
+    private Event pbqSpare;
+    private Event mergeSpare;
+    private long ts;
+    private long id;
+
+    @Setup
+    // Enche as duas filas com size eventos
+    public void setup() {
+        pbq = new PriorityBlockingQueue<>();
+        merge = new HoldbackMerge(ORIGINS);
+        for (int k = 0; k < size; k++) {
+            pbq.offer(next(new Event()));
+            merge.offer(next(new Event()));
+        }
+        merge.drain();
+        pbqSpare = next(new Event());
+        mergeSpare = next(new Event());
+    }
+
+    // Preenche e com o próximo timestamp (as origens rodam, como num grupo com tráfego uniforme)
+    private Event next(Event e) {
+        long n = id++;
+        int origin = (int) (n % ORIGINS);
+        return e.setControl(Event.Type.DATA, ((long) origin << 32) | n, origin, origin, ts += (n % ORIGINS == 0) ? 1 : 0);
+    }
+
+    @Benchmark
+    // PriorityBlockingQueue: offer + poll
+    public Event pbqInsertPoll() {
+        pbq.offer(pbqSpare);
+        pbqSpare = next(pbq.poll());
+        return pbqSpare;
+    }
+
+    @Benchmark
+    // PriorityBlockingQueue: peek da cabeça
+    public Event pbqPeek() {
+        return pbq.peek();
+    }
+
+    @Benchmark
+    // HoldbackMerge: offer + drain + poll
+    public Event mergeInsertPoll() {
+        merge.offer(mergeSpare);
+        merge.drain();
+        mergeSpare = next(merge.poll());
+        return mergeSpare;
+    }
+
+    @Benchmark
+    // HoldbackMerge: peek da cabeça
+    public Event mergePeek() {
+        return merge.peek();
+    }
+}
@@ -0,0 +1,77 @@
+package ds.assignment.tring;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark das operações em bloco do CalculatorServer, de 1 a 1M elementos por chamada.
+ *
+ * bulk() is BulkOps.apply (the Vector API kernel: the forks add jdk.incubator.vector), scalar()
+ * its scalar fallback, and perElement() computes one element at a time through the op switch,
+ * the way single requests are answered. Scores are ns per call; elements/s = size / score.
+ * The operands include zero divisors, so div exercises the NaN path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BulkOpsJmh {
+
+    @Param({"1", "16", "256", "4096", "65536", "1048576"})
+    public int size;
+
+    @Param({"add", "div"})
+    public String op;
+
+    private double[] a, b, out;
+    private int code;
+
+    @Setup
+    // Operandos com duas casas decimais, como os do Peer; 1 em cada 64 divisores é zero
+    public void setup() {
+        java.util.Random rnd = new java.util.Random(42);
+        a = new double[size];
+        b = new double[size];
+        out = new double[size];
+        for (int i = 0; i < size; i++) {
+            a[i] = Math.round(rnd.nextDouble() * 100 * 100) / 100.0;
+            b[i] = (rnd.nextInt(64) == 0) ? 0.0 : Math.round(rnd.nextDouble() * 100 * 100) / 100.0;
+        }
+        code = BulkOps.opCode(op);
+        if (!BulkOps.kernel().startsWith("vector")) throw new IllegalStateException("Vector API kernel not loaded");
+    }
+
+    @Benchmark
+    // Kernel vetorial (Vector API)
+    public double[] bulk() {
+        BulkOps.apply(code, a, b, out, 0, size);
+        return out;
+    }
+
+    @Benchmark
+    // Fallback escalar (ciclos simples, que o C2 pode auto-vetorizar)
+    public double[] scalar() {
+        BulkOps.applyScalar(code, a, b, out, 0, size);
+        return out;
+    }
+
+    @Benchmark
+    // Um elemento de cada vez, com o switch da operação por elemento (como um pedido isolado)
+    public double[] perElement() {
+        for (int i = 0; i < size; i++) out[i] = one(code, a[i], b[i]);
+        return out;
+    }
+
+    private static double one(int op, double a, double b) {
+        switch (op) {
+            case BulkOps.ADD: return a + b;
+            case BulkOps.SUB: return a - b;
+            case BulkOps.MUL: return a * b;
+            case BulkOps.DIV: return (b == 0.0) ? Double.NaN : a / b;
+            default: return Double.NaN;
+        }
+    }
+}
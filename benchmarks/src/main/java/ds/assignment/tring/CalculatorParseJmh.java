@@ -0,0 +1,120 @@
+package ds.assignment.tring;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark do parsing e formatação de um pedido do CalculatorServer, sem rede.
+ *
+ * answer() is the per-request code of both server modes (tokenize, parse the operands, compute,
+ * format the reply into the codec's buffer); legacyAnswer() is the String-based version it
+ * replaced, kept here as the baseline; both run with the reply cache off, and answerCached()
+ * measures a retry served from the cache. The client side (request formatting, reply parsing)
+ * is measured the same way. Logging is off; run with -prof gc to see the allocation rate per op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorParseJmh {
+
+    private static final int N = 256;
+
+    private final String[] lines = new String[N];
+    private final byte[][] requests = new byte[N][];
+    private final byte[][] replies = new byte[N][];
+    private final double[] as = new double[N], bs = new double[N];
+    private final String[] ops = {"add", "sub", "mul", "div"};
+    private final byte[] peerId = "p3".getBytes(StandardCharsets.UTF_8);
+    private final CalcCodec codec = new CalcCodec();
+    private CalculatorServer server, cachedServer;
+    private int i;
+
+    @Setup
+    // Gera pedidos no formato que o Peer envia (duas casas decimais) e as respostas do servidor
+    public void setup() {
+        server = new CalculatorServer(0, 1, true, 0, 0);
+        server.setVerbose(false);
+        cachedServer = new CalculatorServer(0, 1, true);
+        cachedServer.setVerbose(false);
+        java.util.Random rnd = new java.util.Random(42);
+        for (int k = 0; k < N; k++) {
+            as[k] = Math.round(rnd.nextDouble() * 100 * 100) / 100.0;
+            bs[k] = Math.round(rnd.nextDouble() * 100 * 100) / 100.0;
+            lines[k] = String.format(Locale.US, "%s %.2f %.2f %d %s", ops[k & 3], as[k], bs[k], 1000L + k, "p" + (k % 7));
+            requests[k] = lines[k].getBytes(StandardCharsets.US_ASCII);
+            int n = server.answer(codec, requests[k], 0, requests[k].length);
+            replies[k] = java.util.Arrays.copyOf(codec.out, n);
+            cachedServer.answer(codec, requests[k], 0, requests[k].length);
+        }
+    }
+
+    @Benchmark
+    // Servidor: pedido em bytes -> resposta em bytes
+    public int answer() {
+        byte[] req = requests[i++ & (N - 1)];
+        return server.answer(codec, req, 0, req.length);
+    }
+
+    @Benchmark
+    // Servidor: pedido repetido (mesmo peerId e q), respondido pela cache
+    public int answerCached() {
+        byte[] req = requests[i++ & (N - 1)];
+        return cachedServer.answer(codec, req, 0, req.length);
+    }
+
+    @Benchmark
+    // Servidor, versão anterior: split por regex, Double.parseDouble, concatenação
+    public String legacyAnswer() {
+        return legacyAnswer(lines[i++ & (N - 1)]);
+    }
+
+    @Benchmark
+    // Cliente: formata o pedido e lê a resposta
+    public double client() {
+        int k = i++ & (N - 1);
+        codec.formatRequest(ops[k & 3], as[k], bs[k], 1000L + k, peerId);
+        byte[] reply = replies[k];
+        return codec.parseReply(reply, 0, reply.length);
+    }
+
+    @Benchmark
+    // Cliente, versão anterior: String.format e split da resposta
+    public double legacyClient() {
+        int k = i++ & (N - 1);
+        byte[] req = String.format("%s %.2f %.2f %d %s", ops[k & 3], as[k], bs[k], 1000L + k, "p3").getBytes(StandardCharsets.UTF_8);
+        String resp = new String(replies[k], StandardCharsets.UTF_8);
+        return Double.parseDouble(resp.split("\\s+")[1]) + req.length;
+    }
+
+    // Como o CalculatorServer respondia antes do CalcCodec (sem logging)
+    private static String legacyAnswer(String line) {
+        if (line == null || line.isBlank()) return null;
+        Locale.setDefault(Locale.US);
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length < 5) return "ERR malformed_request";
+        String op = parts[0].toLowerCase(Locale.ROOT);
+        double a = Double.parseDouble(parts[1]);
+        double b = Double.parseDouble(parts[2]);
+        long q = Long.parseLong(parts[3]);
+        double res;
+        switch (op) {
+            case "add" -> res = a + b;
+            case "sub" -> res = a - b;
+            case "mul" -> res = a * b;
+            case "div" -> {
+                if (b == 0.0) return q + " NaN";
+                res = a / b;
+            }
+            default -> {
+                return q + " NaN";
+            }
+        }
+        return q + " " + res;
+    }
+}
@@ -0,0 +1,89 @@
+package ds.assignment.tring;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Microbenchmark da serialização do Token em função do tamanho do anel.
+ *
+ * The token carries the ring, the edge map and the dead set, so its size grows with the
+ * number of peers. Java serialization (socket mode, one ObjectOutputStream per hop) is
+ * measured next to the binary encode/decode used by nio mode.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenJmh {
+
+    @Param({"5", "50", "500"})
+    public int ringSize;
+
+    private Peer.Token token;
+    private byte[] serialized;
+    private ByteBuffer buf;
+    private ByteBuffer encoded;
+
+    @Setup
+    // Constrói um token com ringSize peers (um em cada dez marcado como morto)
+    public void setup() throws IOException {
+        token = new Peer.Token();
+        token.hops = 12345;
+        Peer.Addr prev = null;
+        for (int i = 0; i < ringSize; i++) {
+            Peer.Addr a = new Peer.Addr("10.0." + (i / 250) + "." + (i % 250 + 1), 5000 + i);
+            token.ring.add(a);
+            if (prev != null) token.edges.put(prev, a);
+            if (i % 10 == 9) token.dead.add(a);
+            prev = a;
+        }
+        serialized = javaSerialize();
+        buf = ByteBuffer.allocate(64 + ringSize * 3 * 32);
+        token.encode(buf);
+        buf.flip();
+        encoded = ByteBuffer.allocate(buf.remaining()).put(buf);
+        encoded.flip();
+    }
+
+    // Serializa com ObjectOutputStream, como no modo socket
+    private byte[] javaSerialize() throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(token);
+        }
+        return bos.toByteArray();
+    }
+
+    @Benchmark
+    // Serialização Java do token
+    public byte[] javaWrite() throws IOException {
+        return javaSerialize();
+    }
+
+    @Benchmark
+    // Desserialização Java do token
+    public Object javaRead() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    // Codificação binária (modo nio)
+    public int binaryWrite() {
+        buf.clear();
+        token.encode(buf);
+        return buf.position();
+    }
+
+    @Benchmark
+    // Descodificação binária (modo nio)
+    public Peer.Token binaryRead() {
+        return Peer.Token.decode(encoded.duplicate());
+    }
+}
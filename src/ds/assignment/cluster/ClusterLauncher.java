@@ -0,0 +1,494 @@
+package ds.assignment.cluster;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Lança um cluster tring, p2p ou tom a partir de uma spec, aplica carga e junta as métricas num relatório.
+ *
+ * mode=jvm runs every node in this JVM; mode=process starts one child JVM per node (same
+ * classpath, javaOpts from the spec), each running this class with --node, printing a sample
+ * line every sampleMs and taking commands (kick, quiesce, crash) on stdin. Child output other than
+ * samples goes to workDir/logs. The run is: start every node, wait startupSeconds, kick, load
+ * for seconds, quiesce, drain (at most drainSeconds), report. Rates in the report are taken
+ * over the load phase only.
+ *
+ * Usage: java ds.assignment.cluster.ClusterLauncher <spec.properties|-> [key=value ...]
+ */
+public class ClusterLauncher {
+
+    private static final long READY_TIMEOUT_MS = 120_000;
+
+    private final ClusterSpec spec;
+    private final List<String> order = new ArrayList<>();              // node names, servers first
+    private final Map<String, Node> local = new LinkedHashMap<>();     // mode=jvm
+    private final Map<String, Child> children = new LinkedHashMap<>(); // mode=process
+    private Map<String, Sample> atCrash;                                // tring with crashAt: samples at the crash
+    private double crashedAt = -1;
+
+    public ClusterLauncher(ClusterSpec spec) {
+        this.spec = spec;
+    }
+
+    // Processo filho de um nó: lê comandos do stdin e escreve as amostras e o resto da saída no stdout
+    private final class Child {
+        final String name;
+        final Process process;
+        final BufferedWriter commands;
+        final CountDownLatch ready = new CountDownLatch(1);
+        volatile Sample last;
+
+        Child(String name, Process process) {
+            this.name = name;
+            this.process = process;
+            this.commands = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+            Thread reader = new Thread(this::readOutput, "out-" + name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        // Separa as amostras do resto da saída (que vai para o log do nó)
+        private void readOutput() {
+            Path log = spec.workDir.resolve("logs").resolve(name + ".out");
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+                 BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    Sample s = Sample.decode(line);
+                    if (s != null) {
+                        last = s;
+                    } else if (line.equals("READY")) {
+                        ready.countDown();
+                    } else {
+                        out.write(line);
+                        out.newLine();
+                        out.flush();
+                    }
+                }
+            } catch (IOException ignored) {
+            } finally {
+                ready.countDown();                       // died before READY: do not wait for it
+            }
+        }
+
+        // Envia um comando ao nó
+        synchronized void send(String command) {
+            try {
+                commands.write(command);
+                commands.newLine();
+                commands.flush();
+            } catch (IOException e) {
+                System.err.println("[LAUNCHER] " + name + " is gone: " + e.getMessage());
+            }
+        }
+    }
+
+    // Arranca todos os nós (servidores primeiro) e espera que estejam a escutar
+    public void start() throws Exception {
+        Node.prepare(spec);
+        if (spec.system == ClusterSpec.SystemKind.TRING) {
+            for (int s = 0; s < spec.servers; s++) order.add(ClusterSpec.nodeName(Node.SERVER, s));
+        }
+        for (int i = 0; i < spec.nodes; i++) order.add(ClusterSpec.nodeName(Node.PEER, i));
+
+        if (spec.inJvm) startLocal(); else startChildren();
+    }
+
+    // mode=jvm: cria os nós e arranca-os em paralelo (o start() do tom espera pelos outros peers)
+    private void startLocal() throws Exception {
+        for (String name : order) local.put(name, Node.create(spec, role(name), index(name)));
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(64, order.size()));
+        try {
+            List<Future<?>> started = new ArrayList<>();
+            for (Node n : local.values()) {
+                started.add(pool.submit(() -> { n.start(); return null; }));
+            }
+            for (Future<?> f : started) f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // mode=process: um JVM por nó, com o mesmo classpath e a mesma spec
+    private void startChildren() throws Exception {
+        Path logs = Files.createDirectories(spec.workDir.resolve("logs"));
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopChildren));
+        for (String name : order) {
+            List<String> cmd = new ArrayList<>();
+            cmd.add(java);
+            if (!spec.javaOpts.isEmpty()) cmd.addAll(Arrays.asList(spec.javaOpts.split("\\s+")));
+            cmd.addAll(List.of("-cp", System.getProperty("java.class.path"), ClusterLauncher.class.getName(),
+                    "--node", role(name), String.valueOf(index(name)),
+                    spec.file == null ? "-" : spec.file.toString()));
+            cmd.addAll(Arrays.asList(spec.overrides));
+            Process p = new ProcessBuilder(cmd)
+                    .redirectError(logs.resolve(name + ".err").toFile())
+                    .start();
+            children.put(name, new Child(name, p));
+        }
+        long deadline = System.currentTimeMillis() + READY_TIMEOUT_MS;
+        for (Child c : children.values()) {
+            long left = deadline - System.currentTimeMillis();
+            if (!c.ready.await(Math.max(1, left), TimeUnit.MILLISECONDS) || !c.process.isAlive()) {
+                throw new IOException(c.name + " did not start; see " + logs.resolve(c.name + ".err"));
+            }
+        }
+    }
+
+    // Termina os processos filhos (também no shutdown hook)
+    private void stopChildren() {
+        for (Child c : children.values()) c.process.destroy();
+        for (Child c : children.values()) {
+            try {
+                if (!c.process.waitFor(2, TimeUnit.SECONDS)) c.process.destroyForcibly();
+            } catch (InterruptedException e) {
+                c.process.destroyForcibly();
+            }
+        }
+    }
+
+    // Faz cair o nó name
+    private void crash(String name) {
+        System.out.printf(Locale.ROOT, "[LAUNCHER] crashing %s (it will drop the token)%n", name);
+        if (spec.inJvm) local.get(name).crash(); else children.get(name).send("crash");
+    }
+
+    // Manda um comando a todos os nós
+    private void broadcast(String command) {
+        if (spec.inJvm) {
+            for (Node n : local.values()) {
+                if (command.equals("kick")) n.kick(); else n.quiesce();
+            }
+        } else {
+            for (Child c : children.values()) c.send(command);
+        }
+    }
+
+    // Retorna a amostra mais recente de cada nó
+    private Map<String, Sample> collect() {
+        Map<String, Sample> out = new LinkedHashMap<>();
+        if (spec.inJvm) {
+            for (Map.Entry<String, Node> e : local.entrySet()) out.put(e.getKey(), e.getValue().sample());
+        } else {
+            for (Map.Entry<String, Child> e : children.entrySet()) {
+                Sample s = e.getValue().last;
+                if (s != null) out.put(e.getKey(), s);
+            }
+        }
+        return out;
+    }
+
+    // Corre a experiência e retorna o relatório
+    public List<String> run() throws Exception {
+        sleepSeconds(spec.startupSeconds);
+        Map<String, Sample> begin = collect();
+        broadcast("kick");
+        long t0 = System.nanoTime();
+        long nextProgress = t0 + (long) (spec.progressSeconds * 1e9);
+        long end = t0 + (long) (spec.seconds * 1e9);
+        double convergedAt = -1;
+
+        Map<String, Sample> now = begin;
+        boolean crashPending = spec.system == ClusterSpec.SystemKind.TRING && spec.crashAt > 0;
+        while (System.nanoTime() < end) {
+            long wake = Math.min(spec.sampleMs, Math.max(1, (end - System.nanoTime()) / 1_000_000));
+            if (crashPending) wake = Math.max(1, Math.min(wake, t0 / 1_000_000 + (long) (spec.crashAt * 1000) - System.nanoTime() / 1_000_000));
+            Thread.sleep(wake);
+            now = collect();
+            double elapsed = (System.nanoTime() - t0) / 1e9;
+            if (crashPending && elapsed >= spec.crashAt) {
+                crashPending = false;
+                atCrash = now;
+                crashedAt = elapsed;
+                crash(ClusterSpec.nodeName(Node.PEER, spec.crashPeer - 1));
+            }
+            if (convergedAt < 0 && spec.system == ClusterSpec.SystemKind.P2P && maxError(now) < spec.epsilon) {
+                convergedAt = elapsed;
+            }
+            if (spec.progressSeconds > 0 && System.nanoTime() >= nextProgress) {
+                System.out.printf(Locale.ROOT, "[LAUNCHER] t=%.0fs %s%n", elapsed, progress(begin, now, elapsed));
+                nextProgress += (long) (spec.progressSeconds * 1e9);
+            }
+        }
+        Map<String, Sample> loadEnd = now;
+        double loadSeconds = (System.nanoTime() - t0) / 1e9;
+
+        broadcast("quiesce");
+        double drained = drain();
+        Map<String, Sample> fin = collect();
+        return report(begin, loadEnd, fin, loadSeconds, drained, convergedAt);
+    }
+
+    // Espera que o trabalho em curso termine (até drainSeconds); retorna quanto esperou, ou -1 se não acabou
+    private double drain() throws InterruptedException {
+        long t0 = System.nanoTime();
+        long deadline = t0 + (long) (spec.drainSeconds * 1e9);
+        while (true) {
+            Thread.sleep(spec.sampleMs);
+            if (idle(collect())) return (System.nanoTime() - t0) / 1e9;
+            if (System.nanoTime() >= deadline) return -1;
+        }
+    }
+
+    // Retorna true quando já não há trabalho pendente no cluster
+    private boolean idle(Map<String, Sample> s) {
+        switch (spec.system) {
+            case TRING:
+                return sum(s, "backlog") == 0;
+            case TOM: {
+                if (sum(s, "completed") + sum(s, "failed") < sum(s, "submitted")) return false;
+                // Every peer delivered everything (same count everywhere)
+                return min(s, "delivered") == max(s, "delivered");
+            }
+            default:
+                return true;
+        }
+    }
+
+    // Linha de progresso (taxas desde o início da carga)
+    private String progress(Map<String, Sample> begin, Map<String, Sample> now, double elapsed) {
+        switch (spec.system) {
+            case TRING:
+                return String.format(Locale.ROOT, "hops/s=%.0f computed/s=%.1f backlog=%.0f",
+                        delta(begin, now, "hops") / elapsed, delta(begin, now, "computed") / elapsed, sum(now, "backlog"));
+            case P2P:
+                return String.format(Locale.ROOT, "syncs/s=%.1f maxError=%.6f", delta(begin, now, "syncs") / 2 / elapsed, maxError(now));
+            default:
+                return String.format(Locale.ROOT, "ordered/s=%.0f inFlight=%.0f p99=%.2fms",
+                        delta(begin, now, "completed") / elapsed, sum(now, "inFlight"), latency(now).percentile(0.99) / 1e6);
+        }
+    }
+
+    // Relatório final
+    private List<String> report(Map<String, Sample> begin, Map<String, Sample> loadEnd, Map<String, Sample> fin,
+                                double loadSeconds, double drained, double convergedAt) {
+        List<String> r = new ArrayList<>();
+        r.add("=== Cluster report ===");
+        r.add(spec.toString());
+        r.add(String.format(Locale.ROOT, "load phase: %.1fs | drain: %s | nodes reporting: %d/%d", loadSeconds,
+                drained < 0 ? "incomplete after " + spec.drainSeconds + "s" : String.format(Locale.ROOT, "%.1fs", drained),
+                fin.size(), order.size()));
+        switch (spec.system) {
+            case TRING: {
+                double hops = delta(begin, loadEnd, "hops") / loadSeconds;
+                r.add(String.format(Locale.ROOT, "token: %.0f hops/s (%.2f rounds/s), %.3f ms per hop",
+                        hops, hops / spec.nodes, hops > 0 ? 1000 / hops : 0));
+                r.add(String.format(Locale.ROOT, "ops: generated=%.0f computed=%.0f (%.1f/s during load) backlog=%.0f",
+                        sum(fin, "generated"), sum(fin, "computed"), delta(begin, loadEnd, "computed") / loadSeconds, sum(fin, "backlog")));
+                r.add(String.format(Locale.ROOT, "op queue: capacity %d per peer (%s), max backlog=%.0f, dropped=%.0f, generator stalls=%.0f",
+                        spec.opQueueCapacity, spec.dropOldest ? "drop oldest" : "block", max(fin, "maxBacklog"), sum(fin, "dropped"), sum(fin, "stalls")));
+                r.add("latency (generated -> computed): " + describe(latency(fin)));
+                r.add("latency p99 per peer: " + spreadP99(fin));
+                r.add(String.format(Locale.ROOT, "token hold: budget %s, longest hold %.1fms, visits cut short=%.0f; deadline misses=%s",
+                        (spec.holdOps == 0 && spec.holdMs == 0) ? "none" : "holdOps=" + spec.holdOps + " holdMs=" + spec.holdMs,
+                        max(fin, "maxHoldMs"), sum(fin, "budgetStops"), spec.deadlineMs == 0 ? "n/a (no deadlineMs)"
+                                : String.format(Locale.ROOT, "%.0f of %.0f (deadline %dms)", sum(fin, "deadlineMisses"), sum(fin, "computed"), spec.deadlineMs)));
+                if (spec.groups > 1) {
+                    int size = Node.TringPeer.groupSize(spec);
+                    r.add(String.format(Locale.ROOT, "ring of rings: %d local rings of up to %d peers under a top ring of gateways; local rotations=%.0f skipped=%.0f, local tokens regenerated=%.0f",
+                            (spec.nodes + size - 1) / size, size, sum(fin, "localRotations"), sum(fin, "localSkips"), sum(fin, "localRegenerations")));
+                }
+                r.add(!spec.reorder ? "ring order: fixed (reorder=false)" : String.format(Locale.ROOT,
+                        "ring order: rewires=%.0f, rotation %.1fms before the first rewire -> %.1fms at the end (planned RTT per rotation %.1fms)",
+                        sum(fin, "rewires"), sum(fin, "rotationBeforeMs") / spec.nodes, sum(fin, "rotationMs") / spec.nodes, max(fin, "tourUs") / 1000));
+                r.add(String.format(Locale.ROOT, "calculator servers: %d, requests per server min=%.0f max=%.0f, ejections seen by peers=%.0f",
+                        spec.servers, min(fin, "requests"), max(fin, "requests"), sum(fin, "ejections")));
+                if (atCrash != null) {
+                    // Throughput lost to the failure: the pre-crash rate over the token outage
+                    double before = delta(begin, atCrash, "computed") / crashedAt;
+                    double after = delta(atCrash, loadEnd, "computed") / Math.max(1e-9, loadSeconds - crashedAt);
+                    double rotationMs = hops > 0 ? 1000.0 * (spec.nodes - 1) / hops : 0;
+                    double outage = Math.max(0, max(fin, "maxGapMs") - rotationMs) / 1000;
+                    r.add(String.format(Locale.ROOT, "token loss: %s crashed at %.1fs; regenerations=%.0f stale tokens dropped=%.0f",
+                            ClusterSpec.nodeName(Node.PEER, spec.crashPeer - 1), crashedAt, sum(fin, "regenerations"), sum(fin, "staleTokens")));
+                    r.add(String.format(Locale.ROOT, "  outage %.2fs (longest gap %.0fms, rotation %.1fms); computed/s %.1f before, %.1f after",
+                            outage, max(fin, "maxGapMs"), rotationMs, before, after));
+                    r.add(String.format(Locale.ROOT, "  throughput lost per failure: ~%.0f ops delayed (rate before x outage), %.0f ops lost with the peer",
+                            before * outage, sum(fin, "lost")));
+                }
+                if (!spec.nio) {
+                    r.add(String.format(Locale.ROOT, "calculator queue: max depth=%.0f/%d shed=%.0f wait mean=%.2fms max=%.2fms",
+                            max(fin, "maxQueueDepth"), spec.queueCapacity, sum(fin, "shed"),
+                            sum(fin, "queueWaitNs") / Math.max(1, sum(fin, "queued")) / 1e6, max(fin, "maxQueueWaitNs") / 1e6));
+                }
+                double hits = sum(fin, "cacheHits"), lookups = hits + sum(fin, "cacheMisses");
+                r.add(spec.cacheSize == 0 ? "calculator cache: off" : String.format(Locale.ROOT,
+                        "calculator cache: hits=%.0f misses=%.0f hit ratio=%.3f evictions=%.0f (dropReplies=%s)",
+                        hits, lookups - hits, lookups > 0 ? hits / lookups : 0, sum(fin, "cacheEvictions"), spec.dropReplies));
+                break;
+            }
+            case P2P: {
+                double[] v = fin.values().stream().filter(s -> s.values.containsKey("value")).mapToDouble(s -> s.get("value")).toArray();
+                double mean = Arrays.stream(v).average().orElse(0);
+                double sd = Math.sqrt(Arrays.stream(v).map(x -> (x - mean) * (x - mean)).average().orElse(0));
+                r.add(String.format(Locale.ROOT, "syncs: %.0f exchanges (%.1f/s) | neighbours per peer: %.1f avg",
+                        sum(fin, "syncs") / 2, delta(begin, loadEnd, "syncs") / 2 / loadSeconds, sum(fin, "neighbors") / Math.max(1, v.length)));
+                r.add(String.format(Locale.ROOT, "values: target=%.6f mean=%.6f min=%.6f max=%.6f stddev=%.6f maxError=%.6f",
+                        1.0 / spec.nodes, mean, Arrays.stream(v).min().orElse(0), Arrays.stream(v).max().orElse(0), sd, maxError(fin)));
+                r.add(convergedAt >= 0
+                        ? String.format(Locale.ROOT, "converged (every |value - 1/N| < %s) after %.1fs of load", spec.epsilon, convergedAt)
+                        : "not converged within the load phase (epsilon " + spec.epsilon + ")");
+                break;
+            }
+            case TOM: {
+                r.add(String.format(Locale.ROOT, "submitted=%.0f completed=%.0f failed=%.0f backpressureStalls=%.0f",
+                        sum(fin, "submitted"), sum(fin, "completed"), sum(fin, "failed"), sum(fin, "stalls")));
+                r.add(String.format(Locale.ROOT, "throughput: %.0f msg/s ordered during load",
+                        delta(begin, loadEnd, "completed") / loadSeconds));
+                r.add("latency (submit -> own delivery): " + describe(latency(fin)));
+                r.add("order: " + orderCheck(fin));
+                break;
+            }
+        }
+        return r;
+    }
+
+    // Compara as sequências entregues: mesmo número de entregas e mesmo hash em todos os peers
+    private String orderCheck(Map<String, Sample> fin) {
+        double lo = min(fin, "delivered"), hi = max(fin, "delivered");
+        if (fin.size() < spec.nodes) return "UNKNOWN (missing samples)";
+        if (lo != hi) return String.format(Locale.ROOT, "INCOMPLETE (delivered %.0f..%.0f per peer)", lo, hi);
+        Set<Double> hashes = new HashSet<>();
+        for (Sample s : fin.values()) hashes.add(s.get("orderHash"));
+        return hashes.size() == 1
+                ? String.format(Locale.ROOT, "OK (every peer delivered the same %.0f messages in the same order)", lo)
+                : "MISMATCH (" + hashes.size() + " different delivery sequences)";
+    }
+
+    // Soma os histogramas de latência de todos os nós
+    private static LatencyHistogram latency(Map<String, Sample> s) {
+        LatencyHistogram h = new LatencyHistogram();
+        for (Sample x : s.values()) if (x.latency != null) h.add(x.latency);
+        return h;
+    }
+
+    // p99 de cada peer: o menor, a mediana, o maior e quem tem o maior (a justiça entre peers)
+    private static String spreadP99(Map<String, Sample> s) {
+        List<Double> p99 = new ArrayList<>();
+        String worst = null;
+        double max = -1;
+        for (Sample x : s.values()) {
+            if (x.latency == null || x.latency.count() == 0) continue;
+            double v = x.latency.percentile(0.99) / 1e6;
+            p99.add(v);
+            if (v > max) {
+                max = v;
+                worst = x.node;
+            }
+        }
+        if (p99.isEmpty()) return "n/a";
+        Collections.sort(p99);
+        return String.format(Locale.ROOT, "min=%.2fms median=%.2fms max=%.2fms (%s)",
+                p99.get(0), p99.get(p99.size() / 2), max, worst);
+    }
+
+    // Descreve um histograma em ms
+    private static String describe(LatencyHistogram h) {
+        return String.format(Locale.ROOT, "n=%d p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms", h.count(),
+                h.percentile(0.50) / 1e6, h.percentile(0.99) / 1e6, h.percentile(0.999) / 1e6, h.max() / 1e6);
+    }
+
+    // Maior |valor - 1/N| entre os peers p2p
+    private double maxError(Map<String, Sample> s) {
+        double target = 1.0 / spec.nodes, m = 0;
+        int n = 0;
+        for (Sample x : s.values()) {
+            if (!x.values.containsKey("value")) continue;
+            m = Math.max(m, Math.abs(x.get("value") - target));
+            n++;
+        }
+        return (n < spec.nodes) ? Double.MAX_VALUE : m;
+    }
+
+    private static double sum(Map<String, Sample> s, String key) {
+        double t = 0;
+        for (Sample x : s.values()) t += x.get(key);
+        return t;
+    }
+
+    private static double min(Map<String, Sample> s, String key) {
+        return s.values().stream().filter(x -> x.values.containsKey(key)).mapToDouble(x -> x.get(key)).min().orElse(0);
+    }
+
+    private static double max(Map<String, Sample> s, String key) {
+        return s.values().stream().filter(x -> x.values.containsKey(key)).mapToDouble(x -> x.get(key)).max().orElse(0);
+    }
+
+    private static double delta(Map<String, Sample> from, Map<String, Sample> to, String key) {
+        return sum(to, key) - sum(from, key);
+    }
+
+    private static String role(String name) { return name.substring(0, name.lastIndexOf('-')); }
+
+    private static int index(String name) { return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1)) - 1; }
+
+    private static void sleepSeconds(double s) throws InterruptedException { Thread.sleep((long) (s * 1000)); }
+
+    // Modo --node: corre um só nó até o stdin fechar (o launcher terminou)
+    private static void runNode(String role, int index, ClusterSpec spec) throws Exception {
+        Node node = Node.create(spec, role, index);
+        node.start();
+        PrintStream out = System.out;
+        synchronized (out) { out.println("READY"); out.flush(); }
+        Thread sampler = new Thread(() -> {
+            while (true) {
+                try {
+                    Thread.sleep(spec.sampleMs);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                String line = node.sample().encode();
+                synchronized (out) { out.println(line); out.flush(); }
+            }
+        }, "sampler");
+        sampler.setDaemon(true);
+        sampler.start();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+            String cmd;
+            while ((cmd = in.readLine()) != null) {
+                if (cmd.equals("kick")) node.kick();
+                else if (cmd.equals("quiesce")) node.quiesce();
+                else if (cmd.equals("crash")) node.crash();
+            }
+        }
+        System.exit(0);
+    }
+
+    // Ponto de entrada: lança o cluster da spec, corre a carga e imprime (e guarda) o relatório
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 4 && args[0].equals("--node")) {
+            Path file = args[3].equals("-") ? null : Path.of(args[3]);
+            runNode(args[1], Integer.parseInt(args[2]), ClusterSpec.load(file, Arrays.copyOfRange(args, 4, args.length)));
+            return;
+        }
+        if (args.length < 1) {
+            System.err.println("Usage: java ds.assignment.cluster.ClusterLauncher <spec.properties|-> [key=value ...]");
+            System.err.println("Example: java ds.assignment.cluster.ClusterLauncher - system=tring nodes=50 transport=nio seconds=20");
+            System.exit(1);
+        }
+        Path file = args[0].equals("-") ? null : Path.of(args[0]);
+        ClusterSpec spec = ClusterSpec.load(file, Arrays.copyOfRange(args, 1, args.length));
+        System.out.println("[LAUNCHER] " + spec);
+
+        ClusterLauncher launcher = new ClusterLauncher(spec);
+        List<String> report;
+        try {
+            launcher.start();
+            System.out.printf("[LAUNCHER] %d nodes up%n", launcher.order.size());
+            report = launcher.run();
+        } finally {
+            if (!spec.inJvm) launcher.stopChildren();
+        }
+        for (String line : report) System.out.println(line);
+        if (spec.report != null) {
+            Files.write(spec.report, report, StandardCharsets.UTF_8);
+            System.out.println("[LAUNCHER] Report written to " + spec.report);
+        }
+        System.exit(0);
+    }
+}
@@ -0,0 +1,185 @@
+package ds.assignment.cluster;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Especificação de um cluster: um ficheiro .properties, com overrides key=value da linha de comandos.
+ *
+ * Only system is required. rate is the offered load per node in the system's own unit: ops/s
+ * generated by each tring peer, syncs/s started by each p2p peer, messages/s submitted to each
+ * tom peer. Ports are basePort + index for peers, followed by the tring calculator servers.
+ */
+public final class ClusterSpec {
+
+    enum SystemKind { TRING, P2P, TOM }
+
+    private static final Set<String> KEYS = Set.of(
+            "system", "mode", "nodes", "transport", "host", "basePort", "seconds", "startupSeconds",
+            "drainSeconds", "rate", "servers", "workers", "degree", "epsilon", "maxInFlight",
+            "payloadBytes", "cacheSize", "cacheTtlMs", "dropReplies", "balance", "serviceMicros", "queueCapacity", "crashAt", "crashPeer", "lossTimeoutMs", "reorder", "racks", "rackDelayMicros", "holdMs", "holdOps", "deadlineMs", "hotRate", "opQueueCapacity", "opOverflow", "groups", "seed", "sampleMs", "progressSeconds", "report", "workDir", "javaOpts", "verbose");
+
+    final Path file;
+    final String[] overrides;
+
+    final SystemKind system;
+    final boolean inJvm;                // mode=jvm (default) or mode=process
+    final int nodes;
+    final boolean nio;                  // transport=socket (default; tcp for tom) or transport=nio
+    final String host;
+    final int basePort;
+    final double seconds;               // load phase
+    final double startupSeconds;        // after every node is up, before the load starts
+    final double drainSeconds;          // after the load stops, at most
+    final double rate;
+    final int servers;                  // tring: calculator servers
+    final int workers;                  // tring: threads per calculator server (socket mode)
+    final int degree;                   // p2p: average number of neighbours
+    final double epsilon;               // p2p: converged when every |value - 1/N| < epsilon
+    final int maxInFlight;              // tom: submit window per peer
+    final int payloadBytes;             // tom
+    final int cacheSize;                // tring: calculator reply cache entries (0 = off)
+    final long cacheTtlMs;              // tring
+    final double dropReplies;           // tring: fraction of calculator replies lost on purpose
+    final boolean balance;              // tring: balance=p2c (default), every peer uses every server; static, one each
+    final int serviceMicros;            // tring: simulated cost of a calculation (socket servers)
+    final int queueCapacity;            // tring: requests waiting for a worker (socket servers)
+    final double crashAt;               // tring: seconds into the load phase when crashPeer dies with the token (0 = never)
+    final int crashPeer;                // tring: 1..nodes
+    final int lossTimeoutMs;            // tring: minimum time without the token before it is regenerated
+    final boolean reorder;              // tring: measure RTTs and reorder the ring (default true)
+    final int racks;                    // tring: peer i sits in rack i % racks
+    final int rackDelayMicros;          // tring: emulated one-way delay between peers in different racks
+    final int holdMs;                   // tring: per-visit time budget for starting ops (0 = none)
+    final int holdOps;                  // tring: per-visit op budget (0 = none)
+    final int deadlineMs;               // tring: deadline of each op after it is generated (0 = none)
+    final double hotRate;               // tring: ops/s of peer-1 (default rate), to give it a backlog
+    final int opQueueCapacity;          // tring: ops waiting for the token, per peer
+    final boolean dropOldest;           // tring: opOverflow=block (default) stalls the generator; drop, drops the oldest op
+    final int groups;                   // tring: local rings under a top ring of gateways (1 = a single ring)
+    final long seed;
+    final long sampleMs;
+    final double progressSeconds;
+    final Path report;                  // null = stdout only
+    final Path workDir;
+    final String javaOpts;              // process mode: options of every child JVM
+    final boolean verbose;
+
+    private ClusterSpec(Path file, String[] overrides, Properties p) {
+        this.file = file;
+        this.overrides = overrides;
+        for (String key : p.stringPropertyNames()) {
+            if (!KEYS.contains(key)) throw new IllegalArgumentException("Unknown spec key: " + key);
+        }
+        String sys = p.getProperty("system");
+        if (sys == null) throw new IllegalArgumentException("Spec needs system=tring|p2p|tom");
+        this.system = SystemKind.valueOf(sys.trim().toUpperCase(Locale.ROOT));
+        String mode = p.getProperty("mode", "jvm").trim();
+        if (!mode.equals("jvm") && !mode.equals("process")) throw new IllegalArgumentException("mode must be jvm or process: " + mode);
+        this.inJvm = mode.equals("jvm");
+        this.nodes = intProp(p, "nodes", 5, 2);
+        String transport = p.getProperty("transport", "socket").trim();
+        if (!Set.of("socket", "tcp", "nio").contains(transport)) throw new IllegalArgumentException("transport must be socket or nio: " + transport);
+        this.nio = transport.equals("nio");
+        this.host = p.getProperty("host", "127.0.0.1").trim();
+        this.basePort = intProp(p, "basePort", 20000, 1);
+        this.seconds = doubleProp(p, "seconds", 30);
+        this.startupSeconds = doubleProp(p, "startupSeconds", 3);
+        this.drainSeconds = doubleProp(p, "drainSeconds", 10);
+        this.rate = doubleProp(p, "rate", (system == SystemKind.TOM) ? 10 : 1);
+        this.servers = intProp(p, "servers", 1, 1);
+        this.workers = intProp(p, "workers", 32, 1);
+        this.degree = intProp(p, "degree", 4, 2);
+        this.epsilon = doubleProp(p, "epsilon", 0.01);
+        this.maxInFlight = intProp(p, "maxInFlight", 256, 1);
+        this.payloadBytes = intProp(p, "payloadBytes", 32, 0);
+        this.cacheSize = intProp(p, "cacheSize", 4096, 0);
+        this.cacheTtlMs = intProp(p, "cacheTtlMs", 60_000, 0);
+        this.dropReplies = doubleProp(p, "dropReplies", 0);
+        String bal = p.getProperty("balance", "p2c").trim();
+        if (!bal.equals("p2c") && !bal.equals("static")) throw new IllegalArgumentException("balance must be p2c or static: " + bal);
+        this.balance = bal.equals("p2c");
+        this.serviceMicros = intProp(p, "serviceMicros", 0, 0);
+        this.queueCapacity = intProp(p, "queueCapacity", 1024, 1);
+        this.crashAt = doubleProp(p, "crashAt", 0);
+        this.crashPeer = intProp(p, "crashPeer", 2, 1);
+        this.lossTimeoutMs = intProp(p, "lossTimeoutMs", 2000, 1);
+        this.reorder = Boolean.parseBoolean(p.getProperty("reorder", "true").trim());
+        this.racks = intProp(p, "racks", 1, 1);
+        this.rackDelayMicros = intProp(p, "rackDelayMicros", 0, 0);
+        this.holdMs = intProp(p, "holdMs", 0, 0);
+        this.holdOps = intProp(p, "holdOps", 0, 0);
+        this.deadlineMs = intProp(p, "deadlineMs", 0, 0);
+        this.hotRate = doubleProp(p, "hotRate", rate);
+        this.opQueueCapacity = intProp(p, "opQueueCapacity", 10_000, 1);
+        String overflow = p.getProperty("opOverflow", "block").trim();
+        if (!overflow.equals("block") && !overflow.equals("drop")) throw new IllegalArgumentException("opOverflow must be block or drop: " + overflow);
+        this.dropOldest = overflow.equals("drop");
+        this.groups = intProp(p, "groups", 1, 1);
+        this.seed = Long.parseLong(p.getProperty("seed", "1").trim());
+        this.sampleMs = intProp(p, "sampleMs", 1000, 10);
+        this.progressSeconds = doubleProp(p, "progressSeconds", 5);
+        String r = p.getProperty("report");
+        this.report = (r == null || r.isBlank()) ? null : Path.of(r.trim());
+        this.workDir = Path.of(p.getProperty("workDir", "cluster-run").trim());
+        this.javaOpts = p.getProperty("javaOpts", "-Xss256k -Xmx96m -XX:+UseSerialGC -XX:TieredStopAtLevel=1").trim();
+        this.verbose = Boolean.parseBoolean(p.getProperty("verbose", "false").trim());
+        if (groups > nodes) throw new IllegalArgumentException("groups must be <= nodes: " + groups);
+        if (crashPeer > nodes) throw new IllegalArgumentException("crashPeer must be <= nodes: " + crashPeer);
+        if (dropReplies >= 1) throw new IllegalArgumentException("dropReplies must be < 1: " + dropReplies);
+        if (basePort + nodes + servers > 65535) throw new IllegalArgumentException("Ports past 65535: lower basePort");
+        if (system == SystemKind.TOM && rate <= 0) throw new IllegalArgumentException("tom needs rate > 0");
+        if (system == SystemKind.P2P && rate <= 0) throw new IllegalArgumentException("p2p needs rate > 0");
+    }
+
+    // Lê o ficheiro (ou só os overrides, se file for null) e valida
+    static ClusterSpec load(Path file, String[] overrides) throws IOException {
+        Properties p = new Properties();
+        if (file != null) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                p.load(in);
+            }
+        }
+        for (String kv : overrides) {
+            int eq = kv.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("Override must be key=value: " + kv);
+            p.setProperty(kv.substring(0, eq).trim(), kv.substring(eq + 1));
+        }
+        return new ClusterSpec(file, overrides, p);
+    }
+
+    // Porta do peer index (0..nodes-1)
+    int peerPort(int index) { return basePort + index; }
+
+    // Porta do servidor de cálculo s (0..servers-1)
+    int serverPort(int s) { return basePort + nodes + s; }
+
+    // Nome de um nó, como aparece nas amostras e nos logs
+    static String nodeName(String role, int index) { return role + "-" + (index + 1); }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "system=%s mode=%s nodes=%d transport=%s seconds=%.0f rate=%s/node%s",
+                system.name().toLowerCase(Locale.ROOT), inJvm ? "jvm" : "process", nodes,
+                nio ? "nio" : (system == SystemKind.TOM) ? "tcp" : "socket",
+                seconds, rate, (system == SystemKind.TRING) ? " servers=" + servers + (balance ? " balance=p2c" : " balance=static") : "");
+    }
+
+    private static int intProp(Properties p, String key, int def, int min) {
+        int v = Integer.parseInt(p.getProperty(key, String.valueOf(def)).trim());
+        if (v < min) throw new IllegalArgumentException(key + " must be >= " + min + ": " + v);
+        return v;
+    }
+
+    private static double doubleProp(Properties p, String key, double def) {
+        double v = Double.parseDouble(p.getProperty(key, String.valueOf(def)).trim());
+        if (v < 0) throw new IllegalArgumentException(key + " must be >= 0: " + v);
+        return v;
+    }
+}
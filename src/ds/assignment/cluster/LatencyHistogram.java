@@ -0,0 +1,108 @@
+package ds.assignment.cluster;
+
+/**
+ * Histograma de latências (ns) com buckets log-lineares, que se pode juntar e passar numa linha de texto.
+ *
+ * Each power of two is split into 8 linear sub-buckets, so a recorded value is off by at most
+ * 12.5% and the whole range (1 ns .. ~2^40 ns, about 18 minutes) fits in ~300 counters. Nodes
+ * keep one each and the launcher merges them, which a list of raw samples from hundreds of
+ * nodes could not do cheaply.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int MAX_EXP = 40;
+    private static final int BUCKETS = (MAX_EXP - SUB_BITS + 2) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long total;
+    private long max;
+
+    // Regista uma latência em ns
+    public synchronized void record(long ns) {
+        counts[bucket(ns)]++;
+        total++;
+        if (ns > max) max = ns;
+    }
+
+    // Soma outro histograma a este
+    public synchronized void add(LatencyHistogram other) {
+        long[] c;
+        long t, m;
+        synchronized (other) {
+            c = other.counts.clone();
+            t = other.total;
+            m = other.max;
+        }
+        for (int i = 0; i < BUCKETS; i++) counts[i] += c[i];
+        total += t;
+        if (m > max) max = m;
+    }
+
+    // Retorna o número de valores registados
+    public synchronized long count() { return total; }
+
+    // Retorna o maior valor registado (ns)
+    public synchronized long max() { return max; }
+
+    // Retorna o percentil p (0..1) em ns: o limite superior do bucket onde cai
+    public synchronized long percentile(double p) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upper(i), max);
+        }
+        return max;
+    }
+
+    // Índice do bucket de ns: exato abaixo de SUB, depois 8 sub-buckets por potência de dois
+    private static int bucket(long ns) {
+        if (ns < SUB) return (int) Math.max(0, ns);
+        int exp = 63 - Long.numberOfLeadingZeros(ns);
+        if (exp > MAX_EXP) return BUCKETS - 1;
+        int sub = (int) (ns >>> (exp - SUB_BITS)) & (SUB - 1);
+        return (exp - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // Maior valor que cai no bucket i
+    private static long upper(int i) {
+        if (i < SUB) return i;
+        int exp = i / SUB + SUB_BITS - 1;
+        int sub = i % SUB;
+        return ((long) (SUB + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+
+    // Codifica como "max;i:c,i:c,..." (só os buckets não vazios)
+    public synchronized String encode() {
+        StringBuilder sb = new StringBuilder().append(max).append(';');
+        boolean first = true;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] == 0) continue;
+            if (!first) sb.append(',');
+            sb.append(i).append(':').append(counts[i]);
+            first = false;
+        }
+        return sb.toString();
+    }
+
+    // Lê um histograma escrito por encode()
+    public static LatencyHistogram decode(String s) {
+        LatencyHistogram h = new LatencyHistogram();
+        int semi = s.indexOf(';');
+        h.max = Long.parseLong(s.substring(0, semi));
+        String body = s.substring(semi + 1);
+        if (body.isEmpty()) return h;
+        for (String pair : body.split(",")) {
+            int colon = pair.indexOf(':');
+            int i = Integer.parseInt(pair.substring(0, colon));
+            long c = Long.parseLong(pair.substring(colon + 1));
+            if (i < 0 || i >= BUCKETS) throw new IllegalArgumentException("Bad histogram bucket " + i);
+            h.counts[i] += c;
+            h.total += c;
+        }
+        return h;
+    }
+}
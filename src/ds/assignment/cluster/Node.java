@@ -0,0 +1,369 @@
+package ds.assignment.cluster;
+
+import ds.assignment.p2p.Graph;
+import ds.assignment.tring.CalculatorServer;
+import ds.assignment.tom.DeliveryLog;
+import ds.assignment.tom.Event;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Um nó do cluster (peer ou servidor de cálculo), corrido pelo launcher no mesmo JVM ou num processo filho.
+ *
+ * start() must return once the node is listening (blocking accept loops get their own thread).
+ * The launcher then calls kick() on every node, lets the load run, calls quiesce() to stop
+ * offering load and reads sample() throughout; all counters in a sample are cumulative.
+ */
+abstract class Node {
+
+    static final String PEER = "peer";
+    static final String SERVER = "server";
+
+    final ClusterSpec spec;
+    final String name;
+
+    Node(ClusterSpec spec, String role, int index) {
+        this.spec = spec;
+        this.name = ClusterSpec.nodeName(role, index);
+    }
+
+    // Arranca o nó
+    abstract void start() throws Exception;
+
+    // Começa a atividade que precisa de todos os nós de pé (tring: injetar o token)
+    void kick() {}
+
+    // Deixa de gerar carga
+    void quiesce() {}
+
+    // Injeção de falhas: o nó cai (tring: com o token)
+    void crash() {}
+
+    // Retorna as métricas atuais
+    abstract Sample sample();
+
+    // Cria o nó role/index do sistema da spec
+    static Node create(ClusterSpec spec, String role, int index) throws IOException {
+        switch (spec.system) {
+            case TRING:
+                return role.equals(SERVER) ? new TringServer(spec, index) : new TringPeer(spec, index);
+            case P2P:
+                return new P2pPeer(spec, index);
+            case TOM:
+                return new TomPeer(spec, index);
+            default:
+                throw new IllegalArgumentException("Unknown system " + spec.system);
+        }
+    }
+
+    // Corre r numa thread daemon com o nome do nó
+    void daemon(String what, Runnable r) {
+        Thread t = new Thread(r, name + "-" + what);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ----------------- tring -----------------
+
+    // Peer do anel: next é o peer seguinte; com balance=p2c cada peer usa todos os servidores,
+    // com balance=static os peers repartem-se pelos servidores em round-robin. Com groups > 1 os
+    // peers repartem-se por grupos consecutivos de groupSize(): o primeiro de cada grupo é o gateway,
+    // no anel de topo com os outros gateways, e os restantes formam o anel local dele
+    static final class TringPeer extends Node {
+        private final ds.assignment.tring.Peer peer;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final boolean first;
+
+        TringPeer(ClusterSpec spec, int index) {
+            super(spec, PEER, index);
+            int next = (index + 1) % spec.nodes;
+            List<String> localRing = new ArrayList<>();
+            if (spec.groups > 1) {
+                int size = groupSize(spec), g0 = index / size * size, g1 = Math.min(spec.nodes, g0 + size);
+                if (index == g0) {
+                    next = (g1 < spec.nodes) ? g1 : 0;
+                    for (int i = g0 + 1; i < g1; i++) localRing.add(spec.host + ":" + spec.peerPort(i));
+                } else {
+                    next = (index + 1 < g1) ? index + 1 : g0;
+                }
+            }
+            this.first = index == 0;
+            List<String> servers = new ArrayList<>();
+            if (spec.balance) {
+                for (int s = 0; s < spec.servers; s++) servers.add(spec.host + ":" + spec.serverPort(s));
+            } else {
+                servers.add(spec.host + ":" + spec.serverPort(index % spec.servers));
+            }
+            this.peer = new ds.assignment.tring.Peer("p" + (index + 1), spec.peerPort(index),
+                    spec.host, spec.peerPort(next), servers, spec.nio);
+            peer.setVerbose(spec.verbose);
+            peer.setInteractive(false);
+            peer.setOpRate(0);                   // ops start with the load phase
+            peer.setOpListener(latency::record);
+            peer.setLossTimeout(spec.lossTimeoutMs);
+            peer.setReorder(spec.reorder);
+            peer.setHoldBudget(spec.holdMs, spec.holdOps);
+            peer.setOpDeadline(spec.deadlineMs);
+            peer.setQueueLimit(spec.opQueueCapacity, spec.dropOldest);
+            if (!localRing.isEmpty()) peer.setLocalRing(localRing);
+            if (spec.racks > 1 && spec.rackDelayMicros > 0) {
+                // The ring order of the ports interleaves the racks: every hop crosses racks
+                int rack = index % spec.racks;
+                peer.setLinkDelay(to -> {
+                    int other = Integer.parseInt(to.substring(to.lastIndexOf(':') + 1)) - spec.basePort;
+                    return (other % spec.racks == rack) ? 0 : spec.rackDelayMicros;
+                });
+            }
+        }
+
+        // Peers por grupo (o último pode ter menos)
+        static int groupSize(ClusterSpec spec) { return (spec.nodes + spec.groups - 1) / spec.groups; }
+
+        @Override
+        void start() {
+            // Socket mode accepts on the calling thread
+            daemon("main", () -> {
+                try {
+                    peer.start();
+                } catch (IOException e) {
+                    System.err.println("[" + name + "] " + e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        void kick() {
+            peer.setOpRate(first ? spec.hotRate : spec.rate);
+            if (first) daemon("inject", peer::injectToken);
+        }
+
+        @Override
+        void quiesce() { peer.setOpRate(0); }
+
+        @Override
+        void crash() { peer.crashWithToken(); }
+
+        @Override
+        Sample sample() {
+            Sample s = new Sample(name)
+                    .put("hops", peer.hops())
+                    .put("generated", peer.opsGenerated())
+                    .put("computed", peer.opsComputed())
+                    .put("backlog", peer.backlog())
+                    .put("maxBacklog", peer.maxBacklog())
+                    .put("dropped", peer.opsDropped())
+                    .put("stalls", peer.generatorStalls())
+                    .put("ejections", peer.serverEjections())
+                    .put("regenerations", peer.regenerations())
+                    .put("staleTokens", peer.staleTokens())
+                    .put("maxGapMs", peer.maxTokenGapNanos() / 1e6)
+                    .put("lost", peer.opsLost())
+                    .put("deadlineMisses", peer.deadlineMisses())
+                    .put("budgetStops", peer.budgetStops())
+                    .put("maxHoldMs", peer.maxHoldNanos() / 1e6)
+                    .put("localRotations", peer.localRotations())
+                    .put("localSkips", peer.localSkips())
+                    .put("localRegenerations", peer.localRegenerations())
+                    .put("rewires", peer.rewires())
+                    .put("tourUs", peer.plannedTourMicros())
+                    .put("rotationMs", peer.rotationNanos() / 1e6)
+                    .put("rotationBeforeMs", peer.rotationBeforeReorderNanos() / 1e6);
+            s.latency = latency;
+            return s;
+        }
+    }
+
+    // Servidor de cálculo do tring
+    static final class TringServer extends Node {
+        private final CalculatorServer server;
+
+        TringServer(ClusterSpec spec, int index) {
+            super(spec, SERVER, index);
+            this.server = new CalculatorServer(spec.serverPort(index), spec.workers, spec.nio,
+                    spec.cacheSize, spec.cacheTtlMs, spec.queueCapacity);
+            server.setVerbose(spec.verbose);
+            server.setDropReplyRate(spec.dropReplies);
+            server.setServiceTime(spec.serviceMicros);
+        }
+
+        @Override
+        void start() {
+            daemon("main", () -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    System.err.println("[" + name + "] " + e.getMessage());
+                }
+            });
+        }
+
+        @Override
+        Sample sample() {
+            return new Sample(name)
+                    .put("requests", server.requests())
+                    .put("queueDepth", server.queueDepth())
+                    .put("maxQueueDepth", server.maxQueueDepth())
+                    .put("shed", server.shedRequests())
+                    .put("queued", server.queuedRequests())
+                    .put("queueWaitNs", server.queueWaitNanos())
+                    .put("maxQueueWaitNs", server.maxQueueWaitNanos())
+                    .put("cacheHits", server.cacheHits())
+                    .put("cacheMisses", server.cacheMisses())
+                    .put("cacheEvictions", server.cacheEvictions());
+        }
+    }
+
+    // ----------------- p2p -----------------
+
+    // Peer anti-entropy: p1 começa com 1.0 e os outros com 0.0, por isso todos convergem para 1/N
+    static final class P2pPeer extends Node {
+        private final ds.assignment.p2p.Peer peer;
+        private final int index;
+
+        P2pPeer(ClusterSpec spec, int index) {
+            super(spec, PEER, index);
+            this.index = index;
+            this.peer = new ds.assignment.p2p.Peer("p" + (index + 1), spec.peerPort(index), index == 0 ? 1.0 : 0.0, spec.nio);
+            peer.setVerbose(spec.verbose);
+            peer.setSyncRate(spec.rate);
+        }
+
+        @Override
+        void start() {
+            peer.start();
+            // Every peer registers with its own neighbours, so both ends of an edge know each other
+            for (int j : topology(spec.nodes, spec.degree, spec.seed).neighbors(index)) {
+                peer.registerWithRetry(spec.host, spec.peerPort(j));
+            }
+        }
+
+        @Override
+        Sample sample() {
+            return new Sample(name)
+                    .put("value", peer.getValue())
+                    .put("syncs", peer.getSyncCount())
+                    .put("neighbors", peer.getNeighborCount());
+        }
+    }
+
+    // Grafo conexo com grau médio ~degree: um anel mais cordas aleatórias (igual em todos os nós para a mesma seed)
+    static Graph topology(int n, int degree, long seed) {
+        return Graph.ringWithChords(n, degree, seed);
+    }
+
+    // ----------------- tom -----------------
+
+    // Peer tom sem gerador próprio: uma thread submete payloads em malha aberta (Poisson, rate msgs/s)
+    static final class TomPeer extends Node {
+        private final ds.assignment.tom.Peer peer;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final Random rng;
+        private volatile boolean loading = true;
+        private long stalls;                       // load thread only
+        private long delivered;                    // guarded by this
+        private long orderHash = 17;               // guarded by this: hash of the delivery sequence
+
+        TomPeer(ClusterSpec spec, int index) throws IOException {
+            super(spec, PEER, index);
+            this.rng = new Random(spec.seed * 1_000_003L + index);
+            this.peer = new ds.assignment.tom.Peer(index, ipTable(spec).toString(), dictionary(spec).toString(),
+                    null, DeliveryLog.SyncMode.NONE, spec.nio);
+            peer.setVerbose(spec.verbose);
+            peer.setGeneratorRate(0);
+            peer.setMaxInFlight(spec.maxInFlight);
+            peer.setDeliveryListener(this::delivered);
+        }
+
+        // Conta a entrega e junta (origem, msgId) ao hash da sequência
+        private synchronized void delivered(Event e) {
+            delivered++;
+            orderHash = orderHash * 31 + ((long) e.getOriginPid() * 1_000_003L ^ e.getMsgId());
+        }
+
+        @Override
+        void start() throws IOException { peer.start(); }
+
+        @Override
+        void kick() { daemon("load", this::load); }
+
+        @Override
+        void quiesce() { loading = false; }
+
+        // Malha aberta: a latência conta desde o instante agendado (inclui a espera pela janela)
+        private void load() {
+            byte[] payload = new byte[spec.payloadBytes];
+            long next = System.nanoTime();
+            try {
+                while (loading) {
+                    next += (long) (-Math.log(1.0 - rng.nextDouble()) / spec.rate * 1e9);
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    if (!loading) break;
+                    CompletableFuture<Long> f = peer.trySubmit(payload);
+                    if (f == null) {
+                        stalls++;
+                        f = peer.submit(payload);
+                    }
+                    submitted.incrementAndGet();
+                    final long scheduled = next;
+                    f.whenComplete((pos, error) -> {
+                        if (error != null) {
+                            failed.incrementAndGet();
+                        } else {
+                            latency.record(System.nanoTime() - scheduled);
+                            completed.incrementAndGet();
+                        }
+                    });
+                }
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        @Override
+        Sample sample() {
+            long d, h;
+            synchronized (this) {
+                d = delivered;
+                h = orderHash;
+            }
+            Sample s = new Sample(name)
+                    .put("submitted", submitted.get())
+                    .put("completed", completed.get())
+                    .put("failed", failed.get())
+                    .put("stalls", stalls)
+                    .put("inFlight", peer.inFlight())
+                    .put("delivered", d)
+                    .put("orderHash", h & ((1L << 52) - 1));   // exact as a double
+            s.latency = latency;
+            return s;
+        }
+    }
+
+    // ip_table do cluster tom, em workDir (escrita pelo launcher antes de arrancar os nós)
+    static Path ipTable(ClusterSpec spec) { return spec.workDir.resolve("ip_table.txt"); }
+
+    // Dicionário do cluster tom (os peers não geram palavras, mas o Peer exige um)
+    static Path dictionary(ClusterSpec spec) { return spec.workDir.resolve("dictionary.txt"); }
+
+    // Escreve os ficheiros partilhados de que os nós precisam
+    static void prepare(ClusterSpec spec) throws IOException {
+        Files.createDirectories(spec.workDir);
+        if (spec.system != ClusterSpec.SystemKind.TOM) return;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < spec.nodes; i++) {
+            sb.append(i + 1).append(' ').append(spec.host).append(' ').append(spec.peerPort(i)).append('\n');
+        }
+        Files.writeString(ipTable(spec), sb.toString(), StandardCharsets.UTF_8);
+        Files.writeString(dictionary(spec), "load\n", StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package ds.assignment.cluster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Métricas de um nó num instante: valores com nome e (opcionalmente) um histograma de latências.
+ *
+ * In process mode a node prints one sample per line on stdout ("METRICS name k=v ... hist=...")
+ * and the launcher parses it back; in-JVM nodes hand their samples over directly.
+ */
+public final class Sample {
+
+    static final String PREFIX = "METRICS ";
+
+    final String node;
+    final Map<String, Double> values = new LinkedHashMap<>();
+    LatencyHistogram latency;
+
+    Sample(String node) { this.node = node; }
+
+    // Define um valor
+    Sample put(String key, double value) {
+        values.put(key, value);
+        return this;
+    }
+
+    // Retorna um valor (0 se o nó não o reportou)
+    double get(String key) {
+        Double v = values.get(key);
+        return (v == null) ? 0 : v;
+    }
+
+    // Codifica a amostra numa linha
+    String encode() {
+        StringBuilder sb = new StringBuilder(PREFIX).append(node);
+        for (Map.Entry<String, Double> e : values.entrySet()) {
+            sb.append(' ').append(e.getKey()).append('=').append(e.getValue());
+        }
+        if (latency != null) sb.append(" hist=").append(latency.encode());
+        return sb.toString();
+    }
+
+    // Lê uma linha escrita por encode(); null se a linha não for uma amostra
+    static Sample decode(String line) {
+        if (!line.startsWith(PREFIX)) return null;
+        String[] parts = line.substring(PREFIX.length()).trim().split(" ");
+        Sample s = new Sample(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            int eq = parts[i].indexOf('=');
+            if (eq <= 0) continue;
+            String key = parts[i].substring(0, eq);
+            String value = parts[i].substring(eq + 1);
+            if (key.equals("hist")) s.latency = LatencyHistogram.decode(value);
+            else s.values.put(key, Double.parseDouble(value));
+        }
+        return s;
+    }
+}
@@ -0,0 +1,57 @@
+package ds.assignment.net;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool de ByteBuffers diretos de tamanho fixo.
+ *
+ * Connections take their read buffer and their outbound buffers from here and give them back
+ * once drained, so steady-state traffic allocates nothing. A request larger than the pooled
+ * size gets a dedicated direct buffer, which release() then simply drops.
+ */
+public final class BufferPool {
+
+    private final int bufferSize;
+    private final ByteBuffer[] free;
+    private int top;                      // guarded by this
+    private long allocated;               // guarded by this
+
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.free = new ByteBuffer[maxPooled];
+    }
+
+    // Retorna um buffer limpo com pelo menos minCapacity bytes
+    public ByteBuffer acquire(int minCapacity) {
+        if (minCapacity > bufferSize) {
+            synchronized (this) { allocated++; }
+            return ByteBuffer.allocateDirect(minCapacity);
+        }
+        synchronized (this) {
+            if (top > 0) {
+                ByteBuffer b = free[--top];
+                free[top] = null;
+                return b.clear();
+            }
+            allocated++;
+        }
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    // Devolve um buffer ao pool (buffers de outro tamanho, ou com o pool cheio, são descartados)
+    public void release(ByteBuffer b) {
+        if (b == null || b.capacity() != bufferSize || !b.isDirect()) return;
+        synchronized (this) {
+            if (top < free.length) free[top++] = b;
+        }
+    }
+
+    // Retorna o tamanho dos buffers do pool
+    public int bufferSize() { return bufferSize; }
+
+    // Retorna quantos buffers foram alocados desde o início
+    public synchronized long allocated() { return allocated; }
+
+    // Retorna quantos buffers estão livres no pool
+    public synchronized int pooled() { return top; }
+}
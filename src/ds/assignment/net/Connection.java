@@ -0,0 +1,230 @@
+package ds.assignment.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+
+/**
+ * Ligação TCP não bloqueante com frames length-prefixed: len(4, big-endian) | payload(len).
+ *
+ * Senders (any thread) append frames to the tail of a queue of pooled direct buffers, several
+ * small frames sharing one buffer, and the loop writes the whole queue with one gathering
+ * write. Reads go into one direct buffer per connection and every complete frame is handed to
+ * the FrameHandler as a view of that buffer, without copying.
+ */
+public final class Connection {
+
+    private static final int MAX_GATHER = 16;
+
+    private final NioLoop loop;
+    private final SocketChannel channel;
+    private final FrameHandler handler;
+    SelectionKey key;                                   // set by the loop when registered
+
+    // Inbound: loop thread only
+    private ByteBuffer in;
+    private ByteBuffer view;
+
+    // Outbound: guarded by this. Each buffer holds unsent bytes in [position, limit);
+    // senders append past limit, the loop advances position.
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>();
+    private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+    private int queuedBytes;
+    private boolean scheduled;                          // queued for (or waiting on) a flush
+    private boolean connected;
+    Connection nextDirty;                               // intrusive link of the loop's flush stack
+
+    private volatile boolean open = true;
+    private volatile Object attachment;
+
+    Connection(NioLoop loop, SocketChannel channel, FrameHandler handler, boolean connected) {
+        this.loop = loop;
+        this.channel = channel;
+        this.handler = handler;
+        this.connected = connected;
+        this.in = loop.pool().acquire(loop.pool().bufferSize());
+        this.view = in.duplicate();
+    }
+
+    // Envia b[off..off+len) como um frame; retorna false se a ligação fechou ou a fila está cheia.
+    // The bytes are copied before returning, so b can be reused at once.
+    public boolean send(byte[] b, int off, int len) {
+        if (len > NioLoop.MAX_FRAME) throw new IllegalArgumentException("Frame too large: " + len);
+        boolean wake;
+        synchronized (this) {
+            if (!open || queuedBytes + 4 + len > NioLoop.MAX_QUEUED) return false;
+            ByteBuffer tail = reserve(4 + len);
+            int at = tail.limit();
+            tail.limit(at + 4 + len);
+            tail.putInt(at, len);
+            tail.put(at + 4, b, off, len);
+            queuedBytes += 4 + len;
+            wake = !scheduled;
+            scheduled = true;
+        }
+        if (wake) loop.scheduleFlush(this);
+        return true;
+    }
+
+    // Envia src[position..limit) como um frame (a posição de src não muda)
+    public boolean send(ByteBuffer src) {
+        int len = src.remaining();
+        if (len > NioLoop.MAX_FRAME) throw new IllegalArgumentException("Frame too large: " + len);
+        boolean wake;
+        synchronized (this) {
+            if (!open || queuedBytes + 4 + len > NioLoop.MAX_QUEUED) return false;
+            ByteBuffer tail = reserve(4 + len);
+            int at = tail.limit();
+            tail.limit(at + 4 + len);
+            tail.putInt(at, len);
+            tail.put(at + 4, src, src.position(), len);
+            queuedBytes += 4 + len;
+            wake = !scheduled;
+            scheduled = true;
+        }
+        if (wake) loop.scheduleFlush(this);
+        return true;
+    }
+
+    // Retorna um buffer da fila com espaço para n bytes depois do limit (caller holds this)
+    private ByteBuffer reserve(int n) {
+        ByteBuffer tail = out.peekLast();
+        if (tail != null && tail.capacity() - tail.limit() >= n) return tail;
+        ByteBuffer b = loop.pool().acquire(n);
+        b.position(0).limit(0);
+        out.addLast(b);
+        return b;
+    }
+
+    // Escreve o que estiver na fila com uma escrita gathering; pede OP_WRITE se o socket encher
+    void flush() throws IOException {
+        synchronized (this) {
+            if (!open) return;
+            if (!connected) return;                      // flushed again by finishConnect()
+            while (!out.isEmpty()) {
+                int n = 0;
+                for (ByteBuffer b : out) {
+                    if (n == MAX_GATHER) break;
+                    gather[n++] = b;
+                }
+                long written = channel.write(gather, 0, n);
+                queuedBytes -= (int) written;
+                while (!out.isEmpty() && !out.peekFirst().hasRemaining()) {
+                    loop.pool().release(out.pollFirst());
+                }
+                for (int i = 0; i < n; i++) gather[i] = null;
+                // A partly written head means the socket buffer is full
+                if (!out.isEmpty() && (written == 0 || out.peekFirst().position() > 0)) break;
+            }
+            if (out.isEmpty()) {
+                scheduled = false;
+                key.interestOps(SelectionKey.OP_READ);
+            } else {
+                // Socket buffer full: the loop comes back on OP_WRITE, no wakeups meanwhile
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        }
+    }
+
+    // Conclui uma ligação iniciada por NioLoop.connect()
+    void finishConnect() throws IOException {
+        channel.finishConnect();
+        synchronized (this) {
+            connected = true;
+            key.interestOps(SelectionKey.OP_READ);
+        }
+        handler.onOpen(this);
+        flush();
+    }
+
+    // Chamado pelo loop quando a ligação foi aceite
+    void opened() {
+        handler.onOpen(this);
+    }
+
+    // Lê do socket e entrega cada frame completo ao handler
+    void read() throws IOException {
+        int r = channel.read(in);
+        if (r < 0) throw new EOFException();
+        in.flip();
+        while (open && in.remaining() >= 4) {
+            int p = in.position();
+            int len = in.getInt(p);
+            if (len < 0 || len > NioLoop.MAX_FRAME) throw new IOException("Bad frame length " + len);
+            if (in.remaining() < 4 + len) {
+                if (4 + len > in.capacity()) {
+                    // Frame larger than the pooled buffer: move to a dedicated one
+                    ByteBuffer bigger = loop.pool().acquire(4 + len);
+                    bigger.put(in);
+                    loop.pool().release(in);
+                    in = bigger;
+                    view = in.duplicate();
+                    return;
+                }
+                break;
+            }
+            view.limit(p + 4 + len).position(p + 4);
+            handler.onFrame(this, view);
+            in.position(p + 4 + len);
+        }
+        in.compact();
+    }
+
+    // Fecha a ligação (pode ser chamado de qualquer thread)
+    public void close() {
+        if (open) loop.execute(() -> closeNow(null));
+    }
+
+    // Fecha já (thread do loop) e avisa o handler
+    void closeNow(IOException cause) {
+        synchronized (this) {
+            if (!open) return;
+            open = false;
+            for (ByteBuffer b : out) loop.pool().release(b);
+            out.clear();
+            queuedBytes = 0;
+        }
+        if (key != null) key.cancel();
+        try { channel.close(); } catch (IOException ignored) {}
+        loop.pool().release(in);
+        in = null;
+        view = null;
+        handler.onClose(this, cause);
+    }
+
+    // Retorna true enquanto a ligação não fechou
+    public boolean isOpen() { return open; }
+
+    // Retorna quantos bytes estão na fila de saída
+    public synchronized int queuedBytes() { return queuedBytes; }
+
+    // Associa um objeto do utilizador a esta ligação
+    public void attach(Object attachment) { this.attachment = attachment; }
+
+    // Retorna o objeto associado (ou null)
+    public Object attachment() { return attachment; }
+
+    // Retorna o endereço local da ligação (null se fechada)
+    public InetSocketAddress localAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    SocketChannel channel() { return channel; }
+
+    @Override
+    public String toString() {
+        try {
+            return "Connection[" + channel.getRemoteAddress() + "]";
+        } catch (IOException e) {
+            return "Connection[closed]";
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ds.assignment.net;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cliente pedido/resposta bloqueante sobre uma Connection persistente do NioLoop.
+ *
+ * One call at a time: call() sends a frame and waits for the next frame on the connection,
+ * copied into the caller's array. A timeout or a closed connection fails the call and leaves
+ * the client closed (a late reply could not be told apart from the next one), so callers
+ * drop it and open a new one.
+ */
+public final class FrameClient implements FrameHandler, AutoCloseable {
+
+    private final Connection conn;
+    private final Object lock = new Object();
+    private byte[] reply;                 // guarded by lock: where the next frame goes
+    private int replyLen = -1;
+    private IOException failure;
+
+    public FrameClient(String host, int port) throws IOException {
+        this.conn = NioLoop.get().connect(host, port, this);
+    }
+
+    // Envia req[off..off+len) e espera pela resposta, copiada para reply; retorna o tamanho da resposta
+    public synchronized int call(byte[] req, int off, int len, byte[] reply, long timeoutMs) throws IOException {
+        synchronized (lock) {
+            if (failure != null) throw failure;
+            this.reply = reply;
+            this.replyLen = -1;
+        }
+        if (!conn.send(req, off, len)) throw new IOException("Connection closed");
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        synchronized (lock) {
+            try {
+                while (replyLen < 0 && failure == null) {
+                    long left = deadline - System.currentTimeMillis();
+                    if (left <= 0) {
+                        failure = new SocketTimeoutException("No reply within " + timeoutMs + "ms");
+                        conn.close();
+                        break;
+                    }
+                    lock.wait(left);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new IOException("Interrupted", e);
+                conn.close();
+            } finally {
+                this.reply = null;
+            }
+            if (replyLen < 0) throw failure;
+            return replyLen;
+        }
+    }
+
+    @Override
+    // Copia a resposta para o array do pedido em curso
+    public void onFrame(Connection c, ByteBuffer frame) {
+        synchronized (lock) {
+            int len = frame.remaining();
+            if (reply == null) return;                  // unsolicited frame
+            if (len > reply.length) {
+                failure = new IOException("Reply too large: " + len + " > " + reply.length);
+                c.close();
+            } else {
+                frame.get(reply, 0, len);
+                replyLen = len;
+            }
+            lock.notifyAll();
+        }
+    }
+
+    @Override
+    // Falha o pedido em curso quando a ligação fecha
+    public void onClose(Connection c, IOException cause) {
+        synchronized (lock) {
+            if (failure == null) failure = (cause != null) ? cause : new IOException("Connection closed");
+            lock.notifyAll();
+        }
+    }
+
+    // Retorna true enquanto o cliente pode ser usado
+    public boolean isOpen() {
+        synchronized (lock) {
+            return failure == null && conn.isOpen();
+        }
+    }
+
+    @Override
+    public void close() { conn.close(); }
+}
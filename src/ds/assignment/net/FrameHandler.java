@@ -0,0 +1,22 @@
+package ds.assignment.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Recebe os eventos de uma Connection; todos os métodos correm na thread do NioLoop.
+ *
+ * Handlers must not block: the loop serves every connection of the process.
+ */
+public interface FrameHandler {
+
+    // Chamado com um frame completo entre position e limit. The buffer is a view of the
+    // connection's read buffer: copy what has to outlive the call.
+    void onFrame(Connection c, ByteBuffer frame);
+
+    // Chamado quando a ligação fica estabelecida (aceite ou ligada)
+    default void onOpen(Connection c) {}
+
+    // Chamado uma vez quando a ligação fecha; cause é null num fecho normal
+    default void onClose(Connection c, IOException cause) {}
+}
@@ -0,0 +1,215 @@
+package ds.assignment.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loop NIO único do processo: um Selector e uma thread para todas as ligações.
+ *
+ * Servers (listen) and clients (connect) of tom, tring and p2p share it. Accepts, connects,
+ * reads and socket-full writes run on the loop thread; a sender only appends its frame to the
+ * connection and, if the connection was idle, pushes it on a lock-free stack and wakes the
+ * selector, so a burst of frames costs one wakeup and one gathering write.
+ */
+public final class NioLoop implements Runnable {
+
+    public static final int MAX_FRAME = 16 << 20;          // 16 MB
+    public static final int MAX_QUEUED = 32 << 20;         // per-connection outbound limit
+    private static final int BUFFER_SIZE = 64 << 10;       // pooled direct buffers: 64 KB
+    private static final int MAX_POOLED = 256;
+
+    private static NioLoop shared;
+
+    private final Selector selector;
+    private final BufferPool pool = new BufferPool(BUFFER_SIZE, MAX_POOLED);
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Connection> dirty = new AtomicReference<>();
+    private final Thread thread;
+
+    // Servidor registado no selector
+    private record Acceptor(ServerSocketChannel channel, FrameHandler handler) {}
+
+    private NioLoop() throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "nio-loop");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Retorna o loop do processo (criado na primeira chamada)
+    public static synchronized NioLoop get() {
+        if (shared == null) {
+            try {
+                shared = new NioLoop();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open selector", e);
+            }
+        }
+        return shared;
+    }
+
+    // Retorna o pool de buffers diretos do loop
+    public BufferPool pool() { return pool; }
+
+    // Começa a aceitar ligações em addr; cada ligação aceite entrega os frames a handler
+    public ServerSocketChannel listen(InetSocketAddress addr, FrameHandler handler) throws IOException {
+        ServerSocketChannel server = ServerSocketChannel.open();
+        server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        server.bind(addr, 128);
+        server.configureBlocking(false);
+        call(() -> server.register(selector, SelectionKey.OP_ACCEPT, new Acceptor(server, handler)));
+        return server;
+    }
+
+    // Inicia uma ligação a host:port; os frames enviados antes de ligar ficam na fila.
+    // A failed connect is reported through handler.onClose().
+    public Connection connect(String host, int port, FrameHandler handler) throws IOException {
+        SocketChannel ch = SocketChannel.open();
+        ch.configureBlocking(false);
+        ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        boolean now = ch.connect(new InetSocketAddress(host, port));
+        Connection c = new Connection(this, ch, handler, now);
+        execute(() -> {
+            try {
+                c.key = ch.register(selector, now ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, c);
+                if (now) {
+                    c.opened();
+                    c.flush();
+                }
+            } catch (IOException e) {
+                c.closeNow(e);
+            }
+        });
+        return c;
+    }
+
+    // Corre uma tarefa na thread do loop
+    public void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    // Regista uma ligação com frames por escrever (chamado só na transição de vazia para não vazia)
+    void scheduleFlush(Connection c) {
+        Connection head;
+        do {
+            head = dirty.get();
+            c.nextDirty = head;
+        } while (!dirty.compareAndSet(head, c));
+        // Only the first push after the loop took the stack needs a wakeup
+        if (head == null && Thread.currentThread() != thread) selector.wakeup();
+    }
+
+    // Corre uma tarefa de registo no loop e espera pelo resultado
+    private void call(IoTask task) throws IOException {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        execute(() -> {
+            try {
+                task.run();
+                done.complete(null);
+            } catch (IOException e) {
+                done.completeExceptionally(e);
+            }
+        });
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while registering", e);
+        } catch (ExecutionException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+
+    @Override
+    // Loop principal: tarefas, escritas pendentes e eventos do selector
+    public void run() {
+        while (true) {
+            try {
+                Runnable task;
+                while ((task = tasks.poll()) != null) task.run();
+                flushDirty();
+                selector.select(this::ready);
+            } catch (IOException e) {
+                System.err.println("[NIO] Selector error: " + e.getMessage());
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Escreve as ligações que receberam frames desde a última volta
+    private void flushDirty() {
+        Connection c = dirty.getAndSet(null);
+        while (c != null) {
+            Connection next = c.nextDirty;
+            c.nextDirty = null;
+            if (c.key != null) {
+                try {
+                    c.flush();
+                } catch (IOException e) {
+                    c.closeNow(e);
+                }
+            }
+            // Not registered yet: the registration task flushes it
+            c = next;
+        }
+    }
+
+    // Trata uma chave pronta do selector
+    private void ready(SelectionKey key) {
+        Object att = key.attachment();
+        if (att instanceof Acceptor a) {
+            accept(a);
+            return;
+        }
+        Connection c = (Connection) att;
+        try {
+            if (key.isConnectable()) c.finishConnect();
+            if (key.isValid() && key.isReadable()) c.read();
+            if (key.isValid() && key.isWritable()) c.flush();
+        } catch (IOException e) {
+            c.closeNow(e);
+        } catch (CancelledKeyException ignored) {
+        } catch (RuntimeException e) {
+            // A failing handler only takes down its own connection
+            e.printStackTrace();
+            c.closeNow(new IOException(e));
+        }
+    }
+
+    // Aceita todas as ligações pendentes de um servidor
+    private void accept(Acceptor a) {
+        try {
+            SocketChannel ch;
+            while ((ch = a.channel().accept()) != null) {
+                ch.configureBlocking(false);
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Connection c = new Connection(this, ch, a.handler(), true);
+                c.key = ch.register(selector, SelectionKey.OP_READ, c);
+                c.opened();
+            }
+        } catch (IOException e) {
+            System.err.println("[NIO] Accept failed: " + e.getMessage());
+        }
+    }
+}
@@ -209,20 +209,10 @@ public class ExtraMarks {
         Random rng = new Random(seed);
         
         // Gerar topologia conectada aleatória
-        List<int[]> edges = generateConnectedTopology(n, rng);
+        Graph graph = generateConnectedTopology(n, rng);
         
         if (DEBUG) {
-            System.out.printf("    Topologia: %d arestas geradas%n", edges.size());
-        }
-        
-        // Criar adjacências
-        Map<Integer, Set<Integer>> adjacency = new HashMap<>();
-        for (int i = 0; i < n; i++) {
-            adjacency.put(i, new HashSet<>());
-        }
-        for (int[] edge : edges) {
-            adjacency.get(edge[0]).add(edge[1]);
-            adjacency.get(edge[1]).add(edge[0]);
+            System.out.printf("    Topologia: %d arestas geradas%n", graph.edges());
         }
         
         // Criar e iniciar peers
@@ -241,32 +231,29 @@ public class ExtraMarks {
         // Esperar peers iniciarem
         Thread.sleep(1500);
         
-        // Construir rede via registos
-        Set<String> processedEdges = new HashSet<>();
+        // Construir rede via registos (cada aresta uma vez: de i para os vizinhos j > i)
         int registrations = 0;
         
-        for (int[] edge : edges) {
-            int i = edge[0];
-            int j = edge[1];
-            
-            String edgeKey = Math.min(i, j) + "," + Math.max(i, j);
-            if (processedEdges.contains(edgeKey)) {
-                continue;
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < graph.degree(i); k++) {
+                int j = graph.neighbor(i, k);
+                if (j < i) {
+                    continue;
+                }
+                
+                // Peer i regista-se com peer j
+                Peer peerI = peers.get(i);
+                int portJ = basePort + j;
+                peerI.registerWith("localhost", portJ);
+                
+                // Peer j regista-se com peer i
+                Peer peerJ = peers.get(j);
+                int portI = basePort + i;
+                peerJ.registerWith("localhost", portI);
+                
+                registrations += 2;
+                Thread.sleep(50);
             }
-            processedEdges.add(edgeKey);
-            
-            // Peer i regista-se com peer j
-            Peer peerI = peers.get(i);
-            int portJ = basePort + j;
-            peerI.registerWith("localhost", portJ);
-            
-            // Peer j regista-se com peer i
-            Peer peerJ = peers.get(j);
-            int portI = basePort + i;
-            peerJ.registerWith("localhost", portI);
-            
-            registrations += 2;
-            Thread.sleep(50);
         }
         
         if (DEBUG) {
@@ -330,45 +317,16 @@ public class ExtraMarks {
                     System.out.printf("    ✓ Convergência após %d checks%n", checkCount);
                 }
 
-                return new SimulationResult(n, run, timeSeconds, edges.size(), finalValues);
+                return new SimulationResult(n, run, timeSeconds, (int) graph.edges(), finalValues);
             }
         }
     }
 
     
     // Cria Spanning Tree + Arestas extras com probabilidade p, neste caso 15%
-    private static List<int[]> generateConnectedTopology(int n, Random rng) {
-        Set<String> edgeSet = new HashSet<>();
-        
-        // Spanning tree: cada nó i>0 conecta a um nó j<i aleatório
-        for (int i = 1; i < n; i++) {
-            int parent = rng.nextInt(i);
-            int lo = Math.min(i, parent);
-            int hi = Math.max(i, parent);
-            edgeSet.add(lo + "," + hi);
-        }
-        
-        // Arestas extras (15% de probabilidade)
+    private static Graph generateConnectedTopology(int n, Random rng) {
         double extraEdgeProb = 0.15;
-        for (int i = 0; i < n; i++) {
-            for (int j = i + 1; j < n; j++) {
-                String key = i + "," + j;
-                if (!edgeSet.contains(key) && rng.nextDouble() < extraEdgeProb) {
-                    edgeSet.add(key);
-                }
-            }
-        }
-        
-        // Converter para lista
-        List<int[]> edges = new ArrayList<>();
-        for (String key : edgeSet) {
-            String[] parts = key.split(",");
-            int i = Integer.parseInt(parts[0]);
-            int j = Integer.parseInt(parts[1]);
-            edges.add(new int[]{i, j});
-        }
-        
-        return edges;
+        return Graph.connected(n, extraEdgeProb, rng.nextLong());
     }
 
     // Imprime um sumário dos resultados das simulações (médias, desvios, etc)
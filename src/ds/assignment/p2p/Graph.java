@@ -0,0 +1,243 @@
+package ds.assignment.p2p;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Grafo não dirigido em CSR (compressed sparse row): int[] de offsets e de vizinhos, sem objetos por aresta.
+ *
+ * The neighbours of v are targets[offsets[v] .. offsets[v + 1]), sorted and without duplicates
+ * or self-loops, so a graph with n nodes and E edges takes 4(n + 1) + 8E bytes. gnp() samples
+ * G(n, p) with geometric skipping (Batagelj and Brandes): instead of one coin per pair it draws
+ * the gap to the next edge, so the cost is O(n + E) rather than O(n²). The pairs are split into
+ * CHUNKS row ranges of equal pair count, each with its own random stream derived from the seed;
+ * the ranges are sampled in parallel and the rows are sorted in parallel, and since the streams
+ * depend only on the chunk, a seed gives the same graph on any number of cores.
+ *
+ * Usage: java ds.assignment.p2p.Graph [nodes] [avgDegree] [seed]
+ */
+public final class Graph {
+
+    private static final int CHUNKS = 64;
+    private static final int ROWS_PER_TASK = 4096;
+    private static final long MAX_SKIP = 1L << 62;                  // no overflow when p is tiny
+
+    private final int[] offsets;
+    private final int[] targets;
+
+    private Graph(int[] offsets, int[] targets) {
+        this.offsets = offsets;
+        this.targets = targets;
+    }
+
+    // Lista de arestas (u, v) em dois int[] que crescem
+    private static final class Edges {
+        private int[] u, v;
+        private int size;
+
+        Edges(int capacity) {
+            u = new int[Math.max(16, capacity)];
+            v = new int[u.length];
+        }
+
+        void add(int a, int b) {
+            if (size == u.length) {
+                int cap = (int) Math.min(Integer.MAX_VALUE - 8, u.length * 2L);
+                if (cap == size) throw new IllegalArgumentException("Too many edges");
+                u = Arrays.copyOf(u, cap);
+                v = Arrays.copyOf(v, cap);
+            }
+            u[size] = a;
+            v[size++] = b;
+        }
+    }
+
+    public int nodes() { return offsets.length - 1; }
+
+    public long edges() { return targets.length / 2; }
+
+    public int degree(int v) { return offsets[v + 1] - offsets[v]; }
+
+    // k-ésimo vizinho de v (0 <= k < degree(v)), por ordem crescente
+    public int neighbor(int v, int k) { return targets[offsets[v] + k]; }
+
+    // Cópia dos vizinhos de v, por ordem crescente
+    public int[] neighbors(int v) { return Arrays.copyOfRange(targets, offsets[v], offsets[v + 1]); }
+
+    // G(n, p): cada par de nós ligado com probabilidade p, independentemente
+    public static Graph gnp(int n, double p, long seed) {
+        return build(n, sample(n, p, seed));
+    }
+
+    // Grafo conexo: árvore aleatória (cada nó i > 0 liga a um j < i) mais as arestas de G(n, p)
+    public static Graph connected(int n, double p, long seed) {
+        Edges[] parts = Arrays.copyOf(sample(n, p, seed), CHUNKS + 1);
+        SplittableRandom rng = new SplittableRandom(~seed);
+        Edges tree = new Edges(n);
+        for (int i = 1; i < n; i++) tree.add(i, rng.nextInt(i));
+        parts[CHUNKS] = tree;
+        return build(n, parts);
+    }
+
+    // Grafo conexo com grau médio ~degree: um anel mais cordas de G(n, p), p = (degree - 2) / (n - 1)
+    public static Graph ringWithChords(int n, int degree, long seed) {
+        double p = (n > 1) ? Math.min(1, Math.max(0, degree - 2) / (double) (n - 1)) : 0;
+        Edges[] parts = Arrays.copyOf(sample(n, p, seed), CHUNKS + 1);
+        Edges ring = new Edges(n);
+        for (int i = 0; i < n; i++) ring.add(i, (i + 1) % n);
+        parts[CHUNKS] = ring;
+        return build(n, parts);
+    }
+
+    // Grafo com as arestas (us[i], vs[i]), i < count; ignora lacetes e repetidas
+    public static Graph fromEdges(int n, int[] us, int[] vs, int count) {
+        Edges e = new Edges(0);
+        e.u = us;
+        e.v = vs;
+        e.size = count;
+        return build(n, new Edges[]{e});
+    }
+
+    // Amostra G(n, p) em CHUNKS blocos de linhas, em paralelo
+    private static Edges[] sample(int n, double p, long seed) {
+        if (n < 0) throw new IllegalArgumentException("n must be >= 0");
+        Edges[] parts = new Edges[CHUNKS];
+        double pairs = (double) n * (n - 1) / 2;
+        int[] bounds = new int[CHUNKS + 1];
+        // Row v holds the v pairs (v, w < v), so equal pair counts need bounds at n * sqrt(k / CHUNKS)
+        for (int k = 1; k < CHUNKS; k++) bounds[k] = (int) Math.round(n * Math.sqrt((double) k / CHUNKS));
+        bounds[CHUNKS] = n;
+        // Independent streams, split in a fixed order so that they do not depend on the thread count
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] streams = new SplittableRandom[CHUNKS];
+        for (int k = 0; k < CHUNKS; k++) streams[k] = root.split();
+        parallel(CHUNKS, k -> {
+            double expected = p * pairs / CHUNKS;
+            Edges out = new Edges((int) Math.min(Integer.MAX_VALUE - 8, expected + 4 * Math.sqrt(expected)));
+            sample(bounds[k], bounds[k + 1], p, streams[k], out);
+            parts[k] = out;
+        });
+        return parts;
+    }
+
+    // Arestas de G(n, p) nas linhas [lo, hi): salta diretamente para o próximo par (v, w < v) que entra
+    private static void sample(int lo, int hi, double p, SplittableRandom rng, Edges out) {
+        if (p <= 0 || lo >= hi) return;
+        double logq = Math.log1p(-p);           // -Infinity for p = 1: every gap is 0
+        int v = Math.max(lo, 1);
+        long w = -1;
+        while (v < hi) {
+            // Gap ~ Geometric(p): the number of pairs skipped before the next edge
+            double gap = (p >= 1) ? 0 : Math.log1p(-rng.nextDouble()) / logq;
+            w += 1 + (long) Math.min(MAX_SKIP, gap);
+            while (w >= v && v < hi) {
+                w -= v;
+                v++;
+            }
+            if (v < hi) out.add(v, (int) w);
+        }
+    }
+
+    // Monta o CSR: conta graus, espalha as arestas nos dois sentidos, ordena e tira repetidas por linha
+    private static Graph build(int n, Edges[] parts) {
+        int[] offsets = new int[n + 1];
+        for (Edges e : parts) {
+            if (e == null) continue;
+            for (int i = 0; i < e.size; i++) {
+                if (e.u[i] == e.v[i]) continue;
+                offsets[e.u[i] + 1]++;
+                offsets[e.v[i] + 1]++;
+            }
+        }
+        long total = 0;
+        for (int v = 1; v <= n; v++) {
+            total += offsets[v];
+            if (total > Integer.MAX_VALUE - 8) throw new IllegalArgumentException("Too many edges");
+            offsets[v] = (int) total;
+        }
+        int[] targets = new int[(int) total];
+        int[] next = Arrays.copyOf(offsets, n);
+        for (Edges e : parts) {
+            if (e == null) continue;
+            for (int i = 0; i < e.size; i++) {
+                int a = e.u[i], b = e.v[i];
+                if (a == b) continue;
+                targets[next[a]++] = b;
+                targets[next[b]++] = a;
+            }
+        }
+
+        // Sort each row and count its distinct neighbours (in next[v]), in parallel over row ranges
+        int tasks = (n + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        parallel(tasks, t -> {
+            int end = Math.min(n, (t + 1) * ROWS_PER_TASK);
+            for (int v = t * ROWS_PER_TASK; v < end; v++) {
+                int from = offsets[v], to = offsets[v + 1], k = from;
+                Arrays.sort(targets, from, to);
+                for (int i = from; i < to; i++) if (k == from || targets[i] != targets[k - 1]) targets[k++] = targets[i];
+                next[v] = k - from;
+            }
+        });
+
+        // Close the gaps left by duplicates; rows only move left, so copying in order is safe
+        int k = 0;
+        for (int v = 0; v < n; v++) {
+            int from = offsets[v];
+            offsets[v] = k;
+            System.arraycopy(targets, from, targets, k, next[v]);
+            k += next[v];
+        }
+        offsets[n] = k;
+        return new Graph(offsets, (k == targets.length) ? targets : Arrays.copyOf(targets, k));
+    }
+
+    // Corre task(0 .. tasks-1) em até um thread por core
+    private static void parallel(int tasks, IntConsumer task) {
+        int threads = Math.min(tasks, Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            for (int t = 0; t < tasks; t++) task.accept(t);
+            return;
+        }
+        AtomicInteger nextTask = new AtomicInteger();
+        Runnable worker = () -> {
+            for (int t; (t = nextTask.getAndIncrement()) < tasks; ) task.accept(t);
+        };
+        Thread[] pool = new Thread[threads - 1];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = new Thread(worker, "graph-" + i);
+            pool[i].start();
+        }
+        worker.run();
+        boolean interrupted = false;
+        for (Thread t : pool) {
+            while (true) {
+                try {
+                    t.join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    // Mede a geração de um grafo conexo com grau médio avgDegree
+    public static void main(String[] args) {
+        int n = (args.length >= 1) ? Integer.parseInt(args[0]) : 1_000_000;
+        double degree = (args.length >= 2) ? Double.parseDouble(args[1]) : 10;
+        long seed = (args.length >= 3) ? Long.parseLong(args[2]) : 1;
+        double p = (n > 1) ? Math.min(1, Math.max(0, degree - 2) / (n - 1)) : 0;
+
+        long t0 = System.nanoTime();
+        Graph g = connected(n, p, seed);
+        double ms = (System.nanoTime() - t0) / 1e6;
+        int max = 0;
+        for (int v = 0; v < n; v++) max = Math.max(max, g.degree(v));
+        System.out.printf("Graph: %d nodes, %d edges (avg degree %.2f, max %d) in %.0f ms, %.1f MB, %d cores%n",
+                n, g.edges(), 2.0 * g.edges() / Math.max(1, n), max, ms,
+                (4.0 * g.offsets.length + 4.0 * g.targets.length) / (1 << 20), Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -1,7 +1,14 @@
 package ds.assignment.p2p;
 
+import ds.assignment.net.Connection;
+import ds.assignment.net.FrameClient;
+import ds.assignment.net.FrameHandler;
+import ds.assignment.net.NioLoop;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 
@@ -14,15 +21,28 @@ public class Peer {
     private final Map<String, String> neighbors;
     private final Random random;
     private volatile boolean running;
+    private volatile boolean verbose = true;
 
     private int syncCount = 0;
 
+    // Modo nio: pedidos/respostas como frames no NioLoop partilhado, uma ligação persistente por vizinho
+    private final boolean nio;
+    private final Map<String, FrameClient> clients = new ConcurrentHashMap<>();
+    private static final long REQUEST_TIMEOUT_MS = 3000;
+    private volatile double syncRate = 2.0 / 60.0;              // syncs/s
+
     // Para bootstrap robusto
     private static final long REGISTER_RETRY_MS = 500;
     private static final long BOOTSTRAP_DELAY_MS = 1200;
 
     public Peer(String peerId, int port, Double initialValue) {
+        this(peerId, port, initialValue, false);
+    }
+
+    // nio = true troca os sockets bloqueantes pelo transporte ds.assignment.net
+    public Peer(String peerId, int port, Double initialValue, boolean nio) {
         this.peerId = peerId;
+        this.nio = nio;
         this.port = port;
         this.neighbors = new ConcurrentHashMap<>();
         this.random = new Random();
@@ -56,6 +76,10 @@ public class Peer {
     
     // Aceita conexões de outros peers para registo e sincronização
     private void acceptConnections() {
+        if (nio) {
+            acceptFrames();
+            return;
+        }
         try (ServerSocket server = new ServerSocket(port)) {
             System.out.printf("[%s] A aguardar conexões na porta %d...%n", peerId, port);
 
@@ -76,6 +100,28 @@ public class Peer {
         }
     }
 
+    // Modo nio: cada frame é uma mensagem REGISTER/SYNC e a resposta segue na mesma ligação
+    private void acceptFrames() {
+        try {
+            NioLoop.get().listen(new InetSocketAddress(port), new FrameHandler() {
+                @Override
+                public void onFrame(Connection c, ByteBuffer frame) {
+                    try {
+                        byte[] out = handleMessage(StandardCharsets.UTF_8.decode(frame).toString())
+                                .getBytes(StandardCharsets.UTF_8);
+                        c.send(out, 0, out.length);
+                    } catch (Exception e) {
+                        System.err.printf("[%s] Erro ao processar conexão: %s%n", peerId, e.getMessage());
+                        c.close();
+                    }
+                }
+            });
+            System.out.printf("[%s] A aguardar conexões na porta %d (nio)...%n", peerId, port);
+        } catch (IOException e) {
+            System.err.printf("[%s] Erro no servidor: %s%n", peerId, e.getMessage());
+        }
+    }
+
     // Processa uma conexão recebida, tratando comandos REGISTER e SYNC
     private void handleConnection(Socket socket) {
         try (BufferedReader in = new BufferedReader(
@@ -84,52 +130,87 @@ public class Peer {
 
             String message = in.readLine();
             if (message == null) return;
+            out.println(handleMessage(message));
+
+        } catch (Exception e) {
+            System.err.printf("[%s] Erro ao processar conexão: %s%n",
+                    peerId, e.getMessage());
+        } finally {
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
 
-            String[] parts = message.split(" ");
-            String command = parts[0];
+    // Trata uma mensagem REGISTER ou SYNC e retorna a resposta
+    String handleMessage(String message) {
+        String[] parts = message.split(" ");
+        String command = parts[0];
 
-            if ("REGISTER".equals(command) && parts.length == 3) {
-                // REGISTER <peerId> <host:port>
-                String remotePeerId = parts[1];
-                String remoteAddress = parts[2];
+        if ("REGISTER".equals(command) && parts.length == 3) {
+            // REGISTER <peerId> <host:port>
+            String remotePeerId = parts[1];
+            String remoteAddress = parts[2];
 
-                if (!remotePeerId.equals(this.peerId)) {
-                    neighbors.put(remotePeerId, remoteAddress);
-                    System.out.printf("[%s] Peer %s registado em %s (Total vizinhos: %d)%n",
-                            peerId, remotePeerId, remoteAddress, neighbors.size());
-                }
-                out.println("OK");
-                return;
+            if (!remotePeerId.equals(this.peerId)) {
+                neighbors.put(remotePeerId, remoteAddress);
+                if (verbose) System.out.printf("[%s] Peer %s registado em %s (Total vizinhos: %d)%n",
+                        peerId, remotePeerId, remoteAddress, neighbors.size());
             }
+            return "OK";
+        }
 
-            if ("SYNC".equals(command) && parts.length == 3) {
-                // SYNC <peerId> <value>
-                String remotePeerId = parts[1];
-                double remoteValue = Double.parseDouble(parts[2]);
+        if ("SYNC".equals(command) && parts.length == 3) {
+            // SYNC <peerId> <value>
+            String remotePeerId = parts[1];
+            double remoteValue = Double.parseDouble(parts[2]);
 
-                double oldValue;
-                synchronized (this) {
-                    oldValue = value;
-                    value = (value + remoteValue) / 2.0;
-                    syncCount++;
-                }
+            double oldValue;
+            synchronized (this) {
+                oldValue = value;
+                value = (value + remoteValue) / 2.0;
+                syncCount++;
+            }
 
-                System.out.printf("[%s] RECV sync de %s: %.6f + %.6f → %.6f%n",
-                        peerId, remotePeerId, oldValue, remoteValue, value);
+            if (verbose) System.out.printf("[%s] RECV sync de %s: %.6f + %.6f → %.6f%n",
+                    peerId, remotePeerId, oldValue, remoteValue, value);
 
-                // Responder com o valor ANTIGO (antes da atualização)
-                out.println(oldValue);
-                return;
-            }
+            // Responder com o valor ANTIGO (antes da atualização)
+            return String.valueOf(oldValue);
+        }
 
-            // desconhecido
-            out.println("ERR");
+        // desconhecido
+        return "ERR";
+    }
 
-        } catch (Exception e) {
-            System.err.printf("[%s] Erro ao processar conexão: %s%n",
-                    peerId, e.getMessage());
-        } finally {
-            try { socket.close(); } catch (IOException ignored) {}
+    // Envia uma mensagem a host:port e retorna a linha de resposta (null se o outro lado fechou)
+    private String request(String host, int targetPort, String message) throws IOException {
+        if (nio) return requestFrame(host, targetPort, message);
+        try (Socket socket = new Socket(host, targetPort);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream()))) {
+            out.println(message);
+            return in.readLine();
+        }
+    }
+
+    // Como request(), sobre a ligação persistente do NioLoop a host:port
+    private String requestFrame(String host, int targetPort, String message) throws IOException {
+        String key = host + ":" + targetPort;
+        FrameClient client = clients.get(key);
+        if (client == null || !client.isOpen()) {
+            if (client != null) client.close();
+            client = new FrameClient(host, targetPort);
+            clients.put(key, client);
+        }
+        byte[] req = message.getBytes(StandardCharsets.UTF_8);
+        byte[] reply = new byte[256];
+        try {
+            int len = client.call(req, 0, req.length, reply, REQUEST_TIMEOUT_MS);
+            return new String(reply, 0, len, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            client.close();
+            clients.remove(key, client);
+            throw e;
         }
     }
 
@@ -138,19 +219,13 @@ public class Peer {
 
     // Tenta registrar este peer com outro peer uma vez
     public boolean registerWith(String targetHost, int targetPort) {
-        try (Socket socket = new Socket(targetHost, targetPort);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(
-                     new InputStreamReader(socket.getInputStream()))) {
-
+        try {
             String myHostForOther = advertisedHostFor(targetHost);
             String myAddress = myHostForOther + ":" + port;
 
-            out.println("REGISTER " + peerId + " " + myAddress);
-
-            String response = in.readLine();
+            String response = request(targetHost, targetPort, "REGISTER " + peerId + " " + myAddress);
             if ("OK".equals(response)) {
-                System.out.printf("[%s] Registado com sucesso em %s:%d%n",
+                if (verbose) System.out.printf("[%s] Registado com sucesso em %s:%d%n",
                         peerId, targetHost, targetPort);
                 return true;
             }
@@ -188,14 +263,13 @@ public class Peer {
 
     
 
-    // Sync com Poisson com frequência λ = 2 syncs/minuto = 2/60 syncs/segundo
+    // Sync com Poisson com frequência λ = syncRate (por omissão 2 syncs/minuto = 2/60 syncs/segundo)
     private void periodicSync() {
-        double lambda = 2.0 / 60.0; // 2 syncs por minuto
-
         // Esperar para a rede se formar (bootstrap + retries)
         sleep(3000);
 
         while (running) {
+            double lambda = syncRate;
             // Tempo entre syncs segue distribuição exponencial
             double u = random.nextDouble();
             long waitMs = (long) (-Math.log(1 - u) / lambda * 1000);
@@ -219,21 +293,14 @@ public class Peer {
         String host = parts[0];
         int targetPort = Integer.parseInt(parts[1]);
 
-        try (Socket socket = new Socket(host, targetPort);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             BufferedReader in = new BufferedReader(
-                     new InputStreamReader(socket.getInputStream()))) {
-
+        try {
             double myValue;
             synchronized (this) {
                 myValue = value;
             }
 
-            // Enviar SYNC com o meu valor atual
-            out.println("SYNC " + peerId + " " + myValue);
-
-            // Receber valor ANTIGO do outro peer
-            String response = in.readLine();
+            // Enviar SYNC com o meu valor atual e receber o valor ANTIGO do outro peer
+            String response = request(host, targetPort, "SYNC " + peerId + " " + myValue);
             if (response == null) return;
 
             double remoteOldValue = Double.parseDouble(response);
@@ -243,7 +310,7 @@ public class Peer {
                 value = (myValue + remoteOldValue) / 2.0;
                 syncCount++;
 
-                System.out.printf("[%s] SEND sync para %s: %.6f + %.6f → %.6f%n",
+                if (verbose) System.out.printf("[%s] SEND sync para %s: %.6f + %.6f → %.6f%n",
                         peerId, targetPeerId, oldValue, remoteOldValue, value);
             }
 
@@ -257,7 +324,7 @@ public class Peer {
     private void showStatus() {
         sleep(5000);
         while (running) {
-            synchronized (this) {
+            if (verbose) synchronized (this) {
                 System.out.printf("[%s] Valor: %.6f | Vizinhos: %d | Syncs: %d%n",
                         peerId, value, neighbors.size(), syncCount);
             }
@@ -283,6 +350,15 @@ public class Peer {
         }
     }
 
+    // Liga/desliga as linhas de registo, sync e estado no stdout
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+
+    // Define o ritmo médio de syncs iniciados por este peer (syncs/s, Poisson)
+    public void setSyncRate(double syncsPerSec) {
+        if (syncsPerSec <= 0) throw new IllegalArgumentException("syncsPerSec must be > 0");
+        this.syncRate = syncsPerSec;
+    }
+
     // Para a execução do peer e mostra o valor final
     public void stop() {
         running = false;
@@ -313,7 +389,7 @@ public class Peer {
     // Ponto de entrada: inicializa o peer e realiza o bootstrap da topologia
     public static void main(String[] args) throws Exception {
         if (args.length < 2) {
-            System.err.println("Usage: java ds.assignment.p2p.Peer <peerId> <port> [initialValue]");
+            System.err.println("Usage: java ds.assignment.p2p.Peer <peerId> <port> [initialValue] [socket|nio]");
             System.exit(1);
         }
 
@@ -321,11 +397,13 @@ public class Peer {
         int port = Integer.parseInt(args[1]);
 
         Double initialValue = null;
-        if (args.length >= 3) {
-            initialValue = Double.parseDouble(args[2]);
+        boolean nio = false;
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("nio")) nio = true;
+            else if (!args[i].equalsIgnoreCase("socket")) initialValue = Double.parseDouble(args[i]);
         }
 
-        Peer peer = new Peer(peerId, port, initialValue);
+        Peer peer = new Peer(peerId, port, initialValue, nio);
 
         // Arranca threads (listener + anti-entropy + status)
         peer.start();
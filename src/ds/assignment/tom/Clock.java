@@ -0,0 +1,88 @@
+package ds.assignment.tom;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Relógio que gera os timestamps da ordem total: Lamport puro ou híbrido (HLC).
+ *
+ * Both hand out a long that only grows and that every receive pushes past the remote stamp,
+ * so the order key and the stability check work unchanged in either mode. The hybrid clock
+ * (Kulkarni et al.) packs physical time in ms into the upper 48 bits and a logical counter
+ * into the lower 16: it still orders causally, but stays within the clock skew of real time,
+ * so delivery lag, skew and staleness can be read in milliseconds. All updates are a single
+ * CAS loop. Every peer of a group must use the same kind of clock.
+ */
+public interface Clock {
+
+    int LOGICAL_BITS = 16;
+
+    // Timestamp para um evento local (envio de DATA ou ACK)
+    long tick();
+
+    // Timestamp para a receção de um frame com o timestamp remoto dado
+    long receive(long remote);
+
+    // Avança o relógio para pelo menos ts, sem contar como evento (recuperação)
+    void observe(long ts);
+
+    // Retorna o último timestamp gerado ou observado
+    long get();
+
+    // Retorna quanto o log reserva à frente do relógio de cada vez
+    long reserveStep();
+
+    // Retorna o tempo físico (ms) de um timestamp híbrido
+    static long physicalMs(long ts) { return ts >>> LOGICAL_BITS; }
+
+    // Relógio de Lamport: max(local, remoto) + 1
+    final class Lamport implements Clock {
+        private final AtomicLong value = new AtomicLong();
+
+        @Override public long tick() { return value.incrementAndGet(); }
+        @Override public long receive(long remote) { return value.accumulateAndGet(remote, (l, r) -> Math.max(l, r) + 1); }
+        @Override public void observe(long ts) { value.accumulateAndGet(ts, Math::max); }
+        @Override public long get() { return value.get(); }
+        @Override public long reserveStep() { return 1000; }
+        @Override public String toString() { return "lamport"; }
+    }
+
+    // Relógio lógico híbrido: (físico ms << 16) | lógico, empacotado num long
+    final class Hybrid implements Clock {
+        private final AtomicLong value = new AtomicLong();
+        private final long offsetMs;
+
+        public Hybrid() { this(0); }
+
+        // offsetMs desloca o relógio físico (simula skew entre peers na mesma JVM)
+        public Hybrid(long offsetMs) { this.offsetMs = offsetMs; }
+
+        // Retorna o tempo físico local em ms
+        public long nowMs() { return System.currentTimeMillis() + offsetMs; }
+
+        @Override
+        public long tick() {
+            while (true) {
+                long old = value.get();
+                // Physical time wins when it moved on; otherwise the logical counter counts up
+                // (a full counter carries into the ms, which only stretches that ms)
+                long next = Math.max(old + 1, nowMs() << LOGICAL_BITS);
+                if (value.compareAndSet(old, next)) return next;
+            }
+        }
+
+        @Override
+        public long receive(long remote) {
+            while (true) {
+                long old = value.get();
+                long next = Math.max(Math.max(old, remote) + 1, nowMs() << LOGICAL_BITS);
+                if (value.compareAndSet(old, next)) return next;
+            }
+        }
+
+        @Override public void observe(long ts) { value.accumulateAndGet(ts, Math::max); }
+        @Override public long get() { return value.get(); }
+        // One second ahead: a reservation is written about once per second
+        @Override public long reserveStep() { return 1000L << LOGICAL_BITS; }
+        @Override public String toString() { return (offsetMs == 0) ? "hlc" : "hlc(offset=" + offsetMs + "ms)"; }
+    }
+}
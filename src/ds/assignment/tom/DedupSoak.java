@@ -0,0 +1,82 @@
+package ds.assignment.tom;
+
+import java.util.Random;
+
+/**
+ * Soak test do DedupWindow: dezenas de milhões de DATA com reordenação e duplicados.
+ *
+ * Every origin emits sequences 1, 2, 3, ... that arrive shuffled inside small blocks, and a
+ * fraction of them is delivered a second time a while later (retries). The run fails if a
+ * first copy is rejected or a duplicate is accepted, and prints the heap after GC at
+ * checkpoints so it can be seen to stay flat.
+ *
+ * Usage: java ds.assignment.tom.DedupSoak [messages] [origins]
+ */
+public class DedupSoak {
+
+    private static final int BLOCK = 16;           // reordering span per origin
+    private static final double DUP_PROB = 0.05;   // fraction of messages delivered twice
+    private static final int DUP_DELAY = 200;      // how many sequences later the copy arrives
+
+    // Ponto de entrada: corre o soak e imprime memória usada por checkpoint
+    public static void main(String[] args) {
+        long messages = (args.length >= 1) ? Long.parseLong(args[0]) : 50_000_000L;
+        int origins = (args.length >= 2) ? Integer.parseInt(args[1]) : 50;
+
+        DedupWindow window = new DedupWindow(origins);
+        Random rng = new Random(7);
+        long[] nextSeq = new long[origins];
+        long[][] dupRing = new long[origins][DUP_DELAY];   // pending duplicate seqs per origin
+        int[] block = new int[BLOCK];
+
+        long accepted = 0, rejected = 0, errors = 0;
+        long checkpoint = Math.max(1, messages / 10);
+        long sent = 0;
+
+        System.out.printf("Soak: %d messages, %d origins (%.1f days at 6 peers x 1 msg/s)%n",
+                messages, origins, messages / (6.0 * 86_400));
+        System.out.println("messages\taccepted\tduplicates\terrors\theapUsedKB");
+
+        while (sent < messages) {
+            int o = rng.nextInt(origins);
+
+            // Emit one shuffled block of fresh sequences from origin o
+            for (int i = 0; i < BLOCK; i++) block[i] = i;
+            for (int i = BLOCK - 1; i > 0; i--) {
+                int j = rng.nextInt(i + 1);
+                int t = block[i]; block[i] = block[j]; block[j] = t;
+            }
+            long first = nextSeq[o] + 1;
+            nextSeq[o] += BLOCK;
+
+            for (int i = 0; i < BLOCK; i++) {
+                long seq = first + block[i];
+                if (window.markIfNew(o, seq)) accepted++; else errors++;
+
+                // Deliver an old copy that was scheduled DUP_DELAY sequences ago
+                int slot = (int) (seq % DUP_DELAY);
+                long old = dupRing[o][slot];
+                if (old != 0) {
+                    if (window.markIfNew(o, old)) errors++; else rejected++;
+                }
+                dupRing[o][slot] = (rng.nextDouble() < DUP_PROB) ? seq : 0;
+
+                sent++;
+                if (sent % checkpoint == 0) {
+                    System.out.printf("%d\t%d\t%d\t\t%d\t%d%n", sent, accepted, rejected, errors, usedHeapKb());
+                }
+            }
+        }
+
+        System.out.printf("Done: skipped=%d errors=%d -> %s%n",
+                window.skipped(), errors, errors == 0 ? "OK" : "FAILED");
+        if (errors != 0) System.exit(1);
+    }
+
+    // Retorna a heap usada (KB) depois de pedir um GC
+    private static long usedHeapKb() {
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        return (rt.totalMemory() - rt.freeMemory()) / 1024;
+    }
+}
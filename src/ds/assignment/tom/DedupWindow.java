@@ -0,0 +1,96 @@
+package ds.assignment.tom;
+
+/**
+ * Deduplicação de DATA por origem com watermark + janela de bits (memória constante).
+ *
+ * For each origin, every sequence <= base has been seen; sequences in (base, base + WINDOW]
+ * are tracked in a circular bitmap. When the bit right above base is set, base slides up and
+ * the bit is cleared, so the state never grows with the number of messages.
+ * A sequence beyond the window forces the window forward: anything it skips is treated as
+ * seen (late copies of those are dropped), the same policy as an anti-replay window.
+ */
+public class DedupWindow {
+
+    public static final int WINDOW = 1024;              // bits per origin, must be a multiple of 64
+    private static final int WORDS = WINDOW / 64;
+
+    private final long[] base;        // base[origin] = highest contiguous seq seen
+    private final long[][] bits;      // bits[origin] = seen flags for base+1 .. base+WINDOW
+    private final long[] skipped;     // skipped[origin] = sequences given up because the window jumped
+
+    public DedupWindow(int numOrigins) {
+        this.base = new long[numOrigins];
+        this.bits = new long[numOrigins][WORDS];
+        this.skipped = new long[numOrigins];
+    }
+
+    // Marca (origin, seq) como visto; retorna false se já tinha sido visto (duplicado)
+    public boolean markIfNew(int origin, long seq) {
+        if (origin < 0 || origin >= base.length) return false;
+        long[] b = bits[origin];
+        synchronized (b) {
+            long lo = base[origin];
+            if (seq <= lo) return false;
+
+            if (seq > lo + WINDOW) {
+                // Jump the window so that seq is its last slot
+                long newBase = seq - WINDOW;
+                for (long s = lo + 1; s <= newBase && s <= lo + WINDOW; s++) {
+                    if (!clear(b, s)) skipped[origin]++;
+                }
+                skipped[origin] += Math.max(0, newBase - (lo + WINDOW));
+                base[origin] = lo = newBase;
+            }
+
+            int bit = (int) (seq % WINDOW);
+            long mask = 1L << (bit & 63);
+            if ((b[bit >>> 6] & mask) != 0) return false;
+            b[bit >>> 6] |= mask;
+
+            // Slide base over every contiguous seen sequence
+            while (clear(b, lo + 1)) lo++;
+            base[origin] = lo;
+            return true;
+        }
+    }
+
+    // Marca como vistas todas as sequências <= seq da origem (restauro a partir de um snapshot)
+    public void advanceTo(int origin, long seq) {
+        if (origin < 0 || origin >= base.length) return;
+        long[] b = bits[origin];
+        synchronized (b) {
+            long lo = base[origin];
+            if (seq <= lo) return;
+            for (long s = lo + 1; s <= seq && s <= lo + WINDOW; s++) clear(b, s);
+            lo = seq;
+            while (clear(b, lo + 1)) lo++;
+            base[origin] = lo;
+        }
+    }
+
+    // Limpa o bit de s e retorna se estava marcado
+    private static boolean clear(long[] b, long s) {
+        int bit = (int) (s % WINDOW);
+        long mask = 1L << (bit & 63);
+        boolean was = (b[bit >>> 6] & mask) != 0;
+        b[bit >>> 6] &= ~mask;
+        return was;
+    }
+
+    // Retorna o maior seq contíguo já visto da origem
+    public long watermark(int origin) {
+        long[] b = bits[origin];
+        synchronized (b) {
+            return base[origin];
+        }
+    }
+
+    // Retorna quantas sequências foram abandonadas por saltos da janela (todas as origens)
+    public long skipped() {
+        long total = 0;
+        for (int o = 0; o < bits.length; o++) {
+            synchronized (bits[o]) { total += skipped[o]; }
+        }
+        return total;
+    }
+}
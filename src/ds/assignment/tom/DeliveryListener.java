@@ -0,0 +1,10 @@
+package ds.assignment.tom;
+
+/**
+ * Observador das entregas de um Peer tom, chamado pela thread de entrega por ordem total.
+ */
+public interface DeliveryListener {
+
+    // Chamado para cada DATA entregue; o Event volta ao pool a seguir, por isso copie o que precisar
+    void onDeliver(Event e);
+}
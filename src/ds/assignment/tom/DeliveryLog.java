@@ -0,0 +1,222 @@
+package ds.assignment.tom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Log append-only (memory-mapped) das entregas PROCESS de um peer tom.
+ *
+ * Record layout: len(4) | crc32(4) | kind(1) | body(len - 1). A zero len marks the end of the
+ * log (the file is extended with zeros), and a bad CRC is treated as a torn write at the tail.
+ * Two record kinds exist: DELIVERED (body = Event frame) and RESERVE (body = clock, seq), a
+ * high-water mark that every sent timestamp/sequence stays below, so a restarted peer never
+ * reuses a Lamport time or msgId it may already have sent.
+ *
+ * Durability follows SyncMode: EVERY forces each append, BATCH forces once per commit()
+ * (group commit of everything appended since the last one), NONE leaves it to the OS.
+ * Once a snapshot covers every delivery, truncate() replaces the log with a single RESERVE.
+ */
+public class DeliveryLog implements AutoCloseable {
+
+    public enum SyncMode { NONE, EVERY, BATCH }
+
+    // Visitor dos registos lidos em replay()
+    public interface Visitor {
+        // Chamado para cada evento entregue (o Event é reutilizado entre chamadas)
+        void delivered(Event e);
+        // Chamado para cada reserva de relógio/sequência
+        void reserved(long clock, long seq);
+    }
+
+    private static final byte KIND_DELIVERED = 1;
+    private static final byte KIND_RESERVE = 2;
+    private static final int RECORD_HEADER = 9;                 // len + crc + kind
+    private static final long INITIAL_CAPACITY = 16L << 20;     // 16 MB, doubled when full
+
+    // Sequences are reserved in blocks so that RESERVE records stay rare (timestamps use the clock's step)
+    public static final long RESERVE_STEP = 1000;
+
+    private final Path file;
+    private final SyncMode mode;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long capacity;
+    private int position;                 // next write offset
+    private int unsynced;                 // records appended since the last force
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[RECORD_HEADER + Event.MAX_FRAME];
+
+    private volatile long reservedClock;
+    private volatile long reservedSeq;
+
+    public DeliveryLog(Path file, SyncMode mode) throws IOException {
+        this.file = file;
+        this.mode = mode;
+        open();
+    }
+
+    // Abre e mapeia o ficheiro, posicionando a escrita no fim dos registos válidos
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        capacity = Math.max(INITIAL_CAPACITY, channel.size());
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        position = scanEnd();
+        unsynced = 0;
+    }
+
+    // Percorre o log desde o início até ao primeiro registo vazio ou corrompido
+    private int scanEnd() {
+        int pos = 0;
+        while (pos + RECORD_HEADER <= capacity) {
+            int len = map.getInt(pos);
+            if (len <= 0 || pos + 8 + len > capacity) break;
+            if (!checksumOk(pos, len)) break;
+            pos += 8 + len;
+        }
+        return pos;
+    }
+
+    // Verifica o CRC de um registo que começa em pos
+    private boolean checksumOk(int pos, int len) {
+        crc.reset();
+        for (int i = 0; i < len; i++) crc.update(map.get(pos + 8 + i));
+        return (int) crc.getValue() == map.getInt(pos + 4);
+    }
+
+    // Reproduz todos os registos válidos, pela ordem em que foram escritos
+    public synchronized void replay(Visitor v) {
+        Event e = new Event();
+        byte[] body = new byte[Event.MAX_FRAME];
+        int pos = 0;
+        while (pos < position) {
+            int len = map.getInt(pos);
+            byte kind = map.get(pos + 8);
+            map.get(pos + RECORD_HEADER, body, 0, len - 1);
+            if (kind == KIND_DELIVERED) {
+                e.decode(body, 0);
+                v.delivered(e);
+            } else if (kind == KIND_RESERVE) {
+                long clock = map.getLong(pos + RECORD_HEADER);
+                long seq = map.getLong(pos + RECORD_HEADER + 8);
+                reservedClock = Math.max(reservedClock, clock);
+                reservedSeq = Math.max(reservedSeq, seq);
+                v.reserved(clock, seq);
+            }
+            pos += 8 + len;
+        }
+    }
+
+    // Acrescenta um evento entregue ao log (durável segundo o SyncMode)
+    public synchronized void append(Event e) throws IOException {
+        int len = e.encode(scratch, RECORD_HEADER);
+        writeRecord(KIND_DELIVERED, len);
+        if (mode == SyncMode.EVERY) force();
+    }
+
+    // Torna duráveis os registos acrescentados desde o último commit (group commit)
+    public synchronized void commit() {
+        if (mode == SyncMode.BATCH && unsynced > 0) force();
+    }
+
+    // Garante que clock e seq estão abaixo da reserva persistida antes de serem enviados
+    // (clockStep = quanto o relógio é reservado à frente de cada vez)
+    public void reserve(long clock, long seq, long clockStep) throws IOException {
+        if (clock < reservedClock && seq < reservedSeq) return;
+        synchronized (this) {
+            if (clock < reservedClock && seq < reservedSeq) return;
+            long c = Math.max(reservedClock, clock + clockStep);
+            long s = Math.max(reservedSeq, seq + RESERVE_STEP);
+            putLong(scratch, RECORD_HEADER, c);
+            putLong(scratch, RECORD_HEADER + 8, s);
+            writeRecord(KIND_RESERVE, 16);
+            // A reservation must be durable before anything above the old one is sent
+            if (mode != SyncMode.NONE) force();
+            reservedClock = c;
+            reservedSeq = s;
+        }
+    }
+
+    // Descarta todos os registos (já cobertos por um snapshot), mantendo só a reserva atual.
+    // The new log is written beside the old one and renamed over it, so a crash leaves one of the two whole.
+    public synchronized void truncate() throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        putLong(scratch, RECORD_HEADER, reservedClock);
+        putLong(scratch, RECORD_HEADER + 8, reservedSeq);
+        scratch[8] = KIND_RESERVE;
+        int len = 1 + 16;
+        crc.reset();
+        crc.update(scratch, 8, len);
+        ByteBuffer record = ByteBuffer.wrap(scratch, 0, 8 + len);
+        record.putInt(0, len).putInt(4, (int) crc.getValue());
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (record.hasRemaining()) ch.write(record);
+            ch.force(true);
+        }
+        map.force();
+        channel.close();
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    // Retorna o relógio reservado (limite superior de qualquer timestamp já enviado)
+    public long reservedClock() { return reservedClock; }
+    // Retorna a sequência reservada (limite superior de qualquer msgId já enviado)
+    public long reservedSeq() { return reservedSeq; }
+    // Retorna o número de bytes escritos no log
+    public synchronized int size() { return position; }
+
+    // Escreve [len][crc][kind][body] com o body já colocado em scratch[RECORD_HEADER..]
+    private void writeRecord(byte kind, int bodyLen) throws IOException {
+        int len = 1 + bodyLen;
+        ensureCapacity(8 + len);
+        scratch[8] = kind;
+        crc.reset();
+        crc.update(scratch, 8, len);
+        // Body first, header last: a torn record reads back as len 0 or a bad CRC
+        map.put(position + 8, scratch, 8, len);
+        map.putInt(position + 4, (int) crc.getValue());
+        map.putInt(position, len);
+        position += 8 + len;
+        unsynced++;
+    }
+
+    // Aumenta o mapeamento (duplicando o ficheiro) quando o próximo registo não cabe
+    private void ensureCapacity(int bytes) throws IOException {
+        if (position + bytes + 4 <= capacity) return;
+        if (capacity * 2 > Integer.MAX_VALUE) {
+            throw new IOException("Delivery log full (" + capacity + " bytes)");
+        }
+        map.force();
+        capacity *= 2;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    // Força as páginas alteradas para o disco
+    private void force() {
+        map.force();
+        unsynced = 0;
+    }
+
+    private static void putLong(byte[] b, int i, long v) {
+        for (int k = 7; k >= 0; k--) {
+            b[i + k] = (byte) v;
+            v >>>= 8;
+        }
+    }
+
+    @Override
+    // Força o que falta e fecha o ficheiro
+    public synchronized void close() throws IOException {
+        if (mode != SyncMode.NONE) force();
+        channel.close();
+    }
+}
@@ -0,0 +1,58 @@
+package ds.assignment.tom;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Throughput do DeliveryLog com fsync por registo, group commit em lotes e sem fsync.
+ *
+ * Each record is a DATA Event with a short word, the same thing processLoop appends.
+ * In BATCH mode commit() is called every `batch` appends, which is what one processLoop
+ * iteration does when that many heads are stable at once.
+ *
+ * Usage: java ds.assignment.tom.DeliveryLogBenchmark [dir] [records]
+ */
+public class DeliveryLogBenchmark {
+
+    // Ponto de entrada: mede registos/s para cada modo de sincronização
+    public static void main(String[] args) throws IOException {
+        Path dir = (args.length >= 1) ? Path.of(args[0]) : Files.createTempDirectory("tomlog-bench");
+        int records = (args.length >= 2) ? Integer.parseInt(args[1]) : 200_000;
+
+        System.out.println("Log dir: " + dir.toAbsolutePath());
+        System.out.println("mode\tbatch\trecords\trecords/s\tMB/s");
+
+        // Per-record fsync is orders of magnitude slower; keep its run short
+        run(dir, DeliveryLog.SyncMode.EVERY, 1, Math.min(records, 5_000));
+        for (int batch : new int[]{8, 64, 256}) {
+            run(dir, DeliveryLog.SyncMode.BATCH, batch, records);
+        }
+        run(dir, DeliveryLog.SyncMode.NONE, 1, records);
+    }
+
+    // Escreve `records` entregas num log novo e imprime o débito
+    private static void run(Path dir, DeliveryLog.SyncMode mode, int batch, int records) throws IOException {
+        Path file = dir.resolve("bench-" + mode + "-" + batch + ".tomlog");
+        Files.deleteIfExists(file);
+
+        byte[] word = "distributed".getBytes(StandardCharsets.UTF_8);
+        Event e = new Event();
+        long start = System.nanoTime();
+        int bytes;
+        try (DeliveryLog log = new DeliveryLog(file, mode)) {
+            for (int i = 1; i <= records; i++) {
+                e.setData(Event.packId(i % 6, i), i % 6, i, word, 0, word.length);
+                log.append(e);
+                if (i % batch == 0) log.commit();
+            }
+            log.commit();
+            bytes = log.size();
+        }
+        double secs = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s\t%d\t%d\t%.0f\t\t%.1f%n", mode, batch, records,
+                records / secs, bytes / secs / (1 << 20));
+        Files.deleteIfExists(file);
+    }
+}
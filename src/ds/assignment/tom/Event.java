@@ -1,58 +1,236 @@
 package ds.assignment.tom;
 
-import java.io.Serializable;
-import java.util.Objects;
+import java.nio.charset.StandardCharsets;
 
 
-public class Event implements Serializable, Comparable<Event> {
+public class Event implements Comparable<Event> {
 
-    private static final long serialVersionUID = 1L;
+    public enum Type {
+        DATA, ACK,
+        RESYNC,       // recovering peer asks for everything delivered after its last log entry
+        REPLAY,       // a delivered DATA resent from the responder's log, in delivery order
+        REPLAY_END,   // end of a resync answer
+        NACK,         // gap repair request: msgId = first missing seq, lamportTs = last missing seq
+        HEARTBEAT,    // idle sender announces its last stream seq (msgId) so tail losses are noticed
+        SNAPSHOT;     // snapshot chunk in a resync answer: msgId = snapshot size, lamportTs = chunk offset
 
-    public enum Type { DATA, ACK }
+        // values() clones the array on every call; decode() must not allocate
+        private static final Type[] VALUES = values();
+        static Type of(int ordinal) { return VALUES[ordinal]; }
+    }
+
+    // ------------ Wire format ------------
+    // Fixed-size big-endian header followed by payloadLen bytes:
+    //   type(1) | reserved(1) | payloadLen(2) | originPid(4) | senderPid(4) | msgId(8) | lamportTs(8) | seq(8)
+    // seq is the sender's multicast stream sequence (0 = unsequenced unicast/control frame)
+    public static final int HEADER_SIZE = 36;
+    public static final int MAX_PAYLOAD = 1024;
+    public static final int MAX_FRAME = HEADER_SIZE + MAX_PAYLOAD;
+
+    // msgId = originPid (upper 24 bits) | per-origin sequence (lower 40 bits)
+    private static final int SEQ_BITS = 40;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
 
     private Type type;
-    private String msgId;
+    private long msgId;
     private int originPid;   // For DATA
     private int senderPid;   // For ACK (and equals origin for DATA)
     private long lamportTs;
-    private String word;     // Only for DATA
+    private long seq;        // Sender stream sequence, set when the frame is multicast
+    private byte[] payload = new byte[32]; // Only for DATA (UTF-8 word); grown on demand, reused by the pool
+    private int payloadLen;
+
+    // Intrusive link for the per-origin inboxes of HoldbackMerge (no node allocation per offer)
+    volatile Event next;
+
+    // Cria um evento vazio (usado pelo EventPool)
+    Event() {}
 
     // Cria um evento do tipo DATA com os parâmetros fornecidos
-    public static Event data(String msgId, int originPid, long lamportTs, String word) {
-        Event e = new Event();
-        e.type = Type.DATA;
-        e.msgId = msgId;
-        e.originPid = originPid;
-        e.senderPid = originPid;
-        e.lamportTs = lamportTs;
-        e.word = word;
-        return e;
+    public static Event data(long msgId, int originPid, long lamportTs, String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        return new Event().setData(msgId, originPid, lamportTs, bytes, 0, bytes.length);
     }
 
     // Cria um evento do tipo ACK com os parâmetros fornecidos
-    public static Event ack(String msgId, int senderPid, long lamportTs) {
-        Event e = new Event();
-        e.type = Type.ACK;
-        e.msgId = msgId;
-        e.senderPid = senderPid;
-        e.originPid = -1;
-        e.lamportTs = lamportTs;
-        e.word = null;
-        return e;
+    public static Event ack(long msgId, int senderPid, long lamportTs) {
+        return new Event().setAck(msgId, senderPid, lamportTs);
+    }
+
+    // Preenche este evento (reutilizado) como DATA, copiando o payload
+    public Event setData(long msgId, int originPid, long lamportTs, byte[] src, int off, int len) {
+        this.type = Type.DATA;
+        this.msgId = msgId;
+        this.originPid = originPid;
+        this.senderPid = originPid;
+        this.lamportTs = lamportTs;
+        this.seq = 0;
+        setPayload(src, off, len);
+        return this;
+    }
+
+    // Preenche este evento (reutilizado) como ACK
+    public Event setAck(long msgId, int senderPid, long lamportTs) {
+        this.type = Type.ACK;
+        this.msgId = msgId;
+        this.senderPid = senderPid;
+        this.originPid = -1;
+        this.lamportTs = lamportTs;
+        this.seq = 0;
+        this.payloadLen = 0;
+        return this;
+    }
+
+    // Preenche este evento como mensagem de controlo (sem payload)
+    public Event setControl(Type type, long msgId, int originPid, int senderPid, long lamportTs) {
+        this.type = type;
+        this.msgId = msgId;
+        this.originPid = originPid;
+        this.senderPid = senderPid;
+        this.lamportTs = lamportTs;
+        this.seq = 0;
+        this.payloadLen = 0;
+        return this;
+    }
+
+    // Define a sequência de stream com que o frame vai ser enviado (0 = não sequenciado)
+    Event setSeq(long seq) {
+        this.seq = seq;
+        return this;
+    }
+
+    // Altera apenas o tipo do evento (ex.: REPLAY recebido passa a DATA)
+    Event retype(Type type) {
+        this.type = type;
+        return this;
+    }
+
+    // Limpa o evento antes de voltar ao pool (mantém o buffer de payload)
+    void reset() {
+        type = null;
+        msgId = 0;
+        originPid = -1;
+        senderPid = -1;
+        lamportTs = 0;
+        seq = 0;
+        payloadLen = 0;
+        next = null;
+    }
+
+    // Copia o payload para o buffer interno, aumentando-o se necessário
+    private void setPayload(byte[] src, int off, int len) {
+        if (len > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("payload too large: " + len + " > " + MAX_PAYLOAD);
+        }
+        if (payload.length < len) payload = new byte[Math.max(len, payload.length * 2)];
+        System.arraycopy(src, off, payload, 0, len);
+        payloadLen = len;
+    }
+
+    // ----------------- Compact msgId -----------------
+
+    // Junta (originPid, seq) num único long
+    public static long packId(int originPid, long seq) {
+        return ((long) originPid << SEQ_BITS) | (seq & SEQ_MASK);
+    }
+
+    // Extrai o PID de origem de um msgId
+    public static int idOrigin(long msgId) { return (int) (msgId >>> SEQ_BITS); }
+
+    // Extrai a sequência por origem de um msgId
+    public static long idSeq(long msgId) { return msgId & SEQ_MASK; }
+
+    // Formata um msgId como "origem.seq" (origem 1-based, como nos logs)
+    public static String idToString(long msgId) {
+        return (idOrigin(msgId) + 1) + "." + idSeq(msgId);
     }
 
+    // ----------------- Accessors -----------------
+
     // Retorna o tipo do evento (DATA ou ACK)
     public Type getType() { return type; }
     // Retorna o identificador único da mensagem
-    public String getMsgId() { return msgId; }
+    public long getMsgId() { return msgId; }
     // Retorna o PID de origem do evento DATA
     public int getOriginPid() { return originPid; }
     // Retorna o PID do peer que enviou o evento
     public int getSenderPid() { return senderPid; }
     // Retorna o timestamp Lamport do evento
     public long getLamportTs() { return lamportTs; }
-    // Retorna a palavra associada ao evento DATA
-    public String getWord() { return word; }
+    // Retorna a sequência de stream do remetente (0 = não sequenciado)
+    public long getSeq() { return seq; }
+    // Retorna o buffer interno do payload (válido até getPayloadLength())
+    public byte[] getPayload() { return payload; }
+    // Retorna o tamanho do payload em bytes
+    public int getPayloadLength() { return payloadLen; }
+    // Retorna a palavra associada ao evento DATA (aloca uma String; só para logging)
+    public String getWord() {
+        return type == Type.DATA ? new String(payload, 0, payloadLen, StandardCharsets.UTF_8) : null;
+    }
+
+    // ----------------- Encoding -----------------
+
+    // Escreve o evento (header + payload) em buf a partir de off; retorna o número de bytes escritos
+    public int encode(byte[] buf, int off) {
+        buf[off] = (byte) type.ordinal();
+        buf[off + 1] = 0;
+        putShort(buf, off + 2, payloadLen);
+        putInt(buf, off + 4, originPid);
+        putInt(buf, off + 8, senderPid);
+        putLong(buf, off + 12, msgId);
+        putLong(buf, off + 20, lamportTs);
+        putLong(buf, off + 28, seq);
+        System.arraycopy(payload, 0, buf, off + HEADER_SIZE, payloadLen);
+        return HEADER_SIZE + payloadLen;
+    }
+
+    // Lê o tamanho do payload a partir de um header já recebido
+    public static int payloadLength(byte[] buf, int off) {
+        return ((buf[off + 2] & 0xFF) << 8) | (buf[off + 3] & 0xFF);
+    }
+
+    // Preenche este evento a partir de um frame completo (header + payload) em buf
+    public void decode(byte[] buf, int off) {
+        int t = buf[off] & 0xFF;
+        if (t >= Type.VALUES.length) {
+            throw new IllegalArgumentException("unknown event type " + t);
+        }
+        type = Type.of(t);
+        int len = payloadLength(buf, off);
+        originPid = getInt(buf, off + 4);
+        senderPid = getInt(buf, off + 8);
+        msgId = getLong(buf, off + 12);
+        lamportTs = getLong(buf, off + 20);
+        seq = getLong(buf, off + 28);
+        setPayload(buf, off + HEADER_SIZE, len);
+    }
+
+    private static void putShort(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 8);
+        b[i + 1] = (byte) v;
+    }
+
+    private static void putInt(byte[] b, int i, int v) {
+        b[i] = (byte) (v >>> 24);
+        b[i + 1] = (byte) (v >>> 16);
+        b[i + 2] = (byte) (v >>> 8);
+        b[i + 3] = (byte) v;
+    }
+
+    private static void putLong(byte[] b, int i, long v) {
+        putInt(b, i, (int) (v >>> 32));
+        putInt(b, i + 4, (int) v);
+    }
+
+    private static int getInt(byte[] b, int i) {
+        return ((b[i] & 0xFF) << 24) | ((b[i + 1] & 0xFF) << 16) | ((b[i + 2] & 0xFF) << 8) | (b[i + 3] & 0xFF);
+    }
+
+    private static long getLong(byte[] b, int i) {
+        return ((long) getInt(b, i) << 32) | (getInt(b, i + 4) & 0xFFFFFFFFL);
+    }
+
+    // ----------------- Ordering -----------------
 
     // Total order comparator: (lamportTs, originPid, msgId)
     @Override
@@ -62,7 +240,7 @@ public class Event implements Serializable, Comparable<Event> {
         if (c != 0) return c;
         c = Integer.compare(this.originPid, other.originPid);
         if (c != 0) return c;
-        return this.msgId.compareTo(other.msgId);
+        return Long.compare(this.msgId, other.msgId);
     }
 
     @Override
@@ -70,21 +248,21 @@ public class Event implements Serializable, Comparable<Event> {
     public boolean equals(Object o) {
         if (!(o instanceof Event)) return false;
         Event other = (Event) o;
-        return Objects.equals(this.msgId, other.msgId) && this.type == other.type;
+        return this.msgId == other.msgId && this.type == other.type;
     }
 
     @Override
     // Gera o hashCode do evento baseado no tipo e msgId
     public int hashCode() {
-        return Objects.hash(type, msgId);
+        return 31 * (type == null ? 0 : type.ordinal()) + Long.hashCode(msgId);
     }
 
     @Override
     // Retorna uma representação textual do evento
     public String toString() {
         if (type == Type.DATA) {
-            return "DATA{msgId=" + msgId + ", originPid=" + originPid + ", ts=" + lamportTs + ", word=" + word + "}";
+            return "DATA{msgId=" + idToString(msgId) + ", originPid=" + originPid + ", ts=" + lamportTs + ", word=" + getWord() + "}";
         }
-        return "ACK{msgId=" + msgId + ", senderPid=" + senderPid + ", ts=" + lamportTs + "}";
+        return type + "{msgId=" + idToString(msgId) + ", senderPid=" + senderPid + ", ts=" + lamportTs + "}";
     }
-}
\ No newline at end of file
+}
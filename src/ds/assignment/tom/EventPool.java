@@ -0,0 +1,37 @@
+package ds.assignment.tom;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool de instâncias de Event reutilizadas nos caminhos de envio e receção.
+ *
+ * Backed by an ArrayBlockingQueue so acquire/release never allocate a node. When the pool
+ * is empty a fresh Event is created; when it is full the released Event is left to the GC.
+ */
+public class EventPool {
+
+    private final ArrayBlockingQueue<Event> free;
+
+    public EventPool(int capacity) {
+        this.free = new ArrayBlockingQueue<>(capacity);
+        for (int i = 0; i < capacity; i++) {
+            free.offer(new Event());
+        }
+    }
+
+    // Obtém um evento livre (ou cria um novo se o pool estiver vazio)
+    public Event acquire() {
+        Event e = free.poll();
+        return (e != null) ? e : new Event();
+    }
+
+    // Devolve um evento ao pool depois de o limpar
+    public void release(Event e) {
+        if (e == null) return;
+        e.reset();
+        free.offer(e);
+    }
+
+    // Retorna o número de eventos livres no pool
+    public int available() { return free.size(); }
+}
@@ -0,0 +1,109 @@
+package ds.assignment.tom;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.PriorityBlockingQueue;
+
+/**
+ * Compara a holdback antiga (PriorityBlockingQueue) com a HoldbackMerge sob contenção, a 6 e 64 origens.
+ *
+ * One producer thread per origin (like one receiver thread per link) inserts that origin's
+ * DATA in timestamp order, while a single delivery thread takes them out in total order as
+ * fast as it can (every head treated as stable). Reported: total throughput, the mean
+ * producer cost per insert and the delivery thread's cost per event taken.
+ *
+ * Usage: java ds.assignment.tom.HoldbackBenchmark [events]
+ */
+public class HoldbackBenchmark {
+
+    private static final int[] ORIGINS = {6, 64};
+    private static final byte[] EMPTY = new byte[0];
+    private static volatile long sink;   // keeps the JIT from discarding the delivery loop
+
+    // Ponto de entrada: executa o benchmark para cada número de origens
+    public static void main(String[] args) throws InterruptedException {
+        int events = (args.length >= 1) ? Integer.parseInt(args[0]) : 1_000_000;
+
+        System.out.println("origins\tvariant\t\tMevents/s\tinsert ns/op\tdeliver ns/op");
+        for (int origins : ORIGINS) {
+            // Warm-up so the JIT has compiled both variants before measuring
+            for (int w = 0; w < 3; w++) {
+                run(origins, events / 4, false);
+                run(origins, events / 4, true);
+            }
+            report(origins, "PBQ", run(origins, events, false));
+            report(origins, "merge", run(origins, events, true));
+        }
+    }
+
+    // Imprime uma linha de resultados: {elapsedNs, producerNsTotal, events}
+    private static void report(int origins, String variant, double[] r) {
+        System.out.printf("%d\t%-8s\t%.2f\t\t%.1f\t\t%.1f%n", origins, variant,
+                r[2] / (r[0] / 1e3), r[1] / r[2], r[0] / r[2]);
+    }
+
+    // Corre um cenário; retorna {tempo total ns, soma do tempo dos produtores ns, eventos}
+    private static double[] run(int origins, int events, boolean merge) throws InterruptedException {
+        int perOrigin = events / origins;
+        int total = perOrigin * origins;
+        Event[][] input = new Event[origins][perOrigin];
+        for (int o = 0; o < origins; o++) {
+            for (int i = 0; i < perOrigin; i++) {
+                // Interleaved timestamps: origin o sends at ts = i * origins + o
+                long ts = (long) i * origins + o;
+                input[o][i] = new Event().setData(Event.packId(o, i + 1), o, ts, EMPTY, 0, 0);
+            }
+        }
+
+        PriorityBlockingQueue<Event> pbq = new PriorityBlockingQueue<>();
+        HoldbackMerge hm = new HoldbackMerge(origins);
+        CountDownLatch go = new CountDownLatch(1);
+        long[] producerNs = new long[origins];
+        Thread[] producers = new Thread[origins];
+        for (int o = 0; o < origins; o++) {
+            final int origin = o;
+            producers[o] = new Thread(() -> {
+                try { go.await(); } catch (InterruptedException e) { return; }
+                Event[] mine = input[origin];
+                long t0 = System.nanoTime();
+                if (merge) {
+                    for (Event e : mine) hm.offer(e);
+                } else {
+                    for (Event e : mine) pbq.add(e);
+                }
+                producerNs[origin] = System.nanoTime() - t0;
+            });
+            producers[o].start();
+        }
+
+        long start = System.nanoTime();
+        go.countDown();
+        int taken = 0;
+        long checksum = 0;
+        while (taken < total) {
+            if (merge) {
+                hm.drain();
+                Event e;
+                while ((e = hm.peek()) != null) {
+                    hm.poll();
+                    checksum += e.getMsgId();
+                    taken++;
+                }
+            } else {
+                Event e;
+                while ((e = pbq.peek()) != null) {
+                    pbq.poll();
+                    checksum += e.getMsgId();
+                    taken++;
+                }
+            }
+            Thread.onSpinWait();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Thread t : producers) t.join();
+        sink = checksum;
+
+        long sumProducer = 0;
+        for (long ns : producerNs) sumProducer += ns;
+        return new double[] {elapsed, sumProducer, total};
+    }
+}
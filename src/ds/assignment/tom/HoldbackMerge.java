@@ -0,0 +1,191 @@
+package ds.assignment.tom;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Holdback de DATA em filas por origem, com merge k-way das cabeças na thread de entrega.
+ *
+ * Producers (receiver threads, the sending thread) push into a lock-free intrusive MPSC
+ * inbox per origin (Vyukov): one getAndSet plus one volatile store, linked through
+ * Event.next. Only the delivery thread calls the other methods: drain() moves the inboxes
+ * into per-origin FIFOs, and peek/poll take the smallest (ts, origin, msgId) among the
+ * origin heads, kept in a k-entry heap.
+ *
+ * Each origin multicasts in timestamp order, so a FIFO append is the normal case; frames
+ * that still arrive out of order (relays during a resync) go to a small per-origin heap.
+ */
+public class HoldbackMerge {
+
+    private final int origins;
+
+    // Producer side: last node pushed into each inbox
+    private final AtomicReferenceArray<Event> inboxHead;
+
+    // Consumer side (delivery thread only)
+    private final Event[] inboxTail;                 // next node to take (a stub when empty)
+    private final Event[] stubs;
+    private final ArrayDeque<Event>[] fifo;
+    private final PriorityQueue<Event>[] late;       // out-of-order arrivals per origin
+    private final Event[] originHead;                // head of each origin currently in heads
+    private final PriorityQueue<Event> heads;        // at most one entry per origin
+    private int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HoldbackMerge(int origins) {
+        this.origins = origins;
+        this.inboxHead = new AtomicReferenceArray<>(origins);
+        this.inboxTail = new Event[origins];
+        this.stubs = new Event[origins];
+        this.fifo = new ArrayDeque[origins];
+        this.late = new PriorityQueue[origins];
+        this.originHead = new Event[origins];
+        this.heads = new PriorityQueue<>(Math.max(1, origins));
+        for (int o = 0; o < origins; o++) {
+            stubs[o] = new Event();
+            inboxHead.set(o, stubs[o]);
+            inboxTail[o] = stubs[o];
+            fifo[o] = new ArrayDeque<>();
+            late[o] = new PriorityQueue<>();
+        }
+    }
+
+    // ----------------- Producers (any thread) -----------------
+
+    // Publica um DATA na inbox da sua origem
+    public void offer(Event e) {
+        int o = e.getOriginPid();
+        if (o < 0 || o >= origins) throw new IllegalArgumentException("origin " + o + " outside 0.." + (origins - 1));
+        e.next = null;
+        Event prev = inboxHead.getAndSet(o, e);
+        prev.next = e;
+    }
+
+    // ----------------- Consumer (delivery thread only) -----------------
+
+    // Move tudo o que já foi publicado nas inboxes para as filas por origem
+    public void drain() {
+        for (int o = 0; o < origins; o++) {
+            Event e;
+            while ((e = takeInbox(o)) != null) place(o, e);
+        }
+    }
+
+    // Retorna o menor evento já drenado (sem remover), ou null
+    public Event peek() {
+        return heads.peek();
+    }
+
+    // Remove e retorna o menor evento já drenado, ou null
+    public Event poll() {
+        Event h = heads.poll();
+        if (h == null) return null;
+        int o = h.getOriginPid();
+        Event f = fifo[o].peekFirst();
+        if (f == h) fifo[o].pollFirst(); else late[o].poll();
+        size--;
+        originHead[o] = null;
+        refreshHead(o);
+        return h;
+    }
+
+    // Remove (e retorna) o evento igual a like (mesmo msgId e tipo), ou null se não estiver presente
+    public Event remove(Event like) {
+        int o = like.getOriginPid();
+        if (o < 0 || o >= origins) return null;
+        drain();
+        Event found = removeEqual(fifo[o], like);
+        if (found == null) found = removeEqual(late[o], like);
+        if (found == null) return null;
+        size--;
+        if (originHead[o] == found) {
+            heads.remove(found);
+            originHead[o] = null;
+        }
+        refreshHead(o);
+        return found;
+    }
+
+    // Percorre os eventos já drenados (sem ordem definida)
+    public void forEach(Consumer<Event> action) {
+        for (int o = 0; o < origins; o++) {
+            fifo[o].forEach(action);
+            late[o].forEach(action);
+        }
+    }
+
+    // Retorna o número de eventos já drenados
+    public int size() { return size; }
+
+    // Retira o próximo nó da inbox de o (Vyukov MPSC), ou null se vazia
+    private Event takeInbox(int o) {
+        Event stub = stubs[o];
+        Event tail = inboxTail[o];
+        Event next = tail.next;
+        if (tail == stub) {
+            if (next == null) return null;
+            inboxTail[o] = next;
+            tail = next;
+            next = next.next;
+        }
+        if (next == null) {
+            // tail is the last node: park the stub behind it so tail can be handed out
+            if (tail == inboxHead.get(o)) {
+                stub.next = null;
+                Event prev = inboxHead.getAndSet(o, stub);
+                prev.next = stub;
+            }
+            // A producer is between getAndSet and link. tail itself is complete and its
+            // timestamp may already be stable, so wait for the link (a few instructions)
+            // rather than leave tail behind for the next drain.
+            while ((next = tail.next) == null) Thread.onSpinWait();
+        }
+        inboxTail[o] = next;
+        tail.next = null;
+        return tail;
+    }
+
+    // Coloca um evento drenado na estrutura da sua origem
+    private void place(int o, Event e) {
+        size++;
+        Event last = fifo[o].peekLast();
+        if (last == null || last.compareTo(e) < 0) {
+            fifo[o].addLast(e);
+        } else {
+            late[o].add(e);
+        }
+        Event h = originHead[o];
+        if (h == null || e.compareTo(h) < 0) {
+            if (h != null) heads.remove(h);
+            originHead[o] = e;
+            heads.add(e);
+        }
+    }
+
+    // Recoloca a cabeça da origem o no heap de merge, se ainda não estiver
+    private void refreshHead(int o) {
+        if (originHead[o] != null) return;
+        Event f = fifo[o].peekFirst();
+        Event l = late[o].peek();
+        Event h = (f == null) ? l : (l == null || f.compareTo(l) < 0) ? f : l;
+        if (h != null) {
+            originHead[o] = h;
+            heads.add(h);
+        }
+    }
+
+    // Remove de c o primeiro elemento igual a like e retorna-o
+    private static Event removeEqual(Iterable<Event> c, Event like) {
+        for (Iterator<Event> it = c.iterator(); it.hasNext(); ) {
+            Event e = it.next();
+            if (e.equals(like)) {
+                it.remove();
+                return e;
+            }
+        }
+        return null;
+    }
+}
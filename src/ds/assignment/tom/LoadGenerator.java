@@ -0,0 +1,190 @@
+package ds.assignment.tom;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gerador de carga para o submit() do tom, em malha aberta ou fechada, sobre uma SimNetwork.
+ *
+ * open:   one thread submits at a Poisson rate to random peers. When a peer's window is full
+ *         submit() blocks (backpressure); latency is measured from the scheduled send time,
+ *         so the time spent waiting for the window is counted (no coordinated omission).
+ * closed: each peer gets a number of clients that submit, wait for their own delivery and
+ *         submit again; throughput is then set by the ordering latency.
+ *
+ * Usage: java ds.assignment.tom.LoadGenerator <open|closed> [peers] [seconds] [msgsPerSec|clientsPerPeer]
+ *        [maxInFlight] [payloadBytes] [latencyMs] [jitterMs] [dropProb] [seed]
+ */
+public class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_MS = 30_000;
+
+    private final Peer[] peers;
+    private final int payloadBytes;
+    private final Latencies latencies = new Latencies();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong submitted = new AtomicLong();
+    private long stalls;
+
+    public LoadGenerator(Peer[] peers, int payloadBytes) {
+        this.peers = peers;
+        this.payloadBytes = payloadBytes;
+    }
+
+    // Latências registadas pelas threads de entrega (ns)
+    private static final class Latencies {
+        private long[] values = new long[4096];
+        private int size;
+
+        synchronized void add(long ns) {
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = ns;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(values, size);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    // Malha aberta: submissões Poisson a rate msgs/s durante seconds
+    public void runOpen(double rate, double seconds, long seed) throws InterruptedException {
+        Random rng = new Random(seed);
+        byte[] payload = new byte[payloadBytes];
+        long start = System.nanoTime();
+        long end = start + (long) (seconds * 1e9);
+        long next = start;
+        while (true) {
+            next += (long) (-Math.log(1.0 - rng.nextDouble()) / rate * 1e9);
+            if (next >= end) break;
+            long wait = next - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            Peer p = peers[rng.nextInt(peers.length)];
+            CompletableFuture<Long> f = p.trySubmit(payload);
+            if (f == null) {
+                stalls++;
+                f = p.submit(payload);
+            }
+            track(f, next);
+        }
+    }
+
+    // Malha fechada: clientsPerPeer clientes por peer, cada um com uma mensagem de cada vez
+    public void runClosed(int clientsPerPeer, double seconds) throws InterruptedException {
+        long end = System.nanoTime() + (long) (seconds * 1e9);
+        Thread[] clients = new Thread[peers.length * clientsPerPeer];
+        for (int c = 0; c < clients.length; c++) {
+            final Peer p = peers[c % peers.length];
+            clients[c] = new Thread(() -> {
+                byte[] payload = new byte[payloadBytes];
+                try {
+                    while (System.nanoTime() < end) {
+                        long t0 = System.nanoTime();
+                        CompletableFuture<Long> f = p.submit(payload);
+                        track(f, t0);
+                        f.join();
+                    }
+                } catch (InterruptedException ignored) {
+                } catch (RuntimeException e) {
+                    // Peer stopped under us
+                }
+            }, "client-" + c);
+            clients[c].start();
+        }
+        for (Thread t : clients) t.join();
+    }
+
+    // Regista a latência de uma submissão quando for entregue
+    private void track(CompletableFuture<Long> f, long startNs) {
+        submitted.incrementAndGet();
+        f.whenComplete((index, error) -> {
+            if (error != null) {
+                failed.incrementAndGet();
+            } else {
+                latencies.add(System.nanoTime() - startNs);
+                completed.incrementAndGet();
+            }
+        });
+    }
+
+    // Espera que todas as submissões sejam entregues (ou expire o prazo)
+    public boolean drain() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (completed.get() + failed.get() < submitted.get() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        return completed.get() + failed.get() >= submitted.get();
+    }
+
+    // Imprime o relatório da corrida
+    public void report(String mode, double elapsedSec) {
+        long[] lat = latencies.sorted();
+        System.out.printf("%s: submitted=%d completed=%d failed=%d backpressureStalls=%d%n",
+                mode, submitted.get(), completed.get(), failed.get(), stalls);
+        System.out.printf("throughput: %.0f msg/s ordered | latency (submit -> own delivery): p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                completed.get() / elapsedSec, pct(lat, 0.50), pct(lat, 0.99), pct(lat, 0.999),
+                lat.length > 0 ? lat[lat.length - 1] / 1e6 : 0.0);
+    }
+
+    // Percentil p (0..1) de um array ordenado, em ms
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+
+    // Ponto de entrada: monta um cluster em memória e corre a carga pedida
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || !(args[0].equals("open") || args[0].equals("closed"))) {
+            System.err.println("Usage: java ds.assignment.tom.LoadGenerator <open|closed> [peers] [seconds] [msgsPerSec|clientsPerPeer]"
+                    + " [maxInFlight] [payloadBytes] [latencyMs] [jitterMs] [dropProb] [seed]");
+            System.exit(1);
+        }
+        boolean open = args[0].equals("open");
+        int n = (args.length >= 2) ? Integer.parseInt(args[1]) : 6;
+        double seconds = (args.length >= 3) ? Double.parseDouble(args[2]) : 10;
+        double load = (args.length >= 4) ? Double.parseDouble(args[3]) : (open ? 1000 : 4);
+        int window = (args.length >= 5) ? Integer.parseInt(args[4]) : 256;
+        int payloadBytes = (args.length >= 6) ? Integer.parseInt(args[5]) : 32;
+        double latencyMs = (args.length >= 7) ? Double.parseDouble(args[6]) : 0.5;
+        double jitterMs = (args.length >= 8) ? Double.parseDouble(args[7]) : 0.2;
+        double drop = (args.length >= 9) ? Double.parseDouble(args[8]) : 0.0;
+        long seed = (args.length >= 10) ? Long.parseLong(args[9]) : 1;
+
+        System.out.printf("LoadGenerator %s: peers=%d seconds=%.1f %s=%.0f maxInFlight=%d payload=%dB latency=%.2fms jitter=%.2fms drop=%.3f%n",
+                args[0], n, seconds, open ? "rate" : "clientsPerPeer", load, window, payloadBytes, latencyMs, jitterMs, drop);
+
+        SimNetwork net = new SimNetwork(n, seed, latencyMs, jitterMs, 0, drop);
+        List<String> words = List.of("load");
+        Peer[] peers = new Peer[n];
+        for (int pid = 0; pid < n; pid++) {
+            peers[pid] = new Peer(pid, n, words, net.endpoint(pid), null, DeliveryLog.SyncMode.NONE);
+            peers[pid].setVerbose(false);
+            peers[pid].setGeneratorRate(0);
+            peers[pid].setStartupDelayMs(0);
+            peers[pid].setMaxInFlight(window);
+        }
+        for (Peer p : peers) p.start();
+
+        LoadGenerator gen = new LoadGenerator(peers, payloadBytes);
+        long start = System.nanoTime();
+        if (open) gen.runOpen(load, seconds, seed); else gen.runClosed((int) load, seconds);
+        boolean drained = gen.drain();
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        for (Peer p : peers) p.stop();
+        for (Peer p : peers) p.join();
+        net.shutdown();
+
+        gen.report(args[0], elapsed);
+        if (!drained) System.out.println("WARNING: not every submission was delivered before the drain timeout");
+        System.exit(drained ? 0 : 1);
+    }
+}
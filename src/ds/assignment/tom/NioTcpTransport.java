@@ -0,0 +1,135 @@
+package ds.assignment.tom;
+
+import ds.assignment.net.Connection;
+import ds.assignment.net.FrameHandler;
+import ds.assignment.net.NioLoop;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transporte TCP sobre o NioLoop partilhado: as mesmas ligações persistentes que o TcpTransport,
+ * sem uma thread por ligação.
+ *
+ * Frames are queued on the connection and written by the loop (several per gathering write),
+ * so send() never blocks on the network. Received frames are copied once, from the loop's
+ * direct read buffer into one scratch array, and handed to the receiver on the loop thread.
+ */
+public class NioTcpTransport implements Transport {
+
+    private final int myPid;
+    private final Peer.PeerInfo me;
+    private final Map<Integer, Link> links = new HashMap<>();
+    private final NioLoop loop = NioLoop.get();
+    private final Set<Connection> accepted = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean running = true;
+    private ServerSocketChannel server;
+    private Receiver receiver;
+    private final byte[] scratch = new byte[Event.MAX_FRAME];   // loop thread only
+
+    public NioTcpTransport(int myPid, Map<Integer, Peer.PeerInfo> peers) {
+        this.myPid = myPid;
+        this.me = peers.get(myPid);
+        for (Peer.PeerInfo p : peers.values()) {
+            if (p.pid != myPid) links.put(p.pid, new Link(p));
+        }
+    }
+
+    @Override
+    // Começa a aceitar ligações no loop NIO
+    public void start(Receiver receiver) throws IOException {
+        this.receiver = receiver;
+        server = loop.listen(new InetSocketAddress(me.host, me.port), new FrameHandler() {
+            @Override public void onOpen(Connection c) { accepted.add(c); }
+            @Override public void onClose(Connection c, IOException cause) { accepted.remove(c); }
+            @Override public void onFrame(Connection c, ByteBuffer frame) { onInbound(c, frame); }
+        });
+    }
+
+    // Copia um frame recebido para o array de trabalho e entrega-o ao receiver
+    private void onInbound(Connection c, ByteBuffer frame) {
+        int len = frame.remaining();
+        if (len < Event.HEADER_SIZE || len > Event.MAX_FRAME || !running) return;
+        frame.get(scratch, 0, len);
+        receiver.onFrame(scratch, len);
+    }
+
+    @Override
+    // Põe o frame na fila da ligação ao peer pid
+    public boolean send(int pid, byte[] frame, int len) {
+        Link link = links.get(pid);
+        return link != null && link.send(frame, len);
+    }
+
+    @Override
+    // Fecha o servidor e todas as ligações
+    public void close() {
+        running = false;
+        try { if (server != null) server.close(); } catch (IOException ignored) {}
+        for (Link link : links.values()) link.close();
+        for (Connection c : accepted) c.close();
+    }
+
+    @Override
+    public String toString() { return me.host + ":" + me.port + " (nio)"; }
+
+    // Ligação persistente para um peer; volta a ligar (com backoff) quando fecha
+    private final class Link implements FrameHandler {
+        private final Peer.PeerInfo target;
+        private Connection conn;
+        private long nextConnectMs;
+        private long backoffMs = 50;
+
+        Link(Peer.PeerInfo target) { this.target = target; }
+
+        // Põe um frame na fila; retorna false se o peer está em baixo (o frame é reparado por NACK)
+        synchronized boolean send(byte[] frame, int len) {
+            if (!running) return false;
+            if (conn == null) {
+                long now = System.currentTimeMillis();
+                if (now < nextConnectMs) return false;
+                try {
+                    conn = loop.connect(target.host, target.port, this);
+                } catch (IOException e) {
+                    failed();
+                    return false;
+                }
+            }
+            return conn.send(frame, 0, len);
+        }
+
+        @Override
+        public synchronized void onOpen(Connection c) { backoffMs = 50; }
+
+        @Override
+        public void onFrame(Connection c, ByteBuffer frame) {}
+
+        @Override
+        // A ligação caiu (ou não chegou a ligar): a próxima escrita volta a tentar depois do backoff
+        public synchronized void onClose(Connection c, IOException cause) {
+            if (conn == c) {
+                conn = null;
+                failed();
+            }
+        }
+
+        // Adia a próxima tentativa de ligação
+        private void failed() {
+            nextConnectMs = System.currentTimeMillis() + backoffMs;
+            backoffMs = Math.min(backoffMs * 2, 1000);
+        }
+
+        // Fecha a ligação atual
+        synchronized void close() {
+            if (conn != null) conn.close();
+            conn = null;
+        }
+    }
+}
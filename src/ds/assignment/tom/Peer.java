@@ -1,13 +1,16 @@
 package ds.assignment.tom;
 
 import java.io.*;
-import java.net.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.CRC32;
 
 public class Peer {
 
@@ -22,195 +25,547 @@ public class Peer {
     }
 
     // ------------ Runtime state ------------
-    private final int myPid; // 0..5
-    private final Map<Integer, PeerInfo> peers;           // pid -> info
+    private final int myPid; // 0..N-1
     private final int numPeers;
-    private final PeerInfo me;
 
-    // Lamport clock
-    private final AtomicLong lamport = new AtomicLong(0);
+    // Order-key clock: Lamport by default, hybrid logical (HLC) via setClock()
+    private volatile Clock clock = new Clock.Lamport();
 
-    // lastSeenLamport[pid] = max Lamport timestamp we've seen in any packet from pid
-    private final AtomicLong[] lastSeenLamport;
+    // HLC only: idle peers multicast a clock-only ACK every clockTickMs, so the stable bound
+    // keeps up with real time; deliveredThrough = stable bound everything below which is delivered
+    private static final long CLOCK_TICK_SEQ = 0;        // ACK msgId seq that acknowledges nothing
+    private volatile long clockTickMs = 0;
+    private volatile long deliveredThrough = 0;
+    private volatile long maxClockAheadMs = 0;
 
-    // Holdback queue for DATA messages only
-    private final PriorityBlockingQueue<Event> holdback = new PriorityBlockingQueue<>();
+    // lastSeen[pid] = max Lamport timestamp we've seen in any packet from pid (min kept at the root)
+    private final StabilityTracker lastSeen;
 
-    // Deduplication by msgId (DATA only)
-    private final Set<String> seenData = ConcurrentHashMap.newKeySet();
+    // Holdback for DATA messages only: lock-free inbox per origin, k-way merge in the delivery thread
+    private final HoldbackMerge holdback;
 
-    // Dictionary words
+    // Deduplication by (origin, seq) watermark + bounded window (DATA only); constant memory
+    private final DedupWindow seenData;
+
+    // Per-origin sequence for the msgIds we originate
+    private final AtomicLong nextSeq = new AtomicLong(0);
+
+    // Reused Event instances for the send and receive paths
+    private final EventPool pool = new EventPool(1024);
+
+    // Dictionary words (and their UTF-8 bytes, so sending a word does not encode it again)
     private final List<String> dictionaryWords;
+    private final byte[][] dictionaryBytes;
 
-    // Networking
+    // Networking: TCP links between processes, or an in-JVM simulated network (TomHarness)
     private volatile boolean running = true;
-    private ServerSocket serverSocket;
+    private final Transport transport;
+
+    // Per-thread encode buffer: frames are encoded once and written to every link
+    private final ThreadLocal<byte[]> sendBuffer = ThreadLocal.withInitial(() -> new byte[Event.MAX_FRAME]);
+
+    // Reliable multicast stream. Every DATA/ACK we multicast gets the next stream seq and a copy in
+    // the retransmit ring; receivers apply each sender's stream in seq order and NACK the gaps.
+    // Streams start at (start millis << 16), so a receiver that joins late knows where it began.
+    private static final int RETRANSMIT_CAPACITY = 4096;
+    private static final int HOLD_WINDOW = 256;          // out-of-order frames kept per sender
+    private static final long NACK_RETRY_MS = 50;
+    private static final long HEARTBEAT_MIN_MS = 100;
+    private static final long HEARTBEAT_MAX_MS = 2000;
+    private static final int STREAM_START_BITS = 16;
+    private final Object sendLock = new Object();
+    private long streamSeq = System.currentTimeMillis() << STREAM_START_BITS;   // guarded by sendLock
+    private volatile long lastSendMs = System.currentTimeMillis();
+    private final RetransmitBuffer retransmit = new RetransmitBuffer(RETRANSMIT_CAPACITY);
+    private final Inbound[] inbound;
+
+    // Durable delivery log (null = disabled)
+    private final DeliveryLog log;
+    private static final int MAX_DELIVERY_BATCH = 256;   // deliveries per group commit
+    private static final long RESYNC_TIMEOUT_MS = 5000;
+    // main() options, in the order they are also accepted by position
+    private static final String[] OPTIONS = {"log", "sync", "snapshot", "clock", "transport"};
+
+    // Recovery: last delivered order key (from the log, then from each delivery), and the resync exchange
+    private volatile boolean recovering = false;
+    private volatile long lastKeyTs = -1;
+    private volatile int lastKeyOrigin = -1;
+    private volatile long lastKeyMsgId = -1;
+    private final Queue<Event> replayQueue = new ConcurrentLinkedQueue<>();     // REPLAY / REPLAY_END received
+    private final Queue<Event> resyncRequests = new ConcurrentLinkedQueue<>();  // RESYNC received
+
+    // Replicated state machine: batched apply in delivery order, a snapshot every snapshotEvery
+    // deliveries (kept beside the log, which is then truncated). Delivery thread only.
+    private StateMachine stateMachine;
+    private long snapshotEvery;
+    private final Path snapshotFile;
+    private long appliedIndex;                 // deliveries so far in the total order
+    private long snapshotIndex;               // deliveries covered by latestSnapshot
+    private Snapshot latestSnapshot;
+    private final long[] deliveredSeq;        // per origin, highest delivered sequence
+    private byte[] incomingSnapshot;          // SNAPSHOT chunks being assembled during a resync
+
+    // Client submissions: every DATA we originate holds a window permit until it is delivered here,
+    // so at most maxInFlight of ours are undelivered and slot seq % maxInFlight is never reused early
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private Semaphore window = new Semaphore(DEFAULT_MAX_IN_FLIGHT);
+    private AtomicReferenceArray<CompletableFuture<Long>> waiting = new AtomicReferenceArray<>(DEFAULT_MAX_IN_FLIGHT);
+    private long firstOwnSeq = Long.MAX_VALUE;     // first seq sent by this run (older ones hold no permit)
+
+    // Delivery observer, stdout tracing and built-in load (tunable by harnesses before start())
+    private volatile DeliveryListener listener;
+    private volatile boolean verbose = true;
+    private volatile double generatorRate = 1.0;   // msgs/s, 0 = no generator
+    private volatile long startupDelayMs = 1500;
 
     // Threads
-    private Thread listenerThread;
     private Thread processThread;
     private Thread generatorThread;
+    private Thread heartbeatThread;
 
     public Peer(int myPid, String ipTablePath, String dictionaryPath) throws IOException {
+        this(myPid, ipTablePath, dictionaryPath, null, DeliveryLog.SyncMode.BATCH);
+    }
+
+    public Peer(int myPid, String ipTablePath, String dictionaryPath, Path logFile, DeliveryLog.SyncMode syncMode)
+            throws IOException {
+        this(myPid, ipTablePath, dictionaryPath, logFile, syncMode, false);
+    }
+
+    // nio = true usa o NioLoop partilhado (ds.assignment.net) em vez de uma thread por ligação
+    public Peer(int myPid, String ipTablePath, String dictionaryPath, Path logFile, DeliveryLog.SyncMode syncMode,
+                boolean nio) throws IOException {
+        this(myPid, loadPeers(ipTablePath), loadDictionary(dictionaryPath), logFile, syncMode, nio);
+    }
+
+    private Peer(int myPid, Map<Integer, PeerInfo> peers, List<String> words, Path logFile,
+                 DeliveryLog.SyncMode syncMode, boolean nio) throws IOException {
+        this(myPid, peers.size(), words,
+                nio ? new NioTcpTransport(myPid, checkPid(myPid, peers)) : new TcpTransport(myPid, checkPid(myPid, peers)),
+                logFile, syncMode);
+    }
+
+    // Peer sobre um transporte arbitrário (usado pelo harness com a rede simulada)
+    Peer(int myPid, int numPeers, List<String> words, Transport transport, Path logFile,
+         DeliveryLog.SyncMode syncMode) throws IOException {
+        if (myPid < 0 || myPid >= numPeers) {
+            throw new IllegalArgumentException("myPid " + myPid + " outside 0.." + (numPeers - 1));
+        }
         this.myPid = myPid;
-        this.peers = loadPeers(ipTablePath);
+        this.numPeers = numPeers;
+        this.transport = transport;
+
+        this.lastSeen = new StabilityTracker(numPeers);
+        this.holdback = new HoldbackMerge(numPeers);
+        this.seenData = new DedupWindow(numPeers);
+        this.inbound = new Inbound[numPeers];
+        for (int i = 0; i < numPeers; i++) inbound[i] = new Inbound();
+
+        this.dictionaryWords = words;
+        if (dictionaryWords.isEmpty()) {
+            throw new IllegalArgumentException("Dictionary has no usable words");
+        }
+        this.dictionaryBytes = new byte[dictionaryWords.size()][];
+        for (int i = 0; i < dictionaryBytes.length; i++) {
+            dictionaryBytes[i] = dictionaryWords.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        this.deliveredSeq = new long[numPeers];
+        this.log = (logFile != null) ? new DeliveryLog(logFile, syncMode) : null;
+        this.snapshotFile = (logFile != null) ? logFile.resolveSibling(logFile.getFileName() + ".snap") : null;
+    }
+
+    // Reconstrói relógio, sequência própria, watermarks de dedup e a máquina de estados
+    // a partir do último snapshot e do log de entregas que se lhe segue
+    private void recoverFromLog() throws IOException {
+        Snapshot snap = Snapshot.read(snapshotFile);
+        if (snap != null) installSnapshot(snap);
+
+        long[] delivered = {0};
+        Event[] batch = new Event[MAX_DELIVERY_BATCH];
+        int[] n = {0};
+        byte[] frame = new byte[Event.MAX_FRAME];
+        log.replay(new DeliveryLog.Visitor() {
+            @Override public void delivered(Event e) {
+                // Records the snapshot already covers (a crash before the truncation) are skipped
+                if (snap != null && !isAfter(e, snap.lastTs, snap.lastOrigin, snap.lastMsgId)) return;
+                delivered[0]++;
+                observeClock(e.getLamportTs());
+                long id = e.getMsgId();
+                seenData.markIfNew(Event.idOrigin(id), Event.idSeq(id));
+                // The replayed Event is reused: keep a copy for the batched apply
+                Event copy = pool.acquire();
+                e.encode(frame, 0);
+                copy.decode(frame, 0);
+                batch[n[0]++] = copy;
+                if (n[0] == batch.length) {
+                    applyDelivered(batch, n[0], false);
+                    release(batch, n[0]);
+                    n[0] = 0;
+                }
+            }
+            @Override public void reserved(long clock, long seq) {}
+        });
+        applyDelivered(batch, n[0], false);
+        release(batch, n[0]);
+
+        // Anything we may have sent before the crash is below the persisted reservation
+        observeClock(log.reservedClock());
+        nextSeq.set(log.reservedSeq());
+        updateMyLastSeen(clock.get());
+        // Every peer had passed lastKeyTs when we delivered it
+        for (int pid = 0; pid < numPeers; pid++) lastSeen.advance(pid, lastKeyTs);
+
+        recovering = delivered[0] > 0 || snap != null;
+        if (recovering) {
+            System.out.printf("[PID %d] RECOVER %d deliveries from log%s | clock=%d | nextSeq=%d | last=(ts=%d, origin=%d)%n",
+                    (myPid + 1), delivered[0], (snap != null) ? " after snapshot @" + snap.index : "",
+                    clock.get(), nextSeq.get(), lastKeyTs, (lastKeyOrigin + 1));
+        }
+    }
+
+    // Verifica que o pid deste peer existe na tabela de peers
+    private static Map<Integer, PeerInfo> checkPid(int myPid, Map<Integer, PeerInfo> peers) {
         if (!peers.containsKey(myPid)) {
             throw new IllegalArgumentException("myPid " + myPid + " not found in ip_table");
         }
-        this.numPeers = peers.size();
-        this.me = peers.get(myPid);
+        return peers;
+    }
+
+    // ----------------- Public API -----------------
+
+    // Regista o observador das entregas (chamado por ordem total na thread de entrega)
+    public void setDeliveryListener(DeliveryListener listener) { this.listener = listener; }
+
+    // Liga/desliga as linhas SEND/PROCESS no stdout
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
 
-        this.lastSeenLamport = new AtomicLong[numPeers];
-        for (int i = 0; i < numPeers; i++) {
-            this.lastSeenLamport[i] = new AtomicLong(0);
+    // Define a taxa do gerador Poisson interno (msgs/s); 0 desliga o gerador
+    public void setGeneratorRate(double ratePerSec) { this.generatorRate = ratePerSec; }
+
+    // Define quanto tempo start() espera pelos outros peers antes de gerar mensagens
+    public void setStartupDelayMs(long ms) { this.startupDelayMs = ms; }
+
+    // Define quantos DATA nossos podem estar por entregar ao mesmo tempo (antes de start())
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight <= 0) throw new IllegalArgumentException("maxInFlight must be > 0");
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+        this.waiting = new AtomicReferenceArray<>(maxInFlight);
+    }
+
+    // Submete um payload para ordem total; bloqueia enquanto a janela estiver cheia (backpressure).
+    // The future completes with the message's position in the total order once it is delivered
+    // here; non-async callbacks run on the delivery thread, so keep them short.
+    public CompletableFuture<Long> submit(byte[] payload) throws InterruptedException {
+        window.acquire();
+        return submitWithPermit(payload);
+    }
+
+    // Como submit(), mas retorna null de imediato se a janela estiver cheia
+    public CompletableFuture<Long> trySubmit(byte[] payload) {
+        if (!window.tryAcquire()) return null;
+        return submitWithPermit(payload);
+    }
+
+    // Retorna quantos DATA nossos estão por entregar
+    public int inFlight() { return maxInFlight - window.availablePermits(); }
+
+    // Envia um payload já com uma permissão da janela
+    private CompletableFuture<Long> submitWithPermit(byte[] payload) {
+        CompletableFuture<Long> done = new CompletableFuture<>();
+        try {
+            if (!running) throw new IllegalStateException("Peer stopped");
+            multicast(payload, 0, payload.length, done);
+        } catch (RuntimeException e) {
+            window.release();
+            done.completeExceptionally(e);
         }
+        return done;
+    }
 
-        this.dictionaryWords = loadDictionary(dictionaryPath);
-        if (dictionaryWords.isEmpty()) {
-            throw new IllegalArgumentException("Dictionary has no usable words: " + dictionaryPath);
+    // Define o relógio dos timestamps (antes de start()); com HLC, tickMs > 0 faz um peer parado
+    // multicast de um ACK só de relógio a cada tickMs, o que limita a staleness a ~tickMs + latência
+    public void setClock(Clock clock, long tickMs) {
+        this.clock = clock;
+        this.clockTickMs = tickMs;
+    }
+
+    // Retorna o relógio dos timestamps
+    public Clock clock() { return clock; }
+
+    // Retorna há quantos ms (relógio físico local) foi a fronteira estável já entregue; só com HLC.
+    // Every message stamped at or before that bound has been delivered (and applied) here;
+    // Long.MAX_VALUE until the first bound is known.
+    public long stalenessMs() {
+        if (!(clock instanceof Clock.Hybrid hlc)) throw new IllegalStateException("Staleness needs the hybrid clock");
+        long through = deliveredThrough;
+        return (through == 0) ? Long.MAX_VALUE : hlc.nowMs() - Clock.physicalMs(through);
+    }
+
+    // Espera até stalenessMs() <= boundMs (leitura com staleness limitada); false se timeoutMs expirar
+    public boolean awaitStaleness(long boundMs, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (stalenessMs() > boundMs) {
+            if (System.currentTimeMillis() >= deadline) return false;
+            Thread.sleep(1);
         }
+        return true;
+    }
+
+    // Retorna o maior avanço (ms) de um timestamp recebido sobre o nosso relógio físico; só com HLC
+    public long maxClockAheadMs() { return maxClockAheadMs; }
+
+    // Liga uma máquina de estados replicada; com log, tira um snapshot a cada snapshotEvery entregas (0 = nunca).
+    // Must be called before start(): recovery restores it from the snapshot and the log tail.
+    public void setStateMachine(StateMachine stateMachine, long snapshotEvery) {
+        this.stateMachine = stateMachine;
+        this.snapshotEvery = snapshotEvery;
     }
 
-    // ----------------- Public API -----------------
     // Inicia o peer, threads de listener, processamento e geração de mensagens
     public void start() throws IOException {
-        System.out.println("Starting PID=" + (myPid + 1) + " on " + me.host + ":" + me.port
-                + " peers=" + numPeers + " dictWords=" + dictionaryWords.size());
+        System.out.println("Starting PID=" + (myPid + 1) + " on " + transport
+                + " peers=" + numPeers + " dictWords=" + dictionaryWords.size() + " clock=" + clock);
+
+        if (log != null) recoverFromLog();
+        firstOwnSeq = nextSeq.get() + 1;
 
-        serverSocket = new ServerSocket(me.port, 50, InetAddress.getByName(me.host));
+        transport.start(this::onTransportFrame);
 
-        listenerThread = new Thread(this::listenLoop, "listener-" + (myPid + 1));
         processThread = new Thread(this::processLoop, "process-" + (myPid + 1));
         generatorThread = new Thread(this::poissonGeneratorLoop, "generator-" + (myPid + 1));
+        heartbeatThread = new Thread(this::heartbeatLoop, "heartbeat-" + (myPid + 1));
 
-        listenerThread.start();
         processThread.start();
+        heartbeatThread.start();
 
         // Give time for others to start listening (pragmatic)
-        try { Thread.sleep(1500); } catch (InterruptedException ignored) {}
+        try { Thread.sleep(startupDelayMs); } catch (InterruptedException ignored) {}
 
-        generatorThread.start();
+        // A restarted peer fetches what it missed before generating new messages
+        if (recovering) requestResync();
+
+        if (generatorRate > 0) generatorThread.start();
     }
 
     // Para a execução do peer e fecha o socket do servidor
     public void stop() {
         running = false;
-        try { if (serverSocket != null) serverSocket.close(); } catch (IOException ignored) {}
+        transport.close();
+        for (int i = 0; i < waiting.length(); i++) {
+            CompletableFuture<Long> f = waiting.getAndSet(i, null);
+            if (f != null) f.completeExceptionally(new IllegalStateException("Peer stopped before delivery"));
+        }
+        try { if (log != null) log.close(); } catch (IOException ignored) {}
     }
 
     // Aguarda o término das threads principais do peer
     public void join() throws InterruptedException {
-        if (listenerThread != null) listenerThread.join();
         if (processThread != null) processThread.join();
-        if (generatorThread != null) generatorThread.join();
+        if (generatorThread != null && generatorThread.isAlive()) generatorThread.join();
+        if (heartbeatThread != null) heartbeatThread.join();
     }
 
     // ----------------- Core algorithm -----------------
     
     // Gera uma palavra aleatória do dicionário e envia para todos os peers (DATA + ACK)
-    private void multicastRandomWord() {
-        // Local event: increment Lamport for DATA
-        long ts = lamport.incrementAndGet();
-        updateMyLastSeen(ts);
+    private void multicastRandomWord() throws InterruptedException {
+        int w = ThreadLocalRandom.current().nextInt(dictionaryWords.size());
+        byte[] word = dictionaryBytes[w];
+        window.acquire();
+        multicast(word, 0, word.length, null);
+    }
 
-        String word = dictionaryWords.get(ThreadLocalRandom.current().nextInt(dictionaryWords.size()));
-        String msgId = UUID.randomUUID().toString();
+    // Envia payload[off..off+len) para todos os peers (DATA + ACK); retorna o msgId atribuído.
+    // Caller holds a window permit; done (may be null) completes when we deliver the message.
+    private long multicast(byte[] payload, int off, int len, CompletableFuture<Long> done) {
+        if (len > Event.MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload too large: " + len + " > " + Event.MAX_PAYLOAD);
+        }
+        long ts;
+        long msgId;
+
+        // Timestamp, stream seq and the writes happen under one lock, so every link carries
+        // our frames in timestamp order
+        synchronized (sendLock) {
+            // Local event: increment Lamport for DATA
+            ts = clock.tick();
+
+            long seq = nextSeq.incrementAndGet();
+            msgId = Event.packId(myPid, seq);
+            reserve(ts, seq);
+            if (done != null) waiting.set((int) (seq % waiting.length()), done);
+
+            Event data = pool.acquire().setData(msgId, myPid, ts, payload, off, len);
 
-        Event data = Event.data(msgId, myPid, ts, word);
+            // Encode before enqueueing: once in the holdback the delivery thread may recycle it
+            byte[] frame = sendBuffer.get();
+            int frameLen = encodeSequenced(data, frame);
+
+            // Enqueue locally, before our lastSeen says we are past ts
+            if (!enqueueDataIfNew(data)) pool.release(data);
+            updateMyLastSeen(ts);
+
+            // Multicast DATA to others
+            multicastToAllExceptMe(frame, frameLen);
+
+            // Multicast ACK from sender with incremented Lamport
+            multicastAck(msgId);
+        }
 
         // SEND log
-        System.out.printf("[PID %d] SEND   word=\"%s\" | ts=%d | msgId=%s%n", 
-            (myPid + 1), word, ts, msgId);
+        if (verbose) {
+            System.out.printf("[PID %d] SEND   word=\"%s\" | ts=%d | msgId=%s%n",
+                (myPid + 1), new String(payload, off, len, StandardCharsets.UTF_8), ts, Event.idToString(msgId));
+        }
+        return msgId;
+    }
 
-        // Enqueue locally
-        enqueueDataIfNew(data);
+    // Envia um ACK com um novo timestamp Lamport para todos os peers exceto este
+    private void multicastAck(long msgId) {
+        synchronized (sendLock) {
+            long ackTs = clock.tick();
+            updateMyLastSeen(ackTs);
+            reserve(ackTs, nextSeq.get());
 
-        // Multicast DATA to others
-        multicastToAllExceptMe(data);
+            Event ack = pool.acquire().setAck(msgId, myPid, ackTs);
+            byte[] frame = sendBuffer.get();
+            int len = encodeSequenced(ack, frame);
+            pool.release(ack);
+            multicastToAllExceptMe(frame, len);
+        }
+    }
 
-        // Multicast ACK from sender with incremented Lamport
-        long ackTs = lamport.incrementAndGet();
-        updateMyLastSeen(ackTs);
-        Event ack = Event.ack(msgId, myPid, ackTs);
-        multicastToAllExceptMe(ack);
+    // Atribui a próxima seq do stream, codifica o frame e guarda uma cópia para retransmissão
+    private int encodeSequenced(Event evt, byte[] frame) {
+        // Caller holds sendLock
+        long seq = ++streamSeq;
+        int len = evt.setSeq(seq).encode(frame, 0);
+        retransmit.put(seq, frame, len);
+        lastSendMs = System.currentTimeMillis();
+        return len;
     }
 
 
-    // Processa um evento recebido (DATA ou ACK), atualiza relógio Lamport e envia ACK se necessário
-    private void onReceive(Event evt) {
+    // Processa um evento recebido (DATA ou ACK), atualiza relógio Lamport e envia ACK se necessário.
+    // Retorna true se o evento ficou retido na holdback (o chamador não o pode devolver ao pool).
+    private boolean onReceive(Event evt) {
+        // Recovery traffic is handed to the delivery thread as-is
+        switch (evt.getType()) {
+            case RESYNC -> { resyncRequests.add(evt); return true; }
+            case REPLAY, REPLAY_END, SNAPSHOT -> { replayQueue.add(evt); return true; }
+            default -> {}
+        }
+
         int remotePid = evt.getSenderPid();
 
         // Update Lamport clock correctly
         long receivedTs = evt.getLamportTs();
-        long local = lamport.get();
-        long newLocal = Math.max(local, receivedTs) + 1;
-        lamport.set(newLocal);
-        updateMyLastSeen(newLocal);
-
-        // Track last seen from remote
-        if (remotePid >= 0 && remotePid < lastSeenLamport.length) {
-            lastSeenLamport[remotePid].updateAndGet(current -> Math.max(current, receivedTs));
-        }
-
-        if (evt.getType() == Event.Type.DATA) {
-            boolean added = enqueueDataIfNew(evt);
-            if (added) {
-                // Send ACK (multicast) with incremented Lamport time
-                long ackTs = lamport.incrementAndGet();
-                updateMyLastSeen(ackTs);
-                Event ack = Event.ack(evt.getMsgId(), myPid, ackTs);
-                multicastToAllExceptMe(ack);
-            }
+        synchronized (sendLock) {
+            // Under sendLock: a DATA being sent must reach our holdback before our own
+            // lastSeen passes its timestamp, or a later message could be delivered first
+            long newLocal = clock.receive(receivedTs);
+            updateMyLastSeen(newLocal);
+        }
+        if (clock instanceof Clock.Hybrid hlc) trackSkew(hlc, receivedTs);
+
+        if (evt.getType() != Event.Type.DATA) {
+            // ACK needs no queueing
+            lastSeen.advance(remotePid, receivedTs);
+            return false;
         }
-        // ACK needs no queueing
+
+        // Read the id first: once enqueued the delivery thread may recycle evt
+        long msgId = evt.getMsgId();
+        boolean added = enqueueDataIfNew(evt);
+
+        // Track last seen from remote only once the DATA is in the holdback: the delivery
+        // thread must not see receivedTs as stable without seeing this message
+        lastSeen.advance(remotePid, receivedTs);
+
+        if (added) {
+            // Send ACK (multicast) with incremented Lamport time
+            multicastAck(msgId);
+        }
+        return added;
     }
 
     // Update our own lastSeenLamport entry atomically.
     
     // Atualiza o último timestamp Lamport visto para este peer
     private void updateMyLastSeen(long timestamp) {
-        lastSeenLamport[myPid].updateAndGet(current -> Math.max(current, timestamp));
+        lastSeen.advance(myPid, timestamp);
+    }
+
+    // Avança o relógio para pelo menos ts (sem contar como evento)
+    private void observeClock(long ts) {
+        clock.observe(ts);
+    }
+
+    // Regista quanto um timestamp recebido está à frente do nosso relógio físico.
+    // That is the sender's clock skew minus the one-way delay, so it bounds the skew from below.
+    private void trackSkew(Clock.Hybrid hlc, long receivedTs) {
+        long ahead = Clock.physicalMs(receivedTs) - hlc.nowMs();
+        if (ahead > maxClockAheadMs) maxClockAheadMs = ahead;
+    }
+
+    // Persiste a reserva de relógio/sequência antes de enviar ts/seq (se houver log)
+    private void reserve(long ts, long seq) {
+        if (log == null) return;
+        try {
+            log.reserve(ts, seq, clock.reserveStep());
+        } catch (IOException e) {
+            System.err.println("[PID " + (myPid + 1) + "] Delivery log reserve failed: " + e.getMessage());
+        }
     }
 
     /** Condition to process the head message (Tanenbaum/van Steen style) */
     // Verifica se o evento no topo da fila pode ser processado (todos os peers já viram o timestamp)
-    private boolean canProcess(Event head) {
-        long t = head.getLamportTs();
-        for (int i = 0; i < lastSeenLamport.length; i++) {
-            if (lastSeenLamport[i].get() < t) return false;
-        }
-        return true;
+    private static boolean canProcess(Event head, long stableTs) {
+        // stableTs = min(lastSeen), read before the holdback was drained
+        return head.getLamportTs() <= stableTs;
     }
 
     // Loop principal que processa eventos da fila de acordo com a ordem causal
     private void processLoop() {
+        Event[] batch = new Event[MAX_DELIVERY_BATCH];
         while (running) {
             try {
+                serveResyncRequests();
+
+                // While recovering only the replayed prefix is delivered
+                if (recovering) {
+                    if (applyReplays(batch) == 0) Thread.sleep(2);
+                    continue;
+                }
+
+                // Read the bound before draining: a DATA is offered before the lastSeen advance
+                // that can make its timestamp stable, so every DATA at or below it is drained.
+                // O(1): the tracker keeps min(lastSeen) at its root
+                long stable = lastSeen.min();
+                holdback.drain();
+
                 Event head = holdback.peek();
+                if (head == null || !canProcess(head, stable)) deliveredThrough = stable;
                 if (head == null) {
                     Thread.sleep(10);
                     continue;
                 }
 
-                if (canProcess(head)) {
-                    // Remove and deliver
-                    holdback.poll();
-                    
-                    // Build lastSeen snapshot for logging
-                    long[] snapshot = new long[lastSeenLamport.length];
-                    for (int i = 0; i < lastSeenLamport.length; i++) {
-                        snapshot[i] = lastSeenLamport[i].get();
-                    }
-                    
-                    System.out.printf(
-                        "[PID %d] PROCESS word=\"%s\" | orderKey=(ts=%d, origin=%d) | msgId=%s | lastSeen=%s%n",
-                        (myPid + 1),
-                        head.getWord(),
-                        head.getLamportTs(),
-                        (head.getOriginPid() + 1),
-                        head.getMsgId(),
-                        Arrays.toString(snapshot)
-                    );
+                if (canProcess(head, stable)) {
+                    // Group commit: take every stable head, log them, sync once, then deliver
+                    int n = 0;
+                    do {
+                        holdback.poll();
+                        if (log != null) log.append(head);
+                        batch[n++] = head;
+                    } while (n < batch.length && (head = holdback.peek()) != null && canProcess(head, stable));
+                    if (log != null) log.commit();
+
+                    applyDelivered(batch, n, true);
+                    release(batch, n);
                 } else {
                     // Wait for more ACK/DATA to advance lastSeen from everyone
                     Thread.sleep(2);
@@ -222,79 +577,481 @@ public class Peer {
         }
     }
 
+    // Regista as entregas batch[0..n) (já no log) e aplica-as à máquina de estados, por ordem total.
+    // live = delivered now (PROCESS, listener, snapshots), not re-applied from our own log.
+    private void applyDelivered(Event[] batch, int n, boolean live) {
+        if (n == 0) return;
+        for (int i = 0; i < n; i++) {
+            Event e = batch[i];
+            if (live) deliver(e);
+            long id = e.getMsgId();
+            int origin = Event.idOrigin(id);
+            long seq = Event.idSeq(id);
+            if (origin < numPeers) deliveredSeq[origin] = Math.max(deliveredSeq[origin], seq);
+        }
+        Event last = batch[n - 1];
+        lastKeyTs = last.getLamportTs();
+        lastKeyOrigin = last.getOriginPid();
+        lastKeyMsgId = last.getMsgId();
+
+        long firstIndex = appliedIndex + 1;
+        if (stateMachine != null) stateMachine.apply(firstIndex, batch, n);
+        appliedIndex += n;
+
+        // Our own submissions complete once the state machine has applied them
+        if (live) {
+            for (int i = 0; i < n; i++) {
+                long id = batch[i].getMsgId();
+                long seq = Event.idSeq(id);
+                if (Event.idOrigin(id) != myPid || seq < firstOwnSeq) continue;
+                CompletableFuture<Long> done = waiting.getAndSet((int) (seq % waiting.length()), null);
+                window.release();
+                if (done != null) done.complete(firstIndex + i);
+            }
+        }
+        if (live && stateMachine != null && snapshotFile != null && snapshotEvery > 0
+                && appliedIndex - snapshotIndex >= snapshotEvery) {
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                // The log is only truncated after the snapshot is durable, so nothing is lost
+                System.err.println("[PID " + (myPid + 1) + "] Snapshot failed: " + e.getMessage());
+                snapshotIndex = appliedIndex;
+            }
+        }
+    }
+
+    // Devolve batch[0..n) ao pool
+    private void release(Event[] batch, int n) {
+        for (int i = 0; i < n; i++) {
+            pool.release(batch[i]);
+            batch[i] = null;
+        }
+    }
+
+    // Grava um snapshot da máquina de estados e trunca o log que ele cobre
+    private void takeSnapshot() throws IOException {
+        Snapshot snap = new Snapshot(appliedIndex, lastKeyTs, lastKeyOrigin, lastKeyMsgId,
+                deliveredSeq.clone(), stateMachine.snapshot());
+        // Snapshot durable first: a crash before the truncation only leaves records it covers
+        snap.write(snapshotFile);
+        log.truncate();
+        snapshotIndex = appliedIndex;
+        latestSnapshot = snap;
+        if (verbose) {
+            CRC32 crc = new CRC32();
+            crc.update(snap.state);
+            System.out.printf("[PID %d] SNAPSHOT index=%d | stateBytes=%d | stateCrc=%08x | last=(ts=%d, origin=%d)%n",
+                    (myPid + 1), snap.index, snap.state.length, crc.getValue(), snap.lastTs, (snap.lastOrigin + 1));
+        }
+    }
+
+    // Instala um snapshot (local ou recebido num resync) como ponto de partida da ordem total
+    private void installSnapshot(Snapshot snap) {
+        if (stateMachine != null) stateMachine.restore(snap.state);
+        appliedIndex = snapshotIndex = snap.index;
+        lastKeyTs = snap.lastTs;
+        lastKeyOrigin = snap.lastOrigin;
+        lastKeyMsgId = snap.lastMsgId;
+        for (int o = 0; o < Math.min(numPeers, snap.deliveredSeq.length); o++) {
+            deliveredSeq[o] = Math.max(deliveredSeq[o], snap.deliveredSeq[o]);
+            seenData.advanceTo(o, snap.deliveredSeq[o]);
+        }
+        observeClock(snap.lastTs);
+        latestSnapshot = snap;
+    }
+
+    // Entrega (imprime) um evento DATA já estável
+    private void deliver(Event head) {
+        DeliveryListener l = listener;
+        if (l != null) l.onDeliver(head);
+        if (!verbose) return;
+
+        // Build lastSeen snapshot for logging
+        long[] snapshot = lastSeen.snapshot();
+
+        System.out.printf(
+            "[PID %d] PROCESS word=\"%s\" | orderKey=(ts=%d, origin=%d) | msgId=%s | lastSeen=%s%n",
+            (myPid + 1),
+            head.getWord(),
+            head.getLamportTs(),
+            (head.getOriginPid() + 1),
+            Event.idToString(head.getMsgId()),
+            Arrays.toString(snapshot)
+        );
+    }
+
+    // ----------------- Recovery -----------------
+
+    // Pede a um peer (por ordem de pid) tudo o que foi entregue depois da última entrada do nosso log
+    private void requestResync() {
+        for (int pid = 0; pid < numPeers && running; pid++) {
+            if (pid == myPid) continue;
+
+            Event req = pool.acquire().setControl(Event.Type.RESYNC, lastKeyMsgId, lastKeyOrigin, myPid, lastKeyTs);
+            byte[] frame = sendBuffer.get();
+            int len = req.encode(frame, 0);
+            pool.release(req);
+            if (!transport.send(pid, frame, len)) continue;
+
+            System.out.printf("[PID %d] RESYNC requested from PID %d%n", (myPid + 1), (pid + 1));
+            long deadline = System.currentTimeMillis() + RESYNC_TIMEOUT_MS;
+            while (recovering && System.currentTimeMillis() < deadline) {
+                try { Thread.sleep(20); } catch (InterruptedException ignored) {}
+            }
+            if (!recovering) return;
+        }
+        System.err.println("[PID " + (myPid + 1) + "] RESYNC got no answer; continuing from the local log only");
+        recovering = false;
+    }
+
+    // Entrega os REPLAY recebidos (já em ordem total) até ao REPLAY_END; retorna quantos tratou
+    private int applyReplays(Event[] batch) throws IOException {
+        int n = 0;
+        boolean done = false;
+        Event e;
+        while (n < batch.length && (e = replayQueue.poll()) != null) {
+            if (e.getType() == Event.Type.REPLAY_END) {
+                observeClock(e.getLamportTs());
+                pool.release(e);
+                done = true;
+                break;
+            }
+            if (e.getType() == Event.Type.SNAPSHOT) {
+                // Chunks come before any REPLAY of the same answer, so the batch is still empty
+                onSnapshotChunk(e);
+                pool.release(e);
+                continue;
+            }
+            e.retype(Event.Type.DATA);
+            // A live copy may already sit in the holdback; the replayed one wins
+            pool.release(holdback.remove(e));
+            long id = e.getMsgId();
+            seenData.markIfNew(Event.idOrigin(id), Event.idSeq(id));
+            observeClock(e.getLamportTs());
+            if (log != null) log.append(e);
+            batch[n++] = e;
+        }
+        if (log != null) log.commit();
+
+        applyDelivered(batch, n, true);
+        release(batch, n);
+
+        if (done) {
+            // The responder delivered up to lastKeyTs, so every peer had passed it
+            for (int pid = 0; pid < numPeers; pid++) lastSeen.advance(pid, lastKeyTs);
+            updateMyLastSeen(clock.get());
+            recovering = false;
+            System.out.printf("[PID %d] RESYNC done | clock=%d%n", (myPid + 1), clock.get());
+        }
+        return done ? n + 1 : n;
+    }
+
+    // Junta um chunk de snapshot (msgId = tamanho total, lamportTs = offset); instala-o quando completo
+    private void onSnapshotChunk(Event chunk) throws IOException {
+        int total = (int) chunk.getMsgId();
+        int off = (int) chunk.getLamportTs();
+        int len = chunk.getPayloadLength();
+        if (off == 0) incomingSnapshot = new byte[total];
+        if (incomingSnapshot == null || incomingSnapshot.length != total || off + len > total) return;
+        System.arraycopy(chunk.getPayload(), 0, incomingSnapshot, off, len);
+        if (off + len < total) return;
+
+        Snapshot snap = Snapshot.decode(incomingSnapshot);
+        incomingSnapshot = null;
+        installSnapshot(snap);
+        // Live DATA the snapshot already covers must not be delivered again
+        holdback.drain();
+        Event h;
+        while ((h = holdback.peek()) != null && !isAfter(h, snap.lastTs, snap.lastOrigin, snap.lastMsgId)) {
+            pool.release(holdback.poll());
+        }
+        if (log != null) {
+            // Our log is older than the snapshot: replace both, as after a local snapshot
+            snap.write(snapshotFile);
+            log.truncate();
+        }
+        System.out.printf("[PID %d] RESYNC installed snapshot @%d | stateBytes=%d%n",
+                (myPid + 1), snap.index, snap.state.length);
+    }
+
+    // Envia o snapshot em chunks SNAPSHOT de até MAX_PAYLOAD bytes
+    private void sendSnapshot(int to, Snapshot snap, byte[] frame) {
+        byte[] bytes = snap.encode();
+        for (int off = 0; off < bytes.length; off += Event.MAX_PAYLOAD) {
+            int len = Math.min(Event.MAX_PAYLOAD, bytes.length - off);
+            Event chunk = pool.acquire().setData(bytes.length, myPid, off, bytes, off, len).retype(Event.Type.SNAPSHOT);
+            int frameLen = chunk.encode(frame, 0);
+            pool.release(chunk);
+            transport.send(to, frame, frameLen);
+        }
+    }
+
+    // Responde aos RESYNC recebidos: snapshot (se o requerente estiver antes dele), entregas
+    // posteriores do nosso log + DATA ainda na holdback
+    private void serveResyncRequests() {
+        Event req;
+        while ((req = resyncRequests.poll()) != null) {
+            int to = req.getSenderPid();
+            long reqTs = req.getLamportTs();
+            int reqOrigin = req.getOriginPid();
+            long reqId = req.getMsgId();
+            pool.release(req);
+
+            if (to < 0 || to >= numPeers || to == myPid) continue;
+            byte[] frame = sendBuffer.get();
+            int[] replayed = {0};
+
+            // Our log no longer holds what our snapshot covers: send the snapshot, then the tail
+            Snapshot snap = latestSnapshot;
+            boolean withSnapshot = snap != null
+                    && (reqId < 0 || isAfter(snap.lastTs, snap.lastOrigin, snap.lastMsgId, reqTs, reqOrigin, reqId));
+            if (withSnapshot) sendSnapshot(to, snap, frame);
+            // Replay from the later of the two keys (the log may still hold records the snapshot covers)
+            long ts = withSnapshot ? snap.lastTs : reqTs;
+            int origin = withSnapshot ? snap.lastOrigin : reqOrigin;
+            long id = withSnapshot ? snap.lastMsgId : reqId;
+
+            if (log != null) {
+                log.replay(new DeliveryLog.Visitor() {
+                    @Override public void delivered(Event e) {
+                        if (!isAfter(e, ts, origin, id)) return;
+                        int len = e.retype(Event.Type.REPLAY).setSeq(0).encode(frame, 0);
+                        transport.send(to, frame, len);
+                        replayed[0]++;
+                    }
+                    @Override public void reserved(long clock, long seq) {}
+                });
+            }
+
+            // Pending DATA can only be delivered once the requester takes part again;
+            // this thread is the only one that reads the merged holdback, so iterating is safe
+            holdback.drain();
+            holdback.forEach(h -> {
+                // Relayed outside the origin's stream, so unsequenced
+                int len = h.setSeq(0).encode(frame, 0);
+                transport.send(to, frame, len);
+            });
+            int pending = holdback.size();
+
+            long endTs = clock.get();
+            reserve(endTs, nextSeq.get());
+            Event end = pool.acquire().setControl(Event.Type.REPLAY_END, 0, -1, myPid, endTs);
+            int len = end.encode(frame, 0);
+            pool.release(end);
+            transport.send(to, frame, len);
+
+            System.out.printf("[PID %d] RESYNC served to PID %d | snapshot=%s | replayed=%d | pending=%d%n",
+                    (myPid + 1), (to + 1), withSnapshot ? "@" + snap.index : "no", replayed[0], pending);
+        }
+    }
+
+    // Verifica se a chave de ordem de e é posterior a (ts, origin, msgId)
+    private static boolean isAfter(Event e, long ts, int origin, long msgId) {
+        return isAfter(e.getLamportTs(), e.getOriginPid(), e.getMsgId(), ts, origin, msgId);
+    }
+
+    // Verifica se a chave (ts1, origin1, msgId1) é posterior a (ts, origin, msgId)
+    private static boolean isAfter(long ts1, int origin1, long msgId1, long ts, int origin, long msgId) {
+        if (ts1 != ts) return ts1 > ts;
+        if (origin1 != origin) return origin1 > origin;
+        return msgId1 > msgId;
+    }
+
     // Adiciona evento DATA à fila se ainda não foi visto (deduplicação por msgId)
     private boolean enqueueDataIfNew(Event data) {
-        // Dedup by msgId
-        if (!seenData.add(data.getMsgId())) return false;
-        holdback.add(data);
+        // Dedup by (origin, seq) packed in the msgId
+        long id = data.getMsgId();
+        if (!seenData.markIfNew(Event.idOrigin(id), Event.idSeq(id))) return false;
+        holdback.offer(data);
         return true;
     }
 
     // ----------------- Networking -----------------
 
-    // Loop que aceita conexões de outros peers e delega o tratamento de cada cliente
-    private void listenLoop() {
-        while (running) {
-            try {
-                Socket client = serverSocket.accept();
-                new Thread(() -> handleClient(client), "conn-" + (myPid + 1) + "-" + System.nanoTime()).start();
-            } catch (SocketException se) {
-                // Likely closed during stop()
-                if (running) se.printStackTrace();
-            } catch (IOException e) {
-                if (running) e.printStackTrace();
+    // Recebe um frame do transporte, descodifica-o para um Event do pool e trata-o
+    private void onTransportFrame(byte[] buf, int len) {
+        Event evt = pool.acquire();
+        evt.decode(buf, 0);
+        if (!onFrame(evt)) pool.release(evt);
+    }
+
+    // ----------------- Gap repair -----------------
+
+    // Estado de receção do stream multicast de um remetente
+    private static final class Inbound {
+        long expected;                                 // next seq to apply (0 = not synchronized yet)
+        final Event[] held = new Event[HOLD_WINDOW];   // out-of-order frames waiting for the gap to close
+        long lastNackFrom = -1;
+        long lastNackMs;
+    }
+
+    // Aplica o stream de cada remetente por ordem de seq; frames depois de um gap esperam pela reparação.
+    // Retorna true se o evento ficou retido (holdback, fila de recuperação ou janela de reordenação).
+    private boolean onFrame(Event evt) {
+        long seq = evt.getSeq();
+        if (seq == 0) {
+            switch (evt.getType()) {
+                case NACK -> serveNack(evt);
+                case HEARTBEAT -> onHeartbeat(evt);
+                default -> { return onReceive(evt); }
             }
+            return false;
         }
-    }
 
-    // Processa uma conexão recebida, lendo e tratando o evento enviado
-    private void handleClient(Socket client) {
-        try (ObjectInputStream in = new ObjectInputStream(client.getInputStream())) {
-            Object obj = in.readObject();
-            if (obj instanceof Event) {
-                onReceive((Event) obj);
+        int from = evt.getSenderPid();
+        if (from < 0 || from >= numPeers || from == myPid) return false;
+        Inbound in = inbound[from];
+        synchronized (in) {
+            checkStream(in, from, seq);
+
+            if (seq < in.expected) return false;    // retransmission we already applied
+
+            if (seq > in.expected) {
+                requestRepair(in, from, in.expected, seq - 1);
+                int slot = (int) (seq % HOLD_WINDOW);
+                // Outside the hold window (or already held): dropped here, resent after the NACK
+                if (seq - in.expected >= HOLD_WINDOW || in.held[slot] != null) return false;
+                in.held[slot] = evt;
+                return true;
             }
-        } catch (EOFException ignored) {
-        } catch (Exception e) {
-            // Noisy networks happen; log and continue
-        } finally {
-            try { client.close(); } catch (IOException ignored) {}
+
+            boolean retained = onReceive(evt);
+            in.expected++;
+
+            // The gap may be closed now: apply the frames that were waiting behind it
+            Event next;
+            int slot;
+            while ((next = in.held[slot = (int) (in.expected % HOLD_WINDOW)]) != null) {
+                in.held[slot] = null;
+                if (!onReceive(next)) pool.release(next);
+                in.expected++;
+            }
+            return retained;
         }
     }
 
-    // Envia um evento para todos os peers exceto este
-    private void multicastToAllExceptMe(Event evt) {
-        for (PeerInfo p : peers.values()) {
-            if (p.pid == myPid) continue;
-            sendOne(p, evt);
+    // Sincroniza o stream no primeiro frame de um remetente, ou quando salta para lá do reparável
+    private void checkStream(Inbound in, int from, long seq) {
+        // Caller holds the lock of in
+        if (in.expected == 0) {
+            synchronize(in, seq);
+        } else if (seq - in.expected >= RETRANSMIT_CAPACITY) {
+            // The sender restarted, or we fell too far behind for its buffer to repair
+            System.err.printf("[PID %d] Stream from PID %d jumped %d -> %d; resynchronizing%n",
+                    (myPid + 1), (from + 1), in.expected, seq);
+            synchronize(in, seq);
         }
     }
 
-    // Envia um evento para um peer específico, com até 3 tentativas
-    private void sendOne(PeerInfo target, Event evt) {
-        // Best-effort retry a couple times (simple robustness)
-        int tries = 0;
-        while (tries < 3 && running) {
-            tries++;
-            try (Socket socket = new Socket()) {
-                socket.connect(new InetSocketAddress(target.host, target.port), 800);
-                try (ObjectOutputStream out = new ObjectOutputStream(socket.getOutputStream())) {
-                    out.writeObject(evt);
-                    out.flush();
-                }
-                return;
-            } catch (IOException e) {
-                // short backoff
-                try { Thread.sleep(50L * tries); } catch (InterruptedException ignored) {}
+    // Sincroniza o stream de um remetente a partir do frame seq (chamador tem o lock de in)
+    private void synchronize(Inbound in, long seq) {
+        for (int i = 0; i < HOLD_WINDOW; i++) {
+            pool.release(in.held[i]);
+            in.held[i] = null;
+        }
+        // Frames since the start of the stream are still repairable: ask for them too
+        long start = (seq >>> STREAM_START_BITS) << STREAM_START_BITS;
+        in.expected = (seq - start <= RETRANSMIT_CAPACITY) ? start + 1 : seq;
+        in.lastNackFrom = -1;
+    }
+
+    // Envia um NACK ao remetente pedindo as seqs [from, to] (no máximo um por NACK_RETRY_MS para o mesmo gap)
+    private void requestRepair(Inbound in, int sender, long from, long to) {
+        long now = System.currentTimeMillis();
+        if (from == in.lastNackFrom && now - in.lastNackMs < NACK_RETRY_MS) return;
+        in.lastNackFrom = from;
+        in.lastNackMs = now;
+
+        long upTo = Math.min(to, from + RETRANSMIT_CAPACITY - 1);
+        Event nack = pool.acquire().setControl(Event.Type.NACK, from, sender, myPid, upTo);
+        byte[] frame = sendBuffer.get();
+        int len = nack.encode(frame, 0);
+        pool.release(nack);
+        transport.send(sender, frame, len);
+    }
+
+    // Reenvia ao requerente os frames pedidos num NACK, a partir do buffer de retransmissão
+    private void serveNack(Event nack) {
+        int to = nack.getSenderPid();
+        long from = nack.getMsgId();
+        long upTo = nack.getLamportTs();
+        if (to < 0 || to >= numPeers || to == myPid) return;
+
+        byte[] frame = sendBuffer.get();
+        long lost = 0;
+        for (long s = from; s <= upTo; s++) {
+            int len = retransmit.copy(s, frame);
+            if (len < 0) { lost++; continue; }
+            if (!transport.send(to, frame, len)) return;
+        }
+        if (lost > 0) {
+            System.err.printf("[PID %d] NACK from PID %d: %d frame(s) already evicted from the retransmit buffer%n",
+                    (myPid + 1), (to + 1), lost);
+        }
+    }
+
+    // Trata um HEARTBEAT: se o remetente já enviou além do que aplicámos, o fim do stream perdeu-se
+    private void onHeartbeat(Event hb) {
+        int from = hb.getSenderPid();
+        if (from < 0 || from >= numPeers || from == myPid) return;
+        long last = hb.getMsgId();
+        Inbound in = inbound[from];
+        synchronized (in) {
+            checkStream(in, from, last + 1);
+            if (last >= in.expected) requestRepair(in, from, in.expected, last);
+        }
+    }
+
+    // Envia HEARTBEAT enquanto estamos parados (intervalo duplica até HEARTBEAT_MAX_MS)
+    private void heartbeatLoop() {
+        long interval = HEARTBEAT_MIN_MS;
+        long nextBeat = 0;
+        long seenSend = lastSendMs;
+        long tick = clockTickMs;
+        long pause = (tick > 0) ? Math.min(tick, HEARTBEAT_MIN_MS) : HEARTBEAT_MIN_MS;
+        while (running) {
+            try { Thread.sleep(pause); } catch (InterruptedException ignored) {}
+            long now = System.currentTimeMillis();
+            if (tick > 0 && now - lastSendMs >= tick) {
+                // Sequenced like any ACK, so it never overtakes a DATA with a lower timestamp
+                multicastAck(Event.packId(myPid, CLOCK_TICK_SEQ));
+            }
+            long sentAt = lastSendMs;
+            if (sentAt != seenSend) {
+                // Traffic since the last check: short intervals again once it stops
+                seenSend = sentAt;
+                interval = HEARTBEAT_MIN_MS;
+                nextBeat = sentAt + interval;
+                continue;
             }
+            if (now < nextBeat) continue;
+
+            long last;
+            synchronized (sendLock) { last = streamSeq; }
+            Event hb = pool.acquire().setControl(Event.Type.HEARTBEAT, last, myPid, myPid, clock.get());
+            byte[] frame = sendBuffer.get();
+            int len = hb.encode(frame, 0);
+            pool.release(hb);
+            multicastToAllExceptMe(frame, len);
+
+            interval = Math.min(interval * 2, HEARTBEAT_MAX_MS);
+            nextBeat = now + interval;
+        }
+    }
+
+    // Envia um frame já codificado para todos os peers exceto este
+    private void multicastToAllExceptMe(byte[] frame, int len) {
+        for (int pid = 0; pid < numPeers; pid++) {
+            if (pid != myPid) transport.send(pid, frame, len);
         }
     }
 
-    // ----------------- Poisson generator (rate = 1 msg/sec) -----------------
+    // ----------------- Poisson generator (default rate = 1 msg/sec) -----------------
 
-    // Gera eventos DATA aleatórios com intervalo exponencial (Poisson, 1 msg/s)
+    // Gera eventos DATA aleatórios com intervalo exponencial (Poisson, generatorRate msgs/s)
     private void poissonGeneratorLoop() {
-        final double lambda = 1.0; // events per second
+        final double lambda = generatorRate; // events per second
 
         while (running) {
             try {
@@ -325,9 +1082,9 @@ public class Peer {
                 String[] parts = line.split("\\s+");
                 if (parts.length < 3) continue;
 
-                int pid = Integer.parseInt(parts[0]) - 1; // convert 1..6 to 0..5
-                if (pid < 0 || pid >= 6) {
-                    throw new IllegalArgumentException("Peer IDs must be between 1 and 6");
+                int pid = Integer.parseInt(parts[0]) - 1; // convert 1..N to 0..N-1
+                if (pid < 0) {
+                    throw new IllegalArgumentException("Peer IDs must be >= 1: " + parts[0]);
                 }
 
                 String host = parts[1];
@@ -340,14 +1097,18 @@ public class Peer {
             }
         }
 
-        if (map.size() != 6) {
-            System.err.println("WARNING: ip_table has " + map.size() + " peers; assignment asks for 6.");
+        // pids index the stability tracker directly, so they must be exactly 1..N
+        for (int pid = 0; pid < map.size(); pid++) {
+            if (!map.containsKey(pid)) {
+                throw new IllegalArgumentException("ip_table pids must be contiguous 1.." + map.size()
+                        + "; missing pid " + (pid + 1));
+            }
         }
         return map;
     }
 
     // Carrega as palavras do dicionário a partir de um arquivo
-    private static List<String> loadDictionary(String path) throws IOException {
+    static List<String> loadDictionary(String path) throws IOException {
         List<String> words = new ArrayList<>();
         try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(path), StandardCharsets.UTF_8))) {
             String line;
@@ -367,15 +1128,32 @@ public class Peer {
 
     // Ponto de entrada: inicializa o peer com os argumentos fornecidos
     public static void main(String[] args) {
-        if (args.length < 3) {
-            System.err.println("Usage: java ds.assignment.tom.Peer <pid(1-6)> <ip_table.txt> <dictionary.txt>");
-            System.exit(1);
-        }
+        if (args.length < 3) usage();
         int myPid = Integer.parseInt(args[0]) - 1;
         String ipTable = args[1];
         String dict = args[2];
+
+        // Optional settings, named (key=value, any order) or positional (- keeps the default)
+        Map<String, String> opt = new HashMap<>();
+        for (int i = 3; i < args.length; i++) {
+            String a = args[i];
+            int eq = a.indexOf('=');
+            String key = (eq > 0) ? a.substring(0, eq) : (i - 3 < OPTIONS.length) ? OPTIONS[i - 3] : null;
+            if (key == null || !Arrays.asList(OPTIONS).contains(key)) usage();
+            String value = (eq > 0) ? a.substring(eq + 1) : a;
+            if (!value.equals("-")) opt.put(key, value);
+        }
+        Path logFile = opt.containsKey("log") ? Path.of(opt.get("log"), "peer-" + (myPid + 1) + ".tomlog") : null;
+        DeliveryLog.SyncMode sync = DeliveryLog.SyncMode.valueOf(opt.getOrDefault("sync", "batch").toUpperCase(Locale.ROOT));
+        String clock = opt.getOrDefault("clock", "lamport").toLowerCase(Locale.ROOT);
+        String transport = opt.getOrDefault("transport", "tcp").toLowerCase(Locale.ROOT);
+        if (!Set.of("lamport", "hlc").contains(clock) || !Set.of("tcp", "socket", "nio").contains(transport)) usage();
         try {
-            Peer peer = new Peer(myPid, ipTable, dict);
+            Peer peer = new Peer(myPid, ipTable, dict, logFile, sync, transport.equals("nio"));
+            // Replicated word count, snapshotted every N deliveries
+            if (opt.containsKey("snapshot")) peer.setStateMachine(new WordCountStateMachine(), Long.parseLong(opt.get("snapshot")));
+            // Hybrid logical clock, ticking every 50 ms while idle
+            if (clock.equals("hlc")) peer.setClock(new Clock.Hybrid(), 50);
             peer.start();
             peer.join();
         } catch (Exception e) {
@@ -383,4 +1161,12 @@ public class Peer {
             System.exit(2);
         }
     }
+
+    // Mostra a sintaxe de main() e termina
+    private static void usage() {
+        System.err.println("Usage: java ds.assignment.tom.Peer <pid(1-N)> <ip_table.txt> <dictionary.txt>"
+                + " [log=<dir>] [sync=batch|every|none] [snapshot=<every>] [clock=lamport|hlc] [transport=tcp|nio]");
+        System.err.println("       the options may also be given by position in that order, with - for the default");
+        System.exit(1);
+    }
 }
@@ -0,0 +1,43 @@
+package ds.assignment.tom;
+
+/**
+ * Buffer circular (limitado) dos últimos frames multicast enviados, indexado pela sequência.
+ *
+ * Slot seq % capacity holds the frame sent with that stream sequence until it is overwritten
+ * CAPACITY sends later; a NACK for an overwritten sequence can no longer be repaired.
+ */
+public class RetransmitBuffer {
+
+    private final int capacity;
+    private final byte[][] frames;
+    private final int[] lens;
+    private final long[] seqs;
+
+    public RetransmitBuffer(int capacity) {
+        this.capacity = capacity;
+        this.frames = new byte[capacity][];
+        this.lens = new int[capacity];
+        this.seqs = new long[capacity];
+    }
+
+    // Guarda uma cópia do frame enviado com a sequência seq
+    public synchronized void put(long seq, byte[] frame, int len) {
+        int slot = (int) (seq % capacity);
+        byte[] dst = frames[slot];
+        if (dst == null) dst = frames[slot] = new byte[Event.MAX_FRAME];
+        System.arraycopy(frame, 0, dst, 0, len);
+        lens[slot] = len;
+        seqs[slot] = seq;
+    }
+
+    // Copia o frame da sequência seq para dst; retorna o tamanho ou -1 se já foi descartado
+    public synchronized int copy(long seq, byte[] dst) {
+        int slot = (int) (seq % capacity);
+        if (frames[slot] == null || seqs[slot] != seq) return -1;
+        System.arraycopy(frames[slot], 0, dst, 0, lens[slot]);
+        return lens[slot];
+    }
+
+    // Retorna o número de frames que o buffer consegue guardar
+    public int capacity() { return capacity; }
+}
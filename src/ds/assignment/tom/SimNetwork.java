@@ -0,0 +1,183 @@
+package ds.assignment.tom;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Rede simulada em memória para correr vários Peer tom na mesma JVM.
+ *
+ * Every frame sent through an endpoint is copied and scheduled for delivery after
+ * latency + uniform(0, jitter). With probability reorderProb a frame is held back an extra
+ * latency + jitter so later frames overtake it, and with probability dropProb it is lost.
+ * Each destination has its own lane: a seeded Random (seed + pid), a due-time queue and one
+ * delivery thread, like the reader thread of a TCP connection, so a receiver never sees two
+ * frames concurrently and peers receive in parallel.
+ */
+public class SimNetwork {
+
+    private final int numPeers;
+    private final long latencyNs;
+    private final long jitterNs;
+    private final double reorderProb;
+    private final double dropProb;
+    private final Lane[] lanes;
+    private volatile boolean running = true;
+
+    public SimNetwork(int numPeers, long seed, double latencyMs, double jitterMs, double reorderProb, double dropProb) {
+        this.numPeers = numPeers;
+        this.latencyNs = (long) (latencyMs * 1_000_000);
+        this.jitterNs = (long) (jitterMs * 1_000_000);
+        this.reorderProb = reorderProb;
+        this.dropProb = dropProb;
+        this.lanes = new Lane[numPeers];
+        for (int pid = 0; pid < numPeers; pid++) {
+            lanes[pid] = new Lane(pid, new Random(seed + pid));
+            lanes[pid].thread.start();
+        }
+    }
+
+    // Retorna o transporte do peer pid ligado a esta rede
+    public Transport endpoint(int pid) {
+        if (pid < 0 || pid >= numPeers) throw new IllegalArgumentException("pid " + pid + " outside 0.." + (numPeers - 1));
+        return new Endpoint(pid);
+    }
+
+    // Para as threads de entrega; frames ainda em trânsito são descartados
+    public void shutdown() {
+        running = false;
+        for (Lane lane : lanes) lane.thread.interrupt();
+    }
+
+    // Retorna as estatísticas da rede numa linha
+    public String stats() {
+        long sent = 0, delivered = 0, dropped = 0, reordered = 0, unreachable = 0;
+        int maxQueued = 0;
+        for (Lane lane : lanes) {
+            synchronized (lane) {
+                sent += lane.sent; delivered += lane.delivered; dropped += lane.dropped;
+                reordered += lane.reordered; unreachable += lane.unreachable;
+                maxQueued = Math.max(maxQueued, lane.maxQueued);
+            }
+        }
+        return String.format("frames sent=%d delivered=%d dropped=%d reordered=%d unreachable=%d maxQueued=%d",
+                sent, delivered, dropped, reordered, unreachable, maxQueued);
+    }
+
+    // Fila de entrega de um destino
+    private final class Lane {
+        final int pid;
+        final Random rng;
+        final PriorityQueue<InFlight> inFlight = new PriorityQueue<>();
+        final Thread thread;
+        Transport.Receiver receiver;
+        long order;   // tie-break for frames due at the same instant
+
+        // Statistics (guarded by this)
+        long sent, dropped, reordered, delivered, unreachable;
+        int maxQueued;
+
+        Lane(int pid, Random rng) {
+            this.pid = pid;
+            this.rng = rng;
+            this.thread = new Thread(this::deliveryLoop, "simnet-" + (pid + 1));
+            this.thread.setDaemon(true);
+        }
+
+        // Agenda a entrega de uma cópia do frame
+        synchronized void submit(byte[] frame, int len) {
+            sent++;
+            if (dropProb > 0 && rng.nextDouble() < dropProb) {
+                dropped++;
+                return;
+            }
+            long delay = latencyNs + (jitterNs > 0 ? (long) (rng.nextDouble() * jitterNs) : 0);
+            if (reorderProb > 0 && rng.nextDouble() < reorderProb) {
+                delay += latencyNs + jitterNs;
+                reordered++;
+            }
+            inFlight.add(new InFlight(System.nanoTime() + delay, order++, Arrays.copyOf(frame, len)));
+            maxQueued = Math.max(maxQueued, inFlight.size());
+            notifyAll();
+        }
+
+        // Entrega os frames à medida que ficam devidos
+        private void deliveryLoop() {
+            while (running) {
+                InFlight next;
+                Transport.Receiver r;
+                synchronized (this) {
+                    try {
+                        while ((next = inFlight.peek()) == null || next.dueNs > System.nanoTime()) {
+                            if (next == null) {
+                                wait();
+                            } else {
+                                long waitNs = next.dueNs - System.nanoTime();
+                                if (waitNs > 0) wait(waitNs / 1_000_000, (int) (waitNs % 1_000_000));
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    inFlight.poll();
+                    r = receiver;
+                    if (r == null) unreachable++; else delivered++;
+                }
+                // Outside the lock: the receiver sends (ACKs, NACKs) back into the network
+                if (r != null) {
+                    try {
+                        r.onFrame(next.frame, next.frame.length);
+                    } catch (RuntimeException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    // Frame em trânsito
+    private static final class InFlight implements Comparable<InFlight> {
+        final long dueNs;
+        final long order;
+        final byte[] frame;
+
+        InFlight(long dueNs, long order, byte[] frame) {
+            this.dueNs = dueNs; this.order = order; this.frame = frame;
+        }
+
+        @Override
+        public int compareTo(InFlight o) {
+            int c = Long.compare(dueNs, o.dueNs);
+            return (c != 0) ? c : Long.compare(order, o.order);
+        }
+    }
+
+    // Ponto de ligação de um peer à rede simulada
+    private final class Endpoint implements Transport {
+        private final int pid;
+        private volatile boolean open = true;
+
+        Endpoint(int pid) { this.pid = pid; }
+
+        @Override
+        public void start(Receiver receiver) {
+            synchronized (lanes[pid]) { lanes[pid].receiver = receiver; }
+        }
+
+        @Override
+        public boolean send(int to, byte[] frame, int len) {
+            if (!open || !running || to < 0 || to >= numPeers) return false;
+            lanes[to].submit(frame, len);
+            return true;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            synchronized (lanes[pid]) { lanes[pid].receiver = null; }
+        }
+
+        @Override
+        public String toString() { return "simnet#" + (pid + 1); }
+    }
+}
@@ -0,0 +1,99 @@
+package ds.assignment.tom;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot do estado de uma StateMachine num ponto da ordem total.
+ *
+ * Besides the application state it records where in the total order it was taken: the
+ * number of deliveries it covers, the order key of the last one and, per origin, the
+ * highest delivered sequence (each origin's DATA is delivered in sequence order, so that
+ * is a prefix and restores the dedup watermarks).
+ *
+ * Layout: magic(4) | index(8) | lastTs(8) | lastOrigin(4) | lastMsgId(8) | origins(4) |
+ * deliveredSeq(8 * origins) | stateLen(4) | state | crc32(4) over everything before it.
+ */
+public final class Snapshot {
+
+    private static final int MAGIC = 0x544F4D53;   // "TOMS"
+
+    public final long index;
+    public final long lastTs;
+    public final int lastOrigin;
+    public final long lastMsgId;
+    public final long[] deliveredSeq;
+    public final byte[] state;
+
+    public Snapshot(long index, long lastTs, int lastOrigin, long lastMsgId, long[] deliveredSeq, byte[] state) {
+        this.index = index;
+        this.lastTs = lastTs;
+        this.lastOrigin = lastOrigin;
+        this.lastMsgId = lastMsgId;
+        this.deliveredSeq = deliveredSeq;
+        this.state = state;
+    }
+
+    // Serializa o snapshot (com CRC no fim)
+    public byte[] encode() {
+        ByteBuffer b = ByteBuffer.allocate(44 + 8 * deliveredSeq.length + state.length);
+        b.putInt(MAGIC).putLong(index).putLong(lastTs).putInt(lastOrigin).putLong(lastMsgId);
+        b.putInt(deliveredSeq.length);
+        for (long s : deliveredSeq) b.putLong(s);
+        b.putInt(state.length).put(state);
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue());
+        return b.array();
+    }
+
+    // Lê um snapshot serializado; IOException se estiver truncado ou corrompido
+    public static Snapshot decode(byte[] buf) throws IOException {
+        try {
+            ByteBuffer b = ByteBuffer.wrap(buf);
+            if (b.getInt() != MAGIC) throw new IOException("Not a tom snapshot");
+            long index = b.getLong();
+            long lastTs = b.getLong();
+            int lastOrigin = b.getInt();
+            long lastMsgId = b.getLong();
+            long[] delivered = new long[b.getInt()];
+            for (int i = 0; i < delivered.length; i++) delivered[i] = b.getLong();
+            byte[] state = new byte[b.getInt()];
+            b.get(state);
+            CRC32 crc = new CRC32();
+            crc.update(buf, 0, b.position());
+            if (b.getInt() != (int) crc.getValue()) throw new IOException("Snapshot checksum mismatch");
+            return new Snapshot(index, lastTs, lastOrigin, lastMsgId, delivered, state);
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated snapshot", e);
+        }
+    }
+
+    // Escreve o snapshot de forma atómica (ficheiro temporário + fsync + rename)
+    public void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer b = ByteBuffer.wrap(encode());
+            while (b.hasRemaining()) ch.write(b);
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Lê o snapshot de um ficheiro; retorna null se não existir
+    public static Snapshot read(Path file) throws IOException {
+        try {
+            return decode(Files.readAllBytes(file));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+}
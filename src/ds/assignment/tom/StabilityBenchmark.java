@@ -0,0 +1,117 @@
+package ds.assignment.tom;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compara o scan linear antigo de lastSeenLamport com o StabilityTracker para N = 6, 50 e 200.
+ *
+ * Two costs are reported per variant: advancing one peer's lastSeen (onReceive) and a
+ * canProcess check against a head that is already stable (the case that delivers, where
+ * the linear scan has to visit every peer).
+ *
+ * Usage: java ds.assignment.tom.StabilityBenchmark [ops]
+ */
+public class StabilityBenchmark {
+
+    private static final int[] SIZES = {6, 50, 200};
+
+    // Ponto de entrada: executa o benchmark para cada N e imprime ns por operação
+    public static void main(String[] args) {
+        int ops = (args.length >= 1) ? Integer.parseInt(args[0]) : 5_000_000;
+
+        System.out.println("N\tlinear.advance\ttree.advance\tlinear.check\ttree.check\t(ns/op)");
+        for (int n : SIZES) {
+            // Warm-up so the JIT has compiled every variant before measuring
+            for (int w = 0; w < 3; w++) {
+                linearAdvance(n, ops / 5);
+                treeAdvance(n, ops / 5);
+                linearCheck(n, ops / 5);
+                treeCheck(n, ops / 5);
+            }
+            System.out.printf("%d\t%.1f\t\t%.1f\t\t%.1f\t\t%.1f%n", n,
+                    linearAdvance(n, ops), treeAdvance(n, ops),
+                    linearCheck(n, ops), treeCheck(n, ops));
+        }
+    }
+
+    // Mede o custo de avançar lastSeen com o array de AtomicLong
+    private static double linearAdvance(int n, int ops) {
+        AtomicLong[] lastSeen = newLinear(n);
+        int[] pids = randomPids(n, ops);
+        long start = System.nanoTime();
+        for (int s = 0; s < ops; s++) {
+            long ts = s + 1;
+            lastSeen[pids[s]].updateAndGet(cur -> Math.max(cur, ts));
+        }
+        long elapsed = System.nanoTime() - start;
+        sink(lastSeen[0].get());
+        return (double) elapsed / ops;
+    }
+
+    // Mede o custo de avançar lastSeen no StabilityTracker
+    private static double treeAdvance(int n, int ops) {
+        StabilityTracker lastSeen = new StabilityTracker(n);
+        int[] pids = randomPids(n, ops);
+        long start = System.nanoTime();
+        for (int s = 0; s < ops; s++) {
+            lastSeen.advance(pids[s], s + 1);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink(lastSeen.min());
+        return (double) elapsed / ops;
+    }
+
+    // Mede canProcess com scan O(N) sobre o array de AtomicLong
+    private static double linearCheck(int n, int ops) {
+        AtomicLong[] lastSeen = newLinear(n);
+        for (int i = 0; i < n; i++) lastSeen[i].set(1_000_000 + i);
+        long delivered = 0;
+        long start = System.nanoTime();
+        for (int s = 0; s < ops; s++) {
+            long head = s & 1023;
+            boolean ok = true;
+            for (int i = 0; i < n; i++) {
+                if (lastSeen[i].get() < head) { ok = false; break; }
+            }
+            if (ok) delivered++;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink(delivered);
+        return (double) elapsed / ops;
+    }
+
+    // Mede canProcess com leitura O(1) da raiz do StabilityTracker
+    private static double treeCheck(int n, int ops) {
+        StabilityTracker lastSeen = new StabilityTracker(n);
+        for (int i = 0; i < n; i++) lastSeen.advance(i, 1_000_000 + i);
+        long delivered = 0;
+        long start = System.nanoTime();
+        for (int s = 0; s < ops; s++) {
+            if (lastSeen.isStable(s & 1023)) delivered++;
+        }
+        long elapsed = System.nanoTime() - start;
+        sink(delivered);
+        return (double) elapsed / ops;
+    }
+
+    // Cria o array de AtomicLong usado antes do StabilityTracker
+    private static AtomicLong[] newLinear(int n) {
+        AtomicLong[] a = new AtomicLong[n];
+        for (int i = 0; i < n; i++) a[i] = new AtomicLong(0);
+        return a;
+    }
+
+    // Gera a sequência de pids que enviam pacotes (fixa para ambas as variantes)
+    private static int[] randomPids(int n, int ops) {
+        Random rng = new Random(42);
+        int[] pids = new int[ops];
+        for (int i = 0; i < ops; i++) pids[i] = rng.nextInt(n);
+        return pids;
+    }
+
+    private static volatile long blackhole;
+
+    // Consome o resultado para o JIT não eliminar o loop
+    private static void sink(long v) { blackhole += v; }
+}
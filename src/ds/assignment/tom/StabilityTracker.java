@@ -0,0 +1,78 @@
+package ds.assignment.tom;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Tournament tree (segment tree de mínimos) sobre o último timestamp Lamport visto de cada peer.
+ *
+ * Leaves hold lastSeen[pid]; every internal node holds the minimum of its two children, so the
+ * root is the stable watermark: every peer has already sent something with ts >= root.
+ * min() is O(1) and lock-free; advance() is O(log N) and serialized by a single lock.
+ */
+public class StabilityTracker {
+
+    private final int numPeers;
+    private final int leaves;              // power of two >= numPeers
+    private final AtomicLongArray tree;    // 1-based heap layout, tree[1] = root
+
+    public StabilityTracker(int numPeers) {
+        if (numPeers < 1) {
+            throw new IllegalArgumentException("numPeers must be >= 1");
+        }
+        this.numPeers = numPeers;
+        int l = 1;
+        while (l < numPeers) l <<= 1;
+        this.leaves = l;
+        this.tree = new AtomicLongArray(2 * l);
+
+        // Padding leaves never constrain the minimum
+        for (int i = numPeers; i < l; i++) {
+            tree.set(l + i, Long.MAX_VALUE);
+        }
+        for (int i = l - 1; i >= 1; i--) {
+            tree.set(i, Math.min(tree.get(2 * i), tree.get(2 * i + 1)));
+        }
+    }
+
+    // Retorna o número de peers seguidos
+    public int size() { return numPeers; }
+
+    // Retorna o último timestamp visto do peer pid
+    public long get(int pid) { return tree.get(leaves + pid); }
+
+    // Retorna o menor último timestamp visto entre todos os peers (raiz da árvore)
+    public long min() { return tree.get(1); }
+
+    // Verifica se todos os peers já enviaram algo com timestamp >= ts
+    public boolean isStable(long ts) { return tree.get(1) >= ts; }
+
+    // Avança o último timestamp visto do peer pid (monotónico) e atualiza o caminho até à raiz
+    public void advance(int pid, long ts) {
+        if (pid < 0 || pid >= numPeers) return;
+        int node = leaves + pid;
+        // Fast path: stale or duplicate timestamps don't touch the lock
+        if (tree.get(node) >= ts) return;
+
+        synchronized (this) {
+            if (tree.get(node) >= ts) return;
+            tree.set(node, ts);
+            node >>= 1;
+            while (node >= 1) {
+                long m = Math.min(tree.get(2 * node), tree.get(2 * node + 1));
+                // Parent already holds this minimum: nothing above it can change either
+                if (tree.get(node) == m) break;
+                tree.set(node, m);
+                node >>= 1;
+            }
+        }
+    }
+
+    // Copia os últimos timestamps vistos para um array (para logging)
+    public long[] snapshot() {
+        long[] out = new long[numPeers];
+        for (int i = 0; i < numPeers; i++) {
+            out[i] = tree.get(leaves + i);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,22 @@
+package ds.assignment.tom;
+
+/**
+ * Máquina de estados replicada alimentada pela ordem total do tom.
+ *
+ * Every replica applies the same deliveries in the same order, so replicas that start from
+ * the same state stay identical. Methods are called from the delivery thread only. With a
+ * delivery log, the peer takes a snapshot every N deliveries and truncates the log behind
+ * it; a restarted replica restores the latest snapshot and applies only the log tail.
+ */
+public interface StateMachine {
+
+    // Aplica batch[0..n) por ordem total; firstIndex é a posição (1-based) de batch[0] na ordem total.
+    // The Events go back to the pool afterwards: copy anything that has to outlive the call.
+    void apply(long firstIndex, Event[] batch, int n);
+
+    // Retorna o estado serializado depois da última entrega aplicada
+    byte[] snapshot();
+
+    // Substitui o estado pelo de um snapshot produzido por snapshot()
+    void restore(byte[] state);
+}
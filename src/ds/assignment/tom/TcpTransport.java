@@ -0,0 +1,214 @@
+package ds.assignment.tom;
+
+import java.io.*;
+import java.net.*;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Transporte TCP: um ServerSocket para receber e uma ligação persistente por peer remoto para enviar.
+ *
+ * send() only copies the frame into the link's byte ring; each link has its own writer thread,
+ * which writes whatever is queued in one call. Receiver threads send ACKs from onFrame, so a
+ * blocking write there could deadlock two peers whose socket buffers are both full, each reader
+ * stuck writing to the other. The ring is allocated once per link, so sending makes no garbage
+ * per frame. A full ring (MAX_QUEUED bytes) or a peer that is down makes send() return false,
+ * and the frame is repaired by NACK.
+ */
+public class TcpTransport implements Transport {
+
+    private static final int MAX_QUEUED = 1 << 20;         // bytes waiting per link (about 900 full frames)
+
+    private final int myPid;
+    private final Peer.PeerInfo me;
+    private final Map<Integer, Link> links = new HashMap<>();
+
+    private volatile boolean running = true;
+    private ServerSocket serverSocket;
+    private Thread listenerThread;
+    private Receiver receiver;
+
+    public TcpTransport(int myPid, Map<Integer, Peer.PeerInfo> peers) {
+        this.myPid = myPid;
+        this.me = peers.get(myPid);
+        for (Peer.PeerInfo p : peers.values()) {
+            if (p.pid != myPid) links.put(p.pid, new Link(p));
+        }
+    }
+
+    @Override
+    // Abre o ServerSocket e inicia a thread que aceita ligações
+    public void start(Receiver receiver) throws IOException {
+        this.receiver = receiver;
+        serverSocket = new ServerSocket(me.port, 50, InetAddress.getByName(me.host));
+        listenerThread = new Thread(this::listenLoop, "listener-" + (myPid + 1));
+        listenerThread.start();
+    }
+
+    @Override
+    // Envia um frame pela ligação persistente ao peer pid
+    public boolean send(int pid, byte[] frame, int len) {
+        Link link = links.get(pid);
+        return link != null && link.send(frame, len);
+    }
+
+    @Override
+    // Fecha o ServerSocket e todas as ligações
+    public void close() {
+        running = false;
+        try { if (serverSocket != null) serverSocket.close(); } catch (IOException ignored) {}
+        for (Link link : links.values()) link.close();
+    }
+
+    @Override
+    public String toString() { return me.host + ":" + me.port; }
+
+    // Loop que aceita conexões de outros peers e delega o tratamento de cada cliente
+    private void listenLoop() {
+        while (running) {
+            try {
+                Socket client = serverSocket.accept();
+                new Thread(() -> handleClient(client), "conn-" + (myPid + 1) + "-" + System.nanoTime()).start();
+            } catch (SocketException se) {
+                // Likely closed during close()
+                if (running) se.printStackTrace();
+            } catch (IOException e) {
+                if (running) e.printStackTrace();
+            }
+        }
+    }
+
+    // Processa uma conexão persistente recebida, lendo frames até o outro lado fechar
+    private void handleClient(Socket client) {
+        byte[] buf = new byte[Event.MAX_FRAME];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()))) {
+            while (running) {
+                in.readFully(buf, 0, Event.HEADER_SIZE);
+                int len = Event.payloadLength(buf, 0);
+                if (len > Event.MAX_PAYLOAD) {
+                    throw new IOException("Frame payload too large: " + len);
+                }
+                in.readFully(buf, Event.HEADER_SIZE, len);
+                receiver.onFrame(buf, Event.HEADER_SIZE + len);
+            }
+        } catch (EOFException ignored) {
+        } catch (Exception e) {
+            // Noisy networks happen; log and continue
+        } finally {
+            try { client.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    // Ligação TCP persistente para um peer: um anel de bytes limitado e uma thread que o escreve, (re)ligando com backoff
+    private final class Link {
+        private final Peer.PeerInfo target;
+        private byte[] ring;                                           // guarded by this; allocated on the first send
+        private int head, size;                                        // guarded by this: queued bytes start at head
+        private Thread writer;                                         // guarded by this
+        private volatile long nextConnectMs;
+        private long backoffMs = 50;                                   // writer thread only
+        private volatile Socket socket;
+        private OutputStream out;                                      // writer thread only
+
+        Link(Peer.PeerInfo target) { this.target = target; }
+
+        // Copia o frame para o anel; retorna false se o peer está em baixo ou o anel está cheio.
+        // Never blocks: a receiver thread acking under sendLock must not wait on a peer that is
+        // itself blocked writing to us. A frame that does not make it is repaired later through a NACK.
+        synchronized boolean send(byte[] frame, int len) {
+            if (!running) return false;
+            // Peer down: don't queue for a dead link, just try again after the backoff
+            if (System.currentTimeMillis() < nextConnectMs) return false;
+            if (ring == null) ring = new byte[MAX_QUEUED];
+            if (size + len > ring.length) return false;
+            int tail = head + size;
+            if (tail >= ring.length) tail -= ring.length;
+            int first = Math.min(len, ring.length - tail);
+            System.arraycopy(frame, 0, ring, tail, first);
+            System.arraycopy(frame, first, ring, 0, len - first);
+            size += len;
+            if (writer == null) {
+                writer = new Thread(this::writeLoop, "writer-" + (myPid + 1) + "-" + (target.pid + 1));
+                writer.setDaemon(true);
+                writer.start();
+            }
+            notify();
+            return true;
+        }
+
+        // Thread que escreve o anel: tudo o que estiver em fila até ao fim do array numa só escrita
+        private void writeLoop() {
+            while (true) {
+                int from, n;
+                synchronized (this) {
+                    while (running && size == 0) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (!running) return;
+                    from = head;
+                    n = Math.min(size, ring.length - head);
+                }
+                if (out == null && !connect()) {
+                    drop();
+                    continue;
+                }
+                // Senders only append past head + size, so ring[from, from + n) is stable until we advance head
+                try {
+                    out.write(ring, from, n);
+                } catch (IOException e) {
+                    // The rest may start mid-frame: drop it, the next connection starts clean
+                    closeSocket();
+                    drop();
+                    continue;
+                }
+                synchronized (this) {
+                    head += n;
+                    if (head == ring.length) head = 0;
+                    size -= n;
+                }
+            }
+        }
+
+        // Abre o socket; se falhar, adia a próxima tentativa
+        private boolean connect() {
+            try {
+                Socket s = new Socket();
+                s.setTcpNoDelay(true);
+                s.connect(new InetSocketAddress(target.host, target.port), 800);
+                socket = s;
+                out = s.getOutputStream();
+                backoffMs = 50;
+                return true;
+            } catch (IOException e) {
+                nextConnectMs = System.currentTimeMillis() + backoffMs;
+                backoffMs = Math.min(backoffMs * 2, 1000);
+                return false;
+            }
+        }
+
+        // Descarta os frames em fila (o peer está em baixo; a reparação por NACK recupera-os)
+        private synchronized void drop() {
+            head = 0;
+            size = 0;
+        }
+
+        // Fecha o socket atual (a próxima escrita volta a ligar)
+        private void closeSocket() {
+            Socket s = socket;
+            try { if (s != null) s.close(); } catch (IOException ignored) {}
+            socket = null;
+            out = null;
+        }
+
+        // Fecha a ligação e acorda a thread de escrita (que sai, porque running é false)
+        synchronized void close() {
+            notifyAll();
+            Socket s = socket;
+            try { if (s != null) s.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package ds.assignment.tom;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Harness em memória: N Peer tom sobre uma SimNetwork, com carga Poisson, verificação da
+ * ordem total e medição de débito e latência de entrega.
+ *
+ * A driver thread submits DATA at the given aggregate rate from randomly chosen peers
+ * (open loop: send times follow the schedule, not the deliveries); each payload carries its
+ * submit time in nanoseconds. When the load stops the harness waits until every peer
+ * delivered every message, then checks that all peers
+ * delivered the identical msgId sequence and prints throughput and the p50/p99/p999
+ * latency from submit to delivery, over every (message, peer) pair. Exits with 1 if the
+ * sequences differ or a peer is missing messages.
+ *
+ * With clock=hlc every peer runs a hybrid logical clock whose physical part is offset by a
+ * random skew in [-maxSkewMs, maxSkewMs]; the report then adds the wall-time lag from each
+ * message's HLC stamp to its delivery (read on the delivering peer's clock), the largest
+ * clock lead seen on a receive, and the staleness of reads sampled during the load.
+ *
+ * Usage: java ds.assignment.tom.TomHarness [peers] [seconds] [msgsPerSec] [latencyMs] [jitterMs]
+ *        [reorderProb] [dropProb] [seed] [lamport|hlc] [maxSkewMs]
+ */
+public class TomHarness {
+
+    private static final long QUIESCE_TIMEOUT_MS = 30_000;
+    private static final long CLOCK_TICK_MS = 20;
+    private static final long STALENESS_SAMPLE_MS = 5;
+
+    // Entregas observadas por um peer (escritas só pela thread de entrega desse peer)
+    private static final class Recorder implements DeliveryListener {
+        long[] ids = new long[1024];
+        long[] latencyNs = new long[1024];
+        long[] hlcLagMs = new long[1024];
+        volatile int count;
+        final Clock.Hybrid hlc;          // null with the Lamport clock
+
+        Recorder(Clock.Hybrid hlc) { this.hlc = hlc; }
+
+        @Override
+        public void onDeliver(Event e) {
+            long now = System.nanoTime();
+            int n = count;
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, n * 2);
+                latencyNs = Arrays.copyOf(latencyNs, n * 2);
+                hlcLagMs = Arrays.copyOf(hlcLagMs, n * 2);
+            }
+            ids[n] = e.getMsgId();
+            latencyNs[n] = now - getLong(e.getPayload(), 0);
+            if (hlc != null) hlcLagMs[n] = hlc.nowMs() - Clock.physicalMs(e.getLamportTs());
+            count = n + 1;
+        }
+    }
+
+    // Ponto de entrada: corre o cenário e imprime o relatório
+    public static void main(String[] args) throws Exception {
+        int n = (args.length >= 1) ? Integer.parseInt(args[0]) : 6;
+        double seconds = (args.length >= 2) ? Double.parseDouble(args[1]) : 10;
+        double rate = (args.length >= 3) ? Double.parseDouble(args[2]) : 500;
+        double latencyMs = (args.length >= 4) ? Double.parseDouble(args[3]) : 1.0;
+        double jitterMs = (args.length >= 5) ? Double.parseDouble(args[4]) : 0.5;
+        double reorder = (args.length >= 6) ? Double.parseDouble(args[5]) : 0.05;
+        double drop = (args.length >= 7) ? Double.parseDouble(args[6]) : 0.01;
+        long seed = (args.length >= 8) ? Long.parseLong(args[7]) : 1;
+        boolean hybrid = (args.length >= 9) && args[8].equalsIgnoreCase("hlc");
+        long maxSkewMs = (args.length >= 10) ? Long.parseLong(args[9]) : 0;
+
+        System.out.printf("TomHarness: peers=%d seconds=%.1f rate=%.0f msg/s latency=%.2fms jitter=%.2fms reorder=%.3f drop=%.3f seed=%d clock=%s%n",
+                n, seconds, rate, latencyMs, jitterMs, reorder, drop, seed,
+                hybrid ? "hlc(skew<=" + maxSkewMs + "ms)" : "lamport");
+
+        SimNetwork net = new SimNetwork(n, seed, latencyMs, jitterMs, reorder, drop);
+        List<String> words = List.of("alpha", "bravo", "charlie", "delta", "echo", "foxtrot");
+
+        Peer[] peers = new Peer[n];
+        Recorder[] recorders = new Recorder[n];
+        Random skewRng = new Random(seed);
+        for (int pid = 0; pid < n; pid++) {
+            peers[pid] = new Peer(pid, n, words, net.endpoint(pid), null, DeliveryLog.SyncMode.NONE);
+            Clock.Hybrid hlc = null;
+            if (hybrid) {
+                long offset = (maxSkewMs > 0) ? skewRng.nextLong(-maxSkewMs, maxSkewMs + 1) : 0;
+                hlc = new Clock.Hybrid(offset);
+                peers[pid].setClock(hlc, CLOCK_TICK_MS);
+            }
+            recorders[pid] = new Recorder(hlc);
+            peers[pid].setDeliveryListener(recorders[pid]);
+            peers[pid].setVerbose(false);
+            peers[pid].setGeneratorRate(0);
+            peers[pid].setStartupDelayMs(0);
+        }
+        for (Peer p : peers) p.start();
+
+        // Bounded-staleness reads: sample how far behind real time a random peer's delivered state is
+        StalenessSampler sampler = hybrid ? new StalenessSampler(peers, seed) : null;
+        if (sampler != null) sampler.start();
+
+        // Open-loop Poisson load from random origins
+        Random rng = new Random(seed ^ 0x5DEECE66DL);
+        long startNs = System.nanoTime();
+        long endNs = startNs + (long) (seconds * 1e9);
+        long nextNs = startNs;
+        int sent = 0;
+        byte[] payload = new byte[8];
+        while (true) {
+            nextNs += (long) (-Math.log(1.0 - rng.nextDouble()) / rate * 1e9);
+            if (nextNs >= endNs) break;
+            long wait = nextNs - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+
+            int origin = rng.nextInt(n);
+            putLong(payload, 0, System.nanoTime());
+            peers[origin].submit(payload);
+            sent++;
+        }
+        long loadEndNs = System.nanoTime();
+        if (sampler != null) sampler.finish();
+
+        // Quiescence: every peer delivered everything
+        long deadline = System.currentTimeMillis() + QUIESCE_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline && !allDelivered(recorders, sent)) Thread.sleep(5);
+        long doneNs = System.nanoTime();
+
+        for (Peer p : peers) p.stop();
+        for (Peer p : peers) p.join();
+        net.shutdown();
+
+        boolean ok = verify(recorders, sent);
+
+        int samples = 0;
+        for (Recorder r : recorders) samples += r.count;
+        long[] lat = new long[samples];
+        int k = 0;
+        for (Recorder r : recorders) {
+            System.arraycopy(r.latencyNs, 0, lat, k, r.count);
+            k += r.count;
+        }
+        Arrays.sort(lat);
+
+        double elapsed = (doneNs - startNs) / 1e9;
+        System.out.printf("sent=%d in %.2fs (offered %.0f msg/s) | drained %.2fs after load%n",
+                sent, (loadEndNs - startNs) / 1e9, sent / ((loadEndNs - startNs) / 1e9), (doneNs - loadEndNs) / 1e9);
+        System.out.printf("throughput: %.0f msg/s ordered cluster-wide | %.0f deliveries/s over all peers%n",
+                sent / elapsed, (double) sent * n / elapsed);
+        System.out.printf("delivery latency (submit -> PROCESS, %d samples): p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                lat.length, pct(lat, 0.50), pct(lat, 0.99), pct(lat, 0.999),
+                lat.length > 0 ? lat[lat.length - 1] / 1e6 : 0.0);
+        if (hybrid) {
+            long[] lag = new long[samples];
+            k = 0;
+            long ahead = 0;
+            for (int pid = 0; pid < n; pid++) {
+                System.arraycopy(recorders[pid].hlcLagMs, 0, lag, k, recorders[pid].count);
+                k += recorders[pid].count;
+                ahead = Math.max(ahead, peers[pid].maxClockAheadMs());
+            }
+            Arrays.sort(lag);
+            long[] stale = sampler.sorted();
+            System.out.printf("hlc lag (stamp -> PROCESS, wall ms): p50=%d p99=%d max=%d | max clock lead on receive=%dms%n",
+                    pctRaw(lag, 0.50), pctRaw(lag, 0.99), lag.length > 0 ? lag[lag.length - 1] : 0, ahead);
+            System.out.printf("read staleness (%d samples): p50=%dms p99=%dms max=%dms%n",
+                    stale.length, pctRaw(stale, 0.50), pctRaw(stale, 0.99), stale.length > 0 ? stale[stale.length - 1] : 0);
+        }
+        System.out.println("network: " + net.stats());
+        System.out.println(ok ? "ORDER OK: all " + n + " peers delivered the identical sequence of " + sent + " messages"
+                              : "ORDER FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Amostra periodicamente stalenessMs() de um peer ao acaso
+    private static final class StalenessSampler extends Thread {
+        private final Peer[] peers;
+        private final Random rng;
+        private volatile boolean running = true;
+        private long[] samples = new long[1024];
+        private int count;
+
+        StalenessSampler(Peer[] peers, long seed) {
+            super("staleness-sampler");
+            this.peers = peers;
+            this.rng = new Random(seed + 1);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try { Thread.sleep(STALENESS_SAMPLE_MS); } catch (InterruptedException e) { return; }
+                long stale = peers[rng.nextInt(peers.length)].stalenessMs();
+                if (stale == Long.MAX_VALUE) continue;
+                if (count == samples.length) samples = Arrays.copyOf(samples, count * 2);
+                samples[count++] = stale;
+            }
+        }
+
+        // Para a amostragem e espera pela thread
+        void finish() throws InterruptedException {
+            running = false;
+            join();
+        }
+
+        // Retorna as amostras ordenadas (depois de finish())
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(samples, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    // Verifica se todos os peers já entregaram as mensagens enviadas
+    private static boolean allDelivered(Recorder[] recorders, int sent) {
+        for (Recorder r : recorders) if (r.count < sent) return false;
+        return true;
+    }
+
+    // Compara a sequência entregue por cada peer com a do primeiro
+    private static boolean verify(Recorder[] recorders, int sent) {
+        boolean ok = true;
+        Recorder ref = recorders[0];
+        for (int pid = 0; pid < recorders.length; pid++) {
+            Recorder r = recorders[pid];
+            if (r.count != sent) {
+                System.out.printf("PID %d delivered %d of %d messages%n", (pid + 1), r.count, sent);
+                ok = false;
+            }
+            int common = Math.min(r.count, ref.count);
+            for (int i = 0; i < common; i++) {
+                if (r.ids[i] != ref.ids[i]) {
+                    System.out.printf("PID %d diverges from PID 1 at position %d: %s vs %s%n",
+                            (pid + 1), i, Event.idToString(r.ids[i]), Event.idToString(ref.ids[i]));
+                    ok = false;
+                    break;
+                }
+            }
+        }
+        return ok;
+    }
+
+    // Escreve um long big-endian em buf[off..off+8)
+    private static void putLong(byte[] buf, int off, long v) {
+        for (int i = 7; i >= 0; i--) { buf[off + i] = (byte) v; v >>>= 8; }
+    }
+
+    // Lê um long big-endian de buf[off..off+8)
+    private static long getLong(byte[] buf, int off) {
+        long v = 0;
+        for (int i = 0; i < 8; i++) v = (v << 8) | (buf[off + i] & 0xFF);
+        return v;
+    }
+
+    // Percentil p (0..1) de um array ordenado, nas unidades do array
+    private static long pctRaw(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))];
+    }
+
+    // Percentil p (0..1) de um array ordenado, em ms
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+}
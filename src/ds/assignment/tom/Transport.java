@@ -0,0 +1,27 @@
+package ds.assignment.tom;
+
+import java.io.IOException;
+
+/**
+ * Transporte de frames entre peers tom (TCP real ou rede simulada em memória).
+ *
+ * Frames are complete Event encodings (header + payload). A transport only moves bytes:
+ * ordering, loss repair and dedup are all done by Peer on top of it.
+ */
+public interface Transport {
+
+    // Recebe os frames que chegam de qualquer peer
+    interface Receiver {
+        // Chamado com um frame completo em buf[0..len); buf pode ser reutilizado depois da chamada
+        void onFrame(byte[] buf, int len);
+    }
+
+    // Começa a aceitar frames, entregando-os ao receiver
+    void start(Receiver receiver) throws IOException;
+
+    // Envia um frame ao peer pid; retorna false se não foi possível (o frame pode ser reparado por NACK)
+    boolean send(int pid, byte[] frame, int len);
+
+    // Fecha o transporte e liberta os recursos
+    void close();
+}
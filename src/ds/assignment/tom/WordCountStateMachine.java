@@ -0,0 +1,71 @@
+package ds.assignment.tom;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Máquina de estados de exemplo: contagem replicada das palavras entregues pelo tom.
+ *
+ * A TreeMap keeps the serialized snapshot byte-identical on every replica at the same index.
+ */
+public class WordCountStateMachine implements StateMachine {
+
+    private final TreeMap<String, Long> counts = new TreeMap<>();
+    private long applied;
+
+    @Override
+    // Conta as palavras do lote
+    public void apply(long firstIndex, Event[] batch, int n) {
+        for (int i = 0; i < n; i++) {
+            Event e = batch[i];
+            String word = new String(e.getPayload(), 0, e.getPayloadLength(), StandardCharsets.UTF_8);
+            counts.merge(word, 1L, Long::sum);
+        }
+        applied = firstIndex + n - 1;
+    }
+
+    @Override
+    // Serializa as contagens: applied, número de palavras e pares (palavra, contagem)
+    public byte[] snapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(applied);
+            out.writeInt(counts.size());
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    // Substitui as contagens pelas do snapshot
+    public void restore(byte[] state) {
+        counts.clear();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(state))) {
+            applied = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                counts.put(in.readUTF(), in.readLong());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Retorna a contagem de uma palavra
+    public long count(String word) { return counts.getOrDefault(word, 0L); }
+
+    // Retorna a posição na ordem total da última entrega aplicada
+    public long applied() { return applied; }
+
+    @Override
+    public String toString() {
+        return "WordCount{applied=" + applied + ", words=" + counts.size() + "}";
+    }
+}
@@ -0,0 +1,89 @@
+package ds.assignment.tring;
+
+import java.util.Locale;
+
+/**
+ * Operações do CalculatorServer em bloco (colunares): out[i] = a[i] op b[i] sobre arrays de operandos.
+ *
+ * The semantics are those of a single request: add, sub, mul and div are plain IEEE 754,
+ * except that a zero divisor (0.0 or -0.0) and an unknown op give NaN. When the JVM runs with
+ * --add-modules jdk.incubator.vector the loops use the Vector API (ds.assignment.tring.simd,
+ * compiled only by the Maven build); otherwise, or with -Dcalc.scalar=true, the scalar loops
+ * below do the work. Lane-wise IEEE arithmetic is exact per element, so both paths give the
+ * same bits.
+ */
+public final class BulkOps {
+
+    public static final int ADD = CalcCodec.ADD, SUB = CalcCodec.SUB, MUL = CalcCodec.MUL, DIV = CalcCodec.DIV;
+    public static final int UNKNOWN = CalcCodec.UNKNOWN;
+
+    // Um ciclo que calcula out[i] = a[i] op b[i] para i em [off, off+len)
+    public interface Kernel {
+        void apply(int op, double[] a, double[] b, double[] out, int off, int len);
+    }
+
+    private static final Kernel SCALAR = BulkOps::applyScalar;
+    private static final Kernel KERNEL = load();
+
+    private BulkOps() {}
+
+    // Usa o kernel do Vector API se o módulo estiver carregado e a classe existir; senão o escalar
+    private static Kernel load() {
+        if (Boolean.getBoolean("calc.scalar")) return SCALAR;
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) return SCALAR;
+        try {
+            return (Kernel) Class.forName("ds.assignment.tring.simd.VectorKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return SCALAR;
+        }
+    }
+
+    // Retorna o código de "add", "sub", "mul" ou "div" (sem distinguir maiúsculas), ou UNKNOWN
+    public static int opCode(String op) {
+        switch (op.toLowerCase(Locale.ROOT)) {
+            case "add": return ADD;
+            case "sub": return SUB;
+            case "mul": return MUL;
+            case "div": return DIV;
+            default: return UNKNOWN;
+        }
+    }
+
+    // Retorna o kernel em uso ("vector ..." ou "scalar")
+    public static String kernel() { return (KERNEL == SCALAR) ? "scalar" : KERNEL.toString(); }
+
+    // out[i] = a[i] op b[i] para i em [off, off+len), com o kernel em uso
+    public static void apply(int op, double[] a, double[] b, double[] out, int off, int len) {
+        check(a, b, out, off, len);
+        KERNEL.apply(op, a, b, out, off, len);
+    }
+
+    // Como apply, sempre com os ciclos escalares (o fallback, e a cauda do kernel vetorial)
+    public static void applyScalar(int op, double[] a, double[] b, double[] out, int off, int len) {
+        check(a, b, out, off, len);
+        int end = off + len;
+        switch (op) {
+            case ADD:
+                for (int i = off; i < end; i++) out[i] = a[i] + b[i];
+                break;
+            case SUB:
+                for (int i = off; i < end; i++) out[i] = a[i] - b[i];
+                break;
+            case MUL:
+                for (int i = off; i < end; i++) out[i] = a[i] * b[i];
+                break;
+            case DIV:
+                for (int i = off; i < end; i++) out[i] = (b[i] == 0.0) ? Double.NaN : a[i] / b[i];
+                break;
+            default:
+                java.util.Arrays.fill(out, off, end, Double.NaN);
+        }
+    }
+
+    private static void check(double[] a, double[] b, double[] out, int off, int len) {
+        int end = off + len;
+        if (off < 0 || len < 0 || end > a.length || end > b.length || end > out.length) {
+            throw new IndexOutOfBoundsException("off=" + off + " len=" + len);
+        }
+    }
+}
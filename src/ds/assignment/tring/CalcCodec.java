@@ -0,0 +1,437 @@
+package ds.assignment.tring;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec do protocolo da calculadora ("op a b q peerId" -> "q resultado") sobre bytes ASCII, sem alocações.
+ *
+ * One instance per thread: it holds the token positions of the last parsed line and the
+ * request/reply buffers. Numbers take a fast path that is exact and allocates nothing:
+ * - parsing: [sign] digits [. digits] [e [sign] digits] with at most 18 significant digits and
+ *   a decimal exponent within ±22, since 10^22 is the largest exact power of ten in a double.
+ *   When the digits fit in 2^53 the result is one correctly rounded multiply or divide
+ *   (Clinger's fast path). Longer fractions (the 16-17 digit replies to a div) are divided
+ *   approximately and then corrected to the nearest double by exact 128-bit comparisons.
+ * - formatting: the shortest of 15, 16 or 17 correctly rounded significant digits that
+ *   parses back to the same double, expanded exactly in long arithmetic. This covers every
+ *   value in [2^-7, 2^53) and zero.
+ * Anything else (NaN, Infinity, hex, very long or very small/large numbers) falls back to
+ * Double.parseDouble / Double.toString, which allocate but keep the results identical.
+ */
+final class CalcCodec {
+
+    static final int ADD = 0, SUB = 1, MUL = 2, DIV = 3, UNKNOWN = -1;
+
+    // Results of parseRequest()
+    static final int BLANK = 0, MALFORMED = 1, OK = 2;
+
+    private static final int MAX_TOKENS = 5;
+    private static final byte[][] OPS = {ascii("add"), ascii("sub"), ascii("mul"), ascii("div")};
+    private static final byte[] NAN = ascii("NaN");
+    private static final byte[] MALFORMED_REPLY = ascii("ERR malformed_request");
+    static final byte[] OVERLOADED_REPLY = ascii("ERR overloaded\n");
+
+    private static final double[] P10 = new double[23];           // exact: 10^0 .. 10^22
+    private static final long[] L10 = new long[19];               // 10^0 .. 10^18
+    private static final long[] L5 = new long[23];                // 5^0 .. 5^22
+    static {
+        L5[0] = 1;
+        for (int i = 1; i < L5.length; i++) L5[i] = L5[i - 1] * 5;
+        P10[0] = 1;
+        for (int i = 1; i < P10.length; i++) P10[i] = P10[i - 1] * 10;
+        L10[0] = 1;
+        for (int i = 1; i < L10.length; i++) L10[i] = L10[i - 1] * 10;
+    }
+
+    // Tokens of the last line: [start, end) in the caller's buffer
+    private final int[] start = new int[MAX_TOKENS];
+    private final int[] end = new int[MAX_TOKENS];
+    private byte[] tokenSource;
+
+    // Fields of the last request
+    int op;
+    double a, b;
+    long q;
+
+    // Scratch buffers for callers (a line read from a socket, a reply being built)
+    byte[] line = new byte[256];
+    final byte[] out = new byte[128];
+
+    // ----------------- Requests (server side) -----------------
+
+    // Lê "op a b q peerId" de buf[off..off+len); retorna BLANK, MALFORMED ou OK.
+    // Bad numbers throw NumberFormatException, as Double.parseDouble did.
+    int parseRequest(byte[] buf, int off, int len) {
+        int n = tokenize(buf, off, off + len);
+        if (n == 0) return BLANK;
+        if (n < MAX_TOKENS) return MALFORMED;
+        a = parseDouble(buf, start[1], end[1]);
+        b = parseDouble(buf, start[2], end[2]);
+        q = parseLong(buf, start[3], end[3]);
+        op = opCode(buf, start[0], end[0]);
+        return OK;
+    }
+
+    // Só divide a linha buf[off..off+len) em tokens, sem ler os números; retorna quantos há
+    int split(byte[] buf, int off, int len) { return tokenize(buf, off, off + len); }
+
+    // Divide [from, to) em tokens separados por espaço ASCII (os de \s); guarda os primeiros MAX_TOKENS
+    private int tokenize(byte[] buf, int from, int to) {
+        tokenSource = buf;
+        int n = 0, i = from;
+        while (i < to) {
+            while (i < to && isSpace(buf[i])) i++;
+            if (i == to) break;
+            int s = i;
+            while (i < to && !isSpace(buf[i])) i++;
+            if (n < MAX_TOKENS) {
+                start[n] = s;
+                end[n] = i;
+            }
+            n++;
+        }
+        return n;
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    // Retorna o código da operação (sem distinguir maiúsculas) ou UNKNOWN
+    private static int opCode(byte[] buf, int from, int to) {
+        if (to - from != 3) return UNKNOWN;
+        for (int k = 0; k < OPS.length; k++) {
+            byte[] o = OPS[k];
+            if ((buf[from] | 0x20) == o[0] && (buf[from + 1] | 0x20) == o[1] && (buf[from + 2] | 0x20) == o[2]) return k;
+        }
+        return UNKNOWN;
+    }
+
+    // Início do token i da última linha, no buffer passado a parseRequest
+    int tokenStart(int i) { return start[i]; }
+
+    // Tamanho do token i da última linha
+    int tokenLength(int i) { return end[i] - start[i]; }
+
+    // Texto do token i da última linha (aloca; só para logging)
+    String token(int i) {
+        return new String(tokenSource, start[i], end[i] - start[i], StandardCharsets.UTF_8);
+    }
+
+    // Escreve "q resultado" em out; retorna o tamanho
+    int formatReply(long q, double res) {
+        int p = writeLong(out, 0, q);
+        out[p++] = ' ';
+        return writeDouble(out, p, res);
+    }
+
+    // Escreve "q NaN" em out; retorna o tamanho
+    int formatNaN(long q) {
+        int p = writeLong(out, 0, q);
+        out[p++] = ' ';
+        System.arraycopy(NAN, 0, out, p, NAN.length);
+        return p + NAN.length;
+    }
+
+    // Escreve "ERR malformed_request" em out; retorna o tamanho
+    int formatMalformed() {
+        System.arraycopy(MALFORMED_REPLY, 0, out, 0, MALFORMED_REPLY.length);
+        return MALFORMED_REPLY.length;
+    }
+
+    // ----------------- Requests and replies (client side) -----------------
+
+    // Escreve "op a b q peerId" em out (a e b com duas casas, como "%.2f"); retorna o tamanho
+    int formatRequest(String type, double a, double b, long q, byte[] peerId) {
+        byte[] o = opBytes(type);
+        System.arraycopy(o, 0, out, 0, o.length);
+        int p = o.length;
+        out[p++] = ' ';
+        p = writeFixed2(out, p, a);
+        out[p++] = ' ';
+        p = writeFixed2(out, p, b);
+        out[p++] = ' ';
+        p = writeLong(out, p, q);
+        out[p++] = ' ';
+        System.arraycopy(peerId, 0, out, p, peerId.length);
+        return p + peerId.length;
+    }
+
+    // Diz se a resposta em buf[off..off+len) é um erro do servidor ("ERR ...")
+    static boolean isError(byte[] buf, int off, int len) {
+        return len >= 3 && buf[off] == 'E' && buf[off + 1] == 'R' && buf[off + 2] == 'R';
+    }
+
+    // Lê o resultado de uma resposta "q resultado" em buf[off..off+len)
+    double parseReply(byte[] buf, int off, int len) {
+        if (tokenize(buf, off, off + len) < 2) throw new NumberFormatException("Bad reply");
+        return parseDouble(buf, start[1], end[1]);
+    }
+
+    // Bytes de um tipo de operação (constantes partilhadas para os quatro tipos conhecidos)
+    private static byte[] opBytes(String type) {
+        switch (type) {
+            case "add": return OPS[ADD];
+            case "sub": return OPS[SUB];
+            case "mul": return OPS[MUL];
+            case "div": return OPS[DIV];
+            default: return ascii(type);
+        }
+    }
+
+    // ----------------- Numbers -----------------
+
+    // Lê um double de buf[from..to) (caminho rápido exato; senão Double.parseDouble)
+    static double parseDouble(byte[] buf, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+        long mant = 0;
+        int digits = 0, exp10 = 0;
+        boolean any = false, fast = true;
+        for (; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+            any = true;
+            if (mant == 0 && buf[i] == '0') continue;           // leading zeros
+            if (digits++ < 18) mant = mant * 10 + (buf[i] - '0'); else { fast = false; break; }
+        }
+        if (fast && i < to && buf[i] == '.') {
+            for (i++; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+                any = true;
+                if (mant == 0 && buf[i] == '0') { exp10--; continue; }
+                if (digits++ < 18) { mant = mant * 10 + (buf[i] - '0'); exp10--; } else { fast = false; break; }
+            }
+        }
+        if (fast && any && i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+            i++;
+            boolean eneg = false;
+            if (i < to && (buf[i] == '-' || buf[i] == '+')) eneg = buf[i++] == '-';
+            int e = 0, ed = 0;
+            for (; i < to && buf[i] >= '0' && buf[i] <= '9' && ed < 4; i++, ed++) e = e * 10 + (buf[i] - '0');
+            if (ed == 0) fast = false;
+            exp10 += eneg ? -e : e;
+        }
+        if (fast && any && i == to && exp10 >= -22 && exp10 <= 22) {
+            double v;
+            if (mant <= (1L << 53)) {
+                v = (double) mant;
+                v = (exp10 >= 0) ? v * P10[exp10] : v / P10[-exp10];
+                return neg ? -v : v;
+            }
+            if (exp10 < 0) {
+                v = divideExact(mant, -exp10);
+                return neg ? -v : v;
+            }
+        }
+        return Double.parseDouble(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    // Retorna mant / 10^k arredondado ao double mais próximo (mant < 10^18, 1 <= k <= 22)
+    private static double divideExact(long mant, int k) {
+        double y = mant / P10[k];                             // within an ulp or so of the answer
+        while (true) {
+            // Compare mant / 10^k with the midpoints between y and its neighbours
+            long bits = Double.doubleToRawLongBits(y);
+            long m = (bits & ((1L << 52) - 1)) | (1L << 52);
+            int e = Math.getExponent(y) - 52;                 // y = m * 2^e
+            int up = compareScaled(mant, 2 * m + 1, e - 1, k);
+            if (up > 0 || (up == 0 && (m & 1) == 1)) {
+                y = Math.nextUp(y);
+                continue;
+            }
+            // Below a power of two the spacing halves, so the lower midpoint is a quarter ulp away
+            int down = (m == (1L << 52)) ? compareScaled(mant, 4 * m - 1, e - 2, k) : compareScaled(mant, 2 * m - 1, e - 1, k);
+            if (down < 0 || (down == 0 && (m & 1) == 1)) {
+                y = Math.nextDown(y);
+                continue;
+            }
+            return y;
+        }
+    }
+
+    // Compara mant com h * 2^q * 10^k = h * 5^k * 2^(q + k) (h < 2^55, k <= 22): o produto tem até 107 bits
+    private static int compareScaled(long mant, long h, int q, int k) {
+        long f = L5[k];
+        long lo = h * f, hi = Math.multiplyHigh(h, f);
+        int s = q + k;
+        if (s >= 0) {
+            int bitLen = (hi != 0) ? 128 - Long.numberOfLeadingZeros(hi) : 64 - Long.numberOfLeadingZeros(lo);
+            if (bitLen + s > 63) return -1;
+            return Long.compare(mant, lo << s);
+        }
+        int t = -s;
+        long floor;
+        boolean rest;
+        if (t >= 128) {
+            floor = 0;
+            rest = true;
+        } else if (t >= 64) {
+            floor = (t == 64) ? hi : hi >>> (t - 64);
+            rest = lo != 0 || (t > 64 && (hi & ((1L << (t - 64)) - 1)) != 0);
+        } else {
+            if (hi >>> t != 0) return -1;                     // above 2^64
+            floor = (lo >>> t) | ((t == 0) ? 0 : hi << (64 - t));
+            rest = t > 0 && (lo & ((1L << t) - 1)) != 0;
+        }
+        if (floor < 0) return -1;                             // at least 2^63 > mant
+        if (mant != floor) return Long.compare(mant, floor);
+        return rest ? -1 : 0;
+    }
+
+    // Lê um long de buf[from..to) (até 18 dígitos sem alocar; senão Long.parseLong)
+    static long parseLong(byte[] buf, int from, int to) {
+        int i = from;
+        boolean neg = false;
+        if (i < to && (buf[i] == '-' || buf[i] == '+')) neg = buf[i++] == '-';
+        if (i < to && to - i <= 18) {
+            long v = 0;
+            for (; i < to; i++) {
+                int d = buf[i] - '0';
+                if (d < 0 || d > 9) break;
+                v = v * 10 + d;
+            }
+            if (i == to) return neg ? -v : v;
+        }
+        return Long.parseLong(new String(buf, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    // Escreve v em decimal a partir de pos; retorna a nova posição
+    static int writeLong(byte[] out, int pos, long v) {
+        if (v == Long.MIN_VALUE) return writeAscii(out, pos, Long.toString(v));
+        if (v < 0) {
+            out[pos++] = '-';
+            v = -v;
+        }
+        int n = decimalDigits(v);
+        for (int k = pos + n - 1; k >= pos; k--) {
+            out[k] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        return pos + n;
+    }
+
+    // Escreve v com duas casas decimais, igual a String.format(Locale.ROOT, "%.2f", v); retorna a nova posição.
+    // The formatter rounds HALF_UP the shortest decimal that reads back as v (612.175 -> "612.18"),
+    // and |v| * 100 is off by up to an ulp, so values within a few ulps of a half cent go to it.
+    static int writeFixed2(byte[] out, int pos, double v) {
+        double x = Math.abs(v) * 100;
+        if (!(x < 1e15) || Math.abs(x - Math.floor(x) - 0.5) <= 4 * Math.ulp(x)) {
+            return writeAscii(out, pos, String.format(java.util.Locale.ROOT, "%.2f", v));
+        }
+        long c = Math.round(x);
+        if (Double.doubleToRawLongBits(v) < 0) out[pos++] = '-';          // "-0.00" like the formatter
+        pos = writeLong(out, pos, c / 100);
+        out[pos++] = '.';
+        out[pos++] = (byte) ('0' + (c % 100) / 10);
+        out[pos++] = (byte) ('0' + c % 10);
+        return pos;
+    }
+
+    // Escreve v com o menor número de algarismos (15, 16 ou 17) que se lê de volta igual; retorna a nova posição.
+    // The text always parses back to v; it may differ from Double.toString in the last digit or two.
+    static int writeDouble(byte[] out, int pos, double v) {
+        if (v == 0) return writeAscii(out, pos, (Double.doubleToRawLongBits(v) < 0) ? "-0.0" : "0.0");
+        double abs = Math.abs(v);
+        int e2 = Math.getExponent(abs);
+        if (e2 < -7 || abs >= 0x1p53 || Double.isNaN(v)) return writeAscii(out, pos, Double.toString(v));
+
+        // Exact expansion: integer part I (< 2^53) and fraction M / 2^k with k <= 59,
+        // so M * 10 never overflows. 18 significant digits go into one long.
+        long ip = (long) abs;
+        double f = abs - ip;                                  // exact
+        long m = 0;
+        int k = 0;
+        if (f != 0) {
+            long bits = Double.doubleToRawLongBits(f);
+            long fm = (bits & ((1L << 52) - 1)) | (1L << 52);
+            int tz = Long.numberOfTrailingZeros(fm);
+            m = fm >>> tz;
+            k = 52 - Math.getExponent(f) - tz;
+        }
+        long mask = (k == 0) ? 0 : (1L << k) - 1;
+        long digits = 0;
+        int n = 0, point = 0;
+        if (ip > 0) {
+            digits = ip;
+            n = decimalDigits(ip);
+            point = n;
+        }
+        while (n < 18 && m != 0) {
+            m *= 10;
+            int d = (int) (m >>> k);
+            m &= mask;
+            if (n == 0 && d == 0) {
+                point--;                                      // leading zero after the point
+                continue;
+            }
+            digits = digits * 10 + d;
+            n++;
+        }
+        boolean sticky = m != 0;
+        digits *= L10[18 - n];                                // value = 0.[18 digits] * 10^point
+
+        for (int p = 15; p <= 17; p++) {
+            long div = L10[18 - p];
+            long c = digits / div, rem = digits % div, half = div / 2;
+            if (rem > half || (rem == half && (sticky || (c & 1) == 1))) c++;
+            int pt = point;
+            if (c == L10[p]) {                                // rounded up to 10^p
+                c /= 10;
+                pt++;
+            }
+            if (p < 17 && !readsBack(c, pt - p, abs)) continue;
+            // Drop trailing zeros, then lay out sign, digits and point
+            int len = p;
+            while (len > 1 && c % 10 == 0) {
+                c /= 10;
+                len--;
+            }
+            if (v < 0) out[pos++] = '-';
+            return writeDigits(out, pos, c, len, pt);
+        }
+        throw new AssertionError("17 digits always read back");
+    }
+
+    // true se c * 10^e (c < 2^53, |e| <= 22: uma só operação exata) é igual a abs
+    private static boolean readsBack(long c, int e, double abs) {
+        if (c > (1L << 53) || e < -22 || e > 22) return false;
+        double x = (e >= 0) ? c * P10[e] : c / P10[-e];
+        return x == abs;
+    }
+
+    // Escreve 0.[len algarismos de c] * 10^point em notação decimal simples, com pelo menos uma casa
+    private static int writeDigits(byte[] out, int pos, long c, int len, int point) {
+        if (point <= 0) {
+            out[pos++] = '0';
+            out[pos++] = '.';
+            for (int z = 0; z < -point; z++) out[pos++] = '0';
+            return writeLong(out, pos, c);
+        }
+        if (point >= len) {
+            pos = writeLong(out, pos, c);
+            for (int z = 0; z < point - len; z++) out[pos++] = '0';
+            out[pos++] = '.';
+            out[pos++] = '0';
+            return pos;
+        }
+        // Point inside the digits: write them all, then shift the fraction right by one
+        int at = writeLong(out, pos, c);
+        int dot = pos + point;
+        System.arraycopy(out, dot, out, dot + 1, at - dot);
+        out[dot] = '.';
+        return at + 1;
+    }
+
+    // Número de algarismos decimais de v (v >= 0)
+    private static int decimalDigits(long v) {
+        int n = 1;
+        while (n < 19 && v >= L10[n]) n++;
+        return n;
+    }
+
+    private static int writeAscii(byte[] out, int pos, String s) {
+        for (int i = 0; i < s.length(); i++) out[pos++] = (byte) s.charAt(i);
+        return pos;
+    }
+
+    private static byte[] ascii(String s) { return s.getBytes(StandardCharsets.US_ASCII); }
+}
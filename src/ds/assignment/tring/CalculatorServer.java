@@ -1,100 +1,413 @@
 package ds.assignment.tring;
 
+import ds.assignment.net.Connection;
+import ds.assignment.net.FrameHandler;
+import ds.assignment.net.NioLoop;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
 public class CalculatorServer {
 
+    static final int DEFAULT_CACHE_SIZE = 4096;
+    static final long DEFAULT_CACHE_TTL_MS = 60_000;
+    static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    private static final int READ_TIMEOUT_MS = 1000;
+
     private final int port;
+    private final int workers;
     private final ExecutorService pool;
+    private final boolean nio;
+    private volatile boolean verbose = true;
+    private volatile double dropReplyRate;
+    private volatile long serviceNanos;
+    private final LongAdder requests = new LongAdder();
+
+    // Socket mode: requests wait here, one flow per peerId, until a worker takes them (null in nio mode)
+    private final FairQueue<Pending> admission;
+    private final LongAdder dequeued = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    // Replies by (peerId, q): a peer that lost a reply and retries gets the same bytes (null = off)
+    private final ResultCache cache;
+
+    // One codec (tokenizer, number parser/formatter, buffers) per worker thread
+    private final ThreadLocal<CalcCodec> codecs = ThreadLocal.withInitial(CalcCodec::new);
+
+    // Socket mode: connections accepted but whose request line is not read yet (accept thread -> reader)
+    private final ConcurrentLinkedQueue<SocketChannel> accepted = new ConcurrentLinkedQueue<>();
 
     public CalculatorServer(int port, int workers) {
+        this(port, workers, false);
+    }
+
+    // nio = true serve os pedidos no NioLoop partilhado (um pedido por frame, ligações persistentes)
+    public CalculatorServer(int port, int workers, boolean nio) {
+        this(port, workers, nio, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MS);
+    }
+
+    // cacheSize = 0 desliga a cache de respostas; cacheTtlMs = 0 guarda as respostas até serem despejadas
+    public CalculatorServer(int port, int workers, boolean nio, int cacheSize, long cacheTtlMs) {
+        this(port, workers, nio, cacheSize, cacheTtlMs, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    // queueCapacity limita os pedidos à espera de um worker (modo socket); acima disso há respostas "ERR overloaded"
+    public CalculatorServer(int port, int workers, boolean nio, int cacheSize, long cacheTtlMs, int queueCapacity) {
         this.port = port;
-        this.pool = Executors.newFixedThreadPool(workers);
+        this.workers = workers;
+        this.nio = nio;
+        this.pool = nio ? null : Executors.newFixedThreadPool(workers);
+        this.admission = nio ? null : new FairQueue<>(queueCapacity);
+        this.cache = (cacheSize > 0) ? new ResultCache(cacheSize, cacheTtlMs) : null;
+    }
+
+    // Liga/desliga o registo de cada pedido no stdout
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+
+    // Injeção de falhas: fração dos pedidos cuja resposta é calculada mas não enviada (a ligação é fechada)
+    public void setDropReplyRate(double rate) { this.dropReplyRate = rate; }
+
+    // Simula um cálculo mais caro: cada pedido ocupa a thread do worker durante micros (só no modo socket)
+    public void setServiceTime(long micros) { this.serviceNanos = micros * 1000; }
+
+    // Define o peso de um peer na fila (pedidos servidos por volta; por omissão 1)
+    public void setPeerWeight(String peerId, int weight) {
+        if (admission != null) admission.setWeight(peerId, weight);
     }
 
-    // Inicia o servidor, aceita conexões e delega o tratamento de cada cliente para uma thread do pool
+    // Retorna quantos pedidos foram respondidos
+    public long requests() { return requests.sum(); }
+
+    // Retorna quantos pedidos esperam por um worker
+    public int queueDepth() { return (admission == null) ? 0 : admission.size(); }
+    // Retorna o maior número de pedidos que esperaram ao mesmo tempo
+    public int maxQueueDepth() { return (admission == null) ? 0 : admission.maxSize(); }
+    // Retorna quantos pedidos foram rejeitados com "ERR overloaded"
+    public long shedRequests() { return (admission == null) ? 0 : admission.shed(); }
+    // Retorna quantos pedidos passaram pela fila
+    public long queuedRequests() { return dequeued.sum(); }
+    // Retorna o tempo total que os pedidos passaram na fila (ns)
+    public long queueWaitNanos() { return waitNanos.sum(); }
+    // Retorna a maior espera de um pedido na fila (ns)
+    public long maxQueueWaitNanos() { return maxWaitNanos.get(); }
+
+    // Retorna quantos pedidos foram respondidos a partir da cache
+    public long cacheHits() { return (cache == null) ? 0 : cache.hits(); }
+
+    // Retorna quantos pedidos foram calculados (com a cache ligada)
+    public long cacheMisses() { return (cache == null) ? 0 : cache.misses(); }
+
+    // Retorna quantas respostas saíram da cache por falta de espaço ou por TTL
+    public long cacheEvictions() { return (cache == null) ? 0 : cache.evictions() + cache.expirations(); }
+
+    // Inicia o servidor: a thread de accept só aceita; a leitora lê cada pedido e põe-no na fila justa,
+    // de onde os workers o tiram
     public void start() throws IOException {
-        try (ServerSocket ss = new ServerSocket(port)) {
+        if (nio) {
+            startNio();
+            return;
+        }
+        // A backlog as deep as the queue: under overload clients get a reply, not a dropped SYN
+        try (ServerSocketChannel ss = ServerSocketChannel.open();
+             Selector selector = Selector.open()) {
+            ss.bind(new InetSocketAddress(port), Math.max(50, admission.capacity()));
             System.out.println("[SERVER] Starting Calculator Server on port " + port);
+            for (int i = 0; i < workers; i++) pool.submit(this::work);
+            Thread reader = new Thread(() -> readLoop(selector), "calc-reader");
+            reader.setDaemon(true);
+            reader.start();
             System.out.println("[SERVER] Server ready and listening...");
             while (true) {
-                Socket client = ss.accept();
-                pool.submit(() -> handleClient(client));
+                SocketChannel c = ss.accept();
+                c.configureBlocking(false);
+                accepted.add(c);
+                selector.wakeup();
             }
         } finally {
             pool.shutdownNow();
         }
     }
 
-    // Processa uma requisição de um cliente, executando a operação matemática solicitada
-    private void handleClient(Socket socket) {
-        try (Socket s = socket;
-             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream()));
-             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream()))) {
+    // Thread leitora: junta a linha de pedido de cada ligação aceite sem bloquear e admite-a quando chega o '\n'.
+    // A slow client only holds its own few bytes here, never the accept thread or another client.
+    private void readLoop(Selector selector) {
+        CalcCodec codec = codecs.get();
+        List<SelectionKey> done = new ArrayList<>();
+        while (true) {
+            try {
+                selector.select(READ_TIMEOUT_MS / 4);
+                SocketChannel c;
+                while ((c = accepted.poll()) != null) {
+                    c.register(selector, SelectionKey.OP_READ, new LineReader(System.nanoTime()));
+                }
+                for (Iterator<SelectionKey> it = selector.selectedKeys().iterator(); it.hasNext(); ) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (key.isValid() && readSome(key)) done.add(key);
+                }
+                long now = System.nanoTime();
+                for (SelectionKey key : selector.keys()) {
+                    LineReader r = (LineReader) key.attachment();
+                    if (key.isValid() && now - r.acceptedNs > READ_TIMEOUT_MS * 1_000_000L) {
+                        key.cancel();
+                        close(key.channel());
+                    }
+                }
+                if (done.isEmpty()) continue;
+                // Deregister the cancelled keys, then hand the sockets back in blocking mode
+                selector.selectNow();
+                for (SelectionKey key : done) {
+                    LineReader r = (LineReader) key.attachment();
+                    SocketChannel ch = (SocketChannel) key.channel();
+                    try {
+                        ch.configureBlocking(true);
+                        admit(ch.socket(), r.line, r.lineLength(), codec);
+                    } catch (IOException e) {
+                        System.err.println("[SERVER] Client handler error: " + e.getMessage());
+                        close(ch);
+                    }
+                }
+                done.clear();
+            } catch (IOException e) {
+                System.err.println("[SERVER] Reader error: " + e.getMessage());
+            }
+        }
+    }
+
+    // Lê o que houver na ligação de key; retorna true (e cancela key) quando a linha está completa
+    private static boolean readSome(SelectionKey key) {
+        SocketChannel ch = (SocketChannel) key.channel();
+        LineReader r = (LineReader) key.attachment();
+        try {
+            if (r.read(ch)) {
+                key.cancel();
+                return true;
+            }
+        } catch (IOException e) {
+            key.cancel();
+            close(ch);
+        }
+        return false;
+    }
+
+    private static void close(java.nio.channels.Channel c) {
+        try { c.close(); } catch (IOException ignored) {}
+    }
 
-            String line = in.readLine();
-            if (line == null || line.isBlank()) return;
+    // Põe o pedido line[0..len) na fila do seu peerId; o pedido que a fila rejeitar recebe
+    // "ERR overloaded" em vez de esperar pelo timeout do cliente
+    private void admit(Socket socket, byte[] line, int len, CalcCodec codec) throws IOException {
+        int tokens = (len <= 0) ? 0 : codec.split(line, 0, len);
+        if (tokens == 0) {
+            socket.close();
+            return;
+        }
+        String flow = (tokens >= 5) ? codec.token(4) : "";           // malformed lines share one flow
+        Pending p = new Pending(socket, java.util.Arrays.copyOf(line, len), System.nanoTime());
+        Pending shed = admission.offer(flow, p);
+        if (shed != null) reject(shed);
+    }
 
-            // Force dot decimal parsing/formatting
-            Locale.setDefault(Locale.US);
+    // Responde "ERR overloaded" a um pedido rejeitado pela fila
+    private void reject(Pending p) {
+        if (verbose) System.out.println("[SERVER] overloaded, shedding a request (queue=" + admission.size() + ")");
+        try (Socket s = p.socket) {
+            OutputStream out = s.getOutputStream();
+            out.write(CalcCodec.OVERLOADED_REPLY);
+            out.flush();
+        } catch (IOException ignored) {
+        }
+    }
 
-            String[] parts = line.trim().split("\\s+");
-            if (parts.length < 5) {
-                out.write("ERR malformed_request\n");
-                out.flush();
+    // Ciclo de um worker: tira o próximo pedido da fila justa e responde-lhe
+    private void work() {
+        CalcCodec codec = codecs.get();
+        while (true) {
+            Pending p;
+            try {
+                p = admission.take();
+            } catch (InterruptedException e) {
                 return;
             }
+            long waited = System.nanoTime() - p.queuedNs;
+            dequeued.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            handleClient(p, codec);
+        }
+    }
 
-            String op = parts[0].toLowerCase(Locale.ROOT);
-            double a = Double.parseDouble(parts[1]);
-            double b = Double.parseDouble(parts[2]);
-            long q = Long.parseLong(parts[3]);
-            String peerId = parts[4];
-
-            double res;
-            switch (op) {
-                case "add" -> res = a + b;
-                case "sub" -> res = a - b;
-                case "mul" -> res = a * b;
-                case "div" -> {
-                    if (b == 0.0) {
-                        out.write(q + " NaN\n");
-                        out.flush();
-                        System.out.println("[SERVER] " + peerId + " q=" + q + " div by zero");
-                        return;
+    // Modo nio: cada frame recebido é um pedido e a resposta segue na mesma ligação
+    private void startNio() throws IOException {
+        System.out.println("[SERVER] Starting Calculator Server on port " + port + " (nio)");
+        NioLoop.get().listen(new InetSocketAddress(port), new FrameHandler() {
+            private final CalcCodec codec = new CalcCodec();          // loop thread only
+
+            @Override
+            public void onFrame(Connection c, ByteBuffer frame) {
+                try {
+                    int len = frame.remaining();
+                    if (len > codec.line.length) codec.line = new byte[Math.max(len, codec.line.length * 2)];
+                    frame.get(codec.line, 0, len);
+                    int n = answer(codec, codec.line, 0, len);
+                    if (n >= 0 && dropReply()) {
+                        c.close();
+                    } else if (n >= 0) {
+                        c.send(codec.out, 0, n);
                     }
-                    res = a / b;
-                }
-                default -> {
-                    out.write(q + " NaN\n");
-                    out.flush();
-                    System.out.println("[SERVER] " + peerId + " q=" + q + " unknown op=" + op);
-                    return;
+                } catch (RuntimeException e) {
+                    System.err.println("[SERVER] Client handler error: " + e.getMessage());
+                    c.close();
                 }
             }
+        });
+        System.out.println("[SERVER] Server ready and listening...");
+        try {
+            // The loop thread is a daemon: keep the process alive
+            Thread.currentThread().join();
+        } catch (InterruptedException ignored) {}
+    }
 
-            out.write(q + " " + res + "\n");
+    // Processa uma requisição de um cliente, executando a operação matemática solicitada
+    private void handleClient(Pending p, CalcCodec codec) {
+        try (Socket s = p.socket) {
+            int n = answer(codec, p.line, 0, p.line.length);
+            if (n < 0) return;
+            long busy = serviceNanos;
+            if (busy > 0) LockSupport.parkNanos(busy);
+            if (dropReply()) return;
+            codec.out[n] = '\n';
+            OutputStream out = s.getOutputStream();
+            out.write(codec.out, 0, n + 1);
             out.flush();
 
-            System.out.println("[SERVER] " + peerId + " q=" + q + " " + op + "(" + a + "," + b + ")=" + res);
-
         } catch (Exception e) {
             // Keep server alive; log and move on
             System.err.println("[SERVER] Client handler error: " + e.getMessage());
         }
     }
 
+    // Um pedido lido, à espera de um worker
+    private record Pending(Socket socket, byte[] line, long queuedNs) {}
+
+    // Linha de pedido a meio de chegar numa ligação aceite (thread leitora)
+    private static final class LineReader {
+        final long acceptedNs;
+        byte[] line = new byte[128];
+        int len;                                 // bytes read so far
+        int end = -1;                            // index of the '\n', or len at end of stream
+
+        LineReader(long acceptedNs) { this.acceptedNs = acceptedNs; }
+
+        // Lê o que o socket tiver; retorna true quando a linha terminou ('\n' ou fim da ligação)
+        boolean read(SocketChannel ch) throws IOException {
+            while (true) {
+                if (len == line.length) line = java.util.Arrays.copyOf(line, len * 2);
+                int r = ch.read(ByteBuffer.wrap(line, len, line.length - len));
+                if (r < 0) {
+                    end = len;
+                    return true;
+                }
+                if (r == 0) return false;
+                for (int i = len; i < len + r; i++) {
+                    if (line[i] == '\n') {
+                        end = i;
+                        return true;
+                    }
+                }
+                len += r;
+            }
+        }
+
+        int lineLength() { return end; }
+    }
+
+    // Decide se a resposta a este pedido se perde (injeção de falhas)
+    private boolean dropReply() {
+        double r = dropReplyRate;
+        return r > 0 && ThreadLocalRandom.current().nextDouble() < r;
+    }
+
+    // Calcula a resposta (sem '\n') a uma linha "op a b q peerId" em buf[off..off+len) e escreve-a em
+    // codec.out; retorna o tamanho, ou -1 se a linha estiver vazia
+    int answer(CalcCodec codec, byte[] buf, int off, int len) {
+        int parsed = codec.parseRequest(buf, off, len);
+        if (parsed == CalcCodec.BLANK) return -1;
+        requests.increment();
+        if (parsed == CalcCodec.MALFORMED) return codec.formatMalformed();
+        if (cache == null) return compute(codec);
+
+        // A retry of (peerId, q) gets the first reply; if two copies race, the first stored wins.
+        // The cache also checks op, a and b, so a q reused for another request is computed.
+        int idOff = codec.tokenStart(4), idLen = codec.tokenLength(4);
+        long now = System.nanoTime();
+        int n = cache.get(buf, idOff, idLen, codec.q, codec.op, codec.a, codec.b, codec.out, now);
+        if (n >= 0) {
+            if (verbose) System.out.println("[SERVER] " + codec.token(4) + " q=" + codec.q + " cached");
+            return n;
+        }
+        n = compute(codec);
+        return cache.putIfAbsent(buf, idOff, idLen, codec.q, codec.op, codec.a, codec.b, codec.out, n, now);
+    }
+
+    // Versão em bloco: out[i] = a[i] op b[i] para i em [0, n), com a semântica de um pedido (ver BulkOps)
+    public void answerBulk(String op, double[] a, double[] b, double[] out, int n) {
+        BulkOps.apply(BulkOps.opCode(op), a, b, out, 0, n);
+        requests.add(n);
+    }
+
+    // Executa a operação do pedido já lido pelo codec e escreve a resposta em codec.out
+    private int compute(CalcCodec codec) {
+        double a = codec.a, b = codec.b;
+        long q = codec.q;
+        double res;
+        switch (codec.op) {
+            case CalcCodec.ADD -> res = a + b;
+            case CalcCodec.SUB -> res = a - b;
+            case CalcCodec.MUL -> res = a * b;
+            case CalcCodec.DIV -> {
+                if (b == 0.0) {
+                    if (verbose) System.out.println("[SERVER] " + codec.token(4) + " q=" + q + " div by zero");
+                    return codec.formatNaN(q);
+                }
+                res = a / b;
+            }
+            default -> {
+                if (verbose) System.out.println("[SERVER] " + codec.token(4) + " q=" + q + " unknown op=" + codec.token(0).toLowerCase(Locale.ROOT));
+                return codec.formatNaN(q);
+            }
+        }
+
+        if (verbose) System.out.println("[SERVER] " + codec.token(4) + " q=" + q + " " + codec.token(0).toLowerCase(Locale.ROOT) + "(" + a + "," + b + ")=" + res);
+        return codec.formatReply(q, res);
+    }
+
     // Ponto de entrada: inicializa o servidor com os argumentos fornecidos
     public static void main(String[] args) throws Exception {
         if (args.length < 1) {
-            System.out.println("Usage: java ds.assignment.tring.CalculatorServer <port> [workers]");
+            System.out.println("Usage: java ds.assignment.tring.CalculatorServer <port> [workers] [socket|nio] [cacheSize] [cacheTtlMs] [queueCapacity]");
             return;
         }
         int port = Integer.parseInt(args[0]);
         int workers = (args.length >= 2) ? Integer.parseInt(args[1]) : 32;
-        new CalculatorServer(port, workers).start();
+        boolean nio = (args.length >= 3) && args[2].equalsIgnoreCase("nio");
+        int cacheSize = (args.length >= 4) ? Integer.parseInt(args[3]) : DEFAULT_CACHE_SIZE;
+        long cacheTtlMs = (args.length >= 5) ? Long.parseLong(args[4]) : DEFAULT_CACHE_TTL_MS;
+        int queueCapacity = (args.length >= 6) ? Integer.parseInt(args[5]) : DEFAULT_QUEUE_CAPACITY;
+        new CalculatorServer(port, workers, nio, cacheSize, cacheTtlMs, queueCapacity).start();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,119 @@
+package ds.assignment.tring;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fila limitada com escalonamento justo por fluxo (deficit round-robin), para a admissão do CalculatorServer.
+ *
+ * Every item belongs to a flow (the peerId of the request). take() serves the active flows in
+ * turn, each up to its weight (default 1) per round, so a flow with a deep backlog cannot delay
+ * the others by more than one round. The queue holds at most capacity items; when it is full,
+ * offer() sheds the newest item of the flow with the longest backlog relative to its weight,
+ * which is the offered item itself when its own flow is that one. The caller answers the
+ * shed item with an explicit overload reply.
+ */
+final class FairQueue<T> {
+
+    // Itens de um fluxo à espera e o crédito que lhe resta na volta atual
+    private static final class Flow<T> {
+        final String key;
+        final ArrayDeque<T> items = new ArrayDeque<>();
+        final int weight;
+        int deficit;
+
+        Flow(String key, int weight) {
+            this.key = key;
+            this.weight = weight;
+        }
+    }
+
+    private final int capacity;
+    private final Map<String, Flow<T>> flows = new HashMap<>();      // flows with items only
+    private final ArrayDeque<Flow<T>> round = new ArrayDeque<>();    // service order
+    private final Map<String, Integer> weights = new HashMap<>();
+    private int size, maxSize;
+    private long shed;
+
+    FairQueue(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+    }
+
+    // Define o peso do fluxo key (pedidos servidos por volta); vale para as próximas vezes que o fluxo ficar ativo
+    synchronized void setWeight(String key, int weight) {
+        weights.put(key, Math.max(1, weight));
+    }
+
+    // Junta item ao fluxo key; retorna o item rejeitado (item, ou o mais recente do fluxo mais longo), ou null
+    synchronized T offer(String key, T item) {
+        Flow<T> f = flows.get(key);
+        T victim = null;
+        if (size == capacity) {
+            Flow<T> longest = longest();
+            int mine = (f == null) ? 1 : f.items.size() + 1;
+            int myWeight = (f == null) ? weights.getOrDefault(key, 1) : f.weight;
+            if (longest == null || (long) mine * longest.weight >= (long) longest.items.size() * myWeight) {
+                shed++;
+                return item;
+            }
+            victim = longest.items.pollLast();
+            size--;
+            shed++;
+            if (longest.items.isEmpty()) retire(longest);
+        }
+        if (f == null) {
+            f = new Flow<>(key, weights.getOrDefault(key, 1));
+            flows.put(key, f);
+            round.addLast(f);
+        }
+        f.items.addLast(item);
+        size++;
+        if (size > maxSize) maxSize = size;
+        notify();
+        return victim;
+    }
+
+    // Espera por um item e retorna o próximo segundo o DRR
+    synchronized T take() throws InterruptedException {
+        while (size == 0) wait();
+        Flow<T> f = round.peekFirst();
+        if (f.deficit == 0) f.deficit = f.weight;                   // its turn in this round
+        T item = f.items.pollFirst();
+        f.deficit--;
+        size--;
+        if (f.items.isEmpty()) {
+            retire(f);
+        } else if (f.deficit == 0) {
+            round.addLast(round.pollFirst());
+        }
+        return item;
+    }
+
+    // Fluxo com mais itens por unidade de peso
+    private Flow<T> longest() {
+        Flow<T> best = null;
+        for (Flow<T> f : round) {
+            if (best == null || (long) f.items.size() * best.weight > (long) best.items.size() * f.weight) best = f;
+        }
+        return best;
+    }
+
+    // Tira da volta um fluxo que ficou vazio
+    private void retire(Flow<T> f) {
+        round.remove(f);
+        flows.remove(f.key);
+    }
+
+    // Retorna o número máximo de itens
+    int capacity() { return capacity; }
+    // Retorna quantos itens esperam
+    synchronized int size() { return size; }
+    // Retorna o maior número de itens que esperaram ao mesmo tempo
+    synchronized int maxSize() { return maxSize; }
+    // Retorna quantos itens foram rejeitados por a fila estar cheia
+    synchronized long shed() { return shed; }
+    // Retorna quantos fluxos têm itens à espera
+    synchronized int activeFlows() { return round.size(); }
+}
@@ -0,0 +1,201 @@
+package ds.assignment.tring;
+
+/**
+ * Fila limitada das operações de um peer, prazo mais cedo primeiro, em arrays primitivos.
+ *
+ * A binary min-heap on (deadline, id) over parallel arrays of op code, operands, id and
+ * timestamps, so a queued op costs no objects; an Op is only built when the token takes it.
+ * offer() is for new ops and keeps the queue at capacity: Overflow.BLOCK makes the caller wait
+ * for room, so the generator slows down to the rate at which the token drains the queue, and
+ * Overflow.DROP_OLDEST drops the op with the lowest id (the one generated first) to make room,
+ * since it is the likeliest to have missed its deadline already. putBack() returns ops the
+ * token took but did not compute: it never waits nor drops, so while the token is out with a
+ * batch the queue may briefly hold up to capacity plus that batch.
+ */
+final class OpQueue {
+
+    enum Overflow { BLOCK, DROP_OLDEST }
+
+    // Tipos por código do CalcCodec
+    private static final String[] TYPES = {"add", "sub", "mul", "div"};
+    private static final int INITIAL = 64;
+
+    private int capacity;
+    private Overflow overflow;
+    private byte[] type;
+    private double[] a, b;
+    private long[] id, born, deadline;
+    private int size, maxSize;
+    private long dropped, blocked;
+
+    OpQueue(int capacity, Overflow overflow) {
+        setLimit(capacity, overflow);
+        allocate(INITIAL);
+    }
+
+    // Muda a capacidade e a política; as operações a mais que já estão na fila ficam
+    synchronized void setLimit(int capacity, Overflow overflow) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+        this.overflow = overflow;
+        notifyAll();
+    }
+
+    // Código do tipo de operação (add, sub, mul, div); IllegalArgumentException se não existe
+    static byte code(String type) {
+        int c = BulkOps.opCode(type);
+        if (c == BulkOps.UNKNOWN) throw new IllegalArgumentException("Unknown op type: " + type);
+        return (byte) c;
+    }
+
+    // Junta uma operação nova; com BLOCK espera que haja lugar, com DROP_OLDEST descarta a mais antiga se está cheia
+    synchronized void offer(Peer.Op op) throws InterruptedException {
+        if (size >= capacity) {
+            if (overflow == Overflow.BLOCK) {
+                blocked++;
+                while (size >= capacity) wait();
+            } else {
+                while (size >= capacity) {
+                    removeAt(oldest());
+                    dropped++;
+                }
+            }
+        }
+        insert(op);
+    }
+
+    // Devolve à fila uma operação que o token tirou e não calculou (nunca espera nem descarta)
+    synchronized void putBack(Peer.Op op) {
+        insert(op);
+    }
+
+    // Retira a operação de prazo mais cedo, ou null se a fila está vazia
+    synchronized Peer.Op poll() {
+        if (size == 0) return null;
+        Peer.Op op = at(0);
+        removeAt(0);
+        return op;
+    }
+
+    // Esvazia a fila; retorna quantas operações tinha
+    synchronized int clear() {
+        int n = size;
+        size = 0;
+        notifyAll();
+        return n;
+    }
+
+    synchronized int size() { return size; }
+
+    synchronized boolean isEmpty() { return size == 0; }
+
+    // Retorna o maior número de operações que a fila chegou a ter
+    synchronized int maxSize() { return maxSize; }
+
+    // Retorna quantas operações foram descartadas por a fila estar cheia
+    synchronized long dropped() { return dropped; }
+
+    // Retorna quantas vezes offer() teve de esperar por lugar
+    synchronized long blocked() { return blocked; }
+
+    synchronized int capacity() { return capacity; }
+
+    private void allocate(int n) {
+        type = new byte[n];
+        a = new double[n];
+        b = new double[n];
+        id = new long[n];
+        born = new long[n];
+        deadline = new long[n];
+    }
+
+    private void grow() {
+        byte[] t = type;
+        double[] oa = a, ob = b;
+        long[] oi = id, ot = born, od = deadline;
+        allocate(Math.max(INITIAL, t.length * 2));
+        System.arraycopy(t, 0, type, 0, size);
+        System.arraycopy(oa, 0, a, 0, size);
+        System.arraycopy(ob, 0, b, 0, size);
+        System.arraycopy(oi, 0, id, 0, size);
+        System.arraycopy(ot, 0, born, 0, size);
+        System.arraycopy(od, 0, deadline, 0, size);
+    }
+
+    private Peer.Op at(int i) {
+        return new Peer.Op(TYPES[type[i]], a[i], b[i], id[i], born[i], deadline[i]);
+    }
+
+    private void insert(Peer.Op op) {
+        if (size == type.length) grow();
+        int i = size++;
+        type[i] = code(op.type());
+        a[i] = op.a();
+        b[i] = op.b();
+        id[i] = op.id();
+        born[i] = op.bornNs();
+        deadline[i] = op.deadlineNs();
+        up(i);
+        if (size > maxSize) maxSize = size;
+    }
+
+    // Tira o elemento i, pondo o último no seu lugar
+    private void removeAt(int i) {
+        int last = --size;
+        if (i != last) {
+            move(last, i);
+            down(i);
+            up(i);
+        }
+        if (size < capacity) notifyAll();
+    }
+
+    // Índice da operação com menor id (a gerada primeiro); numa heap é uma procura linear, só feita quando está cheia
+    private int oldest() {
+        int best = 0;
+        for (int i = 1; i < size; i++) if (id[i] < id[best]) best = i;
+        return best;
+    }
+
+    private boolean less(int i, int j) {
+        return deadline[i] != deadline[j] ? deadline[i] < deadline[j] : id[i] < id[j];
+    }
+
+    private void up(int i) {
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (!less(i, p)) break;
+            swap(i, p);
+            i = p;
+        }
+    }
+
+    private void down(int i) {
+        while (true) {
+            int l = 2 * i + 1, m = i;
+            if (l < size && less(l, m)) m = l;
+            if (l + 1 < size && less(l + 1, m)) m = l + 1;
+            if (m == i) return;
+            swap(i, m);
+            i = m;
+        }
+    }
+
+    private void move(int from, int to) {
+        type[to] = type[from];
+        a[to] = a[from];
+        b[to] = b[from];
+        id[to] = id[from];
+        born[to] = born[from];
+        deadline[to] = deadline[from];
+    }
+
+    private void swap(int i, int j) {
+        byte t = type[i]; type[i] = type[j]; type[j] = t;
+        double x = a[i]; a[i] = a[j]; a[j] = x;
+        x = b[i]; b[i] = b[j]; b[j] = x;
+        long y = id[i]; id[i] = id[j]; id[j] = y;
+        y = born[i]; born[i] = born[j]; born[j] = y;
+        y = deadline[i]; deadline[i] = deadline[j]; deadline[j] = y;
+    }
+}
@@ -1,42 +1,312 @@
 package ds.assignment.tring;
 
+import ds.assignment.net.Connection;
+import ds.assignment.net.FrameClient;
+import ds.assignment.net.FrameHandler;
+import ds.assignment.net.NioLoop;
+
 import java.io.*;
 import java.net.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
 
 public class Peer {
     // Configuration
     private final String id;
     private final int port;
-    private final Addr next, server;
+    private volatile Addr next;                                     // rewired by the ring plan
+    private final ServerPool servers;
     private String host;
+    private final boolean nio;
     
     // State
-    private final Queue<Op> queue = new ConcurrentLinkedQueue<>();
+    private final OpQueue queue = new OpQueue(QUEUE_CAPACITY, OpQueue.Overflow.BLOCK);  // earliest deadline first, bounded
     private final Random rng = new Random();
     private volatile boolean started = false;
-    private volatile long opId = 0;
+    // q = boot time in µs plus a count, so a restarted peer never reuses a q the servers have cached
+    private final AtomicLong opId = new AtomicLong(System.currentTimeMillis() * 1000);
+    private volatile boolean verbose = true;
+    private volatile boolean interactive = true;
+    private volatile double opRate = POISSON_RATE;
+    private volatile LongConsumer opListener;
+    private volatile LongConsumer hopListener;
+    private volatile boolean stubCalculator;                        // compute in-process, without servers
+    private volatile int callParallelism;
+    private ExecutorService callPool;                               // token thread only; null until needed
+    private final AtomicLong hops = new AtomicLong();
+    private final AtomicLong opsGenerated = new AtomicLong();
+    private final AtomicLong opsComputed = new AtomicLong();
+
+    // Token hold budget: a visit computes at most holdOps ops and stops starting new ones after
+    // holdNs (0 = no limit), so a peer with a deep backlog cannot keep the token from the others.
+    // Ops left over wait for the next visit, still in deadline order
+    private volatile long holdNs;
+    private volatile int holdOps;
+    private volatile long opDeadlineNs;                             // relative deadline of generated ops; 0 = none
+    private final AtomicLong deadlineMisses = new AtomicLong();
+    private final AtomicLong budgetStops = new AtomicLong();
+    private volatile long maxHoldNs;
+
+    // Token loss detection: the watchdog regenerates the token when it is overdue. Tokens rank by
+    // (generation, origin); a peer drops any token below the best it has seen, so when several
+    // peers regenerate at once only the highest-ranked token keeps going (Chang-Roberts, with the
+    // regenerated tokens as the election messages). A peer only watches once it has seen the token
+    // come back: during the first lap the ring is still being discovered, so its rotation time is
+    // unknown, and a token regenerated from the partial ring would skip the peers not in it yet
+    private final Object tokenLock = new Object();                 // one token processed at a time
+    private volatile long lastTokenNs;                              // 0 = no token seen yet
+    private volatile long rotationNs;                               // EWMA of the time between visits
+    private long lastVisitHops;                                     // guarded by tokenLock
+    private volatile int rank;                                      // position in the token's ring order
+    private volatile List<Addr> lastRing = List.of();               // replaced on every visit, never mutated
+    private Map<Addr, Addr> lastEdges = Map.of();                   // guarded by tokenLock
+    private long bestGeneration = -1;                               // guarded by this
+    private Addr bestOrigin;
+    private volatile long minLossTimeoutMs = MIN_LOSS_TIMEOUT_MS;
+    private final AtomicLong regenerations = new AtomicLong();
+    private final AtomicLong staleTokens = new AtomicLong();
+    private volatile long maxGapNs;
+    private volatile boolean crashOnToken, crashed;
+    private final AtomicLong opsLost = new AtomicLong();
+
+    // Ring reordering: the prober measures the RTT to the other peers, every visit writes this
+    // peer's nearest ones on the token, and every PLAN_ROTATIONS rotations the holder plans a
+    // shorter cycle (RingPlanner), which each peer adopts as its next when the token comes by
+    private volatile boolean reorder = true;
+    private final Map<Addr, RttWindow> measured = new ConcurrentHashMap<>();
+    private volatile ToIntFunction<String> linkDelay;               // emulated one-way delay (µs) to "host:port"
+    private final AtomicLong rewires = new AtomicLong();
+    private volatile int tourMicros;
+    private volatile long rotationBeforeNs;                         // rotation estimate before the first rewire
+
+    // Ring of rings: a gateway sits in the top ring and owns the token of its local ring. While it
+    // holds the top token it sends the local token once around the local ring and waits for it to
+    // come back, so only one ring at a time has a live token and mutual exclusion holds across all
+    // of them. Local peers tell their gateway when they have ops waiting (a Want), and the gateway
+    // skips local rings that have none, so an op waits about one top rotation plus one local
+    // rotation: O(√N) hops with √N rings of √N peers, instead of O(N) in a single ring
+    private volatile List<Addr> localRing = List.of();              // gateway: its local peers, in ring order
+    private volatile Addr localHome;                                // gateway: its address on the local token
+    private Token localToken;                                       // gateway: guarded by tokenLock
+    private long lastLocalNs, localRotationNs;                      // gateway: guarded by tokenLock
+    private final BlockingQueue<Token> localReturns = new LinkedBlockingQueue<>();
+    private final AtomicBoolean localDemand = new AtomicBoolean(true);  // the first rotation tells the local peers their gateway
+    private final AtomicLong localRotations = new AtomicLong();
+    private final AtomicLong localSkips = new AtomicLong();
+    private final AtomicLong localRegenerations = new AtomicLong();
+    private volatile Addr gateway;                                  // local peer: learnt from the local token
+    private final AtomicBoolean wantSent = new AtomicBoolean();     // local peer: one Want per visit
+    private final Semaphore wantSignal = new Semaphore(0);
+    private final byte[] wantReply = new byte[256];                 // want thread only
+    private volatile long lastSentNs;                               // last time this peer forwarded a token
+
+    // NIO mode: tokens arrive on the shared NioLoop and are processed by one token thread;
+    // persistent FrameClients replace the per-token and per-op sockets
+    private final BlockingQueue<Token> inbox = new LinkedBlockingQueue<>();
+    private final Map<Addr, FrameClient> clients = new ConcurrentHashMap<>();
+    private byte[] tokenBuf = new byte[4096];                       // token thread only
+    private final byte[] replyBuf = new byte[256];                  // token thread only
+    private final byte[] pingReply = new byte[256];                 // prober thread only
+    private final byte[] idBytes;
+
+    // Every thread that calls the calculator servers has its own codec, reply buffer and
+    // NIO connections (one FrameClient per server, since a FrameClient serves one call at a time)
+    private final ThreadLocal<Caller> callers;
     
     // Constants
     private static final int TIMEOUT_MS = 1500;
+    private static final byte[] PING_FRAME = {'P'};                 // nio: shorter than any token frame
+    private static final byte[] WANT_FRAME = {'W'};                 // nio: same length as PING_FRAME
     private static final double POISSON_RATE = 4.0 / 60.0; // 4 ops/min
+    static final int QUEUE_CAPACITY = 10_000;                       // ops waiting for the token
+    private static final long MIN_LOSS_TIMEOUT_MS = 2000;
+    private static final int LOSS_FACTOR = 4;                       // overdue after 4 expected rotations
+    private static final long WATCHDOG_MS = 100;
+    private static final long PROBE_MS = 100;                       // until every ring member is measured
+    private static final long REPROBE_MS = 500;                     // afterwards
+    private static final int RTT_ROW = 8;                           // nearest peers each peer reports
+    private static final int RTT_SAMPLES = 4;                       // per peer; the estimate is their minimum
+    private static final int PLAN_ROTATIONS = 20;
+    private static final int MIN_GAIN_PERCENT = 10;                 // a new plan must be this much shorter
+    private static final long LOCAL_IDLE_MS = 1000;                 // a gateway sends its local token at least this often
 
     public Peer(String id, int port, String nextHost, int nextPort, String srvHost, int srvPort) {
+        this(id, port, nextHost, nextPort, srvHost, srvPort, false);
+    }
+
+    // nio = true troca os sockets bloqueantes pelo transporte ds.assignment.net
+    public Peer(String id, int port, String nextHost, int nextPort, String srvHost, int srvPort, boolean nio) {
+        this(id, port, nextHost, nextPort, List.of(srvHost + ":" + srvPort), nio);
+    }
+
+    // servers: "host:port" de cada servidor de cálculo; os pedidos repartem-se entre eles (ServerPool)
+    public Peer(String id, int port, String nextHost, int nextPort, List<String> servers, boolean nio) {
         this.id = id;
+        this.nio = nio;
         this.port = port;
         this.next = new Addr(nextHost, nextPort);
-        this.server = new Addr(srvHost, srvPort);
+        List<Addr> addrs = new ArrayList<>();
+        for (String s : servers) addrs.add(Addr.parse(s));
+        this.servers = new ServerPool(addrs);
+        this.callParallelism = addrs.size();
+        this.callers = ThreadLocal.withInitial(() -> new Caller(addrs.size()));
         this.host = getLocalHost();
+        this.idBytes = id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Liga/desliga o registo de cada token e operação no stdout
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+
+    // interactive = false não lê comandos do stdin (o token é injetado com injectToken())
+    public void setInteractive(boolean interactive) { this.interactive = interactive; }
+
+    // Define o ritmo de geração de operações (ops/s, Poisson; 0 = não gera)
+    public void setOpRate(double opsPerSec) { this.opRate = opsPerSec; }
+
+    // Define quantos pedidos ao servidor podem estar em curso ao mesmo tempo com o token (por omissão, um por servidor)
+    public void setCallParallelism(int calls) { this.callParallelism = Math.max(1, calls); }
+
+    // Define quem é avisado (com a latência gerada -> calculada, em ns) de cada operação calculada
+    public void setOpListener(LongConsumer listener) { this.opListener = listener; }
+
+    // Define quem é avisado (com o System.nanoTime() da chegada) de cada passagem do token por este peer
+    public void setHopListener(LongConsumer listener) { this.hopListener = listener; }
+
+    // stub = true calcula as operações no próprio peer, sem servidores de cálculo (para medir só o anel)
+    public void setStubCalculator(boolean stub) { this.stubCalculator = stub; }
+
+    // Limita cada passagem do token a maxOps operações e a maxMillis a iniciá-las (0 = sem limite)
+    public void setHoldBudget(long maxMillis, int maxOps) {
+        this.holdNs = Math.max(0, maxMillis) * 1_000_000L;
+        this.holdOps = Math.max(0, maxOps);
+    }
+
+    // Define o prazo (ms desde a geração) das operações geradas; 0 = sem prazo
+    public void setOpDeadline(long millis) { this.opDeadlineNs = Math.max(0, millis) * 1_000_000L; }
+
+    // Junta à fila uma operação com prazo próprio (ms a partir de agora; 0 = sem prazo); se a fila está cheia
+    // espera por lugar ou descarta a mais antiga, conforme setQueueLimit
+    public void submit(String type, double a, double b, long deadlineMillis) throws InterruptedException {
+        OpQueue.code(type);
+        long now = System.nanoTime();
+        long deadline = (deadlineMillis > 0) ? now + deadlineMillis * 1_000_000L : Op.NO_DEADLINE;
+        queue.offer(new Op(type, a, b, opId.incrementAndGet(), now, deadline));
+        opsGenerated.incrementAndGet();
+        wantToken();
+    }
+
+    // Limita a fila a capacity operações: com dropOldest descarta a mais antiga para dar lugar a uma nova,
+    // senão quem gera espera (por omissão, QUEUE_CAPACITY e espera)
+    public void setQueueLimit(int capacity, boolean dropOldest) {
+        queue.setLimit(capacity, dropOldest ? OpQueue.Overflow.DROP_OLDEST : OpQueue.Overflow.BLOCK);
+    }
+
+    // Retorna quantas vezes o token passou por este peer
+    public long hops() { return hops.get(); }
+    // Retorna quantas operações este peer gerou
+    public long opsGenerated() { return opsGenerated.get(); }
+    // Retorna quantas operações este peer já calculou
+    public long opsComputed() { return opsComputed.get(); }
+    // Retorna quantas operações esperam pelo token
+    public int backlog() { return queue.size(); }
+    // Retorna o maior número de operações que esperaram ao mesmo tempo pelo token
+    public int maxBacklog() { return queue.maxSize(); }
+    // Retorna quantas operações foram descartadas por a fila estar cheia
+    public long opsDropped() { return queue.dropped(); }
+    // Retorna quantas vezes a geração de operações parou à espera de lugar na fila
+    public long generatorStalls() { return queue.blocked(); }
+    // Retorna quantas operações foram calculadas depois do prazo
+    public long deadlineMisses() { return deadlineMisses.get(); }
+    // Retorna quantas passagens do token deixaram operações na fila por causa do limite
+    public long budgetStops() { return budgetStops.get(); }
+    // Retorna o maior tempo que este peer ficou com o token (ns)
+    public long maxHoldNanos() { return maxHoldNs; }
+    // Retorna quantos tokens este peer regenerou
+    public long regenerations() { return regenerations.get(); }
+    // Retorna quantos tokens duplicados ou antigos este peer descartou
+    public long staleTokens() { return staleTokens.get(); }
+    // Retorna o maior intervalo entre duas passagens do token por este peer (ns)
+    public long maxTokenGapNanos() { return maxGapNs; }
+    // Retorna quantas operações se perderam com a queda deste peer
+    public long opsLost() { return opsLost.get(); }
+
+    // Define o tempo mínimo sem token antes de o dar como perdido (ms; o limite real cresce com o tempo de volta)
+    public void setLossTimeout(long ms) { this.minLossTimeoutMs = ms; }
+
+    // Injeção de falhas: o peer cai quando o token chegar, depois do ACK, e o token perde-se com ele
+    public void crashWithToken() { this.crashOnToken = true; }
+
+    // Injeção de falhas: o peer cai já (sem o token, a menos que o esteja a usar; nesse caso ainda o encaminha)
+    public void kill() { crash(false); }
+
+    // Retorna true depois de o peer cair
+    public boolean isCrashed() { return crashed; }
+
+    // Liga/desliga a medição de RTTs e a reordenação do anel (ligada por omissão)
+    public void setReorder(boolean reorder) { this.reorder = reorder; }
+
+    // Simula latência: antes de cada mensagem para um peer ("host:port"), espera o atraso dado (µs)
+    public void setLinkDelay(ToIntFunction<String> microsTo) { this.linkDelay = microsTo; }
+
+    // Retorna quantas vezes o plano do anel mudou o próximo deste peer
+    public long rewires() { return rewires.get(); }
+    // Retorna o custo estimado (soma dos RTTs, µs) do último plano do anel visto, ou 0
+    public int plannedTourMicros() { return tourMicros; }
+    // Retorna a estimativa atual do tempo de volta do token (ns)
+    public long rotationNanos() { return rotationNs; }
+    // Retorna o tempo de volta estimado antes da primeira mudança do próximo (ns), ou 0
+    public long rotationBeforeReorderNanos() { return rotationBeforeNs; }
+
+    // Torna este peer gateway de um anel local com os peers dados ("host:port", pela ordem do anel), antes de start();
+    // o próximo do último deve ser este peer. O próximo deste peer é o gateway seguinte no anel de topo
+    public void setLocalRing(List<String> peers) {
+        List<Addr> ring = new ArrayList<>();
+        for (String s : peers) ring.add(Addr.parse(s));
+        this.localRing = List.copyOf(ring);
     }
 
+    // Retorna quantas voltas o token local deu a partir deste gateway
+    public long localRotations() { return localRotations.get(); }
+    // Retorna quantas passagens do token de topo não mandaram o token local por não haver pedidos
+    public long localSkips() { return localSkips.get(); }
+    // Retorna quantas vezes este gateway deu o token local como perdido e o regenerou
+    public long localRegenerations() { return localRegenerations.get(); }
+
+    // Retorna quantas vezes um servidor de cálculo foi ejetado
+    public long serverEjections() { return servers.ejections(); }
+    // Retorna quantas respostas "ERR overloaded" vieram dos servidores de cálculo (não contam para a ejeção)
+    public long serverOverloads() { return servers.overloads(); }
+    // Retorna quantos servidores de cálculo estão em rotação
+    public int healthyServers() { return servers.healthy(); }
+
     // Inicia o peer, threads de geração de operações, terminal e aceita conexões para receber tokens
     public void start() throws IOException {
-        System.out.printf("[%s] Started on port %d (next=%s, server=%s)\n", id, port, next, server);
-        System.out.println("[" + id + "] Type 'start' to inject token");
+        System.out.printf("[%s] Started on port %d (next=%s, server=%s)\n", id, port, next, servers);
+        if (interactive) System.out.println("[" + id + "] Type 'start' to inject token");
         
         new Thread(this::generateOps, "generator").start();
-        new Thread(this::readConsole, "console").start();
+        Thread watchdog = new Thread(this::watchdog, id + "-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        Thread prober = new Thread(this::probe, id + "-prober");
+        prober.setDaemon(true);
+        prober.start();
+        if (interactive) new Thread(this::readConsole, "console").start();
+
+        if (nio) {
+            startNio();
+            return;
+        }
+        // A gateway waits for its local token with the top token, while the accept loop takes the local token back
+        if (!localRing.isEmpty()) startTokenThread();
         
         try (ServerSocket ss = new ServerSocket(port)) {
             while (true) {
@@ -57,11 +327,71 @@ public class Peer {
         Object obj = in.readObject();
         
         if (obj instanceof Token tok) {
+            if (crashed) return;                        // no ACK: the sender skips this peer
             sendAck(sock);
-            processToken(tok);
+            if (isLocalReturn(tok)) localReturns.add(tok);
+            else if (!localRing.isEmpty()) inbox.add(tok);
+            else processToken(tok);
+        } else if (obj instanceof Ping && !crashed) {
+            sendAck(sock);
+        } else if (obj instanceof Want && !crashed) {
+            sendAck(sock);
+            localDemand.set(true);
         }
     }
 
+    // Retorna true se tok é o token local deste gateway a voltar do anel local
+    private boolean isLocalReturn(Token tok) {
+        return tok.gateway != null && tok.gateway.equals(localHome);
+    }
+
+    // Modo nio: o NioLoop recebe os tokens e responde com o ACK; a thread token processa-os
+    private void startNio() throws IOException {
+        byte[] ack = id.getBytes(StandardCharsets.UTF_8);
+        NioLoop.get().listen(new InetSocketAddress(port), new FrameHandler() {
+            @Override
+            public void onFrame(Connection c, ByteBuffer frame) {
+                InetSocketAddress local = c.localAddress();
+                if (local != null) host = local.getAddress().getHostAddress(); // Update host
+                if (frame.remaining() == PING_FRAME.length) {   // Ping or Want
+                    if (crashed) return;
+                    if (frame.get(frame.position()) == WANT_FRAME[0]) localDemand.set(true);
+                    c.send(ack, 0, ack.length);
+                    return;
+                }
+                Token tok;
+                try {
+                    tok = Token.decode(frame);
+                } catch (RuntimeException e) {
+                    System.err.println("[" + id + "] Bad token frame: " + e);
+                    c.close();
+                    return;
+                }
+                if (crashed) {
+                    c.close();
+                    return;
+                }
+                c.send(ack, 0, ack.length);
+                if (isLocalReturn(tok)) localReturns.add(tok); else inbox.add(tok);
+            }
+        });
+        startTokenThread();
+    }
+
+    // Thread que processa os tokens do inbox
+    private void startTokenThread() {
+        new Thread(() -> {
+            while (true) {
+                try {
+                    processToken(inbox.take());
+                } catch (InterruptedException ignored) {
+                } catch (Exception e) {
+                    System.err.println("[" + id + "] Error: " + e.getMessage());
+                }
+            }
+        }, "token").start();
+    }
+
     // Envia um ACK para o peer que enviou o token
     private void sendAck(Socket sock) {
         try {
@@ -73,11 +403,297 @@ public class Peer {
 
     // Processa o token recebido: executa operações da fila e encaminha o token
     private void processToken(Token tok) {
+        synchronized (tokenLock) {
+            if (crashed) return;
+            if (crashOnToken) {
+                crash(true);
+                return;
+            }
+            if (!admit(tok)) {
+                staleTokens.incrementAndGet();
+                if (verbose) System.out.printf("[%s] Dropped stale token (gen=%d from %s)\n", id, tok.generation, tok.origin);
+                return;
+            }
+            visit(tok);
+        }
+    }
+
+    // Decide se tok é o token a seguir: fica com o de maior (geração, origem) visto até agora
+    private synchronized boolean admit(Token tok) {
+        int c = (bestOrigin == null) ? 1 : compare(tok.generation, tok.origin, bestGeneration, bestOrigin);
+        if (c < 0) return false;
+        bestGeneration = tok.generation;
+        bestOrigin = tok.origin;
+        return true;
+    }
+
+    private static int compare(long g1, Addr o1, long g2, Addr o2) {
+        if (g1 != g2) return Long.compare(g1, g2);
+        return String.valueOf(o1).compareTo(String.valueOf(o2));
+    }
+
+    // Atualiza a estimativa do tempo de volta: tempo desde a última visita, visto em hops do token
+    private void observeRotation(Token tok) {
+        long now = System.nanoTime();
+        long prev = lastTokenNs;
+        if (prev != 0) {
+            long gap = now - prev;
+            if (gap > maxGapNs) maxGapNs = gap;
+            long hopsSince = tok.hops - lastVisitHops;
+            int ring = Math.max(1, tok.ring.size() - tok.dead.size());
+            // hopsSince is one rotation in a healthy ring; scale to the ring size otherwise
+            if (hopsSince > 0) {
+                long rotation = gap / hopsSince * ring;
+                long r = rotationNs;
+                rotationNs = (r == 0) ? rotation : r + (rotation - r) / 4;
+            }
+        }
+        lastVisitHops = tok.hops;
+        lastTokenNs = now;
+    }
+
+    // Vigia a chegada do token; se tardar mais do que o esperado, regenera-o
+    private void watchdog() {
+        while (true) {
+            sleep(WATCHDOG_MS);
+            if (lastTokenNs == 0 || crashed || gateway != null) continue;   // the gateway watches a local ring
+            // Not armed before the first full rotation: however large the ring, its first lap
+            // (which also opens every connection) is never taken for a lost token
+            long rotation = rotationNs;
+            if (rotation == 0) continue;
+            long last = Math.max(lastTokenNs, lastSentNs);
+            // Peers wait longer the further they are in the ring order, so the first live peer
+            // regenerates and its token reaches the others before their own timeouts expire. A
+            // peer's last visit can be up to one rotation older than another's, hence the step
+            // of one rotation plus a watchdog period per rank
+            long stagger = rank * (WATCHDOG_MS * 1_000_000L + rotation);
+            long timeout = Math.max(minLossTimeoutMs * 1_000_000L, LOSS_FACTOR * rotation) + stagger;
+            if (System.nanoTime() - last > timeout) regenerate(timeout);
+        }
+    }
+
+    // Cria um token da geração seguinte com o último anel conhecido e põe-no a circular a partir daqui
+    private void regenerate(long timeoutNs) {
+        Token tok = new Token();
+        synchronized (this) {
+            tok.generation = bestGeneration + 1;
+            tok.origin = me();
+        }
+        synchronized (tokenLock) {
+            if (System.nanoTime() - Math.max(lastTokenNs, lastSentNs) <= timeoutNs) return;     // it just came back
+            tok.ring.addAll(lastRing);
+            tok.edges.putAll(lastEdges);
+            tok.hops = lastVisitHops;
+        }
+        regenerations.incrementAndGet();
+        System.out.printf("[%s] Token lost (%.1fs without it): regenerating generation %d\n",
+                id, (System.nanoTime() - lastTokenNs) / 1e9, tok.generation);
+        lastTokenNs = System.nanoTime();                // one regeneration per timeout
+        if (nio) inbox.add(tok); else processToken(tok);
+    }
+
+    // Escreve no token os RTTs mais curtos deste peer, replaneia o anel se for altura e segue o plano
+    private void reorder(Token tok) {
+        tok.rtts.put(me(), new Rtts(tok.hops, nearest()));
+        int live = Math.max(1, tok.ring.size() - tok.dead.size());
+        if (tok.hops - tok.planHops >= (long) PLAN_ROTATIONS * live) {
+            tok.planHops = tok.hops;
+            plan(tok, live);
+        }
+        if (tok.planCostUs > 0) tourMicros = tok.planCostUs;
+        int i = tok.plan.indexOf(me());
+        if (i < 0) return;
+        Addr succ = tok.plan.get((i + 1) % tok.plan.size());
+        if (!succ.equals(next)) {
+            if (verbose) System.out.printf("[%s] Ring plan: next %s -> %s\n", id, next, succ);
+            if (rewires.getAndIncrement() == 0) rotationBeforeNs = rotationNs;
+            next = succ;
+        }
+    }
+
+    // Linha deste peer para o token: os RTT_ROW peers mais próximos e o próximo atual (µs)
+    private Map<Addr, Integer> nearest() {
+        List<Map.Entry<Addr, Long>> all = new ArrayList<>(measured.size());
+        for (Map.Entry<Addr, RttWindow> e : measured.entrySet()) all.add(Map.entry(e.getKey(), e.getValue().min()));
+        all.sort(Map.Entry.comparingByValue());
+        Map<Addr, Integer> row = new HashMap<>();
+        for (int i = 0; i < Math.min(RTT_ROW, all.size()); i++) row.put(all.get(i).getKey(), micros(all.get(i).getValue()));
+        RttWindow toNext = measured.get(next);
+        if (toNext != null) row.put(next, micros(toNext.min()));
+        return row;
+    }
+
+    private static int micros(long ns) { return (int) Math.max(1, Math.min(Integer.MAX_VALUE, ns / 1000)); }
+
+    // Planeia um ciclo com as linhas de RTTs recentes e põe-no no token se for MIN_GAIN_PERCENT mais curto que o atual
+    private void plan(Token tok, int live) {
+        // Peers that wrote a row in the last two rotations; the others are dead or left
+        long fresh = tok.hops - 2L * live;
+        tok.rtts.values().removeIf(r -> r.hops < fresh);
+        List<Addr> members = new ArrayList<>();
+        for (Addr a : tok.rtts.keySet()) if (!tok.dead.contains(a)) members.add(a);
+        int n = members.size();
+        if (n < 3) return;
+        Map<Addr, Integer> index = new HashMap<>();
+        for (Addr a : members) index.put(a, index.size());
+
+        // Symmetric costs: both directions measure the same round trip, so a pair costs the lower
+        // of the two; pairs nobody reported cost twice the worst measured RTT
+        long[][] cost = new long[n][n];
+        int[][] samples = new int[n][n];
+        long worst = 1;
+        for (int i = 0; i < n; i++) {
+            Map<Addr, Integer> row = tok.rtts.get(members.get(i)).micros;
+            if (row.isEmpty()) return;                  // not every peer has measured yet
+            for (Map.Entry<Addr, Integer> e : row.entrySet()) {
+                Integer j = index.get(e.getKey());
+                if (j == null || j == i) continue;
+                long us = e.getValue();
+                cost[i][j] = cost[j][i] = (samples[i][j] == 0) ? us : Math.min(cost[i][j], us);
+                samples[i][j]++;
+                samples[j][i]++;
+                worst = Math.max(worst, e.getValue());
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && samples[i][j] == 0) cost[i][j] = 2 * worst;
+            }
+        }
+
+        int[] current = currentOrder(tok, index);
+        int[] tour = RingPlanner.tour(cost, index.get(me()));
+        long newCost = RingPlanner.cost(tour, cost);
+        if (current != null) {
+            long oldCost = RingPlanner.cost(current, cost);
+            if (newCost * 100 > oldCost * (100 - MIN_GAIN_PERCENT)) return;
+        }
+        List<Addr> plan = new ArrayList<>(n);
+        for (int i : tour) plan.add(members.get(i));
+        tok.plan = plan;
+        tok.planCostUs = (int) Math.min(Integer.MAX_VALUE, newCost);
+        if (verbose) System.out.printf("[%s] New ring plan: %d peers, %d us per rotation\n", id, n, tok.planCostUs);
+    }
+
+    // Ordem atual dos peers de index, seguindo as arestas do token a partir deste; null se não for um ciclo com todos
+    private int[] currentOrder(Token tok, Map<Addr, Integer> index) {
+        int n = index.size();
+        int[] order = new int[n];
+        boolean[] seen = new boolean[n];
+        int k = 0;
+        Addr cur = me();
+        for (int steps = 0; steps <= tok.ring.size() + 1 && cur != null; steps++) {
+            Integer i = index.get(cur);
+            if (i != null) {
+                if (seen[i]) return (k == n && i == order[0]) ? order : null;
+                seen[i] = true;
+                order[k++] = i;
+            }
+            // This peer's edge on the token is not updated yet; dead peers are skipped through theirs
+            cur = cur.equals(me()) ? next : tok.edges.get(cur);
+        }
+        return null;
+    }
+
+    // Mede o RTT até cada peer do anel, à vez a partir do seguinte: depressa até os conhecer todos, depois devagar
+    private void probe() {
+        int i = -1;
+        while (true) {
+            List<Addr> ring = lastRing;
+            sleep(measured.size() >= ring.size() - 1 ? REPROBE_MS : PROBE_MS);
+            if (!reorder || crashed || ring.isEmpty() || gateway != null) continue;
+            if (i < 0) i = ring.indexOf(me()) + 1;      // peers start at different places
+            i %= ring.size();
+            Addr a = ring.get(i++);
+            if (a.equals(me())) continue;
+            long t0 = System.nanoTime();
+            if (!ping(a)) {
+                measured.remove(a);
+                continue;
+            }
+            measured.computeIfAbsent(a, k -> new RttWindow()).add(System.nanoTime() - t0);
+        }
+    }
+
+    // Envia um ping a addr e espera pelo ACK; o tempo inclui a ligação, como o de um encaminhamento do token
+    private boolean ping(Addr addr) { return exchange(addr, new Ping(id), PING_FRAME, pingReply); }
+
+    // Envia uma mensagem curta (msg no modo socket, frame no modo nio) a addr numa ligação nova e espera pelo ACK
+    private boolean exchange(Addr addr, Serializable msg, byte[] frame, byte[] reply) {
+        delay(addr);
+        if (nio) {
+            try (FrameClient c = new FrameClient(addr.host, addr.port)) {
+                c.call(frame, 0, frame.length, reply, TIMEOUT_MS);
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+        try (Socket sock = new Socket()) {
+            sock.connect(new InetSocketAddress(addr.host, addr.port), TIMEOUT_MS);
+            sock.setSoTimeout(TIMEOUT_MS);
+            new ObjectOutputStream(sock.getOutputStream()).writeObject(msg);
+            return new ObjectInputStream(sock.getInputStream()).readObject() instanceof Ack;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // Peer local: pede o token ao gateway, no máximo uma vez entre duas passagens
+    private void wantToken() {
+        if (gateway != null && wantSent.compareAndSet(false, true)) wantSignal.release();
+    }
+
+    // Peer local: envia os pedidos de token ao gateway; se um falhar, a próxima operação tenta outra vez
+    // (e o gateway manda o token local de LOCAL_IDLE_MS em LOCAL_IDLE_MS de qualquer forma)
+    private void sendWants() {
+        while (true) {
+            wantSignal.acquireUninterruptibly();
+            Addr gw = gateway;
+            if (crashed || gw == null) continue;
+            if (!exchange(gw, new Want(id), WANT_FRAME, wantReply)) wantSent.set(false);
+        }
+    }
+
+    // Espera o atraso simulado da ligação até addr, se houver
+    private void delay(Addr addr) {
+        ToIntFunction<String> f = linkDelay;
+        if (f == null) return;
+        int us = f.applyAsInt(addr.toString());
+        if (us > 0) LockSupport.parkNanos(us * 1000L);
+    }
+
+    // Simula a queda do peer: deixa de responder, de gerar operações e de vigiar o token
+    private void crash(boolean withToken) {
+        crashed = true;
+        opRate = 0;
+        int lost = queue.clear();
+        opsLost.addAndGet(lost);
+        System.out.println("[" + id + "] Crashed" + (withToken ? " with the token" : "") + " (" + lost + " ops lost)");
+    }
+
+    // Passagem do token por este peer
+    private void visit(Token tok) {
         started = true;
+        LongConsumer hl = hopListener;
+        if (hl != null) hl.accept(System.nanoTime());
+        boolean local = tok.gateway != null;           // a local ring's token, lent by its gateway
+        if (local) {
+            if (gateway == null) {
+                gateway = tok.gateway;
+                Thread t = new Thread(this::sendWants, id + "-want");
+                t.setDaemon(true);
+                t.start();
+            }
+            wantSent.set(false);
+        }
+        observeRotation(tok);
+        hops.incrementAndGet();
         tok.hops++;
         tok.ring.add(me());
-        tok.edges.put(me(), next);
         tok.dead.remove(me());
+        if (reorder && !local) reorder(tok);          // a local ring keeps its order: the plan has no row for the gateway
+        tok.edges.put(me(), next);
         
         // Clean dead peers periodically
         if (System.currentTimeMillis() - tok.lastClean > 20_000) {
@@ -85,32 +701,201 @@ public class Peer {
             tok.lastClean = System.currentTimeMillis();
         }
         
-        System.out.printf("[%s] Token (q=%d, dead=%d, hops=%d)\n", 
-            id, queue.size(), tok.dead.size(), tok.hops);
+        lastRing = new ArrayList<>(tok.ring);
+        rank = Math.max(0, lastRing.indexOf(me()));
+        lastEdges = new HashMap<>(tok.edges);
+        
+        if (verbose) System.out.printf("[%s] Token (q=%d, dead=%d, hops=%d, gen=%d)\n",
+            id, queue.size(), tok.dead.size(), tok.hops, tok.generation);
+        
+        // Process queued ops, earliest deadline first, within the hold budget
+        long t0 = System.nanoTime();
+        int budget = (holdOps > 0) ? holdOps : Integer.MAX_VALUE;
+        long hold = holdNs;
+        int window = Math.min(callParallelism, Math.min(queue.size(), budget));
+        if (window <= 1) {
+            for (int n = 0; n < budget && !queue.isEmpty(); n++) {
+                if (hold > 0 && System.nanoTime() - t0 >= hold) break;
+                if (!compute(queue.poll())) break;
+            }
+        } else {
+            computeAll(window, budget, t0, hold);
+        }
+        long held = System.nanoTime() - t0;
+        if (held > maxHoldNs) maxHoldNs = held;
+        if (!queue.isEmpty() && (budget != Integer.MAX_VALUE || hold > 0)) budgetStops.incrementAndGet();
+        if (local && !queue.isEmpty()) wantToken();
+        if (!localRing.isEmpty()) runLocalRing();
         
-        // Process all queued ops
-        while (!queue.isEmpty()) {
-            Op op = queue.poll();
+        forwardToken(tok, next, true);
+    }
+
+    // Gateway: se um peer local pediu o token (ou o anel local está parado há LOCAL_IDLE_MS), manda o token
+    // local uma volta pelo anel local e espera que volte; se não voltar, a próxima volta leva uma geração nova
+    private void runLocalRing() {
+        List<Addr> members = localRing;
+        long t0 = System.nanoTime();
+        boolean idle = t0 - lastLocalNs > LOCAL_IDLE_MS * 1_000_000L;
+        if (!localDemand.getAndSet(false) && !idle) {
+            localSkips.incrementAndGet();
+            return;
+        }
+        lastLocalNs = t0;
+        if (localToken == null) {
+            Token lt = new Token();
+            lt.origin = lt.gateway = localHome = me();
+            lt.ring.add(lt.gateway);
+            lt.ring.addAll(members);
+            lt.edges.put(lt.gateway, members.get(0));
+            localToken = lt;
+        }
+        Token lt = localToken;
+        localReturns.clear();                           // late copies of older generations
+        if (!forwardToken(lt, members.get(0), false)) {
+            lt.dead.clear();                            // every local peer failed; all are tried again next time
+            return;
+        }
+
+        // Half the top ring's minimum loss timeout, so that a lost local token is not taken by the
+        // other gateways for a lost top token
+        long timeout = Math.max(minLossTimeoutMs * 1_000_000L / 2, LOSS_FACTOR * localRotationNs);
+        Token back = null;
+        try {
+            for (long left = timeout; back == null && left > 0; left = t0 + timeout - System.nanoTime()) {
+                Token t = localReturns.poll(left, TimeUnit.NANOSECONDS);
+                if (t != null && compare(t.generation, t.origin, lt.generation, lt.origin) >= 0) back = t;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (back == null) {
+            Token nt = new Token();
+            nt.generation = lt.generation + 1;
+            nt.origin = nt.gateway = lt.gateway;
+            nt.ring.addAll(lt.ring);
+            nt.edges.putAll(lt.edges);
+            nt.hops = lt.hops;
+            localToken = nt;
+            localRegenerations.incrementAndGet();
+            localDemand.set(true);
+            System.out.printf("[%s] Local token lost (%.1fs without it): next rotation carries generation %d\n",
+                    id, timeout / 1e9, nt.generation);
+            return;
+        }
+        localToken = back;
+        localRotations.incrementAndGet();
+        long took = System.nanoTime() - t0;
+        localRotationNs = (localRotationNs == 0) ? took : localRotationNs + (took - localRotationNs) / 4;
+    }
+
+    // Calcula op num servidor escolhido pelo pool (outro, se falhar); false se a op voltou para a fila
+    private boolean compute(Op op) {
+        if (stubCalculator) {
+            computed(op, stub(op));
+            return true;
+        }
+        Caller caller = callers.get();
+        for (int attempt = 0; attempt < servers.size(); attempt++) {
+            ServerPool.Endpoint srv = servers.pick();
+            if (srv == null) break;                     // every server ejected
+            long t0 = System.nanoTime();
             try {
-                double res = callServer(op);
-                System.out.printf("[%s] ✓ %s = %.2f\n", id, op, res);
+                double res = callServer(caller, srv, op);
+                servers.succeeded(srv, System.nanoTime() - t0);
+                computed(op, res);
+                return true;
+            } catch (ServerError e) {
+                if (!e.overloaded()) {
+                    System.err.println("[" + id + "] Server error (" + srv + "): " + e.getMessage());
+                    if (servers.failed(srv)) System.err.println("[" + id + "] Ejected server " + srv);
+                    continue;
+                }
+                // Shedding load, not down: back off from it and try another server (or requeue)
+                servers.overloaded(srv);
+                if (verbose) System.err.println("[" + id + "] Server overloaded (" + srv + "), trying another");
             } catch (IOException e) {
-                System.err.println("[" + id + "] Server error: " + e.getMessage());
-                queue.offer(op); // Requeue
+                System.err.println("[" + id + "] Server error (" + srv + "): " + e.getMessage());
+                if (servers.failed(srv)) System.err.println("[" + id + "] Ejected server " + srv);
+            }
+        }
+        queue.putBack(op); // Requeue
+        return false;
+    }
+
+    // Conta a operação calculada e avisa o opListener
+    private void computed(Op op, double res) {
+        opsComputed.incrementAndGet();
+        long now = System.nanoTime();
+        if (now - op.deadlineNs > 0 && op.deadlineNs != Op.NO_DEADLINE) deadlineMisses.incrementAndGet();
+        LongConsumer l = opListener;
+        if (l != null) l.accept(now - op.bornNs);
+        if (verbose) System.out.printf("[%s] ✓ %s = %.2f\n", id, op, res);
+    }
+
+    // Resultado de op como o daria o CalculatorServer (divisão por zero = NaN)
+    private static double stub(Op op) {
+        switch (op.type) {
+            case "add": return op.a + op.b;
+            case "sub": return op.a - op.b;
+            case "mul": return op.a * op.b;
+            case "div": return (op.b == 0.0) ? Double.NaN : op.a / op.b;
+            default: return Double.NaN;
+        }
+    }
+
+    // Calcula até budget ops da fila (por prazo) com até window pedidos em curso, sem iniciar nenhuma depois de hold ns
+    // desde t0 (0 = sem limite); as que sobram ficam para o próximo token
+    private void computeAll(int window, int budget, long t0, long hold) {
+        if (callPool == null || ((ThreadPoolExecutor) callPool).getCorePoolSize() < window) {
+            if (callPool != null) callPool.shutdown();
+            int threads = Math.max(window, callParallelism);
+            callPool = Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, id + "-calc");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        Queue<Op> batch = new ConcurrentLinkedQueue<>();
+        for (Op op; batch.size() < budget && (op = queue.poll()) != null; ) batch.add(op);
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(window);
+        for (int w = 0; w < window; w++) {
+            callPool.execute(() -> {
+                try {
+                    for (Op op; !stop.get() && (op = batch.poll()) != null; ) {
+                        if (hold > 0 && System.nanoTime() - t0 >= hold) {
+                            batch.offer(op);
+                            stop.set(true);
+                        } else if (!compute(op)) {
+                            stop.set(true);
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
                 break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
         }
-        
-        forwardToken(tok);
+        if (interrupted) Thread.currentThread().interrupt();
+        for (Op op; (op = batch.poll()) != null; ) queue.putBack(op);
     }
 
-    // Encaminha o token para o próximo peer disponível, com retry e tratamento de falhas
-    private void forwardToken(Token tok) {
+    // Encaminha o token para o próximo peer disponível a partir de first, com retry e tratamento de falhas;
+    // com persistent = false desiste ao fim de uma tentativa falhada a todos e retorna false
+    private boolean forwardToken(Token tok, Addr first, boolean persistent) {
         long backoff = 200;
         int fails = 0;
         
         while (true) {
-            List<Addr> targets = getTargets(tok);
+            List<Addr> targets = getTargets(tok, first);
             
             // Force retry after 3 failures
             if (fails >= 3) {
@@ -124,8 +909,9 @@ public class Peer {
                 try {
                     if (sendAndWaitAck(addr, tok)) {
                         tok.dead.remove(addr);
-                        System.out.println("[" + id + "] ✓ Forwarded to " + addr);
-                        return;
+                        lastSentNs = System.nanoTime();
+                        if (verbose) System.out.println("[" + id + "] ✓ Forwarded to " + addr);
+                        return true;
                     } else {
                         tok.dead.add(addr);
                         System.err.println("[" + id + "] ✗ No ACK from " + addr);
@@ -136,6 +922,7 @@ public class Peer {
             }
             
             fails++;
+            if (!persistent) return false;
             System.err.printf("[%s] All targets failed (attempt %d), retry in %dms\n", id, fails, backoff);
             sleep(backoff);
             backoff = Math.min(backoff * 2, 3000);
@@ -144,6 +931,8 @@ public class Peer {
 
     // Envia o token para um peer e espera pelo ACK de confirmação
     private boolean sendAndWaitAck(Addr addr, Token tok) throws IOException {
+        delay(addr);
+        if (nio) return sendAndWaitAckNio(addr, tok);
         try (Socket sock = new Socket()) {
             sock.connect(new InetSocketAddress(addr.host, addr.port), TIMEOUT_MS);
             sock.setSoTimeout(TIMEOUT_MS);
@@ -157,13 +946,66 @@ public class Peer {
         }
     }
 
-    // Gera a lista de peers alvo para encaminhar o token, seguindo o anel e edges
-    private List<Addr> getTargets(Token tok) {
+    // Como sendAndWaitAck, sobre uma ligação persistente ao peer (formato binário do Token)
+    private boolean sendAndWaitAckNio(Addr addr, Token tok) {
+        int len = encodeToken(tok);
+        FrameClient client = null;
+        try {
+            client = client(addr);
+            client.call(tokenBuf, 0, len, replyBuf, TIMEOUT_MS);
+            return true;
+        } catch (IOException e) {
+            if (client != null) dropClient(addr, client);
+            return false;
+        }
+    }
+
+    // Codifica o token em tokenBuf (aumentando-o se preciso) e retorna o tamanho
+    private int encodeToken(Token tok) {
+        while (true) {
+            ByteBuffer out = ByteBuffer.wrap(tokenBuf);
+            try {
+                tok.encode(out);
+                return out.position();
+            } catch (BufferOverflowException e) {
+                tokenBuf = new byte[tokenBuf.length * 2];
+            }
+        }
+    }
+
+    // Retorna o FrameClient aberto para addr (abre um novo se o anterior fechou)
+    private FrameClient client(Addr addr) throws IOException {
+        FrameClient c = clients.get(addr);
+        if (c == null || !c.isOpen()) {
+            if (c != null) c.close();
+            c = new FrameClient(addr.host, addr.port);
+            clients.put(addr, c);
+        }
+        return c;
+    }
+
+    // Fecha e esquece o cliente de addr depois de uma falha
+    private void dropClient(Addr addr, FrameClient c) {
+        c.close();
+        clients.remove(addr, c);
+    }
+
+    // Gera a lista de peers alvo para encaminhar o token, a começar em first e seguindo o anel e edges
+    private List<Addr> getTargets(Token tok, Addr first) {
         Set<Addr> targets = new LinkedHashSet<>();
-        targets.add(next);
+        targets.add(first);
+        if (tok.gateway != null) {
+            // A local token only moves on towards its gateway (first in the ring): passing the
+            // gateway would send it round again with the gateway unaware, while another ring is live
+            List<Addr> order = new ArrayList<>(tok.ring);
+            for (int i = order.indexOf(me()) + 1; i > 0 && i < order.size(); i++) targets.add(order.get(i));
+            targets.add(tok.gateway);
+            targets.remove(me());
+            return new ArrayList<>(targets);
+        }
         
         // Follow edge chain
-        Addr cur = next;
+        Addr cur = first;
         for (int i = 0; i < 10 && cur != null; i++) {
             targets.add(cur);
             cur = tok.edges.get(cur);
@@ -175,29 +1017,81 @@ public class Peer {
         return new ArrayList<>(targets);
     }
 
-    // Envia uma operação ao servidor de cálculo e retorna o resultado
-    private double callServer(Op op) throws IOException {
+    // Envia uma operação ao servidor de cálculo srv e retorna o resultado
+    private double callServer(Caller caller, ServerPool.Endpoint srv, Op op) throws IOException {
+        if (nio) return callServerNio(caller, srv, op);
+        CalcCodec codec = caller.codec;
+        byte[] replyBuf = caller.reply;
         try (Socket sock = new Socket()) {
-            sock.connect(new InetSocketAddress(server.host, server.port), TIMEOUT_MS);
+            sock.connect(new InetSocketAddress(srv.addr.host, srv.addr.port), TIMEOUT_MS);
             sock.setSoTimeout(3000);
             
-            PrintWriter out = new PrintWriter(sock.getOutputStream(), true);
-            BufferedReader in = new BufferedReader(new InputStreamReader(sock.getInputStream()));
-            
-            out.printf("%s %.2f %.2f %d %s\n", op.type, op.a, op.b, op.id, id);
-            String resp = in.readLine();
-            
-            return Double.parseDouble(resp.split("\\s+")[1]);
+            int len = codec.formatRequest(op.type, op.a, op.b, op.id, idBytes);
+            codec.out[len] = '\n';
+            OutputStream out = sock.getOutputStream();
+            out.write(codec.out, 0, len + 1);
+            out.flush();
+
+            // Read the reply line (up to '\n' or the end of the connection)
+            InputStream in = sock.getInputStream();
+            int n = 0, r;
+            while (n < replyBuf.length && (r = in.read(replyBuf, n, replyBuf.length - n)) > 0) {
+                n += r;
+                if (replyBuf[n - 1] == '\n') break;
+            }
+            if (n == 0) throw new EOFException("No reply from server");
+            return reply(codec, replyBuf, n);
         }
     }
 
+    // Como callServer, sobre a ligação persistente ao servidor (um pedido por frame)
+    private double callServerNio(Caller caller, ServerPool.Endpoint srv, Op op) throws IOException {
+        CalcCodec codec = caller.codec;
+        int reqLen = codec.formatRequest(op.type, op.a, op.b, op.id, idBytes);
+        FrameClient client = caller.clients[srv.index];
+        if (client == null || !client.isOpen()) {
+            if (client != null) client.close();
+            client = caller.clients[srv.index] = new FrameClient(srv.addr.host, srv.addr.port);
+        }
+        try {
+            int len = client.call(codec.out, 0, reqLen, caller.reply, 3000);
+            return reply(codec, caller.reply, len);
+        } catch (ServerError e) {
+            throw e;                                    // the connection is fine
+        } catch (IOException e) {
+            client.close();
+            caller.clients[srv.index] = null;
+            throw e;
+        }
+    }
+
+    // Lê o resultado da resposta; "ERR ..." é uma falha do pedido ("ERR overloaded" só adia a op, ver compute)
+    private static double reply(CalcCodec codec, byte[] buf, int len) throws ServerError {
+        if (CalcCodec.isError(buf, 0, len)) throw new ServerError(new String(buf, 0, len, StandardCharsets.US_ASCII).trim());
+        return codec.parseReply(buf, 0, len);
+    }
+
     // Gera operações matemáticas aleatórias e adiciona à fila periodicamente
     private void generateOps() {
         while (true) {
-            sleep((long)(-Math.log(1 - rng.nextDouble()) / POISSON_RATE * 1000));
-            Op op = new Op(randomType(), rnd2(), rnd2(), ++opId);
-            queue.offer(op);
-            System.out.println("[" + id + "] Generated " + op);
+            double rate = crashed ? 0 : opRate;
+            if (rate <= 0) {
+                sleep(500);
+                continue;
+            }
+            sleep((long)(-Math.log(1 - rng.nextDouble()) / rate * 1000));
+            if (crashed || opRate <= 0) continue;       // stopped while sleeping
+            long now = System.nanoTime();
+            long rel = opDeadlineNs;
+            Op op = new Op(randomType(), rnd2(), rnd2(), opId.incrementAndGet(), now, (rel > 0) ? now + rel : Op.NO_DEADLINE);
+            try {
+                queue.offer(op);                        // waits while the queue is full (backpressure)
+            } catch (InterruptedException e) {
+                return;
+            }
+            opsGenerated.incrementAndGet();
+            wantToken();
+            if (verbose) System.out.println("[" + id + "] Generated " + op);
         }
     }
 
@@ -205,20 +1099,23 @@ public class Peer {
     private void readConsole() {
         try (BufferedReader br = new BufferedReader(new InputStreamReader(System.in))) {
             while (true) {
-                if ("start".equals(br.readLine().trim().toLowerCase())) {
-                    if (!started) {
-                        started = true;
-                        Token tok = new Token();
-                        tok.ring.add(me());
-                        tok.edges.put(me(), next);
-                        System.out.println("[" + id + "] Injecting token");
-                        processToken(tok);
-                    }
-                }
+                if ("start".equals(br.readLine().trim().toLowerCase())) injectToken();
             }
         } catch (Exception ignored) {}
     }
 
+    // Cria o token e começa a circulação a partir deste peer (ignorado se o token já passou por cá)
+    public void injectToken() {
+        if (started) return;
+        started = true;
+        Token tok = new Token();
+        tok.origin = me();
+        tok.ring.add(me());
+        tok.edges.put(me(), next);
+        System.out.println("[" + id + "] Injecting token");
+        if (nio) inbox.add(tok); else processToken(tok);
+    }
+
     // Retorna o endereço (host, port) deste peer
     private Addr me() { return new Addr(host, port); }
     // Gera aleatoriamente o tipo de operação matemática
@@ -237,13 +1134,69 @@ public class Peer {
     
     record Addr(String host, int port) implements Serializable {
         @Override public String toString() { return host + ":" + port; }
+
+        // Lê "host:port"
+        static Addr parse(String s) {
+            int colon = s.lastIndexOf(':');
+            if (colon <= 0) throw new IllegalArgumentException("Expected host:port: " + s);
+            return new Addr(s.substring(0, colon).trim(), Integer.parseInt(s.substring(colon + 1).trim()));
+        }
+    }
+
+    // Resposta de erro do servidor de cálculo
+    static final class ServerError extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final boolean overloaded;
+
+        ServerError(String reply) {
+            super("Server replied " + reply);
+            this.overloaded = reply.startsWith("ERR overloaded");
+        }
+
+        // Diz se o servidor recusou o pedido por estar sobrecarregado (está vivo; tentar mais tarde)
+        boolean overloaded() { return overloaded; }
+    }
+
+    // Codec, buffer da resposta e ligações nio de uma thread que chama os servidores de cálculo
+    private static final class Caller {
+        final CalcCodec codec = new CalcCodec();
+        final byte[] reply = new byte[256];
+        final FrameClient[] clients;
+
+        Caller(int servers) { this.clients = new FrameClient[servers]; }
     }
     
-    record Op(String type, double a, double b, long id) {
+    record Op(String type, double a, double b, long id, long bornNs, long deadlineNs) {
+        static final long NO_DEADLINE = Long.MAX_VALUE;              // after every op with a deadline, by id
+
         @Override public String toString() { return String.format("%s(%.2f,%.2f) [q=%d]", type, a, b, id); }
     }
     
     record Ack(String peerId) implements Serializable {}
+
+    record Ping(String peerId) implements Serializable {}
+
+    // Pedido de um peer local ao seu gateway: tem operações à espera do token
+    record Want(String peerId) implements Serializable {}
+
+    // Últimas RTT_SAMPLES amostras do RTT até um peer. A estimativa é a menor: esperar por um
+    // peer ocupado com o token, ou por CPU, só soma, e uma média arrastaria esses atrasos
+    private static final class RttWindow {
+        private final long[] samples = new long[RTT_SAMPLES];
+        private int count;
+
+        synchronized void add(long ns) { samples[count++ % RTT_SAMPLES] = ns; }
+
+        synchronized long min() {
+            long m = Long.MAX_VALUE;
+            for (int i = 0; i < Math.min(count, RTT_SAMPLES); i++) m = Math.min(m, samples[i]);
+            return m;
+        }
+    }
+
+    // RTTs (µs) que um peer escreveu no token, e o valor de hops nessa altura
+    record Rtts(long hops, Map<Addr, Integer> micros) {}
     
     static class Token implements Serializable {
         Set<Addr> ring = new LinkedHashSet<>();    // Peers conhecidos no anel
@@ -251,21 +1204,165 @@ public class Peer {
         Set<Addr> dead = new HashSet<>();          // Peers que falharam
         long hops = 0;                             // Contador de voltas
         long lastClean = System.currentTimeMillis(); // Última limpeza
+        long generation = 0;                       // Sobe a cada regeneração
+        Addr origin;                               // Quem criou esta geração (desempate)
+        Addr gateway;                              // Gateway dono deste token (anel local), ou null
+        Map<Addr, Rtts> rtts = new HashMap<>();    // RTTs mais curtos medidos por cada peer
+        List<Addr> plan = new ArrayList<>();       // Ordem planeada do anel (vazia = a configurada)
+        long planHops;                             // hops no último planeamento
+        int planCostUs;                            // Custo estimado do plano (µs por volta)
+
+        // Serializa o token em binário (modo nio, e por writeObject no modo socket): hops | lastClean | generation | origin? | gateway? | ring | edges | dead | plan | rtts
+        void encode(ByteBuffer out) {
+            out.putLong(hops).putLong(lastClean).putLong(generation);
+            out.put((byte) (origin == null ? 0 : 1));
+            if (origin != null) putAddr(out, origin);
+            out.put((byte) (gateway == null ? 0 : 1));
+            if (gateway != null) putAddr(out, gateway);
+            out.putInt(ring.size());
+            for (Addr a : ring) putAddr(out, a);
+            out.putInt(edges.size());
+            for (Map.Entry<Addr, Addr> e : edges.entrySet()) {
+                putAddr(out, e.getKey());
+                putAddr(out, e.getValue());
+            }
+            out.putInt(dead.size());
+            for (Addr a : dead) putAddr(out, a);
+
+            // The plan and the RTT rows name peers by their position in ring
+            Map<Addr, Integer> index = new HashMap<>();
+            for (Addr a : ring) index.put(a, index.size());
+            out.putLong(planHops).putInt(planCostUs);
+            int at = out.position(), n = 0;
+            out.putInt(0);
+            for (Addr a : plan) {
+                Integer i = index.get(a);
+                if (i != null) {
+                    out.putInt(i);
+                    n++;
+                }
+            }
+            out.putInt(at, n);
+            at = out.position();
+            n = 0;
+            out.putInt(0);
+            for (Map.Entry<Addr, Rtts> row : rtts.entrySet()) {
+                Integer i = index.get(row.getKey());
+                if (i == null) continue;
+                out.putInt(i).putLong(row.getValue().hops);
+                int rowAt = out.position(), k = 0;
+                out.putInt(0);
+                for (Map.Entry<Addr, Integer> e : row.getValue().micros.entrySet()) {
+                    Integer j = index.get(e.getKey());
+                    if (j == null) continue;
+                    out.putInt(j).putInt(e.getValue());
+                    k++;
+                }
+                out.putInt(rowAt, k);
+                n++;
+            }
+            out.putInt(at, n);
+        }
+
+        // Serialização Java (modo socket): o formato binário de encode(), mais compacto e rápido
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            byte[] buf = new byte[4096];
+            while (true) {
+                ByteBuffer b = ByteBuffer.wrap(buf);
+                try {
+                    encode(b);
+                } catch (BufferOverflowException e) {
+                    buf = new byte[buf.length * 2];
+                    continue;
+                }
+                out.writeInt(b.position());
+                out.write(buf, 0, b.position());
+                return;
+            }
+        }
+
+        // Lê o formato de writeObject (os inicializadores dos campos não correm na desserialização)
+        private void readObject(ObjectInputStream in) throws IOException {
+            byte[] buf = new byte[in.readInt()];
+            in.readFully(buf);
+            Token t = decode(ByteBuffer.wrap(buf));
+            ring = t.ring;
+            edges = t.edges;
+            dead = t.dead;
+            hops = t.hops;
+            lastClean = t.lastClean;
+            generation = t.generation;
+            origin = t.origin;
+            gateway = t.gateway;
+            rtts = t.rtts;
+            plan = t.plan;
+            planHops = t.planHops;
+            planCostUs = t.planCostUs;
+        }
+
+        // Lê um token serializado por encode()
+        static Token decode(ByteBuffer in) {
+            Token t = new Token();
+            t.hops = in.getLong();
+            t.lastClean = in.getLong();
+            t.generation = in.getLong();
+            if (in.get() != 0) t.origin = getAddr(in);
+            if (in.get() != 0) t.gateway = getAddr(in);
+            List<Addr> byIndex = new ArrayList<>();
+            for (int i = in.getInt(); i > 0; i--) {
+                Addr a = getAddr(in);
+                t.ring.add(a);
+                byIndex.add(a);
+            }
+            for (int i = in.getInt(); i > 0; i--) t.edges.put(getAddr(in), getAddr(in));
+            for (int i = in.getInt(); i > 0; i--) t.dead.add(getAddr(in));
+            t.planHops = in.getLong();
+            t.planCostUs = in.getInt();
+            for (int i = in.getInt(); i > 0; i--) t.plan.add(byIndex.get(in.getInt()));
+            for (int i = in.getInt(); i > 0; i--) {
+                Addr a = byIndex.get(in.getInt());
+                long hops = in.getLong();
+                Map<Addr, Integer> micros = new HashMap<>();
+                for (int k = in.getInt(); k > 0; k--) micros.put(byIndex.get(in.getInt()), in.getInt());
+                t.rtts.put(a, new Rtts(hops, micros));
+            }
+            return t;
+        }
+
+        // Escreve um endereço: tamanho do host (2) | host (UTF-8) | porta (4)
+        private static void putAddr(ByteBuffer out, Addr a) {
+            byte[] h = a.host.getBytes(StandardCharsets.UTF_8);
+            out.putShort((short) h.length).put(h).putInt(a.port);
+        }
+
+        // Lê um endereço escrito por putAddr
+        private static Addr getAddr(ByteBuffer in) {
+            byte[] h = new byte[in.getShort()];
+            in.get(h);
+            return new Addr(new String(h, StandardCharsets.UTF_8), in.getInt());
+        }
     }
 
     // Ponto de entrada: inicializa o peer com os argumentos fornecidos
     public static void main(String[] args) throws Exception {
         if (args.length < 6) {
-            System.out.println("Usage: java Peer <id> <port> <nextHost> <nextPort> <srvHost> <srvPort>");
+            System.out.println("Usage: java Peer <id> <port> <nextHost> <nextPort> <srvHost> <srvPort> [socket|nio] [host:port,...]");
             System.out.println("Example: java Peer p1 5001 127.0.0.1 5002 127.0.0.1 7000");
+            System.out.println("         java Peer p1 5001 127.0.0.1 5002 127.0.0.1 7000 socket 127.0.0.1:7001,127.0.0.1:7002");
             return;
         }
         
+        // Extra calculator servers share the load with <srvHost>:<srvPort>
+        List<String> servers = new ArrayList<>();
+        servers.add(args[4] + ":" + args[5]);
+        if (args.length >= 8) {
+            for (String s : args[7].split(",")) if (!s.isBlank()) servers.add(s.trim());
+        }
         new Peer(args[0], 
                  Integer.parseInt(args[1]), 
                  args[2], 
                  Integer.parseInt(args[3]), 
-                 args[4], 
-                 Integer.parseInt(args[5])).start();
+                 servers,
+                 args.length >= 7 && args[6].equalsIgnoreCase("nio")).start();
     }
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package ds.assignment.tring;
+
+/**
+ * Cache de idempotência das respostas do CalculatorServer, indexada por (peerId, q), com LRU e TTL.
+ *
+ * A peer that loses a reply requeues the Op and sends the same (peerId, q) again on the next
+ * token visit; the retry gets the bytes of the first reply, so it can never see a different
+ * outcome. Each entry also keeps the op and operands it answered: a (peerId, q) that comes
+ * back with a different request (a peer reusing q) is a miss, and its reply replaces the
+ * entry. Entries live in preallocated parallel arrays: a chained hash table over slot
+ * indices, an intrusive doubly linked LRU list and a free list. Key and reply bytes are
+ * copied into per-slot arrays that are reused, so once the slots have been used a lookup or
+ * an insert allocates nothing. An entry older than ttlMs counts as absent and is dropped
+ * when it is met (lookup, or at the LRU tail when the cache is full).
+ */
+final class ResultCache {
+
+    private static final int NIL = -1;
+
+    private final int capacity;
+    private final long ttlNs;
+
+    private final int[] buckets;                 // first slot of each hash chain
+    private final int[] chain;                   // next slot in the same chain (or in the free list)
+    private final int[] hash;
+    private final long[] qs;
+    private final int[] ops;
+    private final long[] as, bs;                 // raw bits of the operands
+    private final byte[][] ids;
+    private final int[] idLen;
+    private final byte[][] replies;
+    private final int[] replyLen;
+    private final long[] storedNs;
+    private final int[] newer, older;            // LRU list: head = most recently used
+
+    private int head = NIL, tail = NIL;
+    private int free = NIL;
+    private int used;                            // slots handed out so far (the rest were never used)
+    private int size;
+
+    private long hits, misses, evictions, expirations;
+
+    ResultCache(int capacity, long ttlMs) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0");
+        this.capacity = capacity;
+        this.ttlNs = (ttlMs <= 0) ? Long.MAX_VALUE : ttlMs * 1_000_000L;
+        int nb = Integer.highestOneBit(Math.max(1, capacity * 2 - 1)) << 1;
+        this.buckets = new int[nb];
+        java.util.Arrays.fill(buckets, NIL);
+        this.chain = new int[capacity];
+        this.hash = new int[capacity];
+        this.qs = new long[capacity];
+        this.ops = new int[capacity];
+        this.as = new long[capacity];
+        this.bs = new long[capacity];
+        this.ids = new byte[capacity][];
+        this.idLen = new int[capacity];
+        this.replies = new byte[capacity][];
+        this.replyLen = new int[capacity];
+        this.storedNs = new long[capacity];
+        this.newer = new int[capacity];
+        this.older = new int[capacity];
+    }
+
+    // Copia para out a resposta guardada de (id[off..off+len), q) ao pedido "op a b"; retorna o tamanho, ou -1 se não existe
+    synchronized int get(byte[] id, int off, int len, long q, int op, double a, double b, byte[] out, long nowNs) {
+        int h = hash(id, off, len, q);
+        int s = find(h, id, off, len, q);
+        if (s != NIL && nowNs - storedNs[s] > ttlNs) {
+            remove(s);
+            expirations++;
+            s = NIL;
+        }
+        if (s == NIL || !sameRequest(s, op, a, b)) {
+            misses++;
+            return -1;
+        }
+        hits++;
+        moveToFront(s);
+        System.arraycopy(replies[s], 0, out, 0, replyLen[s]);
+        return replyLen[s];
+    }
+
+    // Guarda reply[0..n) para (id, q) e o pedido "op a b", a não ser que outra thread já tenha guardado
+    // uma resposta ao mesmo pedido; nesse caso copia a que ficou para reply. Retorna o tamanho da resposta em reply.
+    synchronized int putIfAbsent(byte[] id, int off, int len, long q, int op, double a, double b,
+                                 byte[] reply, int n, long nowNs) {
+        int h = hash(id, off, len, q);
+        int s = find(h, id, off, len, q);
+        boolean live = s != NIL && nowNs - storedNs[s] <= ttlNs;
+        if (live && sameRequest(s, op, a, b)) {
+            moveToFront(s);
+            System.arraycopy(replies[s], 0, reply, 0, replyLen[s]);
+            return replyLen[s];
+        }
+        if (s != NIL) {
+            // Expired, or an older request under the same (peerId, q): the new reply replaces it
+            remove(s);
+            if (!live) expirations++;
+        }
+        s = allocate(nowNs);
+        hash[s] = h;
+        qs[s] = q;
+        ops[s] = op;
+        as[s] = Double.doubleToRawLongBits(a);
+        bs[s] = Double.doubleToRawLongBits(b);
+        ids[s] = fit(ids[s], len);
+        System.arraycopy(id, off, ids[s], 0, len);
+        idLen[s] = len;
+        replies[s] = fit(replies[s], n);
+        System.arraycopy(reply, 0, replies[s], 0, n);
+        replyLen[s] = n;
+        storedNs[s] = nowNs;
+        int bucket = h & (buckets.length - 1);
+        chain[s] = buckets[bucket];
+        buckets[bucket] = s;
+        linkFront(s);
+        size++;
+        return n;
+    }
+
+    // Retorna um slot livre, despejando o mais antigo (LRU) se a cache estiver cheia
+    private int allocate(long nowNs) {
+        if (free != NIL) {
+            int s = free;
+            free = chain[s];
+            return s;
+        }
+        if (used < capacity) return used++;
+        int s = tail;
+        if (nowNs - storedNs[s] > ttlNs) expirations++; else evictions++;
+        remove(s);
+        free = chain[s];                         // remove() pushed s on the free list
+        return s;
+    }
+
+    // Procura o slot de (id, q) na cadeia do hash h
+    private int find(int h, byte[] id, int off, int len, long q) {
+        for (int s = buckets[h & (buckets.length - 1)]; s != NIL; s = chain[s]) {
+            if (hash[s] == h && qs[s] == q && idLen[s] == len && java.util.Arrays.equals(ids[s], 0, len, id, off, off + len)) {
+                return s;
+            }
+        }
+        return NIL;
+    }
+
+    // Diz se o slot s guarda a resposta ao pedido "op a b"
+    private boolean sameRequest(int s, int op, double a, double b) {
+        return ops[s] == op && as[s] == Double.doubleToRawLongBits(a) && bs[s] == Double.doubleToRawLongBits(b);
+    }
+
+    // Tira o slot s da tabela e da lista LRU e põe-no na lista livre
+    private void remove(int s) {
+        int b = hash[s] & (buckets.length - 1);
+        if (buckets[b] == s) {
+            buckets[b] = chain[s];
+        } else {
+            int p = buckets[b];
+            while (chain[p] != s) p = chain[p];
+            chain[p] = chain[s];
+        }
+        unlink(s);
+        chain[s] = free;
+        free = s;
+        size--;
+    }
+
+    private void moveToFront(int s) {
+        if (head == s) return;
+        unlink(s);
+        linkFront(s);
+    }
+
+    private void linkFront(int s) {
+        newer[s] = NIL;
+        older[s] = head;
+        if (head != NIL) newer[head] = s;
+        head = s;
+        if (tail == NIL) tail = s;
+    }
+
+    private void unlink(int s) {
+        if (newer[s] != NIL) older[newer[s]] = older[s]; else head = older[s];
+        if (older[s] != NIL) newer[older[s]] = newer[s]; else tail = newer[s];
+    }
+
+    // Reaproveita b se couber n bytes; senão aloca um novo
+    private static byte[] fit(byte[] b, int n) {
+        return (b != null && b.length >= n) ? b : new byte[Math.max(n, 32)];
+    }
+
+    // FNV-1a dos bytes do peerId, misturado com q
+    private static int hash(byte[] id, int off, int len, long q) {
+        int h = 0x811C9DC5;
+        for (int i = off; i < off + len; i++) h = (h ^ id[i]) * 0x01000193;
+        long x = (h ^ q) * 0x9E3779B97F4A7C15L;
+        return (int) (x ^ (x >>> 32));
+    }
+
+    // Retorna quantas respostas foram servidas da cache
+    synchronized long hits() { return hits; }
+    // Retorna quantos pedidos tiveram de ser calculados
+    synchronized long misses() { return misses; }
+    // Retorna quantas entradas foram despejadas por falta de espaço
+    synchronized long evictions() { return evictions; }
+    // Retorna quantas entradas expiraram (TTL)
+    synchronized long expirations() { return expirations; }
+    // Retorna o número de entradas
+    synchronized int size() { return size; }
+}
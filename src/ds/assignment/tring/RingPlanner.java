@@ -0,0 +1,75 @@
+package ds.assignment.tring;
+
+/**
+ * Ordem do anel de menor custo: um ciclo hamiltoniano curto sobre a matriz de RTTs entre peers.
+ *
+ * tour() starts from a nearest-neighbour cycle and improves it with 2-opt moves (reversing the
+ * segment between two edges when that shortens the cycle) until no move helps or MAX_PASSES
+ * passes are done. The matrix must be symmetric; pairs that were never measured should carry a
+ * penalty larger than any measured RTT, so that the tour only uses them when it has to.
+ */
+final class RingPlanner {
+
+    static final int MAX_PASSES = 50;
+
+    private RingPlanner() {}
+
+    // Retorna um ciclo curto (ordem dos índices 0..n-1) que começa em start
+    static int[] tour(long[][] cost, int start) {
+        int n = cost.length;
+        int[] t = nearestNeighbour(cost, start);
+        if (n < 4) return t;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean improved = false;
+            // Edges (t[i], t[i+1]) and (t[j], t[j+1]); t[0] stays first
+            for (int i = 0; i < n - 2; i++) {
+                int a = t[i], b = t[i + 1];
+                for (int j = i + 2; j < n; j++) {
+                    int c = t[j], d = t[(j + 1) % n];
+                    if (d == a) continue;                   // adjacent edges
+                    long delta = cost[a][c] + cost[b][d] - cost[a][b] - cost[c][d];
+                    if (delta < 0) {
+                        reverse(t, i + 1, j);
+                        b = t[i + 1];
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) break;
+        }
+        return t;
+    }
+
+    // Ciclo do vizinho mais próximo a partir de start
+    private static int[] nearestNeighbour(long[][] cost, int start) {
+        int n = cost.length;
+        int[] t = new int[n];
+        boolean[] used = new boolean[n];
+        t[0] = start;
+        used[start] = true;
+        for (int k = 1; k < n; k++) {
+            int from = t[k - 1], best = -1;
+            for (int j = 0; j < n; j++) {
+                if (!used[j] && (best < 0 || cost[from][j] < cost[from][best])) best = j;
+            }
+            t[k] = best;
+            used[best] = true;
+        }
+        return t;
+    }
+
+    private static void reverse(int[] t, int from, int to) {
+        for (; from < to; from++, to--) {
+            int x = t[from];
+            t[from] = t[to];
+            t[to] = x;
+        }
+    }
+
+    // Custo do ciclo t (soma das arestas, incluindo a que fecha o ciclo)
+    static long cost(int[] t, long[][] cost) {
+        long sum = 0;
+        for (int i = 0; i < t.length; i++) sum += cost[t[i]][t[(i + 1) % t.length]];
+        return sum;
+    }
+}
@@ -0,0 +1,169 @@
+package ds.assignment.tring;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Conjunto de servidores de cálculo de um peer, com escolha "power of two choices" e ejeção dos que falham.
+ *
+ * pick() draws two distinct usable servers at random and takes the one with the lower
+ * ewma * (inFlight + 1): the latency EWMA steers load away from slow servers and the
+ * in-flight count away from busy ones, without the herding of always choosing the global best.
+ * After EJECT_AFTER consecutive failures a server is ejected for a backoff that doubles on
+ * every ejection (up to MAX_BACKOFF_MS). Once the backoff is over the server gets a single
+ * probe request at a time: a success puts it back in rotation, a failure ejects it again.
+ * When every server is ejected pick() returns null and the caller keeps its ops for later.
+ * An "ERR overloaded" reply is not a failure: the server is up and shedding load, so it only
+ * steps aside for OVERLOAD_BACKOFF_MS, during which pick() prefers the other servers.
+ */
+final class ServerPool {
+
+    static final int EJECT_AFTER = 3;
+    static final long MIN_BACKOFF_MS = 500;
+    static final long MAX_BACKOFF_MS = 30_000;
+    static final long OVERLOAD_BACKOFF_MS = 100;
+    private static final double ALPHA = 0.3;                 // EWMA weight of the newest sample
+    private static final long INITIAL_EWMA_NS = 1_000_000;   // until the first reply
+
+    // Um servidor e o seu estado (guardado pelo lock do ServerPool)
+    static final class Endpoint {
+        final Peer.Addr addr;
+        final int index;
+        int inFlight;
+        double ewmaNs = INITIAL_EWMA_NS;
+        int failures;                // consecutive
+        long ejectedUntilNs;         // 0 = in rotation
+        long busyUntilNs;            // after "ERR overloaded": picked only if every other server is busy too
+        long backoffMs = MIN_BACKOFF_MS;
+        boolean probing;             // the one request allowed after an ejection is out
+        long calls, errors, ejections, overloads;
+
+        Endpoint(Peer.Addr addr, int index) {
+            this.addr = addr;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() { return addr.toString(); }
+    }
+
+    private final Endpoint[] endpoints;
+    private final Endpoint[] usable;                         // scratch for pick()
+
+    ServerPool(List<Peer.Addr> addrs) {
+        if (addrs.isEmpty()) throw new IllegalArgumentException("No calculator servers");
+        this.endpoints = new Endpoint[addrs.size()];
+        for (int i = 0; i < endpoints.length; i++) endpoints[i] = new Endpoint(addrs.get(i), i);
+        this.usable = new Endpoint[endpoints.length];
+    }
+
+    // Número de servidores
+    int size() { return endpoints.length; }
+
+    // Escolhe o servidor do próximo pedido e conta-o como em curso; null se estão todos ejetados
+    synchronized Endpoint pick() {
+        long now = System.nanoTime();
+        int n = 0, busy = 0;
+        for (Endpoint e : endpoints) {
+            if (e.ejectedUntilNs == 0) {
+                if (now - e.busyUntilNs < 0) busy++; else usable[n++] = e;
+            } else if (!e.probing && now - e.ejectedUntilNs >= 0) {
+                // Backoff over: this request is the probe
+                e.probing = true;
+                return start(e);
+            }
+        }
+        if (n == 0 && busy > 0) {
+            // Everyone is shedding load: spread the retries over all of them
+            for (Endpoint e : endpoints) if (e.ejectedUntilNs == 0) usable[n++] = e;
+        }
+        if (n == 0) return null;
+        if (n == 1) return start(usable[0]);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int i = rnd.nextInt(n), j = rnd.nextInt(n - 1);
+        if (j >= i) j++;
+        Endpoint a = usable[i], b = usable[j];
+        return start(score(a) <= score(b) ? a : b);
+    }
+
+    private static double score(Endpoint e) { return e.ewmaNs * (e.inFlight + 1); }
+
+    private static Endpoint start(Endpoint e) {
+        e.inFlight++;
+        e.calls++;
+        return e;
+    }
+
+    // Regista a resposta de e ao fim de rttNs
+    synchronized void succeeded(Endpoint e, long rttNs) {
+        e.inFlight--;
+        e.ewmaNs += ALPHA * (rttNs - e.ewmaNs);
+        e.failures = 0;
+        if (e.probing || e.ejectedUntilNs != 0) {
+            e.probing = false;
+            e.ejectedUntilNs = 0;
+            e.backoffMs = MIN_BACKOFF_MS;
+        }
+    }
+
+    // Regista uma falha de e; retorna true se o servidor acabou de ser ejetado
+    synchronized boolean failed(Endpoint e) {
+        e.inFlight--;
+        e.errors++;
+        e.failures++;
+        if (!e.probing && (e.ejectedUntilNs != 0 || e.failures < EJECT_AFTER)) return false;
+        if (e.probing) e.backoffMs = Math.min(e.backoffMs * 2, MAX_BACKOFF_MS);
+        e.probing = false;
+        e.ejectedUntilNs = System.nanoTime() + e.backoffMs * 1_000_000L;
+        if (e.ejectedUntilNs == 0) e.ejectedUntilNs = 1;
+        e.ejections++;
+        return true;
+    }
+
+    // Regista um "ERR overloaded" de e: não conta para a ejeção, só o põe de lado por OVERLOAD_BACKOFF_MS
+    synchronized void overloaded(Endpoint e) {
+        e.inFlight--;
+        e.overloads++;
+        e.failures = 0;                                      // it answered: the server is up
+        if (e.probing || e.ejectedUntilNs != 0) {
+            e.probing = false;
+            e.ejectedUntilNs = 0;
+            e.backoffMs = MIN_BACKOFF_MS;
+        }
+        e.busyUntilNs = System.nanoTime() + OVERLOAD_BACKOFF_MS * 1_000_000L;
+    }
+
+    // Retorna o total de respostas "ERR overloaded"
+    synchronized long overloads() {
+        long n = 0;
+        for (Endpoint e : endpoints) n += e.overloads;
+        return n;
+    }
+
+    // Retorna quantos servidores estão em rotação
+    synchronized int healthy() {
+        int n = 0;
+        for (Endpoint e : endpoints) if (e.ejectedUntilNs == 0) n++;
+        return n;
+    }
+
+    // Retorna o total de ejeções
+    synchronized long ejections() {
+        long n = 0;
+        for (Endpoint e : endpoints) n += e.ejections;
+        return n;
+    }
+
+    // Retorna quantos pedidos foram enviados ao servidor i
+    synchronized long calls(int i) { return endpoints[i].calls; }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Endpoint e : endpoints) {
+            if (sb.length() > 0) sb.append(',');
+            sb.append(e.addr);
+        }
+        return sb.toString();
+    }
+}
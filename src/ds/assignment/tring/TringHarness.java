@@ -0,0 +1,276 @@
+package ds.assignment.tring;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Harness em memória: N Peer tring num só JVM, com um calculador stub, para medir o anel a várias escalas.
+ *
+ * The peers talk over loopback (socket or nio transport) on basePort..basePort+N-1. With
+ * calc=stub every peer computes its ops in-process, so the numbers are the ring's own; with
+ * calc=server an in-process CalculatorServer on basePort+N answers them. Once the first token
+ * has visited every peer, each peer generates opsPerSec ops (Poisson). A third of the way in,
+ * `kills` random peers die at once, and the token skips them; two thirds in, `crashes` random
+ * peers die with the token the next time they get it, so it is lost and must be regenerated.
+ * The report gives token hops/s, the time between consecutive hops anywhere in the ring
+ * (p50/p99/p999/max), op throughput and latency, and the recovery time of each failure: from the
+ * failure until every surviving peer has had the token again. Exits with 1 if a failure did not
+ * recover or the surviving peers did not drain their ops. `fixed` keeps the ring in port order
+ * (no RTT probing).
+ *
+ * Usage: java ds.assignment.tring.TringHarness [peers] [seconds] [opsPerSec] [socket|nio]
+ *        [kills] [crashes] [stub|server] [basePort] [seed] [reorder|fixed]
+ */
+public class TringHarness {
+
+    private static final long STARTUP_MS = 500;
+    private static final long WARMUP_TIMEOUT_MS = 30_000;
+    private static final long RECOVERY_TIMEOUT_MS = 30_000;
+    private static final long DRAIN_TIMEOUT_MS = 10_000;
+
+    // Amostras de latência (ns), de qualquer thread
+    private static final class Samples {
+        private long[] ns = new long[1 << 16];
+        private int count;
+
+        synchronized void add(long v) {
+            if (count == ns.length) ns = Arrays.copyOf(ns, count * 2);
+            ns[count++] = v;
+        }
+
+        synchronized long[] sorted() {
+            long[] copy = Arrays.copyOf(ns, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+
+    // Tempo entre passagens consecutivas do token, por qualquer peer (os peers partilham o relógio do JVM)
+    private static final class Hops {
+        final Samples gaps = new Samples();
+        volatile boolean recording;
+        private long last;
+
+        synchronized void visit(long now) {
+            if (recording && last != 0) gaps.add(now - last);
+            last = now;
+        }
+    }
+
+    // Ponto de entrada: corre o cenário e imprime o relatório
+    public static void main(String[] args) throws Exception {
+        int n = (args.length >= 1) ? Integer.parseInt(args[0]) : 20;
+        double seconds = (args.length >= 2) ? Double.parseDouble(args[1]) : 10;
+        double rate = (args.length >= 3) ? Double.parseDouble(args[2]) : 20;
+        boolean nio = !(args.length >= 4) || args[3].equalsIgnoreCase("nio");
+        int kills = (args.length >= 5) ? Integer.parseInt(args[4]) : 1;
+        int crashes = (args.length >= 6) ? Integer.parseInt(args[5]) : 1;
+        boolean stub = !(args.length >= 7) || !args[6].equalsIgnoreCase("server");
+        int basePort = (args.length >= 8) ? Integer.parseInt(args[7]) : 21000;
+        long seed = (args.length >= 9) ? Long.parseLong(args[8]) : 1;
+        boolean reorder = !(args.length >= 10) || !args[9].equalsIgnoreCase("fixed");
+        if (n < 2 || kills + crashes > n - 2) throw new IllegalArgumentException("Need peers >= 2 and kills + crashes <= peers - 2");
+        System.out.printf("TringHarness: peers=%d seconds=%.1f ops=%.1f/s per peer transport=%s calc=%s kills=%d crashes=%d seed=%d ring=%s%n",
+                n, seconds, rate, nio ? "nio" : "socket", stub ? "stub" : "server", kills, crashes, seed,
+                reorder ? "reorder" : "fixed");
+
+        List<String> servers = List.of("127.0.0.1:" + (basePort + n));
+        if (!stub) {
+            CalculatorServer server = new CalculatorServer(basePort + n, 32, nio);
+            server.setVerbose(false);
+            daemon("calculator", () -> {
+                try {
+                    server.start();
+                } catch (IOException e) {
+                    System.err.println("[calculator] " + e.getMessage());
+                }
+            });
+        }
+        Hops hops = new Hops();
+        Samples opLatency = new Samples();
+        Peer[] peers = new Peer[n];
+        for (int i = 0; i < n; i++) {
+            String name = "p" + (i + 1);
+            Peer p = new Peer(name, basePort + i, "127.0.0.1", basePort + (i + 1) % n, servers, nio);
+            p.setVerbose(false);
+            p.setInteractive(false);
+            p.setOpRate(0);
+            p.setStubCalculator(stub);
+            p.setReorder(reorder);
+            p.setHopListener(hops::visit);
+            p.setOpListener(opLatency::add);
+            peers[i] = p;
+            daemon(name + "-main", () -> {
+                try {
+                    p.start();
+                } catch (IOException e) {
+                    System.err.println("[harness] " + e.getMessage());
+                }
+            });
+        }
+        Thread.sleep(STARTUP_MS);
+
+        // Warm-up: the first rotation opens every connection
+        peers[0].injectToken();
+        long warm = System.currentTimeMillis() + WARMUP_TIMEOUT_MS;
+        while (System.currentTimeMillis() < warm && !allVisitedSince(peers, new long[n], List.of())) Thread.sleep(1);
+
+        Random rng = new Random(seed);
+        List<Integer> alive = new ArrayList<>();
+        for (int i = 0; i < n; i++) alive.add(i);
+        List<Integer> dead = new ArrayList<>();
+        boolean ok = true;
+        hops.recording = true;
+        for (Peer p : peers) p.setOpRate(rate);
+        long startNs = System.nanoTime();
+        long startHops = totalHops(peers);
+
+        // Kills: the peers vanish, and the token goes around them
+        sleepUntil(startNs + (long) (seconds / 3 * 1e9));
+        long beforeNs = System.nanoTime();
+        long beforeHops = totalHops(peers);
+        List<Integer> killed = pick(alive, kills, rng);
+        long killNs = System.nanoTime();
+        long[] atKill = hopsOf(peers);
+        for (int i : killed) peers[i].kill();
+        dead.addAll(killed);
+        long killRecovery = recover(peers, atKill, dead, killNs);
+
+        // Crashes with the token: lost, and regenerated by the watchdogs
+        sleepUntil(startNs + (long) (2 * seconds / 3 * 1e9));
+        long regenBefore = regenerations(peers);
+        List<Integer> crashed = pick(alive, crashes, rng);
+        for (int i : crashed) peers[i].crashWithToken();
+        long crashDeadline = System.currentTimeMillis() + RECOVERY_TIMEOUT_MS;
+        while (System.currentTimeMillis() < crashDeadline && !allCrashed(peers, crashed)) Thread.sleep(1);
+        long crashNs = System.nanoTime();
+        long[] atCrash = hopsOf(peers);
+        dead.addAll(crashed);
+        long crashRecovery = crashed.isEmpty() ? 0 : allCrashed(peers, crashed) ? recover(peers, atCrash, dead, crashNs) : -1;
+
+        sleepUntil(startNs + (long) (seconds * 1e9));
+        for (Peer p : peers) p.setOpRate(0);
+        long endNs = System.nanoTime();
+        long endHops = totalHops(peers);
+        hops.recording = false;
+        long drain = System.currentTimeMillis() + DRAIN_TIMEOUT_MS;
+        while (System.currentTimeMillis() < drain && backlog(peers, alive) > 0) Thread.sleep(5);
+
+        long generated = 0, computed = 0, lost = 0;
+        for (Peer p : peers) {
+            generated += p.opsGenerated();
+            computed += p.opsComputed();
+            lost += p.opsLost();
+        }
+        double elapsed = (endNs - startNs) / 1e9;
+        double steady = (beforeHops - startHops) / ((beforeNs - startNs) / 1e9);
+        long[] gaps = hops.gaps.sorted();
+        long[] lat = opLatency.sorted();
+        System.out.printf("token: %.0f hops/s before the first failure (rotation %.2fms), %.0f hops/s over the run%n",
+                steady, steady > 0 ? 1000.0 * n / steady : 0, (endHops - startHops) / elapsed);
+        System.out.printf("hop (visit -> next visit, %d samples): p50=%.3fms p99=%.3fms p999=%.3fms max=%.2fms%n",
+                gaps.length, pct(gaps, 0.50), pct(gaps, 0.99), pct(gaps, 0.999), gaps.length > 0 ? gaps[gaps.length - 1] / 1e6 : 0.0);
+        System.out.printf("ops: generated=%d computed=%d (%.1f/s) lost with crashed peers=%d backlog=%d%n",
+                generated, computed, computed / elapsed, lost, backlog(peers, alive));
+        System.out.printf("op latency (generated -> computed, %d samples): p50=%.2fms p99=%.2fms p999=%.2fms max=%.2fms%n",
+                lat.length, pct(lat, 0.50), pct(lat, 0.99), pct(lat, 0.999), lat.length > 0 ? lat[lat.length - 1] / 1e6 : 0.0);
+        if (!killed.isEmpty()) {
+            System.out.printf("kill %s at %.1fs: every survivor had the token again after %s%n",
+                    names(killed), (killNs - startNs) / 1e9, millis(killRecovery));
+            ok &= killRecovery >= 0;
+        }
+        if (!crashed.isEmpty()) {
+            System.out.printf("crash with the token %s at %.1fs: regenerations=%d, every survivor had the token again after %s%n",
+                    names(crashed), (crashNs - startNs) / 1e9, regenerations(peers) - regenBefore, millis(crashRecovery));
+            ok &= crashRecovery >= 0;
+        }
+        ok &= backlog(peers, alive) == 0;
+        System.out.println(ok ? "RING OK" : "RING FAILED");
+        System.exit(ok ? 0 : 1);
+    }
+
+    // Espera até todos os vivos terem tido o token depois de since; retorna o tempo desde failedNs (ns), ou -1
+    private static long recover(Peer[] peers, long[] since, List<Integer> dead, long failedNs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + RECOVERY_TIMEOUT_MS;
+        while (System.currentTimeMillis() < deadline) {
+            if (allVisitedSince(peers, since, dead)) return System.nanoTime() - failedNs;
+            LockSupport.parkNanos(200_000);
+        }
+        return -1;
+    }
+
+    // Retorna true se todos os peers fora de dead passaram o token desde since
+    private static boolean allVisitedSince(Peer[] peers, long[] since, List<Integer> dead) {
+        for (int i = 0; i < peers.length; i++) {
+            if (peers[i].hops() <= since[i] && !dead.contains(i)) return false;
+        }
+        return true;
+    }
+
+    // Tira count índices ao acaso de alive
+    private static List<Integer> pick(List<Integer> alive, int count, Random rng) {
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; i < count; i++) out.add(alive.remove(rng.nextInt(alive.size())));
+        return out;
+    }
+
+    private static boolean allCrashed(Peer[] peers, List<Integer> which) {
+        for (int i : which) if (!peers[i].isCrashed()) return false;
+        return true;
+    }
+
+    private static List<String> names(List<Integer> which) {
+        List<String> out = new ArrayList<>();
+        for (int i : which) out.add("p" + (i + 1));
+        return out;
+    }
+
+    private static long[] hopsOf(Peer[] peers) {
+        long[] h = new long[peers.length];
+        for (int i = 0; i < peers.length; i++) h[i] = peers[i].hops();
+        return h;
+    }
+
+    private static long totalHops(Peer[] peers) {
+        long sum = 0;
+        for (Peer p : peers) sum += p.hops();
+        return sum;
+    }
+
+    private static long regenerations(Peer[] peers) {
+        long sum = 0;
+        for (Peer p : peers) sum += p.regenerations();
+        return sum;
+    }
+
+    private static int backlog(Peer[] peers, List<Integer> which) {
+        int sum = 0;
+        for (int i : which) sum += peers[i].backlog();
+        return sum;
+    }
+
+    private static void sleepUntil(long nanoTime) {
+        for (long left; (left = nanoTime - System.nanoTime()) > 0; ) LockSupport.parkNanos(left);
+    }
+
+    private static void daemon(String name, Runnable r) {
+        Thread t = new Thread(r, name);
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private static String millis(long ns) {
+        return (ns < 0) ? "no recovery within " + RECOVERY_TIMEOUT_MS / 1000 + "s" : String.format("%.1fms", ns / 1e6);
+    }
+
+    // Percentil p (0..1) de um array ordenado, em ms
+    private static double pct(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int i = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, i))] / 1e6;
+    }
+}
@@ -0,0 +1,55 @@
+package ds.assignment.tring.simd;
+
+import ds.assignment.tring.BulkOps;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernel de BulkOps sobre o Vector API (jdk.incubator.vector), carregado só se o módulo estiver presente.
+ *
+ * Full vectors of the preferred species go through the lane-wise operations; the remaining
+ * elements (fewer than one vector) go through BulkOps.applyScalar. div computes the quotient of
+ * every lane and then blends NaN into the lanes whose divisor is zero, as the scalar path does.
+ */
+public final class VectorKernel implements BulkOps.Kernel {
+
+    private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+
+    @Override
+    public void apply(int op, double[] a, double[] b, double[] out, int off, int len) {
+        int step = S.length();
+        int upper = off + S.loopBound(len);
+        int i = off;
+        switch (op) {
+            case BulkOps.ADD:
+                for (; i < upper; i += step) {
+                    DoubleVector.fromArray(S, a, i).add(DoubleVector.fromArray(S, b, i)).intoArray(out, i);
+                }
+                break;
+            case BulkOps.SUB:
+                for (; i < upper; i += step) {
+                    DoubleVector.fromArray(S, a, i).sub(DoubleVector.fromArray(S, b, i)).intoArray(out, i);
+                }
+                break;
+            case BulkOps.MUL:
+                for (; i < upper; i += step) {
+                    DoubleVector.fromArray(S, a, i).mul(DoubleVector.fromArray(S, b, i)).intoArray(out, i);
+                }
+                break;
+            case BulkOps.DIV:
+                for (; i < upper; i += step) {
+                    DoubleVector vb = DoubleVector.fromArray(S, b, i);
+                    VectorMask<Double> zero = vb.eq(0.0);
+                    DoubleVector.fromArray(S, a, i).div(vb).blend(Double.NaN, zero).intoArray(out, i);
+                }
+                break;
+            default:
+                break;                                          // all NaN, below
+        }
+        BulkOps.applyScalar(op, a, b, out, i, off + len - i);
+    }
+
+    @Override
+    public String toString() { return "vector " + S.vectorBitSize() + "-bit x" + S.length(); }
+}
@@ -0,0 +1,72 @@
+package ds.assignment.tring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes do formato "%.2f" do codec: o texto tem de ser igual ao de String.format, byte a byte.
+ */
+class CalcCodecTest {
+
+    private final byte[] out = new byte[512];
+
+    // Formata v com writeFixed2
+    private String fixed2(double v) {
+        int n = CalcCodec.writeFixed2(out, 0, v);
+        return new String(out, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    // Compara com o formatter e com o valor que ele lê de volta
+    private void assertLikeFormat(double v) {
+        String expected = String.format(Locale.ROOT, "%.2f", v);
+        String actual = fixed2(v);
+        assertEquals(expected, actual, () -> "writeFixed2(" + v + ")");
+        if (Double.isFinite(v)) assertEquals(Double.parseDouble(expected), Double.parseDouble(actual));
+    }
+
+    @Test
+    void halfCentsRoundLikeTheFormatter() {
+        for (double v : new double[]{612.175, 1.005, 2.675, 0.125, 0.005, 0.015, 1.115, 8.345, 1234567.895}) {
+            assertLikeFormat(v);
+            assertLikeFormat(-v);
+        }
+    }
+
+    @Test
+    void negativesThatRoundToZeroKeepTheSign() {
+        assertEquals("-0.00", fixed2(-0.001));
+        assertEquals("-0.00", fixed2(-0.0));
+        assertEquals("0.00", fixed2(0.0));
+        assertLikeFormat(-0.004999);
+        assertLikeFormat(-1e-300);
+    }
+
+    @Test
+    void largeAndSpecialValuesFallBack() {
+        for (double v : new double[]{1e15, 9.999999999999998e14, 1e16, 123456789012.345, 1e300, Double.MAX_VALUE,
+                Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}) {
+            assertLikeFormat(v);
+            assertLikeFormat(-v);
+        }
+    }
+
+    @Test
+    void randomValuesMatchTheFormatter() {
+        SplittableRandom rng = new SplittableRandom(39);
+        for (int i = 0; i < 1_000_000; i++) {
+            double v = switch (i % 4) {
+                // Three decimals: a quarter of them end in 5, right on a half cent
+                case 0 -> rng.nextLong(-100_000_000, 100_000_000) / 1000.0;
+                case 1 -> rng.nextDouble(-1e6, 1e6);
+                case 2 -> rng.nextDouble(-1, 1);
+                default -> Math.scalb(rng.nextDouble(1, 2), rng.nextInt(-20, 60)) * (rng.nextBoolean() ? 1 : -1);
+            };
+            assertLikeFormat(v);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ds.assignment.tring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da cache de respostas do CalculatorServer (chamando answer() diretamente, sem sockets).
+ */
+class CalculatorServerTest {
+
+    private final CalcCodec codec = new CalcCodec();
+
+    // Responde a uma linha de pedido e retorna a resposta como texto
+    private String answer(CalculatorServer server, String line) {
+        byte[] req = line.getBytes(StandardCharsets.US_ASCII);
+        int n = server.answer(codec, req, 0, req.length);
+        return new String(codec.out, 0, n, StandardCharsets.US_ASCII);
+    }
+
+    // Servidor NIO (sem pool de workers) com a cache ligada
+    private static CalculatorServer cachedServer() {
+        CalculatorServer server = new CalculatorServer(0, 1, true, 16, 0);
+        server.setVerbose(false);
+        return server;
+    }
+
+    @Test
+    void retryOfTheSameRequestIsServedFromTheCache() {
+        CalculatorServer server = cachedServer();
+        assertEquals("1 3.0", answer(server, "add 1.00 2.00 1 p1"));
+        assertEquals("1 3.0", answer(server, "add 1.00 2.00 1 p1"));
+        assertEquals(1, server.cacheHits());
+        assertEquals(1, server.cacheMisses());
+    }
+
+    @Test
+    void qReusedForAnotherRequestIsComputedAgain() {
+        CalculatorServer server = cachedServer();
+        assertEquals("1 3.0", answer(server, "add 1.00 2.00 1 p1"));
+        // A restarted peer numbering its ops from scratch: same (peerId, q), different op
+        assertEquals("1 35.0", answer(server, "mul 5.00 7.00 1 p1"));
+        // Same op, different operands
+        assertEquals("1 12.0", answer(server, "mul 5.00 2.40 1 p1"));
+        assertEquals(0, server.cacheHits());
+        // The newest reply replaced the entry and is what a retry of it gets
+        assertEquals("1 12.0", answer(server, "mul 5.00 2.40 1 p1"));
+        assertEquals(1, server.cacheHits());
+    }
+
+    @Test
+    void sameQFromAnotherPeerIsAnotherEntry() {
+        CalculatorServer server = cachedServer();
+        assertEquals("7 3.0", answer(server, "add 1.00 2.00 7 p1"));
+        assertEquals("7 -1.0", answer(server, "sub 1.00 2.00 7 p2"));
+        assertEquals("7 3.0", answer(server, "add 1.00 2.00 7 p1"));
+        assertEquals("7 -1.0", answer(server, "sub 1.00 2.00 7 p2"));
+        assertEquals(2, server.cacheHits());
+    }
+}
@@ -0,0 +1,70 @@
+package ds.assignment.tring;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Testes da ejeção de servidores do ServerPool: falhas ejetam, "ERR overloaded" só adia.
+ */
+class ServerPoolTest {
+
+    // Pool de servers servidores locais (nenhum é contactado)
+    private static ServerPool pool(int servers) {
+        List<Peer.Addr> addrs = new ArrayList<>();
+        for (int i = 0; i < servers; i++) addrs.add(new Peer.Addr("127.0.0.1", 7000 + i));
+        return new ServerPool(addrs);
+    }
+
+    @Test
+    void consecutiveFailuresEject() {
+        ServerPool pool = pool(1);
+        for (int i = 1; i < ServerPool.EJECT_AFTER; i++) assertFalse(pool.failed(pool.pick()));
+        assertTrue(pool.failed(pool.pick()));
+        assertEquals(0, pool.healthy());
+        assertNull(pool.pick());
+    }
+
+    @Test
+    void overloadNeverEjects() {
+        ServerPool pool = pool(1);
+        for (int i = 0; i < 10 * ServerPool.EJECT_AFTER; i++) {
+            ServerPool.Endpoint e = pool.pick();
+            assertNotNull(e, "an overloaded server stays pickable when it is the only one");
+            pool.overloaded(e);
+        }
+        assertEquals(1, pool.healthy());
+        assertEquals(0, pool.ejections());
+        assertEquals(10 * ServerPool.EJECT_AFTER, pool.overloads());
+    }
+
+    @Test
+    void overloadBreaksTheFailureStreak() {
+        ServerPool pool = pool(1);
+        for (int i = 1; i < ServerPool.EJECT_AFTER; i++) pool.failed(pool.pick());
+        pool.overloaded(pool.pick());
+        assertFalse(pool.failed(pool.pick()));
+        assertEquals(1, pool.healthy());
+    }
+
+    @Test
+    void overloadedServerStepsAside() {
+        ServerPool pool = pool(2);
+        ServerPool.Endpoint busy = pool.pick();
+        pool.overloaded(busy);
+        // Well within OVERLOAD_BACKOFF_MS: every pick goes to the other server
+        for (int i = 0; i < 50; i++) {
+            ServerPool.Endpoint e = pool.pick();
+            assertNotSame(busy, e);
+            pool.succeeded(e, 1_000);
+        }
+    }
+}